@@ -0,0 +1,51 @@
+import java.awt.GridLayout;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Displays the selected clue: its "answer", and its "question", which is hidden until it is revealed.
+* The same two <code>JLabel</code>s are used for every clue.
+*/
+public class AnswerPanel extends JPanel {
+
+	/**
+	* The <code>JLabel</code> containing the "answer", and the <code>JLabel</code> containing the "question"
+	*/
+	private final JLabel answerText, questionText;
+
+	/**
+	* Creates an <code>AnswerPanel</code> which displays no clue yet
+	*/
+	public AnswerPanel() {
+		// this layout positions two JComponents vertically
+		super(new GridLayout(2,1));
+
+		answerText = new JLabel("", SwingConstants.LEFT);
+		questionText = new JLabel("", SwingConstants.LEFT);
+		questionText.setVisible(false);
+
+		add(answerText);
+		add(questionText);
+	}
+
+	/**
+	* Displays the "answer" of a clue, and hides its "question" for the moment
+	* @param clue the <code>Question</code> to display
+	*/
+	public void showClue(Question clue) {
+		answerText.setText(clue.getResponse());
+		questionText.setText(clue.getQuestion());
+		questionText.setVisible(false);
+	}
+
+	/**
+	* Makes the "question" of the displayed clue visible
+	*/
+	public void revealQuestion() {
+		questionText.setVisible(true);
+	}
+}
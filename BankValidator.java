@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Headless command-line validator of question files. Every file given, and every question file found in the directories given,
+* is checked in parallel; every problem is collected with its file and line, rather than stopping at the first one like
+* <code>Database.readQuestions</code>. A JSON report is printed, with the problems and the time it took.
+* e.g. java BankValidator questions
+*/
+public class BankValidator {
+
+	/**
+	* A problem found in a file: the case problem, as understood by <code>Database.describeProblem</code>, its line and what is wrong
+	*/
+	static class Problem {
+		final int caseProblem, line;
+		final String detail;
+
+		Problem(int caseProblem, int line, String detail) {
+			this.caseProblem = caseProblem;
+			this.line = line;
+			this.detail = detail;
+		}
+	}
+
+	/**
+	* The outcome of the validation of a file
+	*/
+	static class Report {
+		final Path file;
+		final List<Problem> problems = new ArrayList<Problem>();
+		long bytes, nanos;
+		int lines;
+
+		Report(Path file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	* Validates the files and directories given, and prints the JSON report. The exit status is 1 if a file is not valid.
+	* @param args the files and directories to validate, optionally preceded by "-threads N"
+	*/
+	public static void main(String args[]) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> names = new ArrayList<String>(Arrays.asList(args));
+
+		if (names.size() >= 2 && names.get(0).equals("-threads")) {
+			threads = Integer.parseInt(names.get(1));
+			names = names.subList(2, names.size());
+		}
+
+		if (names.isEmpty()) {
+			System.err.println("usage: java BankValidator [-threads N] <file or directory>...");
+			System.exit(2);
+		}
+
+		long start = System.nanoTime();
+		final List<Path> files = findFiles(names);
+
+		// validate the files on a pool of the requested size
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Report> reports = pool.submit(() -> files.parallelStream().map(BankValidator::validate).collect(Collectors.toList())).get();
+		pool.shutdown();
+
+		long elapsed = System.nanoTime() - start;
+		print(System.out, reports, elapsed, threads);
+
+		for (Report report : reports)
+			if (!report.problems.isEmpty())
+				System.exit(1);
+	}
+
+	/**
+	* Returns the files given, and the question files (.txt, compiled or compressed) found in the directories given, sorted.
+	* Every bank of a zip archive is a file of its own, e.g. season1.zip!week3.txt
+	*/
+	static List<Path> findFiles(List<String> names) throws IOException {
+		List<Path> found = new ArrayList<Path>();
+
+		for (String name : names) {
+			Path path = Paths.get(name);
+			if (!Files.isDirectory(path))
+				found.add(path);
+			else {
+				try (Stream<Path> walk = Files.walk(path)) {
+					walk.filter(Files::isRegularFile)
+						.filter(p -> p.toString().endsWith(".txt") || p.toString().endsWith(MappedDatabase.EXTENSION)
+							|| p.toString().endsWith(CompressedBank.GZIP) || p.toString().endsWith(CompressedBank.ZIP))
+						.forEach(found::add);
+				}
+			}
+		}
+
+		List<Path> files = new ArrayList<Path>();
+		for (Path file : found) {
+			if (!file.toString().endsWith(CompressedBank.ZIP) || !Files.isRegularFile(file))
+				files.add(file);
+			else
+				for (String bank : CompressedBank.listBanks(file.toString()))
+					files.add(Paths.get(file + CompressedBank.ENTRY_SEPARATOR + bank));
+		}
+
+		files.sort(null);
+		return files;
+	}
+
+	/**
+	* Validates a file, collecting every problem found
+	* @param file the file to validate
+	* @return the outcome of the validation
+	*/
+	static Report validate(Path file) {
+		Report report = new Report(file);
+		long start = System.nanoTime();
+
+		try {
+			// a compiled question bank is checked as a whole when it is opened, including its offset table
+			if (file.toString().endsWith(MappedDatabase.EXTENSION)) {
+				report.bytes = Files.size(file);
+				try {
+					MappedDatabase.open(file.toString());
+				} catch (DatabaseFormatException e) {
+					report.problems.add(new Problem(e.getCaseProblem(), 0, "not a complete compiled question bank, or its offset table is corrupt"));
+				}
+			}
+			else {
+				try (LineReader reader = LineReader.open(file.toString())) {
+					// a compressed bank is reported with the size of its content
+					report.bytes = Math.max(reader.getSize(), 0);
+					validate(reader, report);
+				}
+			}
+		} catch (IOException e) {
+			report.problems.add(new Problem(2, 0, "can't be read: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			// whatever is wrong with a file, it is reported with the file rather than stopping the validation of the others
+			report.problems.add(new Problem(2, 0, "can't be validated: " + e));
+		}
+
+		report.nanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	* Checks the lines of a question file: the two numbers at its beginning, then that it has exactly the number of lines they require
+	*/
+	private static void validate(LineReader reader, Report report) throws IOException {
+		int m = readHeader(reader, report, "number of categories");
+		int n = readHeader(reader, report, "number of questions per category");
+
+		// count the remaining lines; without valid numbers, that's all that can be checked
+		long lines = reader.getLineNumber();
+		while (reader.readLine() != null)
+			lines++;
+		report.lines = (int) lines;
+
+		if (m < 0 || n < 0)
+			return;
+
+		long expected = 2 + m + 2L * m * n;
+
+		if (lines < expected) {
+			// describe the first line which is missing
+			long missing = lines - 2;
+			String what;
+			if (missing < m)
+				what = "category " + (missing + 1) + " of " + m;
+			else {
+				long cell = (missing - m) / 2;
+				what = ((missing - m) % 2 == 0 ? "answer" : "question") + " of category " + (cell % m + 1) + ", question " + (cell / m + 1);
+			}
+			report.problems.add(new Problem(1, (int) lines + 1, (expected - lines) + " lines missing, starting with the " + what));
+		}
+		else if (lines > expected)
+			report.problems.add(new Problem(3, (int) expected + 1, (lines - expected) + " extra lines after the last question"));
+	}
+
+	/**
+	* Reads one of the numbers of the beginning of the file
+	* @return the number, or -1 if it is missing or not valid, in which case the problem is added to the report
+	*/
+	private static int readHeader(LineReader reader, Report report, String what) throws IOException {
+		String line = reader.readLine();
+
+		if (line == null) {
+			report.problems.add(new Problem(1, reader.getLineNumber() + 1, "missing " + what));
+			return -1;
+		}
+
+		try {
+			int value = Integer.parseInt(line);
+			if (value >= 0)
+				return value;
+		} catch (NumberFormatException e) {
+			// reported below, like a negative value
+		}
+
+		report.problems.add(new Problem(1, reader.getLineNumber(), "bad header: \"" + line + "\" is not a valid " + what));
+		return -1;
+	}
+
+	/**
+	* Prints the JSON report: a summary with the timing, then every file with its problems
+	*/
+	private static void print(PrintStream out, List<Report> reports, long elapsed, int threads) {
+		long bytes = 0, nanos[] = new long[reports.size()];
+		int invalid = 0, problems = 0;
+
+		for (int i = 0; i < reports.size(); i++) {
+			Report report = reports.get(i);
+			bytes += report.bytes;
+			nanos[i] = report.nanos;
+			problems += report.problems.size();
+			if (!report.problems.isEmpty())
+				invalid++;
+		}
+		Arrays.sort(nanos);
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"summary\": {");
+		json.append("\"files\": ").append(reports.size());
+		json.append(", \"valid\": ").append(reports.size() - invalid);
+		json.append(", \"invalid\": ").append(invalid);
+		json.append(", \"problems\": ").append(problems);
+		json.append(", \"threads\": ").append(threads);
+		json.append(", \"bytes\": ").append(bytes);
+		json.append(", \"elapsedMillis\": ").append(elapsed / 1000000);
+		json.append(", \"megabytesPerSecond\": ").append(Math.round(bytes / 1048576.0 / (elapsed / 1e9) * 10) / 10.0);
+		json.append(", \"fileMicros\": {\"p50\": ").append(percentile(nanos, 0.5) / 1000);
+		json.append(", \"p99\": ").append(percentile(nanos, 0.99) / 1000);
+		json.append(", \"max\": ").append(percentile(nanos, 1) / 1000).append("}},\n");
+		json.append("  \"files\": [");
+
+		for (int i = 0; i < reports.size(); i++) {
+			Report report = reports.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {\"file\": ");
+			Json.appendQuoted(json, report.file.toString());
+			json.append(", \"valid\": ").append(report.problems.isEmpty());
+			json.append(", \"lines\": ").append(report.lines);
+			json.append(", \"micros\": ").append(report.nanos / 1000);
+			json.append(", \"problems\": [");
+
+			for (int k = 0; k < report.problems.size(); k++) {
+				Problem problem = report.problems.get(k);
+				json.append(k == 0 ? "" : ", ");
+				json.append("{\"line\": ").append(problem.line);
+				json.append(", \"code\": ").append(problem.caseProblem);
+				json.append(", \"message\": ");
+				Json.appendQuoted(json, Database.describeProblem(problem.caseProblem));
+				json.append(", \"detail\": ");
+				Json.appendQuoted(json, problem.detail);
+				json.append("}");
+			}
+
+			json.append("]}");
+		}
+
+		json.append("\n  ]\n}");
+		out.println(json);
+	}
+
+	/**
+	* Returns the value at the given fraction of sorted values, or 0 if there are none
+	*/
+	private static long percentile(long sorted[], double fraction) {
+		if (sorted.length == 0)
+			return 0;
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+	}
+}
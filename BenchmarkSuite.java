@@ -0,0 +1,416 @@
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Command-line benchmark suite measuring, for several board sizes, the parsing of question files (plain, gzip and in a zip archive), the opening of compiled banks,
+* the construction of the board components and the latency of the game transitions, with and without recording their statistics.
+* Every benchmark is run for a warmup period, then measured; the time per operation, its percentiles, the bytes allocated per operation
+* and the garbage collections during the measurement are printed and saved as JSON, so the results of two versions can be compared.
+* e.g. java -Djava.awt.headless=true BenchmarkSuite 5x5,50x50,200x1000 bench-results.json
+*/
+public class BenchmarkSuite {
+
+	/**
+	* Time spent running a benchmark before measuring it, and time spent measuring it, in nanoseconds
+	*/
+	private static final long WARMUP_NANOS = 1000000000L, MEASURE_NANOS = 2000000000L;
+
+	/**
+	* Maximum number of operations whose time is kept to compute the percentiles
+	*/
+	private static final int MAX_SAMPLES = 1 << 20;
+
+	/**
+	* A benchmarked operation
+	*/
+	interface Operation {
+		/**
+		* Runs the operation once
+		* @return a value depending on the work done, so it can't be optimized away
+		*/
+		long run() throws Exception;
+	}
+
+	/**
+	* The measurements of a benchmark for a board size
+	*/
+	static class Result {
+		String benchmark;
+		int categories, questions;
+		long operations;
+		double nanosPerOp, p50, p90, p99, p999, allocatedBytesPerOp, megabytesPerSecond;
+		long gcCount, gcMillis;
+	}
+
+	/**
+	* Allocated bytes of the current thread, if the JVM can measure them
+	*/
+	private static final com.sun.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+		? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+	/**
+	* Runs every benchmark for every board size, prints the results and saves them as JSON.
+	* @param args optional comma separated board sizes (categories x questions), and the path of the JSON file to write
+	*/
+	public static void main(String args[]) throws Exception {
+		String sizes[] = (args.length > 0 ? args[0] : "5x5,50x50,200x1000").split(",");
+		Path output = Paths.get(args.length > 1 ? args[1] : "bench-results.json");
+
+		List<Result> results = new ArrayList<Result>();
+		Path directory = Files.createTempDirectory("jeopardy-bench");
+
+		for (String size : sizes) {
+			String parts[] = size.split("x");
+			int m = Integer.parseInt(parts[0].trim()), n = Integer.parseInt(parts[1].trim());
+			results.addAll(runAll(directory, m, n));
+		}
+
+		writeJson(output, results);
+		System.out.println("results saved to " + output);
+	}
+
+	/**
+	* Runs every benchmark on a generated board of size m & n
+	*/
+	private static List<Result> runAll(Path directory, int m, int n) throws Exception {
+		List<Result> results = new ArrayList<Result>();
+
+		// generate the question file, and its compiled version
+		Path text = directory.resolve("bank-" + m + "x" + n + ".txt");
+		ParserBenchmark.writeBank(text, m, n, 42);
+		text.toFile().deleteOnExit();
+		final String textName = text.toString();
+		final long textSize = Files.size(text);
+
+		final QuestionBank database = Database.parseQuestions(textName);
+		final String compiledName = directory.resolve("bank-" + m + "x" + n + MappedDatabase.EXTENSION).toString();
+		QuestionBankCompiler.compile(database, compiledName);
+		Paths.get(compiledName).toFile().deleteOnExit();
+
+		// parse throughput of the text format
+		Result parse = measure("parse.text", m, n, new Operation() {
+			public long run() throws Exception {
+				return Database.parseQuestions(textName).getNumQuestions();
+			}
+		});
+		parse.megabytesPerSecond = textSize / 1048576.0 / (parse.nanosPerOp / 1e9);
+		results.add(parse);
+
+		// parse throughput of the same file compressed with gzip, and stored in a zip archive next to another bank,
+		// in megabytes of text per second, so they compare with the text format
+		final String gzipName = text + CompressedBank.GZIP, zipName = directory.resolve("banks-" + m + "x" + n + CompressedBank.ZIP).toString();
+		compress(text, Paths.get(gzipName), Paths.get(zipName));
+		for (final String compressed : new String[] {gzipName, zipName + CompressedBank.ENTRY_SEPARATOR + text.getFileName()}) {
+			Result inflate = measure(compressed.equals(gzipName) ? "parse.gzip" : "parse.zip", m, n, new Operation() {
+				public long run() throws Exception {
+					return Database.parseQuestions(compressed).getNumQuestions();
+				}
+			});
+			inflate.megabytesPerSecond = textSize / 1048576.0 / (inflate.nanosPerOp / 1e9);
+			results.add(inflate);
+		}
+
+		// opening a compiled bank, and reading one Question from it
+		results.add(measure("open.compiled", m, n, new Operation() {
+			public long run() throws Exception {
+				return Database.parseQuestions(compiledName).getQuestion(0, 0).getQuestion().length();
+			}
+		}));
+
+		// construction of the components of the board, as done when the first file is loaded, or a board of another size
+		final ActionListener listener = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+			}
+		};
+		final GameEngine engine = new GameEngine(1);
+		engine.load(database);
+		results.add(measure("board.build", m, n, new Operation() {
+			public long run() {
+				BoardPanel board = new BoardPanel(listener);
+				board.showBoard(engine);
+				return board.getPreferredSize().width;
+			}
+		}));
+
+		// update of the components of the board in place, as done when a board of the same size is loaded
+		final BoardPanel board = new BoardPanel(listener);
+		board.showBoard(engine);
+		results.add(measure("board.update", m, n, new Operation() {
+			public long run() {
+				return board.showBoard(engine) ? 1 : 0;
+			}
+		}));
+
+		// painting of the visible part of a board drawn by a VirtualBoardPanel, whatever its size
+		final VirtualBoardPanel virtualBoard = new VirtualBoardPanel(null);
+		virtualBoard.showBoard(engine);
+		virtualBoard.setSize(virtualBoard.getPreferredSize());
+		final BufferedImage viewport = new BufferedImage(980, 480, BufferedImage.TYPE_INT_RGB);
+		results.add(measure("board.virtual.paint", m, n, new Operation() {
+			public long run() {
+				Graphics g = viewport.createGraphics();
+				g.setClip(0, 0, viewport.getWidth(), viewport.getHeight());
+				virtualBoard.paint(g);
+				g.dispose();
+				return viewport.getRGB(0, 0);
+			}
+		}));
+
+		// update of the components showing a clue, as done on every click
+		final AnswerPanel answers = new AnswerPanel();
+		final Question clues[] = {database.getQuestion(0, 0), database.getQuestion(m - 1, n - 1)};
+		final int clicks[] = {0};
+		results.add(measure("answers.show", m, n, new Operation() {
+			public long run() {
+				answers.showClue(clues[clicks[0]++ & 1]);
+				return answers.getPreferredSize().width;
+			}
+		}));
+
+		// normalizing the "question" of every clue, as done when a board is loaded in a buzzer room
+		results.add(measure("response.precompute", m, n, new Operation() {
+			public long run() {
+				return new ResponseMatcher(database).isCorrect(0, 0, "") ? 1 : 0;
+			}
+		}));
+
+		// judging typed responses: the exact response, one with a typo, and a wrong one, for clues all over the board
+		final ResponseMatcher matcher = new ResponseMatcher(database);
+		final String responses[] = new String[3 * 64];
+		for (int k = 0; k < 64; k++) {
+			String question = database.getQuestion(k % m, k % n).getQuestion();
+			responses[3 * k] = "What is " + question;
+			responses[3 * k + 1] = "what is " + question.substring(0, question.length() / 2) + "x" + question.substring(question.length() / 2 + 1);
+			responses[3 * k + 2] = database.getQuestion((k + 1) % m, (k + 3) % n).getQuestion();
+		}
+		final int judged[] = {0};
+		results.add(measure("response.judge", m, n, new Operation() {
+			public long run() {
+				int k = judged[0]++ % responses.length;
+				return matcher.distance((k / 3) % m, (k / 3) % n, responses[k]);
+			}
+		}));
+
+		// select and reveal every clue of the board, one transition at a time
+		final int cells[] = {0};
+		Result transitions = measure("engine.selectReveal", m, n, new Operation() {
+			public long run() {
+				int cell = cells[0]++;
+				if (cell == m * n) {
+					engine.load(database);
+					cell = 0;
+					cells[0] = 1;
+				}
+				engine.select(cell % m, cell / m);
+				return engine.reveal().ordinal();
+			}
+		});
+		results.add(transitions);
+
+		// the same transitions with a judgement, recorded in the statistics of the clues and of the players by a StatsStore
+		final StatsStore stats = new StatsStore(directory.resolve("stats-" + m + "x" + n + StatsStore.EXTENSION), StatsStore.FLUSH_MILLIS);
+		final GameEngine recorded = new GameEngine(2);
+		recorded.addListener(stats.recorder(textName));
+		recorded.load(database);
+		final int recordedCells[] = {0};
+		results.add(measure("stats.selectJudgeReveal", m, n, new Operation() {
+			public long run() {
+				int cell = recordedCells[0]++;
+				if (cell == m * n) {
+					recorded.load(database);
+					cell = 0;
+					recordedCells[0] = 1;
+				}
+				recorded.select(cell % m, cell / m);
+				recorded.judge(cell & 1, cell % 3 == 0);
+				return recorded.reveal().ordinal();
+			}
+		}));
+		stats.close();
+		directory.resolve("stats-" + m + "x" + n + StatsStore.EXTENSION).toFile().deleteOnExit();
+
+		// assembling a random board of 6 x 5 from the generated file, used as an archive, in a single pass
+		final Set<String> recent = new HashSet<String>();
+		final long seeds[] = {0};
+		results.add(measure("archive.sample", m, n, new Operation() {
+			public long run() throws Exception {
+				return BoardSampler.sample(textName, Math.min(m, 6), Math.min(n, 5), seeds[0]++, recent, null, null).getNumQuestions();
+			}
+		}));
+
+		// resuming a game from its journal, after thousands of events: the snapshot, then the events written after it
+		final Path journalPath = directory.resolve("game-" + m + "x" + n + ".journal");
+		writeJournal(journalPath, database, textName);
+		results.add(measure("journal.recover", m, n, new Operation() {
+			public long run() throws Exception {
+				return GameJournal.recover(journalPath).getReplayed();
+			}
+		}));
+
+		return results;
+	}
+
+	/**
+	* Writes the journal of a game of 2.5 times SNAPSHOT_EVERY events on the given board, selecting, judging and revealing clues
+	*/
+	private static void writeJournal(Path path, QuestionBank database, String source) throws IOException {
+		GameEngine engine = new GameEngine(2);
+		GameJournal journal = new GameJournal(path, 0);
+		journal.setSource(source);
+		engine.addListener(journal);
+		engine.load(database);
+
+		int cells = database.getNumCategories() * database.getNumQuestions();
+		for (int cell = 0, events = 0; events < GameJournal.SNAPSHOT_EVERY * 5 / 2; cell++, events += 3) {
+			if (cell == cells) {
+				engine.load(database);
+				cell = 0;
+			}
+			engine.select(cell % database.getNumCategories(), cell / database.getNumCategories());
+			engine.judge(cell & 1, cell % 3 == 0);
+			engine.reveal();
+		}
+
+		journal.close();
+		path.toFile().deleteOnExit();
+		Paths.get(path + ".snapshot").toFile().deleteOnExit();
+	}
+
+	/**
+	* Writes a question file compressed with gzip, and in a zip archive holding it after a smaller bank, as the archives of the shows are
+	*/
+	private static void compress(Path text, Path gzip, Path zip) throws IOException {
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip), 1 << 16)) {
+			Files.copy(text, out);
+		}
+
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+			out.putNextEntry(new ZipEntry("small.txt"));
+			out.write("1\n1\nCategory\nanswer\nquestion\n".getBytes(StandardCharsets.UTF_8));
+			out.putNextEntry(new ZipEntry(text.getFileName().toString()));
+			Files.copy(text, out);
+		}
+		gzip.toFile().deleteOnExit();
+		zip.toFile().deleteOnExit();
+	}
+
+	/**
+	* Runs an operation for the warmup period, then measures it
+	*/
+	private static Result measure(String name, int m, int n, Operation operation) throws Exception {
+		long sink = 0;
+
+		for (long end = System.nanoTime() + WARMUP_NANOS; System.nanoTime() < end; )
+			sink += operation.run();
+
+		long samples[] = new long[MAX_SAMPLES];
+		int kept = 0;
+		long operations = 0;
+
+		long gcCount = gcCount(), gcMillis = gcMillis();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime(), end = start + MEASURE_NANOS, now = start;
+
+		while (now < end) {
+			long before = now;
+			sink += operation.run();
+			now = System.nanoTime();
+
+			if (kept < MAX_SAMPLES)
+				samples[kept++] = now - before;
+			operations++;
+		}
+
+		Result result = new Result();
+		result.benchmark = name;
+		result.categories = m;
+		result.questions = n;
+		result.operations = operations;
+		result.nanosPerOp = (double) (now - start) / operations;
+		result.allocatedBytesPerOp = allocated < 0 ? -1 : (double) (allocatedBytes() - allocated) / operations;
+		result.gcCount = gcCount() - gcCount;
+		result.gcMillis = gcMillis() - gcMillis;
+
+		Arrays.sort(samples, 0, kept);
+		result.p50 = samples[(int) (kept * 0.5)];
+		result.p90 = samples[(int) (kept * 0.9)];
+		result.p99 = samples[(int) (kept * 0.99)];
+		result.p999 = samples[(int) (kept * 0.999)];
+
+		System.out.printf("%-20s %5dx%-6d %12.0f ns/op  p50 %10.0f  p99 %10.0f  %12.0f B/op  gc %3d (%d ms)  [%d]%n",
+			name, m, n, result.nanosPerOp, result.p50, result.p99, result.allocatedBytesPerOp, result.gcCount, result.gcMillis, sink & 1);
+		return result;
+	}
+
+	/**
+	* Returns the number of bytes allocated by the current thread, or -1 if it can't be measured
+	*/
+	private static long allocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	* Returns the number of garbage collections since the JVM started
+	*/
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	/**
+	* Returns the time spent in garbage collections since the JVM started, in milliseconds
+	*/
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(0, gc.getCollectionTime());
+		return millis;
+	}
+
+	/**
+	* Writes the results as a JSON array, one object per benchmark and board size
+	*/
+	private static void writeJson(Path output, List<Result> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+			out.println("[");
+
+			for (int i = 0; i < results.size(); i++) {
+				Result r = results.get(i);
+				out.printf("  {\"benchmark\": \"%s\", \"params\": {\"categories\": %d, \"questions\": %d}, ", r.benchmark, r.categories, r.questions);
+				out.printf(Locale.ROOT, "\"operations\": %d, \"nsPerOp\": %.1f, \"percentiles\": {\"50\": %.0f, \"90\": %.0f, \"99\": %.0f, \"99.9\": %.0f}, ",
+					r.operations, r.nanosPerOp, r.p50, r.p90, r.p99, r.p999);
+				out.printf(Locale.ROOT, "\"gc.alloc.rate.norm\": %.1f, \"gc.count\": %d, \"gc.time\": %d", r.allocatedBytesPerOp, r.gcCount, r.gcMillis);
+				if (r.megabytesPerSecond > 0)
+					out.printf(Locale.ROOT, ", \"mbPerSecond\": %.1f", r.megabytesPerSecond);
+				out.println(i + 1 < results.size() ? "}," : "}");
+			}
+
+			out.println("]");
+		}
+	}
+}
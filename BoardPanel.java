@@ -0,0 +1,145 @@
+import java.awt.Color;
+import java.awt.GridLayout;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The grid of the board: a row of <code>JLabel</code>s with the categories, followed by a <code>JeopardyButton</code> for every cell.
+* The components are kept from one board to the next: loading a board of the same size only updates their text, and loading a board
+* of another size reuses as many of them as possible. The layout is only changed when the size of the board changes.
+*/
+public class BoardPanel extends JPanel implements BoardView {
+
+	/**
+	* Background of the labels of the categories
+	*/
+	private static final Color CATEGORY_COLOR = Color.decode("#FED000");
+
+	/**
+	* Reference to the Object which handles the <code>ActionEvent</code> of every <code>JeopardyButton</code>
+	*/
+	private final ActionListener listener;
+
+	/**
+	* The labels of the categories, and the buttons of the cells, row after row; they may be more than the current board needs
+	*/
+	private JLabel categoryLabels[] = new JLabel[0];
+	private JeopardyButton buttons[] = new JeopardyButton[0];
+
+	/**
+	* The number of categories and of questions per category of the current board
+	*/
+	private int numCategories = -1, numQuestions = -1;
+
+	/**
+	* Creates an empty <code>BoardPanel</code>
+	* @param listener reference to the Object which will handle the <code>ActionEvent</code> when a <code>JeopardyButton</code> is clicked
+	*/
+	public BoardPanel(ActionListener listener) {
+		this.listener = listener;
+		//styling
+		setBackground(Color.WHITE);
+	}
+
+	/**
+	* Displays the board of the given <code>GameEngine</code>: its categories, and the amount of every cell, or "-" if the cell has been played
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @return true if the size of the board changed, so the layout of the frame has to be computed again
+	*/
+	public boolean showBoard(GameEngine engine) {
+		QuestionBank db = engine.getDatabase();
+		int m = db.getNumCategories(), n = db.getNumQuestions();
+		boolean resized = m != numCategories || n != numQuestions;
+
+		// take the components out of the grid while their text changes, and create the missing ones
+		if (resized) {
+			removeAll();
+			ensureCapacity(m, n);
+		}
+
+		// update the text of the components in place
+		for (int j = 0; j < m; j++)
+			categoryLabels[j].setText(db.getCategory(j));
+
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < m; j++)
+				buttons[i * m + j].reset(j, i, engine.getAmount(i), engine.isPlayed(j, i));
+
+		if (resized)
+			layOut(m, n);
+
+		return resized;
+	}
+
+	/**
+	* Displays a category again, after the <code>Database</code> of the board was patched
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @param category the index of the category
+	*/
+	public void showCategory(GameEngine engine, int category) {
+		categoryLabels[category].setText(engine.getDatabase().getCategory(category));
+	}
+
+	/**
+	* Shows that the cell of the given category and question has been played
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	*/
+	public void markPlayed(int category, int question) {
+		buttons[question * numCategories + category].setText("-");
+	}
+
+	/**
+	* getter that returns the component to add to the frame to display the board
+	* @return this <code>BoardPanel</code>
+	*/
+	public JComponent getComponent() {
+		return this;
+	}
+
+	/**
+	* Creates the components which are missing for a board of size m & n
+	*/
+	private void ensureCapacity(int m, int n) {
+		if (categoryLabels.length < m) {
+			JLabel labels[] = Arrays.copyOf(categoryLabels, m);
+			for (int j = categoryLabels.length; j < m; j++) {
+				labels[j] = new JLabel();
+				labels[j].setOpaque(true);
+				labels[j].setBackground(CATEGORY_COLOR);
+				labels[j].setHorizontalAlignment(JLabel.CENTER);
+			}
+			categoryLabels = labels;
+		}
+
+		if (buttons.length < m * n) {
+			JeopardyButton cells[] = Arrays.copyOf(buttons, m * n);
+			for (int k = buttons.length; k < m * n; k++)
+				cells[k] = new JeopardyButton(listener, 0, 0, 0);
+			buttons = cells;
+		}
+
+	}
+
+	/**
+	* Lays the components out for a board of size m & n
+	*/
+	private void layOut(int m, int n) {
+		// GridLayout of rows "n + 1" (for the row occupied by the title of the categories) and columns "m"
+		setLayout(new GridLayout(n + 1, m));
+
+		for (int j = 0; j < m; j++)
+			add(categoryLabels[j]);
+		for (int k = 0; k < m * n; k++)
+			add(buttons[k]);
+
+		numCategories = m;
+		numQuestions = n;
+	}
+}
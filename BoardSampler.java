@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Assembles a random board of m categories and n <code>Question</code>s per category from an archive, which is a question file
+* (or a compiled question bank) of any size. A text archive is read once, line by line, and only the lines of the chosen cells
+* are turned into Strings: the archive is never loaded in memory, and the reading stops after the last chosen cell.
+*
+* The categories are chosen by reservoir sampling while the category lines are read, and the rows of every category by Floyd's
+* algorithm; the rows are kept in the order of the archive, so the clues keep their order of difficulty. The same archive and seed
+* always give the same board. Categories played in the recent games are only chosen if there aren't enough other categories.
+*/
+public class BoardSampler {
+
+	/**
+	* Directory where the random boards and the history of the recent games are saved
+	*/
+	static final Path BOARDS_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "jeopardy-boards");
+
+	/**
+	* File keeping the categories of the recent games, one game per line, its categories separated by tabs
+	*/
+	static final Path HISTORY = Paths.get(System.getProperty("jeopardy.history", BOARDS_DIRECTORY.resolve("history.txt").toString()));
+
+	/**
+	* Number of games whose categories are not chosen again
+	*/
+	static final int RECENT_GAMES = 10;
+
+	/**
+	* Chooses k items uniformly among the items offered one at a time, without knowing their number in advance (algorithm R)
+	*/
+	private static class Reservoir {
+		final int indexes[];
+		final String names[];
+		int offered = 0;
+
+		Reservoir(int k) {
+			indexes = new int[k];
+			names = new String[k];
+		}
+
+		void offer(int index, String name, Random random) {
+			int slot = offered < indexes.length ? offered : random.nextInt(offered + 1);
+			offered++;
+			if (slot < indexes.length) {
+				indexes[slot] = index;
+				names[slot] = name;
+			}
+		}
+
+		int size() {
+			return Math.min(offered, indexes.length);
+		}
+	}
+
+	/**
+	* This class only has static methods
+	*/
+	private BoardSampler() {
+	}
+
+	/**
+	* Static method that assembles a random board from an archive
+	* @param archive relative path to the question file, or compiled question bank, to sample
+	* @param m the number of categories of the board
+	* @param n the number of questions per category of the board
+	* @param seed seed of the random choices: the same archive and seed give the same board
+	* @param recent the categories which should not be chosen, unless the archive doesn't have enough other ones
+	* @param monitor the <code>ParseMonitor</code> informed of the progress, or null
+	* @param archiveRows receives the rows in the archive of the questions of every category of the board, e.g. to keep the statistics of the clues
+	* of the archive, or null
+	* @return a <code>Database</code> of size m &amp; n
+	* @throws DatabaseFormatException if the archive can't be read, or doesn't respect the format
+	* @throws IllegalArgumentException if the archive has less than m categories, or less than n questions per category
+	*/
+	static Database sample(String archive, int m, int n, long seed, Set<String> recent, ParseMonitor monitor, int archiveRows[][])
+			throws DatabaseFormatException {
+		Random random = new Random(seed);
+
+		// compiled question banks are read at random, as only the chosen cells are decoded anyway
+		if (archive.endsWith(MappedDatabase.EXTENSION)) {
+			QuestionBank bank = MappedDatabase.open(archive);
+			checkSize(bank.getNumCategories(), bank.getNumQuestions(), m, n);
+
+			Reservoir fresh = new Reservoir(m), played = new Reservoir(m);
+			for (int k = 0; k < bank.getNumCategories(); k++) {
+				String name = bank.getCategory(k);
+				(recent.contains(name) ? played : fresh).offer(k, name, random);
+			}
+			int columns[] = chooseCategories(fresh, played, m);
+
+			Database database = new Database(m, n);
+			for (int c = 0; c < m; c++) {
+				database.setCategory(c, bank.getCategory(columns[c]));
+				int rows[] = chooseRows(bank.getNumQuestions(), n, random);
+				for (int i = 0; i < n; i++)
+					database.setQuestion(c, i, bank.getQuestion(columns[c], rows[i]));
+				if (archiveRows != null)
+					archiveRows[c] = rows;
+			}
+			return database;
+		}
+
+		LineReader reader;
+		try {
+			reader = LineReader.open(archive);
+		} catch (IOException | InvalidPathException e) {
+			throw new DatabaseFormatException(2, 0);
+		}
+
+		try {
+			return sample(reader, m, n, random, recent, monitor, archiveRows);
+		} catch (IOException e) {
+			throw new DatabaseFormatException(2, reader.getLineNumber());
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// nothing left to read, so there is nothing to recover
+			}
+		}
+	}
+
+	/**
+	* Assembles a random board from the lines of a question file, in a single pass
+	*/
+	private static Database sample(LineReader reader, int m, int n, Random random, Set<String> recent, ParseMonitor monitor, int archiveRows[][])
+			throws DatabaseFormatException, IOException {
+		int archiveM = Database.readHeader(reader), archiveN = Database.readHeader(reader);
+		checkSize(archiveM, archiveN, m, n);
+
+		// choose the categories while their lines go by
+		Reservoir fresh = new Reservoir(m), played = new Reservoir(m);
+		for (int k = 0; k < archiveM; k++) {
+			String name = Database.readLine(reader);
+			(recent.contains(name) ? played : fresh).offer(k, name, random);
+		}
+		int columns[] = chooseCategories(fresh, played, m);
+
+		Database database = new Database(m, n);
+		for (int c = 0; c < m; c++)
+			database.setCategory(c, fresh.size() > c ? fresh.names[c] : played.names[c - fresh.size()]);
+
+		// for every column of the archive, the category of the board it became, or -1; and the rows chosen for every category
+		int boardCategory[] = new int[archiveM];
+		Arrays.fill(boardCategory, -1);
+		int rows[][] = new int[m][], next[] = new int[m], lastRow = 0;
+		for (int c = 0; c < m; c++) {
+			boardCategory[columns[c]] = c;
+			rows[c] = chooseRows(archiveN, n, random);
+			lastRow = Math.max(lastRow, rows[c][n - 1]);
+			if (archiveRows != null)
+				archiveRows[c] = rows[c];
+		}
+
+		// read the rows up to the last chosen one: only the chosen cells become Strings, the other lines are skipped
+		for (int i = 0; i <= lastRow; i++) {
+			if (monitor != null)
+				Database.report(reader, monitor);
+
+			for (int k = 0; k < archiveM; k++) {
+				int c = boardCategory[k];
+				if (c >= 0 && next[c] < n && rows[c][next[c]] == i) {
+					String answer = Database.readLine(reader), question = Database.readLine(reader);
+					database.setQuestion(c, next[c]++, new Question(answer, question));
+				}
+				else if (!reader.skipLine() || !reader.skipLine())
+					throw new DatabaseFormatException(1, reader.getLineNumber() + 1);
+			}
+		}
+
+		if (monitor != null)
+			monitor.bytesRead(reader.getSize(), reader.getSize());
+
+		return database;
+	}
+
+	/**
+	* Static method that reads the size of a board, given as categories x questions, e.g. 6x5
+	* @param size the size of the board
+	* @return the number of categories, then the number of questions per category
+	* @throws IllegalArgumentException if the size isn't two positive numbers separated by an x
+	*/
+	public static int[] parseSize(String size) {
+		String parts[] = size.split("x");
+		try {
+			if (parts.length == 2) {
+				int m = Integer.parseInt(parts[0].trim()), n = Integer.parseInt(parts[1].trim());
+				if (m >= 1 && n >= 1)
+					return new int[] {m, n};
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("the size of a board must be categories x questions, e.g. 6x5, not " + size);
+	}
+
+	/**
+	* Makes sure the archive is large enough for the board
+	*/
+	private static void checkSize(int archiveM, int archiveN, int m, int n) {
+		if (m < 1 || n < 1)
+			throw new IllegalArgumentException("a board needs at least one category and one question per category");
+		if (archiveM < m || archiveN < n)
+			throw new IllegalArgumentException("the archive only has " + archiveM + " categories of " + archiveN
+				+ " questions, which is not enough for a board of " + m + " x " + n);
+	}
+
+	/**
+	* Returns the columns of the chosen categories: the ones not played recently first, then recently played ones if there aren't enough
+	*/
+	private static int[] chooseCategories(Reservoir fresh, Reservoir played, int m) {
+		int columns[] = new int[m];
+		for (int c = 0; c < m; c++)
+			columns[c] = c < fresh.size() ? fresh.indexes[c] : played.indexes[c - fresh.size()];
+		return columns;
+	}
+
+	/**
+	* Chooses n distinct rows among the rows 0 to total - 1 (Floyd's algorithm), and returns them in ascending order
+	*/
+	private static int[] chooseRows(int total, int n, Random random) {
+		HashSet<Integer> chosen = new HashSet<Integer>();
+		for (int j = total - n; j < total; j++) {
+			int row = random.nextInt(j + 1);
+			chosen.add(chosen.contains(row) ? j : row);
+		}
+
+		int rows[] = new int[n], k = 0;
+		for (int row : chosen)
+			rows[k++] = row;
+		Arrays.sort(rows);
+		return rows;
+	}
+
+	/**
+	* Static method that reads the categories of the recent games
+	* @param history the file keeping the recent games
+	* @return the categories of the recent games, empty if there is no history yet
+	* @throws IOException if the history can't be read
+	*/
+	static Set<String> readRecent(Path history) throws IOException {
+		Set<String> recent = new HashSet<String>();
+		for (String game : readGames(history))
+			recent.addAll(Arrays.asList(game.split("\t")));
+		return recent;
+	}
+
+	/**
+	* Static method that adds a game to the history, only keeping the RECENT_GAMES last ones
+	* @param history the file keeping the recent games
+	* @param database the board of the game
+	* @throws IOException if the history can't be written
+	*/
+	static void recordGame(Path history, QuestionBank database) throws IOException {
+		List<String> games = readGames(history);
+
+		String categories[] = new String[database.getNumCategories()];
+		for (int c = 0; c < categories.length; c++)
+			categories[c] = database.getCategory(c);
+		games.add(String.join("\t", categories));
+
+		if (history.getParent() != null)
+			Files.createDirectories(history.getParent());
+		Files.write(history, games.subList(Math.max(0, games.size() - RECENT_GAMES), games.size()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	* Returns the lines of the history, or an empty list if there is no history yet
+	*/
+	private static List<String> readGames(Path history) throws IOException {
+		try {
+			return new ArrayList<String>(Files.readAllLines(history, StandardCharsets.UTF_8));
+		} catch (NoSuchFileException e) {
+			return new ArrayList<String>();
+		}
+	}
+
+	/**
+	* Samples a board from an archive, and prints it with the time it took.
+	* @param args the relative path to the archive, and optionally the board size (e.g. 6x5) and the seed
+	*/
+	public static void main(String args[]) throws Exception {
+		int size[] = parseSize(args.length > 1 ? args[1] : "6x5");
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+		long start = System.nanoTime();
+		QuestionBank database = sample(args[0], size[0], size[1], seed, readRecent(HISTORY), null, null);
+		long elapsed = System.nanoTime() - start;
+
+		for (int c = 0; c < database.getNumCategories(); c++) {
+			System.out.println(database.getCategory(c));
+			for (int i = 0; i < database.getNumQuestions(); i++)
+				System.out.println("\t" + database.getQuestion(c, i).getResponse() + " / " + database.getQuestion(c, i).getQuestion());
+		}
+		System.out.printf("sampled with seed %d in %.1f ms%n", seed, elapsed / 1e6);
+	}
+}
@@ -0,0 +1,37 @@
+import javax.swing.JComponent;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A component displaying the board of a <code>GameEngine</code>: the categories, and the amount of every cell, or "-" if it has been played.
+*/
+public interface BoardView {
+
+	/**
+	* Displays the board of the given <code>GameEngine</code>
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @return true if the size of the board changed, so the layout of the frame has to be computed again
+	*/
+	boolean showBoard(GameEngine engine);
+
+	/**
+	* Displays a category again, after the <code>Database</code> of the board was patched
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @param category the index of the category
+	*/
+	void showCategory(GameEngine engine, int category);
+
+	/**
+	* Shows that the cell of the given category and question has been played
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	*/
+	void markPlayed(int category, int question);
+
+	/**
+	* getter that returns the component to add to the frame to display the board
+	* @return the component displaying the board
+	*/
+	JComponent getComponent();
+}
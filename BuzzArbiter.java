@@ -0,0 +1,212 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Decides who buzzed in first for a clue, without locks: many threads can buzz at once without waiting for each other.
+* Every player has a slot holding the time of its first buzz, taken with <code>System.nanoTime</code>, which is set once with a compare-and-set.
+* A player who buzzes before the clue is opened is rejected, and locked out for the rest of the clue.
+* The ranking orders the buzzes by time, then by player, so the same buzzes always give the same ranking.
+* An arbiter is used for a single clue; create a new one for every clue.
+*/
+public class BuzzArbiter {
+
+	/**
+	* The outcomes of a buzz
+	*/
+	public enum Result {
+		/** the buzz is recorded */
+		ACCEPTED,
+		/** the clue isn't open yet: the player is locked out for this clue */
+		EARLY,
+		/** the player is locked out for this clue, because of an early buzz */
+		LOCKED_OUT,
+		/** the player has already buzzed for this clue; only the first buzz counts */
+		DUPLICATE,
+		/** the clue is closed */
+		CLOSED
+	}
+
+	/**
+	* The largest number of players an arbiter can have, as a player is stored in the low 16 bits of a key
+	*/
+	public static final int MAX_PLAYERS = 1 << 16;
+
+	/**
+	* Value of the slot of a player who hasn't buzzed yet, and of a player who is locked out
+	*/
+	private static final long NONE = 0, LOCKED = -1;
+
+	/**
+	* Value of opened while the clue isn't open, and once it is closed
+	*/
+	private static final long NOT_OPENED = Long.MIN_VALUE, CLOSED = Long.MAX_VALUE;
+
+	/**
+	* The key of the first buzz of every player: the time since the clue was opened, shifted left by 16 bits, plus one, with the player in the low 16 bits.
+	* Comparing two keys compares the times, then the players.
+	*/
+	private final AtomicLongArray slots;
+
+	/**
+	* The smallest key recorded, so the first player is known without looking at every slot
+	*/
+	private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+
+	/**
+	* The time the clue was opened, or NOT_OPENED, or CLOSED
+	*/
+	private final AtomicLong opened = new AtomicLong(NOT_OPENED);
+
+	/**
+	* The number of players kept in the ranking
+	*/
+	private final int capacity;
+
+	/**
+	* Creates a <code>BuzzArbiter</code> for a clue which isn't open yet
+	* @param players the number of players, numbered from 0
+	* @param capacity the number of players kept in the ranking: the first ones to buzz
+	*/
+	public BuzzArbiter(int players, int capacity) {
+		if (players < 1 || players > MAX_PLAYERS)
+			throw new IllegalArgumentException("between 1 and " + MAX_PLAYERS + " players: " + players);
+		slots = new AtomicLongArray(players);
+		this.capacity = capacity;
+	}
+
+	/**
+	* Opens the clue now: buzzes made from now on are accepted
+	* @return false if the clue had already been opened
+	*/
+	public boolean open() {
+		return open(System.nanoTime());
+	}
+
+	/**
+	* Opens the clue at the given time: buzzes made from then on are accepted
+	* @param nanos the time, as given by <code>System.nanoTime</code>
+	* @return false if the clue had already been opened
+	*/
+	public boolean open(long nanos) {
+		return opened.compareAndSet(NOT_OPENED, nanos);
+	}
+
+	/**
+	* Closes the clue: later buzzes are rejected, and the ranking doesn't change anymore
+	*/
+	public void close() {
+		opened.set(CLOSED);
+	}
+
+	/**
+	* Records a buzz of a player, made now
+	* @param player the index of the player
+	* @return the outcome of the buzz
+	*/
+	public Result buzz(int player) {
+		return buzz(player, System.nanoTime());
+	}
+
+	/**
+	* Records a buzz of a player, made at the given time. The time should be taken as soon as the buzz is received,
+	* so the time spent until it reaches the arbiter doesn't change the ranking.
+	* @param player the index of the player
+	* @param nanos the time of the buzz, as given by <code>System.nanoTime</code>
+	* @return the outcome of the buzz
+	*/
+	public Result buzz(int player, long nanos) {
+		long start = opened.get();
+		if (start == CLOSED)
+			return Result.CLOSED;
+
+		// a buzz before the clue is open locks the player out, unless the player already buzzed in time
+		if (start == NOT_OPENED || nanos - start < 0) {
+			if (slots.compareAndSet(player, NONE, LOCKED))
+				return Result.EARLY;
+			return slots.get(player) == LOCKED ? Result.LOCKED_OUT : Result.DUPLICATE;
+		}
+
+		long key = (nanos - start + 1) << 16 | player;
+		if (!slots.compareAndSet(player, NONE, key))
+			return slots.get(player) == LOCKED ? Result.LOCKED_OUT : Result.DUPLICATE;
+
+		// keep the smallest key as the first buzz
+		long current = first.get();
+		while (key < current && !first.compareAndSet(current, key))
+			current = first.get();
+
+		return Result.ACCEPTED;
+	}
+
+	/**
+	* getter that returns the player who buzzed first
+	* @return the index of the player, or -1 if no buzz has been accepted
+	*/
+	public int getFirst() {
+		long key = first.get();
+		return key == Long.MAX_VALUE ? -1 : (int) (key & 0xFFFF);
+	}
+
+	/**
+	* Returns the players who buzzed first, in order: by time of their buzz, then by index
+	* @return the indexes of at most capacity players
+	*/
+	public int[] getRanking() {
+		long keys[] = new long[slots.length()];
+		int count = 0;
+		for (int player = 0; player < keys.length; player++) {
+			long key = slots.get(player);
+			if (key > 0)
+				keys[count++] = key;
+		}
+
+		Arrays.sort(keys, 0, count);
+
+		int ranking[] = new int[Math.min(count, capacity)];
+		for (int k = 0; k < ranking.length; k++)
+			ranking[k] = (int) (keys[k] & 0xFFFF);
+		return ranking;
+	}
+
+	/**
+	* Returns the rank of a player among the accepted buzzes so far; a buzz still in flight with an earlier time can lower it
+	* @param player the index of the player
+	* @return the rank, starting at 1, or 0 if the player has no accepted buzz or isn't among the first capacity players
+	*/
+	public int getRank(int player) {
+		long key = slots.get(player);
+		if (key <= 0)
+			return 0;
+
+		int rank = 1;
+		for (int other = 0; other < slots.length(); other++) {
+			long otherKey = slots.get(other);
+			if (otherKey > 0 && otherKey < key)
+				rank++;
+		}
+		return rank <= capacity ? rank : 0;
+	}
+
+	/**
+	* Returns the time of the accepted buzz of a player, after the clue was opened
+	* @param player the index of the player
+	* @return the time in nanoseconds, or -1 if the player has no accepted buzz
+	*/
+	public long getReactionNanos(int player) {
+		long key = slots.get(player);
+		return key <= 0 ? -1 : (key >>> 16) - 1;
+	}
+
+	/**
+	* Returns whether the clue is open
+	* @return true if the clue has been opened and not closed
+	*/
+	public boolean isOpen() {
+		long start = opened.get();
+		return start != NOT_OPENED && start != CLOSED;
+	}
+}
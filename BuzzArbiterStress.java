@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Stress test of the <code>BuzzArbiter</code>: hundreds of threads buzz for the same clue at once, round after round.
+* In every round, some players buzz before the clue is opened, then every player buzzes at the same time, then again.
+* Every round checks that the early players are locked out, that every other player is accepted once, and that the ranking
+* is exactly the one expected from the times of the buzzes. It then prints the time taken by a buzz, as percentiles,
+* compared to an arbiter using a lock. The exit status is 1 if a check failed.
+* e.g. java BuzzArbiterStress 500 200
+*/
+public class BuzzArbiterStress {
+
+	/**
+	* Every round, one player out of EARLY_EVERY buzzes before the clue is opened
+	*/
+	private static final int EARLY_EVERY = 10;
+
+	/**
+	* The number of checks which failed
+	*/
+	private static final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	* The same rules as <code>BuzzArbiter</code>, with a lock, to compare the time taken by a buzz
+	*/
+	private static class LockedArbiter {
+		private final long times[];
+		private final ArrayList<Integer> order = new ArrayList<Integer>();
+		private long opened = Long.MIN_VALUE;
+
+		LockedArbiter(int players) {
+			times = new long[players];
+		}
+
+		synchronized void open(long nanos) {
+			opened = nanos;
+		}
+
+		synchronized BuzzArbiter.Result buzz(int player, long nanos) {
+			if (times[player] != 0)
+				return times[player] < 0 ? BuzzArbiter.Result.LOCKED_OUT : BuzzArbiter.Result.DUPLICATE;
+			if (opened == Long.MIN_VALUE || nanos < opened) {
+				times[player] = -1;
+				return BuzzArbiter.Result.EARLY;
+			}
+			times[player] = nanos - opened + 1;
+			order.add(player);
+			return BuzzArbiter.Result.ACCEPTED;
+		}
+	}
+
+	/**
+	* Runs the rounds with the lock-free arbiter, then with the locked one, and prints the results
+	* @param args the number of threads, 500 by default, and the number of rounds, 200 by default
+	*/
+	public static void main(String args[]) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		System.out.println(threads + " threads, " + rounds + " rounds, " + Runtime.getRuntime().availableProcessors() + " processors");
+		print("lock-free", run(threads, rounds, false));
+		print("locked", run(threads, rounds, true));
+
+		if (failures.get() > 0) {
+			System.out.println(failures.get() + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("every check passed");
+	}
+
+	/**
+	* Runs the rounds, checking every one of them
+	* @return the time taken by every buzz made once the clue is opened, in nanoseconds
+	*/
+	private static long[] run(final int threads, final int rounds, final boolean locked) throws Exception {
+		final long latencies[] = new long[threads * rounds];
+		final long times[] = new long[threads];
+		final BuzzArbiter arbiters[] = new BuzzArbiter[1];
+		final LockedArbiter lockedArbiters[] = new LockedArbiter[1];
+
+		// the main thread takes part to every step of a round, to create, open and check the arbiter
+		final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+
+		Thread players[] = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int player = t;
+			players[t] = new Thread(() -> {
+				try {
+					for (int round = 0; round < rounds; round++) {
+						boolean early = player % EARLY_EVERY == round % EARLY_EVERY;
+
+						// step 1: the early players buzz before the clue is opened
+						barrier.await();
+						if (early)
+							expect(buzz(arbiters[0], lockedArbiters[0], player, System.nanoTime()), BuzzArbiter.Result.EARLY, player, round);
+
+						// step 2: the clue is opened, then every player buzzes at once
+						barrier.await();
+						barrier.await();
+						long nanos = System.nanoTime();
+						times[player] = nanos;
+						BuzzArbiter.Result result = buzz(arbiters[0], lockedArbiters[0], player, nanos);
+						latencies[round * threads + player] = System.nanoTime() - nanos;
+						expect(result, early ? BuzzArbiter.Result.LOCKED_OUT : BuzzArbiter.Result.ACCEPTED, player, round);
+
+						// only the first buzz counts
+						expect(buzz(arbiters[0], lockedArbiters[0], player, System.nanoTime()),
+							early ? BuzzArbiter.Result.LOCKED_OUT : BuzzArbiter.Result.DUPLICATE, player, round);
+
+						// step 3: the main thread checks the ranking
+						barrier.await();
+					}
+				} catch (Exception e) {
+					failures.incrementAndGet();
+					e.printStackTrace();
+				}
+			}, "player-" + t);
+			players[t].start();
+		}
+
+		for (int round = 0; round < rounds; round++) {
+			arbiters[0] = locked ? null : new BuzzArbiter(threads, threads);
+			lockedArbiters[0] = locked ? new LockedArbiter(threads) : null;
+
+			barrier.await();
+			barrier.await();
+			long opened = System.nanoTime();
+			if (locked)
+				lockedArbiters[0].open(opened);
+			else
+				arbiters[0].open(opened);
+			barrier.await();
+			barrier.await();
+
+			if (!locked)
+				check(arbiters[0], opened, times, round);
+		}
+
+		for (Thread player : players)
+			player.join();
+		return latencies;
+	}
+
+	/**
+	* Buzzes with the arbiter used by the round
+	*/
+	private static BuzzArbiter.Result buzz(BuzzArbiter arbiter, LockedArbiter locked, int player, long nanos) {
+		return arbiter != null ? arbiter.buzz(player, nanos) : locked.buzz(player, nanos);
+	}
+
+	/**
+	* Counts a failure if a buzz didn't have the expected outcome
+	*/
+	private static void expect(BuzzArbiter.Result result, BuzzArbiter.Result expected, int player, int round) {
+		if (result != expected && failures.incrementAndGet() <= 10)
+			System.out.println("round " + round + ": player " + player + " got " + result + " instead of " + expected);
+	}
+
+	/**
+	* Checks that the ranking of a round is the one expected from the times of the buzzes, and that it is the same every time it is asked for
+	*/
+	private static void check(BuzzArbiter arbiter, long opened, long times[], int round) {
+		// the expected ranking: the players who weren't early, by time of their buzz, then by index
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (int player = 0; player < times.length; player++)
+			if (player % EARLY_EVERY != round % EARLY_EVERY)
+				expected.add(player);
+		expected.sort((a, b) -> times[a] != times[b] ? Long.compare(times[a], times[b]) : Integer.compare(a, b));
+
+		int ranking[] = arbiter.getRanking();
+		boolean same = ranking.length == expected.size();
+		for (int k = 0; same && k < ranking.length; k++)
+			same = ranking[k] == expected.get(k);
+
+		if (!same && failures.incrementAndGet() <= 10)
+			System.out.println("round " + round + ": unexpected ranking " + Arrays.toString(Arrays.copyOf(ranking, Math.min(10, ranking.length))) + "...");
+
+		if (!Arrays.equals(ranking, arbiter.getRanking()) || (ranking.length > 0 && arbiter.getFirst() != ranking[0])
+			|| (ranking.length > 0 && arbiter.getRank(ranking[ranking.length - 1]) != ranking.length)) {
+			if (failures.incrementAndGet() <= 10)
+				System.out.println("round " + round + ": the ranking, first player and rank don't agree");
+		}
+
+		if (ranking.length > 0 && arbiter.getReactionNanos(ranking[0]) != times[ranking[0]] - opened && failures.incrementAndGet() <= 10)
+			System.out.println("round " + round + ": wrong reaction time");
+
+		arbiter.close();
+		expect(arbiter.buzz(expected.isEmpty() ? 0 : expected.get(0)), BuzzArbiter.Result.CLOSED, 0, round);
+	}
+
+	/**
+	* Prints the percentiles of the time taken by a buzz
+	*/
+	private static void print(String name, long latencies[]) {
+		Arrays.sort(latencies);
+		int n = latencies.length;
+		System.out.println(name + " buzz (ns): p50=" + latencies[n / 2] + " p99=" + latencies[(int) (n * 0.99)]
+			+ " p99.9=" + latencies[(int) (n * 0.999)] + " max=" + latencies[n - 1]);
+	}
+}
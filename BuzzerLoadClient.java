@@ -0,0 +1,176 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Load test of the <code>BuzzerServer</code>: connects many contestants to a room, plays its board as the host,
+* and has every contestant buzz in for every clue. It prints the latency of the events, from the time the server sent them
+* to the time the contestants received them, and of the buzzes, as percentiles in microseconds.
+* The server and the client should run on the same machine, as the latency is measured with the clock of both.
+* e.g. java BuzzerLoadClient http://localhost:8080 questions.txt 500 10
+*/
+public class BuzzerLoadClient {
+
+	/**
+	* Connects the contestants, plays the clues, and prints the latencies
+	* @param args the URL of the server, the question file in the banks directory of the server, the number of contestants and the number of clues to play
+	*/
+	public static void main(String args[]) throws Exception {
+		if (args.length != 4) {
+			System.err.println("usage: java BuzzerLoadClient <server URL> <question file> <contestants> <clues>");
+			System.exit(2);
+		}
+
+		String server = args[0];
+		int contestants = Integer.parseInt(args[2]), clues = Integer.parseInt(args[3]);
+		HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(8, BuzzerServer.daemonThreads("client"))).build();
+
+		// create the room, played by this client
+		String created = post(client, server + "/rooms?bank=" + URLEncoder.encode(args[1], "UTF-8"));
+		String room = field(created, "room");
+		int m = Integer.parseInt(field(created, "categories")), n = Integer.parseInt(field(created, "questions"));
+		String events = server + "/rooms/" + room;
+
+		// every cell can only be played once
+		if (clues > m * n) {
+			clues = m * n;
+			System.out.println("the board only has " + clues + " clues");
+		}
+
+		// every contestant reads its stream on its own thread, and counts down when it received an event for every clue
+		final int eventsPerClue = 2 + contestants;
+		CountDownLatch connected = new CountDownLatch(contestants), done = new CountDownLatch(contestants);
+		ExecutorService readers = Executors.newFixedThreadPool(contestants, BuzzerServer.daemonThreads("contestant"));
+		final long latencies[][] = new long[contestants][clues * eventsPerClue];
+		final int received[] = new int[contestants];
+
+		for (int c = 0; c < contestants; c++) {
+			final int contestant = c;
+			final HttpRequest request = HttpRequest.newBuilder(URI.create(events + "/events")).build();
+			readers.execute(() -> {
+				try {
+					InputStream stream = client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+					connected.countDown();
+
+					int count = 0;
+					String line;
+					while (count < latencies[contestant].length && (line = reader.readLine()) != null) {
+						int sent = line.lastIndexOf("\"sent\": ");
+						if (line.startsWith("data: ") && sent >= 0)
+							latencies[contestant][count++] = BuzzerRoom.now() - Long.parseLong(line.substring(sent + 8, line.length() - 1));
+					}
+					received[contestant] = count;
+					stream.close();
+				} catch (IOException | InterruptedException e) {
+					System.err.println("contestant " + contestant + ": " + e);
+				}
+				done.countDown();
+			});
+		}
+
+		connected.await();
+		System.out.println(contestants + " contestants connected to room " + room);
+
+		// play the clues: select, every contestant buzzes, reveal
+		long buzzLatencies[] = new long[clues * contestants];
+		ExecutorService buzzers = Executors.newFixedThreadPool(Math.min(contestants, 64), BuzzerServer.daemonThreads("buzzer"));
+		for (int k = 0; k < clues; k++) {
+			post(client, events + "/select?category=" + (k % m) + "&question=" + (k / m));
+
+			CountDownLatch buzzed = new CountDownLatch(contestants);
+			for (int c = 0; c < contestants; c++) {
+				final int index = k * contestants + c;
+				final String player = "player" + c;
+				buzzers.execute(() -> {
+					long start = System.nanoTime();
+					try {
+						post(client, events + "/buzz?player=" + player);
+					} catch (IOException | InterruptedException e) {
+						System.err.println(player + ": " + e);
+					}
+					buzzLatencies[index] = (System.nanoTime() - start) / 1000;
+					buzzed.countDown();
+				});
+			}
+			buzzed.await();
+
+			post(client, events + "/reveal");
+		}
+
+		if (!done.await(60, TimeUnit.SECONDS))
+			System.err.println("some contestants didn't receive every event");
+
+		// merge the latencies of the contestants
+		int total = 0;
+		for (int c = 0; c < contestants; c++)
+			total += received[c];
+		long all[] = new long[total];
+		int position = 0;
+		for (int c = 0; c < contestants; c++) {
+			System.arraycopy(latencies[c], 0, all, position, received[c]);
+			position += received[c];
+		}
+
+		print("event", all);
+		print("buzz", buzzLatencies);
+		System.out.println(post(client, events + "/stats"));
+
+		readers.shutdownNow();
+		buzzers.shutdownNow();
+	}
+
+	/**
+	* Sends a POST, or a GET for the statistics, and returns the body of the response
+	*/
+	private static String post(HttpClient client, String url) throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+		if (url.endsWith("/stats"))
+			request.GET();
+		else
+			request.POST(HttpRequest.BodyPublishers.noBody());
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString()).body();
+	}
+
+	/**
+	* Returns the value of a field of a flat JSON object, without its quotes
+	*/
+	private static String field(String json, String name) {
+		int start = json.indexOf("\"" + name + "\": ") + name.length() + 4;
+		int end = start;
+		while (end < json.length() && ",}".indexOf(json.charAt(end)) < 0)
+			end++;
+		return json.substring(start, end).replace("\"", "").trim();
+	}
+
+	/**
+	* Prints the percentiles of the latencies, in microseconds
+	*/
+	private static void print(String name, long latencies[]) {
+		Arrays.sort(latencies);
+		if (latencies.length == 0) {
+			System.out.println(name + ": no samples");
+			return;
+		}
+
+		System.out.println(name + " latency (us): samples=" + latencies.length
+			+ " p50=" + latencies[latencies.length / 2]
+			+ " p99=" + latencies[Math.min(latencies.length - 1, (int) (latencies.length * 0.99))]
+			+ " max=" + latencies[latencies.length - 1]);
+	}
+}
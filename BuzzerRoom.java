@@ -0,0 +1,433 @@
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A game room of the <code>BuzzerServer</code>: the contestants connected to it receive the events of its board as Server-Sent Events,
+* and buzz in when a clue is shown. The board is either played through the server by a host, or by a Jeopardy frame to which
+* the room listens. Every room playing the same question file shares the same read-only <code>Database</code>.
+* Every event is encoded once into a frame shared by the contestants, and kept in a ring of the last BACKLOG events, from which the
+* <code>BuzzerServer</code> writes it to every contestant without blocking; a contestant further behind gets the state of the room instead.
+*/
+public class BuzzerRoom implements GameListener {
+
+	/**
+	* The identifier of the room, as found in its URLs
+	*/
+	private final String id;
+
+	/**
+	* The <code>GameEngine</code> played through the server, or null if the board is played by a Jeopardy frame
+	*/
+	private final GameEngine engine;
+
+	/**
+	* Number of events kept for the contestants: a contestant further behind gets the state of the room instead
+	*/
+	static final int BACKLOG = 256;
+
+	/**
+	* The last BACKLOG events, written to the contestants by the <code>BuzzerServer</code>
+	*/
+	private final EventRing events = new EventRing(BACKLOG, null);
+
+	/**
+	* Wakes the thread of the server up to write the new events
+	*/
+	private final Runnable wakeup;
+
+	/**
+	* The last board, clue and question sent, which make the state of the room, and the state encoded once until the next event; guarded by this
+	*/
+	private String loadEvent, selectEvent, revealEvent;
+	private EventRing.Frame snapshot;
+
+	/**
+	* The largest number of players who can buzz in a room, and the number of players ranked for every clue
+	*/
+	public static final int MAX_PLAYERS = 1024, RANKED_PLAYERS = 8;
+
+	/**
+	* The index of every player who buzzed in the room, given the first time the player buzzes, and the name of every index
+	*/
+	private final ConcurrentHashMap<String, Integer> players = new ConcurrentHashMap<String, Integer>();
+	private final AtomicReferenceArray<String> names = new AtomicReferenceArray<String>(MAX_PLAYERS);
+	private final AtomicInteger nextPlayer = new AtomicInteger();
+
+	/**
+	* Decides who buzzed first for the current clue, or null before the first clue
+	*/
+	private volatile BuzzArbiter arbiter;
+
+	/**
+	* Judges the responses typed by the players, precomputed for the board when it is loaded
+	*/
+	private volatile ResponseMatcher matcher;
+
+	/**
+	* The clue the players can respond to, or null while no clue is open
+	*/
+	private volatile OpenClue open;
+
+	/**
+	* A clue the players can respond to, with the players who already responded; every player responds once
+	*/
+	private static class OpenClue {
+		final ResponseMatcher matcher;
+		final int category, question;
+		final Set<String> responded;
+
+		OpenClue(ResponseMatcher matcher, int category, int question, Set<String> responded) {
+			this.matcher = matcher;
+			this.category = category;
+			this.question = question;
+			this.responded = responded;
+		}
+	}
+
+	/**
+	* Records the buzzes and the judged responses in the statistics of the clues and of the players, or null if they aren't kept
+	*/
+	private volatile StatsStore.Recorder recorder;
+
+	/**
+	* When the last request to the room was received, as given by <code>System.nanoTime</code>
+	*/
+	private volatile long lastRequest = System.nanoTime();
+
+	/**
+	* Statistics of the fan-out, only updated by the thread of the server: number of contestants connected, and of contestants disconnected
+	*/
+	private volatile long subscribers = 0, dropped = 0;
+
+	/**
+	* Creates a room whose board is played through the server
+	* @param id the identifier of the room
+	* @param database the <code>Database</code> to play
+	* @param stats records the statistics of the game, or null if they aren't kept
+	* @param wakeup wakes the thread of the server up when there are events to write
+	*/
+	public BuzzerRoom(String id, QuestionBank database, StatsStore.Recorder stats, Runnable wakeup) {
+		this.id = id;
+		this.wakeup = wakeup;
+		recorder = stats;
+		engine = new GameEngine(0);
+		if (stats != null)
+			engine.addListener(stats);
+		engine.addListener(this);
+		engine.load(database);
+	}
+
+	/**
+	* Creates a room following a board played somewhere else; add the room as a <code>GameListener</code> of that board
+	* @param id the identifier of the room
+	* @param wakeup wakes the thread of the server up when there are events to write
+	*/
+	public BuzzerRoom(String id, Runnable wakeup) {
+		this.id = id;
+		this.wakeup = wakeup;
+		engine = null;
+	}
+
+	/**
+	* Records the buzzes and the judged responses of the room in the statistics of a game played somewhere else, such as a Jeopardy frame
+	* @param stats the <code>Recorder</code> of the game, also listening to its <code>GameEngine</code>
+	*/
+	public void setRecorder(StatsStore.Recorder stats) {
+		recorder = stats;
+	}
+
+	/**
+	* getter that returns the identifier of the room
+	* @return the identifier of the room
+	*/
+	public String getId() {
+		return id;
+	}
+
+	/**
+	* Returns whether the board of this room is played through the server
+	* @return true if a host can select and reveal clues through the server
+	*/
+	public boolean isHosted() {
+		return engine != null;
+	}
+
+	/**
+	* Selects a clue of the board played through the server
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	* @return the outcome of the selection
+	*/
+	public synchronized GameEngine.Outcome select(int category, int question) {
+		return engine.select(category, question);
+	}
+
+	/**
+	* Reveals the "question" of the selected clue of the board played through the server
+	* @return the outcome of the reveal
+	*/
+	public synchronized GameEngine.Outcome reveal() {
+		return engine.reveal();
+	}
+
+	/**
+	* Records that a player buzzed in for the current clue. Buzzes don't lock the room, so many players can buzz at once.
+	* @param player the name of the player
+	* @param nanos the time the buzz was received, as given by <code>System.nanoTime</code>
+	* @return the outcome of the buzz, and the current rank of the player for the clue, starting at 1, or 0 if it isn't ranked
+	*/
+	public String buzz(String player, long nanos) {
+		BuzzArbiter current = arbiter;
+		int index = indexOf(player);
+
+		if (current == null || index < 0)
+			return "{\"result\": \"" + (current == null ? BuzzArbiter.Result.CLOSED : "TOO_MANY_PLAYERS") + "\", \"rank\": 0}";
+
+		BuzzArbiter.Result result = current.buzz(index, nanos);
+		int rank = current.getRank(index);
+
+		if (result == BuzzArbiter.Result.ACCEPTED) {
+			broadcast("{\"type\": \"buzz\", \"player\": " + Json.quote(player) + ", \"rank\": " + rank
+				+ ", \"reactionMicros\": " + current.getReactionNanos(index) / 1000 + ", \"sent\": " + now() + "}");
+
+			// only puts an event in the ring of the store, so the buzz isn't slowed down
+			StatsStore.Recorder stats = recorder;
+			OpenClue clue = open;
+			if (stats != null && clue != null)
+				stats.buzzed(player, clue.category, clue.question, current.getReactionNanos(index));
+		}
+
+		return "{\"result\": \"" + result + "\", \"rank\": " + rank + "}";
+	}
+
+	/**
+	* Judges the response typed by a player for the current clue; only the players ranked by the buzzing can respond, once each
+	* @param player the name of the player
+	* @param response the response typed by the player
+	* @return the outcome (CORRECT, INCORRECT, NOT_RANKED, ALREADY_RESPONDED or CLOSED), and the edit distance of a correct response
+	*/
+	public String respond(String player, String response) {
+		OpenClue clue = open;
+		BuzzArbiter current = arbiter;
+		Integer index = players.get(player);
+
+		String result;
+		int distance = -1;
+		if (clue == null || current == null)
+			result = "CLOSED";
+		else if (index == null || current.getRank(index) == 0)
+			result = "NOT_RANKED";
+		else if (!clue.responded.add(player))
+			result = "ALREADY_RESPONDED";
+		else {
+			distance = clue.matcher.distance(clue.category, clue.question, response);
+			result = distance >= 0 ? "CORRECT" : "INCORRECT";
+			StatsStore.Recorder stats = recorder;
+			if (stats != null)
+				stats.responded(player, clue.category, clue.question, distance >= 0);
+			broadcast("{\"type\": \"judge\", \"player\": " + Json.quote(player) + ", \"correct\": " + (distance >= 0) + ", \"sent\": " + now() + "}");
+		}
+
+		return "{\"result\": \"" + result + "\", \"distance\": " + distance + "}";
+	}
+
+	/**
+	* Returns the index of a player, giving it the next index the first time the player buzzes
+	* @return the index, or -1 if the room already has MAX_PLAYERS players
+	*/
+	private int indexOf(String player) {
+		Integer index = players.get(player);
+		if (index != null)
+			return index;
+
+		// a name is only kept once it is given an index: a refused name isn't mapped, so the map never grows past MAX_PLAYERS
+		index = players.computeIfAbsent(player, name -> {
+			int next = nextPlayer.getAndUpdate(count -> Math.min(count + 1, MAX_PLAYERS));
+			if (next >= MAX_PLAYERS)
+				return null;
+			names.set(next, name);
+			return next;
+		});
+		return index == null ? -1 : index;
+	}
+
+	/**
+	* Records that a request to the room was received, so it isn't closed for being idle
+	* @param nanos the time the request was received, as given by <code>System.nanoTime</code>
+	*/
+	void touch(long nanos) {
+		lastRequest = nanos;
+	}
+
+	/**
+	* getter that returns when the last request to the room was received
+	* @return the time of the last request, as given by <code>System.nanoTime</code>
+	*/
+	long getLastRequest() {
+		return lastRequest;
+	}
+
+	/**
+	* getter that returns the ring of the last events of the room
+	* @return the <code>EventRing</code> of the room
+	*/
+	EventRing getEvents() {
+		return events;
+	}
+
+	/**
+	* Returns the state of the room, encoded once until the next event: the last board, clue and question sent, or null.
+	* The sequence of the frame is the one of the next event.
+	* @return the frame of the state of the room
+	*/
+	synchronized EventRing.Frame snapshot() {
+		if (snapshot == null)
+			snapshot = events.state("{\"type\": \"state\", \"load\": " + loadEvent + ", \"select\": " + selectEvent
+				+ ", \"reveal\": " + revealEvent + ", \"sent\": " + now() + "}");
+		return snapshot;
+	}
+
+	/**
+	* Counts a contestant connected to the room; only called by the thread of the server
+	*/
+	void subscribed() {
+		subscribers++;
+	}
+
+	/**
+	* Counts a contestant disconnected from the room; only called by the thread of the server
+	* @param dropped whether the server disconnected it because it stalled or kept falling behind
+	*/
+	void unsubscribed(boolean dropped) {
+		subscribers--;
+		if (dropped)
+			this.dropped++;
+	}
+
+	/**
+	* getter that returns the number of connected contestants
+	* @return the number of subscribers
+	*/
+	public int getSubscriberCount() {
+		return (int) subscribers;
+	}
+
+	/**
+	* Returns the statistics of the fan-out of the room, as a JSON object
+	* @return the number of subscribers, of events, of frames written, of contestants resynced and dropped,
+	* and the mean and maximum time from an event to its last byte written to a contestant
+	*/
+	public String statistics() {
+		return "{\"room\": " + Json.quote(id) + ", \"subscribers\": " + subscribers + ", \"events\": " + events.getPublished()
+			+ ", \"framesWritten\": " + events.getFramesWritten() + ", \"resyncs\": " + events.getResyncs() + ", \"dropped\": " + dropped
+			+ ", \"meanDeliveryMicros\": " + events.getMeanDeliveryMicros() + ", \"maxDeliveryMicros\": " + events.getMaxDeliveryMicros() + "}";
+	}
+
+	/**
+	* Tells the contestants that a new board has been loaded. Required by the GameListener interface.
+	*/
+	public synchronized void boardLoaded(GameEngine engine) {
+		BuzzArbiter previous = arbiter;
+		if (previous != null)
+			previous.close();
+
+		// normalize the "questions" of the board once, so the responses are judged without any allocation
+		open = null;
+		QuestionBank db = engine.getDatabase();
+		matcher = new ResponseMatcher(db);
+
+		StringBuilder event = new StringBuilder("{\"type\": \"load\", \"categories\": [");
+		for (int j = 0; j < db.getNumCategories(); j++) {
+			if (j > 0)
+				event.append(", ");
+			Json.appendQuoted(event, db.getCategory(j));
+		}
+		event.append("], \"questions\": ").append(db.getNumQuestions()).append(", \"sent\": ").append(now()).append("}");
+		loadEvent = event.toString();
+		selectEvent = revealEvent = null;
+		broadcast(loadEvent);
+	}
+
+	/**
+	* Shows the selected clue to the contestants, and opens the buzzing. Required by the GameListener interface.
+	*/
+	public synchronized void clueSelected(GameEngine engine, int category, int question) {
+		// buzzes received before the clue is shown are early
+		BuzzArbiter next = new BuzzArbiter(MAX_PLAYERS, RANKED_PLAYERS);
+		next.open();
+		BuzzArbiter previous = arbiter;
+		arbiter = next;
+		if (previous != null)
+			previous.close();
+		open = new OpenClue(matcher, category, question, ConcurrentHashMap.<String>newKeySet());
+
+		selectEvent = "{\"type\": \"select\", \"category\": " + category + ", \"question\": " + question
+			+ ", \"amount\": " + engine.getAmount(question) + ", \"answer\": " + Json.quote(engine.getSelectedClue().getResponse())
+			+ ", \"sent\": " + now() + "}";
+		revealEvent = null;
+		broadcast(selectEvent);
+	}
+
+	/**
+	* Shows the "question" of the selected clue to the contestants, and closes the buzzing. Required by the GameListener interface.
+	*/
+	public synchronized void questionRevealed(GameEngine engine) {
+		// the buzzing is over: send the final ranking with the question
+		StringBuilder event = new StringBuilder("{\"type\": \"reveal\", \"question\": ");
+		Json.appendQuoted(event, engine.getSelectedClue().getQuestion());
+		event.append(", \"ranking\": [");
+
+		open = null;
+		BuzzArbiter current = arbiter;
+		if (current != null) {
+			current.close();
+			int ranking[] = current.getRanking();
+			for (int k = 0; k < ranking.length; k++) {
+				if (k > 0)
+					event.append(", ");
+				Json.appendQuoted(event, names.get(ranking[k]));
+			}
+		}
+
+		event.append("], \"sent\": ").append(now()).append("}");
+		revealEvent = event.toString();
+		broadcast(revealEvent);
+	}
+
+	/**
+	* Normalizes the "questions" of the cells which changed, so the responses are judged against the new board. Required by the GameListener interface.
+	*/
+	public void boardPatched(GameEngine engine, DatabasePatch patch) {
+		ResponseMatcher patched = new ResponseMatcher(matcher, patch);
+		matcher = patched;
+
+		// the open clue is judged against its new "question"
+		OpenClue clue = open;
+		if (clue != null)
+			open = new OpenClue(patched, clue.category, clue.question, clue.responded);
+	}
+
+	/**
+	* Encodes an event once, adds it to the ring, and wakes the thread of the server up to write it; the events are added in order,
+	* so the ring and the state of the room always agree
+	*/
+	private synchronized void broadcast(String json) {
+		events.publish(json);
+		snapshot = null;
+		wakeup.run();
+	}
+
+	/**
+	* Returns the current time in microseconds since the epoch, sent with every event so clients can measure the latency
+	*/
+	static long now() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1000000 + now.getNano() / 1000;
+	}
+}
@@ -0,0 +1,729 @@
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* An HTTP server, using only the JDK, hosting game rooms that contestants join from their own devices.
+* Contestants receive the events of a room (board loaded, clue selected, question revealed, buzz) as Server-Sent Events, and buzz in with a POST.
+* Like the <code>SpectatorServer</code>, a single thread serves every connection with non-blocking sockets: the requests are short and answered
+* by that thread, except the creation of a room, which parses its question file on another thread. Every contestant only has a position in the
+* ring of events of its room: a contestant which falls more than <code>BuzzerRoom.BACKLOG</code> events behind gets the state of the room instead
+* of the events it missed, and a contestant which makes no progress for STALL_MILLIS, or keeps falling behind, is disconnected,
+* so a slow device never holds up the game nor the other contestants.
+* The server only listens on the loopback address unless -Djeopardy.buzzerAddress=... is given, e.g. 0.0.0.0 for the devices of the contestants.
+* Rooms are only created on the question files of the banks directory (-Djeopardy.banks=..., "questions" by default), at most MAX_ROOMS at a time,
+* and a room without any request for ROOM_IDLE_MILLIS is closed.
+*
+* POST /rooms?bank=questions.txt                      creates a room played through the server on a file of the banks directory, and returns its id
+* GET  /rooms/{id}/events                             streams the events of the room
+* POST /rooms/{id}/buzz?player=name                   buzzes in for the current clue, and returns the outcome and the rank of the player
+* POST /rooms/{id}/respond?player=name&amp;response=... responds to the current clue after buzzing in, and returns whether it is correct
+* POST /rooms/{id}/select?category=0&amp;question=0   (host) selects a clue
+* POST /rooms/{id}/reveal                             (host) reveals the question of the selected clue
+* GET  /rooms/{id}/stats                              returns the statistics of the fan-out of the room
+*
+* e.g. java -Djeopardy.buzzerAddress=0.0.0.0 BuzzerServer 8080, or java -Djeopardy.stats=stats.jst BuzzerServer 8080 to keep the statistics
+* of the clues and of the players
+*/
+public class BuzzerServer implements Runnable {
+
+	/**
+	* A contestant which can't be written to for this long is disconnected
+	*/
+	static final long STALL_MILLIS = EventRing.STALL_MILLIS;
+
+	/**
+	* A contestant sent the state of its room this many times in a row, without catching up in between, is disconnected
+	*/
+	static final int MAX_RESYNCS = 3;
+
+	/**
+	* Largest request accepted
+	*/
+	private static final int MAX_REQUEST = 8192;
+
+	/**
+	* Size of the send buffer of every connection, so the events queued for a contestant are bounded by the ring, not by the kernel
+	*/
+	private static final int SEND_BUFFER = 64 * 1024;
+
+	/**
+	* The largest number of rooms created through the server at a time, which can be changed with -Djeopardy.maxRooms=...
+	*/
+	static final int MAX_ROOMS = Integer.getInteger("jeopardy.maxRooms", 64);
+
+	/**
+	* A room created through the server without any request for this long is closed; -Djeopardy.roomIdleMinutes=... changes it
+	*/
+	static final long ROOM_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("jeopardy.roomIdleMinutes", 30));
+
+	/**
+	* The beginning of the response of an event stream, shared by every contestant
+	*/
+	private static final ByteBuffer STREAM_HEADERS = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+		+ "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+
+	/**
+	* A connection, reading its requests and writing their responses, then streaming the events of a room if it is a contestant.
+	* Only used by the thread of the server, except the response of a room created on another thread.
+	*/
+	private static class Connection extends EventRing.Outbox {
+		final SocketChannel channel;
+		final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+
+		/**
+		* The room streamed, or null if the connection isn't a contestant; whether it is closed once its response is written,
+		* and whether another thread is creating the room it asked for
+		*/
+		BuzzerRoom room;
+		boolean closing, waiting;
+
+		/**
+		* The response written by the thread creating the room, taken by the thread of the server
+		*/
+		volatile byte response[];
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	* The rooms by identifier
+	*/
+	private final ConcurrentHashMap<String, BuzzerRoom> rooms = new ConcurrentHashMap<String, BuzzerRoom>();
+
+	/**
+	* Used to give every room created through the server a new identifier
+	*/
+	private final AtomicInteger nextRoom = new AtomicInteger(1);
+
+	/**
+	* The number of rooms created through the server which are still open, or being created
+	*/
+	private final AtomicInteger hostedRooms = new AtomicInteger();
+
+	/**
+	* The directory of the question files the rooms can be created on
+	*/
+	private final Path banks = Paths.get(System.getProperty("jeopardy.banks", "questions")).toAbsolutePath().normalize();
+
+	/**
+	* The socket accepting the connections, the selector of the thread of the server, and the threads creating the rooms
+	*/
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+	private final ExecutorService creators;
+
+	/**
+	* Whether the thread of the server has been woken up for events or responses it hasn't written yet
+	*/
+	private final AtomicBoolean woken = new AtomicBoolean(false);
+
+	/**
+	* The connections whose room has been created, waiting for the thread of the server to write the response
+	*/
+	private final ConcurrentLinkedQueue<Connection> created = new ConcurrentLinkedQueue<Connection>();
+
+	/**
+	* The contestants streaming the events of a room
+	*/
+	private final ArrayList<Connection> streams = new ArrayList<Connection>();
+
+	/**
+	* Keeps the statistics of the games of the rooms created through the server, or null if they aren't kept
+	*/
+	private volatile StatsStore stats;
+
+	/**
+	* Creates a <code>BuzzerServer</code> listening on the given port, of the loopback address unless -Djeopardy.buzzerAddress=... is given;
+	* call <code>start</code> to accept connections
+	* @param port the port to listen on, or 0 for any free port
+	* @throws IOException if the port can't be used, or the address is unknown
+	*/
+	public BuzzerServer(int port) throws IOException {
+		String address = System.getProperty("jeopardy.buzzerAddress");
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(address == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address), port), 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this, "buzzer-server");
+		thread.setDaemon(true);
+		creators = Executors.newFixedThreadPool(2, daemonThreads("buzzer-rooms"));
+	}
+
+	/**
+	* Starts the server, and prints the rooms created through it. The server stops with the JVM.
+	* @param args the port to listen on, 8080 by default
+	*/
+	public static void main(String args[]) throws IOException, InterruptedException {
+		BuzzerServer buzzer = new BuzzerServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+		String pathToStats = System.getProperty("jeopardy.stats");
+		if (pathToStats != null)
+			buzzer.setStatsStore(new StatsStore(Paths.get(pathToStats), Long.getLong("jeopardy.statsFlush", StatsStore.FLUSH_MILLIS)));
+		Metrics.registerMBeans();
+		buzzer.start();
+		System.out.println("buzzer server listening on port " + buzzer.getPort());
+
+		// the thread of the server is a daemon, so it doesn't keep a game alive; here it is the whole program
+		buzzer.thread.join();
+	}
+
+	/**
+	* Keeps the statistics of the games of the rooms created through the server from now on
+	* @param store the <code>StatsStore</code> to record the games in, or null to stop keeping them
+	*/
+	public void setStatsStore(StatsStore store) {
+		stats = store;
+	}
+
+	/**
+	* Starts accepting connections
+	*/
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	* Stops accepting connections, and closes the open ones
+	*/
+	public void stop() {
+		try {
+			selector.close();
+			server.close();
+		} catch (IOException e) {
+			// the sockets are closed with the process anyway
+		}
+		creators.shutdownNow();
+	}
+
+	/**
+	* getter that returns the port the server listens on
+	* @return the port of the server
+	*/
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	* Creates a room following a board played somewhere else, such as a Jeopardy frame; the room has to be added as a <code>GameListener</code> of that board
+	* @param id the identifier of the room
+	* @return the new room
+	*/
+	public BuzzerRoom createRoom(String id) {
+		BuzzerRoom room = new BuzzerRoom(id, this::wakeup);
+		rooms.put(id, room);
+		return room;
+	}
+
+	/**
+	* Wakes the thread of the server up, unless it already has been, to write the new events and responses
+	*/
+	private void wakeup() {
+		if (woken.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	/**
+	* The thread of the server: accepts the connections, answers their requests, and writes the events of the rooms to the contestants
+	* as they come. Required by the Runnable interface.
+	*/
+	public void run() {
+		long lastSweep = System.nanoTime();
+		try {
+			while (selector.isOpen()) {
+				selector.select(STALL_MILLIS / 10);
+
+				for (SelectionKey key : selector.selectedKeys()) {
+					try {
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+
+						Connection connection = (Connection) key.attachment();
+						if (key.isReadable())
+							read(connection);
+						if (key.isValid() && key.isWritable())
+							write(connection);
+					} catch (IOException e) {
+						close((Connection) key.attachment(), false);
+					}
+				}
+				selector.selectedKeys().clear();
+
+				if (woken.getAndSet(false)) {
+					// the rooms created on another thread: write their responses
+					Connection connection;
+					while ((connection = created.poll()) != null) {
+						connection.waiting = false;
+						connection.add(ByteBuffer.wrap(connection.response), null);
+						connection.response = null;
+						tryWrite(connection);
+					}
+
+					// new events: send them to the contestants which aren't waiting for their socket already
+					for (int k = streams.size() - 1; k >= 0; k--) {
+						Connection stream = streams.get(k);
+						if (stream.isEmpty())
+							tryWrite(stream);
+					}
+				}
+
+				// disconnect the contestants which stopped reading, and close the rooms nobody uses anymore
+				long now = System.nanoTime();
+				if (now - lastSweep > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS / 10)) {
+					lastSweep = now;
+					expireRooms(now);
+					for (SelectionKey key : selector.keys()) {
+						Connection connection = (Connection) key.attachment();
+						if (connection != null && connection.isStalled(now))
+							close(connection, true);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			// the server was stopped
+		}
+	}
+
+	/**
+	* Accepts a connection, which sends its request first
+	*/
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+		channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+	}
+
+	/**
+	* Reads the requests of a connection; a contestant isn't expected to send anything else, but its end of the stream is noticed
+	*/
+	private void read(Connection connection) throws IOException {
+		if (connection.room != null || connection.closing) {
+			connection.request.clear();
+			if (connection.channel.read(connection.request) < 0)
+				close(connection, false);
+			return;
+		}
+
+		if (connection.channel.read(connection.request) < 0) {
+			close(connection, false);
+			return;
+		}
+
+		// the next request is only answered once the response of the previous one is written
+		if (connection.isEmpty() && !connection.waiting)
+			answer(connection);
+	}
+
+	/**
+	* Answers the request at the beginning of the buffer of a connection, once it has been read completely
+	*/
+	private void answer(Connection connection) throws IOException {
+		// the time of a buzz is taken as soon as it is received
+		long received = System.nanoTime();
+
+		byte bytes[] = connection.request.array();
+		int length = connection.request.position(), end = -1;
+		for (int k = 3; k < length && end < 0; k++)
+			if (bytes[k] == '\n' && bytes[k - 1] == '\r' && bytes[k - 2] == '\n' && bytes[k - 3] == '\r')
+				end = k + 1;
+
+		if (end < 0) {
+			if (length == MAX_REQUEST)
+				respond(connection, 431, "{\"error\": \"request too large\"}", true);
+			return;
+		}
+
+		// "POST /rooms/1/buzz?player=alice HTTP/1.1", then the headers
+		String lines[] = new String(bytes, 0, end, StandardCharsets.ISO_8859_1).split("\r\n");
+		String line[] = lines[0].split(" ");
+		boolean close = line.length < 3 || !line[2].equals("HTTP/1.1");
+		int bodyLength = 0;
+		try {
+			for (int k = 1; k < lines.length; k++) {
+				int colon = lines[k].indexOf(':');
+				String name = colon < 0 ? "" : lines[k].substring(0, colon).trim(), value = lines[k].substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length"))
+					bodyLength = Integer.parseInt(value);
+				else if (name.equalsIgnoreCase("Connection"))
+					close = value.equalsIgnoreCase("close");
+				else if (name.equalsIgnoreCase("Transfer-Encoding"))
+					bodyLength = -1;
+			}
+		} catch (NumberFormatException e) {
+			bodyLength = -1;
+		}
+
+		// the parameters are in the query: a body is skipped, once it has been read
+		if (bodyLength < 0 || line.length < 2) {
+			respond(connection, 400, "{\"error\": \"bad request\"}", true);
+			return;
+		}
+		if (end + bodyLength > MAX_REQUEST) {
+			respond(connection, 413, "{\"error\": \"request too large\"}", true);
+			return;
+		}
+		if (length < end + bodyLength)
+			return;
+
+		// keep what follows the request, which is the next one
+		connection.request.flip().position(end + bodyLength);
+		connection.request.compact();
+
+		try {
+			handle(connection, line[0], line[1], received, close);
+		} catch (RuntimeException e) {
+			respond(connection, 400, "{\"error\": " + Json.quote(String.valueOf(e.getMessage())) + "}", close);
+		}
+	}
+
+	/**
+	* Handles a request to /rooms
+	*/
+	private void handle(Connection connection, String method, String target, long received, boolean close) throws IOException {
+		int question = target.indexOf('?');
+		Map<String, String> query = parseQuery(question < 0 ? null : target.substring(question + 1));
+
+		// "/rooms/{id}/{action}" gives ["", "rooms", id, action]
+		String path[] = (question < 0 ? target : target.substring(0, question)).split("/");
+		if (path.length < 2 || !path[1].equals("rooms")) {
+			respond(connection, 404, "{\"error\": \"no such resource\"}", close);
+			return;
+		}
+
+		if (path.length == 2 && method.equals("POST")) {
+			createRoom(connection, query.get("bank"), close);
+			return;
+		}
+
+		BuzzerRoom room = path.length == 4 ? rooms.get(path[2]) : null;
+		if (room == null) {
+			respond(connection, 404, "{\"error\": \"no such room\"}", close);
+			return;
+		}
+		room.touch(received);
+
+		switch (method + " " + path[3]) {
+			case "GET events":
+				subscribe(connection, room);
+				return; // the stream stays open
+
+			case "POST buzz":
+				String player = query.get("player");
+				if (player == null)
+					respond(connection, 400, "{\"error\": \"missing player\"}", close);
+				else
+					respond(connection, 200, room.buzz(player, received), close);
+				return;
+
+			case "POST respond":
+				String responding = query.get("player"), response = query.get("response");
+				if (responding == null || response == null)
+					respond(connection, 400, "{\"error\": \"missing player or response\"}", close);
+				else
+					respond(connection, 200, room.respond(responding, response), close);
+				return;
+
+			case "POST select":
+			case "POST reveal":
+				if (!room.isHosted()) {
+					respond(connection, 403, "{\"error\": \"the board of this room is played by its host\"}", close);
+					return;
+				}
+				GameEngine.Outcome outcome = path[3].equals("select")
+					? room.select(Integer.parseInt(query.get("category")), Integer.parseInt(query.get("question")))
+					: room.reveal();
+				respond(connection, outcome == GameEngine.Outcome.ACCEPTED ? 200 : 409, "{\"outcome\": \"" + outcome + "\"}", close);
+				return;
+
+			case "GET stats":
+				respond(connection, 200, room.statistics(), close);
+				return;
+
+			default:
+				respond(connection, 404, "{\"error\": \"no such action\"}", close);
+		}
+	}
+
+	/**
+	* Starts streaming the events of a room to a contestant, from the next one. The stream stays open until the contestant disconnects.
+	*/
+	private void subscribe(Connection connection, BuzzerRoom room) {
+		connection.room = room;
+		room.getEvents().follow(connection);
+		connection.add(STREAM_HEADERS.duplicate(), null);
+		connection.add(ByteBuffer.wrap((": connected to room " + room.getId() + "\n\n").getBytes(StandardCharsets.UTF_8)), null);
+		streams.add(connection);
+		room.subscribed();
+		tryWrite(connection);
+	}
+
+	/**
+	* Creates a room played through the server on the given question file, on another thread as the file may have to be parsed;
+	* rooms on the same file share its <code>Database</code>
+	*/
+	private void createRoom(final Connection connection, final String bank, final boolean close) {
+		if (bank == null) {
+			respond(connection, 400, "{\"error\": \"missing bank\"}", close);
+			return;
+		}
+
+		final String name = resolveBank(bank);
+		if (name == null) {
+			respond(connection, 403, "{\"error\": \"the bank must be a file of the banks directory\"}", close);
+			return;
+		}
+
+		// the room is counted before it is created, so concurrent requests can't exceed the limit
+		if (hostedRooms.incrementAndGet() > MAX_ROOMS) {
+			hostedRooms.decrementAndGet();
+			respond(connection, 503, "{\"error\": \"too many rooms\"}", close);
+			return;
+		}
+
+		// the connection isn't read nor written until the response is ready
+		connection.waiting = true;
+		connection.channel.keyFor(selector).interestOps(0);
+		creators.execute(() -> {
+			byte response[];
+			boolean failed = true;
+			try {
+				QuestionBank database = DatabaseCache.shared().load(name, null);
+				String id = Integer.toString(nextRoom.getAndIncrement());
+				StatsStore store = stats;
+				rooms.put(id, new BuzzerRoom(id, database, store == null ? null : store.recorder(bank), this::wakeup));
+				response = encode(201, "{\"room\": " + Json.quote(id) + ", \"categories\": " + database.getNumCategories()
+					+ ", \"questions\": " + database.getNumQuestions() + "}", close);
+				failed = false;
+			} catch (DatabaseFormatException e) {
+				response = encode(400, "{\"error\": " + Json.quote(e.getMessage()) + "}", close);
+			} catch (RuntimeException e) {
+				response = encode(400, "{\"error\": " + Json.quote(String.valueOf(e.getMessage())) + "}", close);
+			}
+			if (failed)
+				hostedRooms.decrementAndGet();
+
+			connection.closing = close;
+			connection.response = response;
+			created.add(connection);
+			wakeup();
+		});
+	}
+
+	/**
+	* Returns the path of a question file of the banks directory, given relative to it, possibly followed by the name of a bank in a zip archive
+	* @return the path to load, or null if the file isn't in the banks directory
+	*/
+	private String resolveBank(String bank) {
+		String entry = CompressedBank.entryOf(bank);
+		try {
+			Path relative = Paths.get(CompressedBank.fileOf(bank));
+			if (relative.isAbsolute())
+				return null;
+			for (Path part : relative)
+				if (part.toString().equals(".."))
+					return null;
+
+			// a link can't lead out of the directory either
+			Path path = banks.resolve(relative).normalize();
+			if (!path.startsWith(banks) || Files.exists(path) && !path.toRealPath().startsWith(banks.toRealPath()))
+				return null;
+			return entry == null ? path.toString() : path + CompressedBank.ENTRY_SEPARATOR + entry;
+		} catch (IOException | InvalidPathException e) {
+			return null;
+		}
+	}
+
+	/**
+	* Closes the rooms created through the server without any request for ROOM_IDLE_MILLIS, and disconnects their contestants
+	*/
+	private void expireRooms(long now) {
+		for (BuzzerRoom room : rooms.values()) {
+			if (!room.isHosted() || now - room.getLastRequest() < TimeUnit.MILLISECONDS.toNanos(ROOM_IDLE_MILLIS) || !rooms.remove(room.getId(), room))
+				continue;
+
+			hostedRooms.decrementAndGet();
+			for (int k = streams.size() - 1; k >= 0; k--)
+				if (streams.get(k).room == room)
+					close(streams.get(k), false);
+		}
+	}
+
+	/**
+	* Queues a complete JSON response, and writes it
+	*/
+	private void respond(Connection connection, int status, String json, boolean close) {
+		connection.add(ByteBuffer.wrap(encode(status, json, close)), null);
+		connection.closing = close;
+		tryWrite(connection);
+	}
+
+	/**
+	* Encodes a complete JSON response, with its headers
+	*/
+	private static byte[] encode(int status, String json, boolean close) {
+		byte body[] = json.getBytes(StandardCharsets.UTF_8);
+		byte headers[] = ("HTTP/1.1 " + status + " " + reason(status) + "\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+			+ (close ? "\r\nConnection: close" : "") + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		byte response[] = new byte[headers.length + body.length];
+		System.arraycopy(headers, 0, response, 0, headers.length);
+		System.arraycopy(body, 0, response, headers.length, body.length);
+		return response;
+	}
+
+	/**
+	* Returns the reason phrase of the status codes sent by the server
+	*/
+	private static String reason(int status) {
+		switch (status) {
+			case 200:
+				return "OK";
+			case 201:
+				return "Created";
+			case 403:
+				return "Forbidden";
+			case 404:
+				return "Not Found";
+			case 409:
+				return "Conflict";
+			case 413:
+				return "Payload Too Large";
+			case 503:
+				return "Service Unavailable";
+			case 431:
+				return "Request Header Fields Too Large";
+			default:
+				return "Bad Request";
+		}
+	}
+
+	/**
+	* Writes what a connection is waiting for, closing it if it disconnected
+	*/
+	private void tryWrite(Connection connection) {
+		try {
+			write(connection);
+		} catch (IOException e) {
+			close(connection, false);
+		}
+	}
+
+	/**
+	* Writes as much as the socket of a connection accepts, several events at once, and waits for the socket if it is full.
+	* Once a response is written, the next request is answered, if it has already been read.
+	*/
+	private void write(Connection connection) throws IOException {
+		while (true) {
+			if (connection.isEmpty()) {
+				if (connection.closing) {
+					close(connection, false);
+					return;
+				}
+
+				// a contestant which keeps falling behind is disconnected
+				if (connection.room != null && !connection.room.getEvents().fill(connection, connection.room::snapshot, MAX_RESYNCS)) {
+					close(connection, true);
+					return;
+				}
+				if (connection.isEmpty()) {
+					if (connection.waiting)
+						return;
+					connection.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+					if (connection.room == null && connection.request.position() > 0)
+						answer(connection);
+					return;
+				}
+			}
+
+			// the socket is full: wait until it can be written again; a request is only read once its response is written
+			EventRing.write(connection.channel, connection);
+			if (!connection.isEmpty()) {
+				connection.channel.keyFor(selector).interestOps(connection.room != null ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+
+	/**
+	* Closes a connection
+	* @param dropped whether the server disconnects a contestant because it stalled or kept falling behind
+	*/
+	private void close(Connection connection, boolean dropped) {
+		if (connection == null)
+			return;
+		if (connection.room != null && streams.remove(connection))
+			connection.room.unsubscribed(dropped);
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	* Returns the parameters of a query string
+	*/
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null)
+			return parameters;
+
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0)
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+		}
+		return parameters;
+	}
+
+	/**
+	* Returns a factory of daemon threads with the given name, so the server doesn't keep the JVM alive
+	*/
+	static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
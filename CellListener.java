@@ -0,0 +1,15 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Handles the selection of a cell of the board.
+*/
+public interface CellListener {
+
+	/**
+	* Called when the user selects the cell of the given category and question
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	*/
+	void cellSelected(int category, int question);
+}
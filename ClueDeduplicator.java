@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Headless command-line finder of duplicate and near-duplicate clues across question files, e.g. banks merged from many sources.
+* Every clue (the "answer" shown on the board) is folded like a typed response, cut into shingles of SHINGLE characters,
+* and summed up by a MinHash signature of HASHES bytes, computed in one pass over its shingles (one permutation hashing).
+* Signatures are cut into BANDS bands: the clues whose band is the same in at least one band are candidates, found by sorting the bands,
+* and the candidates whose signatures estimate a similarity of at least the threshold are joined into clusters.
+* Nothing is ever compared pair by pair over the whole corpus: the time is near-linear in the number of clues, and the memory is
+* about 90 bytes per clue whatever the length of the clues, since the text of a clue is only kept if it is reported.
+* A JSON report of the clusters is printed.
+* e.g. java ClueDeduplicator questions
+*/
+public class ClueDeduplicator {
+
+	/**
+	* Number of characters of a shingle
+	*/
+	static final int SHINGLE = 5;
+
+	/**
+	* Number of hashes of a signature, one byte each, and the number of them in a band
+	*/
+	static final int HASHES = 64, ROWS = 4, BANDS = HASHES / ROWS;
+
+	/**
+	* Default estimated Jaccard similarity of the shingles of two clues from which they are duplicates
+	*/
+	static final double THRESHOLD = 0.6;
+
+	/**
+	* Probability that two different hashes have the same lowest byte, which the estimation of the similarity corrects
+	*/
+	private static final double BYTE_COLLISION = 1.0 / 256;
+
+	/**
+	* Number of bits of a hash which choose its bin of the signature
+	*/
+	private static final int BIN_BITS = 6;
+
+	/**
+	* Maximum number of clues, so their signatures fit in an array
+	*/
+	static final int MAX_CLUES = Integer.MAX_VALUE / HASHES;
+
+	/**
+	* Receives every clue of a question file
+	*/
+	interface ClueVisitor {
+		void visit(String category, int c, int q, String clue);
+	}
+
+	/**
+	* The files read, in the order their clues are numbered
+	*/
+	private final List<Path> files;
+
+	/**
+	* The signatures of the clues, HASHES bytes per clue, and where every clue comes from: file << 48 | category << 24 | question
+	*/
+	private byte signatures[] = new byte[0];
+	private long origins[] = new long[0];
+	private int clues;
+
+	/**
+	* The disjoint sets of the clues: the parent of every clue, the smallest clue of a set being its root
+	*/
+	private int parents[];
+
+	/**
+	* The number of candidates compared, and the number of them found similar
+	*/
+	private long candidates, similar;
+
+	/**
+	* The buffer of the folded clue, and the lowest hash of every bin of the signature being computed
+	*/
+	private char folded[] = new char[256];
+	private final long bins[] = new long[HASHES];
+
+	/**
+	* Creates a <code>ClueDeduplicator</code> for the given files, which are only read by <code>sign</code>
+	* @param files the question files, text or compiled
+	*/
+	ClueDeduplicator(List<Path> files) {
+		if (files.size() > 0xFFFF)
+			throw new IllegalArgumentException("too many files: " + files.size());
+		this.files = files;
+	}
+
+	/**
+	* Finds the duplicates of the files given, and prints the JSON report
+	* @param args the files and directories to check, optionally preceded by "-threshold T", the similarity from which clues are duplicates
+	*/
+	public static void main(String args[]) throws Exception {
+		double threshold = THRESHOLD;
+		List<String> names = new ArrayList<String>(Arrays.asList(args));
+
+		if (names.size() >= 2 && names.get(0).equals("-threshold")) {
+			threshold = Double.parseDouble(names.get(1));
+			names = names.subList(2, names.size());
+		}
+
+		if (names.isEmpty()) {
+			System.err.println("usage: java ClueDeduplicator [-threshold T] <file or directory>...");
+			System.exit(2);
+		}
+
+		long start = System.nanoTime();
+		ClueDeduplicator deduplicator = new ClueDeduplicator(BankValidator.findFiles(names));
+		deduplicator.sign();
+		long signed = System.nanoTime();
+		deduplicator.cluster(threshold);
+		long clustered = System.nanoTime();
+		deduplicator.print(System.out, start, signed, clustered);
+	}
+
+	/**
+	* Reads every clue of the files, and computes its signature. Empty clues are ignored.
+	* @throws IOException if a file can't be read
+	* @throws DatabaseFormatException if a file doesn't respect the format
+	*/
+	void sign() throws IOException, DatabaseFormatException {
+		for (int f = 0; f < files.size(); f++) {
+			final long file = f;
+			read(files.get(f), (category, c, q, clue) -> {
+				if (clues == origins.length) {
+					if (clues == MAX_CLUES)
+						throw new IllegalArgumentException("more than " + MAX_CLUES + " clues");
+					int capacity = Math.min(MAX_CLUES, Math.max(1024, clues + (clues >> 1)));
+					origins = Arrays.copyOf(origins, capacity);
+					signatures = Arrays.copyOf(signatures, capacity * HASHES);
+				}
+				if (sign(clue, signatures, clues * HASHES))
+					origins[clues++] = file << 48 | (long) c << 24 | q;
+			});
+		}
+	}
+
+	/**
+	* Static method that visits every clue of a question file, row by row. A text file is streamed, and the "questions" are skipped unread.
+	* @param file the question file, text or compiled
+	* @param visitor receives every clue
+	* @throws IOException if the file can't be read
+	* @throws DatabaseFormatException if the file doesn't respect the format
+	*/
+	static void read(Path file, ClueVisitor visitor) throws IOException, DatabaseFormatException {
+		if (file.toString().endsWith(MappedDatabase.EXTENSION)) {
+			QuestionBank database = MappedDatabase.open(file.toString());
+			checkSize(file, database.getNumCategories(), database.getNumQuestions());
+			for (int i = 0; i < database.getNumQuestions(); i++)
+				for (int j = 0; j < database.getNumCategories(); j++)
+					visitor.visit(database.getCategory(j), j, i, database.getQuestion(j, i).getResponse());
+			return;
+		}
+
+		try (LineReader reader = LineReader.open(file.toString())) {
+			int m = Database.readHeader(reader), n = Database.readHeader(reader);
+			checkSize(file, m, n);
+
+			String categories[] = new String[m];
+			for (int j = 0; j < m; j++)
+				categories[j] = Database.readLine(reader);
+
+			for (int i = 0; i < n; i++)
+				for (int j = 0; j < m; j++) {
+					visitor.visit(categories[j], j, i, Database.readLine(reader));
+					if (!reader.skipLine())
+						throw new DatabaseFormatException(1, reader.getLineNumber() + 1);
+				}
+		}
+	}
+
+	/**
+	* Makes sure the cells of a file can be told apart by where they come from
+	*/
+	private static void checkSize(Path file, int m, int n) {
+		if (m >= 1 << 24 || n >= 1 << 24)
+			throw new IllegalArgumentException(file + " has too many categories or questions");
+	}
+
+	/**
+	* Computes the signature of a clue: its folded shingles are hashed once each, the top BIN_BITS bits of a hash choose its bin,
+	* and every bin keeps its lowest hash; the empty bins borrow the hash of the next bin which isn't empty.
+	* Every byte of the signature is the lowest byte of a bin.
+	* @param clue the clue
+	* @param signature the array receiving the signature
+	* @param offset where the signature is written in the array
+	* @return false if the clue is empty once folded, in which case nothing is written
+	*/
+	boolean sign(String clue, byte signature[], int offset) {
+		if (folded.length < clue.length())
+			folded = new char[clue.length()];
+		int length = ResponseMatcher.fold(clue, folded);
+		if (length <= 0)
+			return false;
+
+		Arrays.fill(bins, Long.MAX_VALUE);
+		int shingles = Math.max(1, length - SHINGLE + 1);
+		for (int s = 0; s < shingles; s++) {
+			long hash = 0;
+			for (int k = s; k < s + SHINGLE && k < length; k++)
+				hash = hash * 0x100000001B3L + folded[k];
+			hash = mix(hash);
+
+			int bin = (int) (hash >>> (Long.SIZE - BIN_BITS));
+			long value = hash & (-1L >>> BIN_BITS);
+			if (value < bins[bin])
+				bins[bin] = value;
+		}
+
+		// an empty bin takes the hash of the next full one, changed by the distance, so two clues agree on it as often as on the full bins
+		for (int bin = 0; bin < HASHES; bin++) {
+			int full = bin, distance = 0;
+			while (bins[full] == Long.MAX_VALUE) {
+				full = (full + 1) % HASHES;
+				distance++;
+			}
+			signature[offset + bin] = (byte) (distance == 0 ? bins[bin] : mix(bins[full] + distance));
+		}
+		return true;
+	}
+
+	/**
+	* Static method that mixes the bits of a hash (the finalizer of SplitMix64)
+	*/
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	* Joins the similar clues into clusters: for every band, the clues are sorted by their band, and every clue of a run of the same band
+	* is compared with the first clue of the run and with the one before it
+	* @param threshold the estimated similarity from which two clues are duplicates
+	*/
+	void cluster(double threshold) {
+		parents = new int[clues];
+		for (int k = 0; k < clues; k++)
+			parents[k] = k;
+
+		// a key is the band in its high half and the clue in its low half, so sorting the keys groups the clues by band
+		long keys[] = new long[clues];
+		for (int band = 0; band < BANDS; band++) {
+			for (int k = 0; k < clues; k++) {
+				int offset = k * HASHES + band * ROWS, value = 0;
+				for (int r = 0; r < ROWS; r++)
+					value = value << 8 | (signatures[offset + r] & 0xFF);
+				keys[k] = (long) value << 32 | k;
+			}
+			Arrays.parallelSort(keys);
+
+			for (int start = 0, end; start < clues; start = end) {
+				for (end = start + 1; end < clues && keys[end] >>> 32 == keys[start] >>> 32; end++) {
+					compare((int) keys[start], (int) keys[end], threshold);
+					if (end - 1 > start)
+						compare((int) keys[end - 1], (int) keys[end], threshold);
+				}
+			}
+		}
+	}
+
+	/**
+	* Joins two candidates if they aren't already in the same cluster and their signatures are similar enough
+	*/
+	private void compare(int a, int b, double threshold) {
+		int rootA = find(a), rootB = find(b);
+		if (rootA == rootB)
+			return;
+
+		candidates++;
+		if (similarity(a, b) < threshold)
+			return;
+
+		similar++;
+		parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+	}
+
+	/**
+	* Returns the estimated Jaccard similarity of the shingles of two clues, from the number of bytes their signatures have in common
+	* @param a the first clue
+	* @param b the second clue
+	* @return the similarity, from 0 to 1
+	*/
+	double similarity(int a, int b) {
+		int same = 0;
+		for (int k = 0; k < HASHES; k++)
+			if (signatures[a * HASHES + k] == signatures[b * HASHES + k])
+				same++;
+		return Math.max(0, ((double) same / HASHES - BYTE_COLLISION) / (1 - BYTE_COLLISION));
+	}
+
+	/**
+	* Returns the root of the cluster of a clue, halving the path to it on the way
+	*/
+	private int find(int clue) {
+		while (parents[clue] != clue) {
+			parents[clue] = parents[parents[clue]];
+			clue = parents[clue];
+		}
+		return clue;
+	}
+
+	/**
+	* Prints the JSON report: a summary with the timing, then every cluster of at least two clues, with the clues read again from their files
+	*/
+	private void print(PrintStream out, long start, long signed, long clustered) throws IOException, DatabaseFormatException {
+		// the clues which belong to a cluster, grouped by cluster, from the clue which comes first
+		int sizes[] = new int[clues];
+		for (int k = 0; k < clues; k++)
+			sizes[find(k)]++;
+		int count = 0, clusters = 0;
+		for (int k = 0; k < clues; k++)
+			if (sizes[parents[k]] > 1)
+				count++;
+		long members[] = new long[count];
+		for (int k = 0, index = 0; k < clues; k++)
+			if (sizes[parents[k]] > 1)
+				members[index++] = (long) parents[k] << 32 | k;
+		Arrays.sort(members);
+
+		// read only the clues which are reported, found by where they come from
+		final long reported[] = new long[count];
+		for (int k = 0; k < count; k++)
+			reported[k] = origins[(int) members[k]];
+		Arrays.sort(reported);
+		final String texts[] = new String[count], categoryNames[] = new String[count];
+		for (int f = 0; f < files.size(); f++) {
+			final long file = f;
+			if (count > 0 && (reported[count - 1] >>> 48 < file || reported[0] >>> 48 > file))
+				continue;
+			read(files.get(f), (category, c, q, clue) -> {
+				int index = Arrays.binarySearch(reported, file << 48 | (long) c << 24 | q);
+				if (index >= 0) {
+					texts[index] = clue;
+					categoryNames[index] = category;
+				}
+			});
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"summary\": {");
+		json.append("\"files\": ").append(files.size());
+		json.append(", \"clues\": ").append(clues);
+		json.append(", \"candidates\": ").append(candidates);
+		json.append(", \"similar\": ").append(similar);
+		json.append(", \"duplicates\": ").append(count);
+		json.append(", \"signMillis\": ").append((signed - start) / 1000000);
+		json.append(", \"clusterMillis\": ").append((clustered - signed) / 1000000).append("},\n");
+		json.append("  \"clusters\": [");
+
+		for (int k = 0; k < count; k++) {
+			int root = (int) (members[k] >>> 32), clue = (int) members[k];
+			if (k == 0 || root != (int) (members[k - 1] >>> 32)) {
+				json.append(clusters++ == 0 ? "\n    [" : "],\n    [");
+			} else
+				json.append(", ");
+
+			long origin = origins[clue];
+			int index = Arrays.binarySearch(reported, origin);
+			json.append("{\"file\": ");
+			Json.appendQuoted(json, files.get((int) (origin >>> 48)).toString());
+			json.append(", \"category\": ");
+			Json.appendQuoted(json, categoryNames[index]);
+			json.append(", \"question\": ").append((origin & 0xFFFFFF) + 1);
+			json.append(", \"clue\": ");
+			Json.appendQuoted(json, texts[index]);
+			json.append("}");
+		}
+
+		json.append(clusters == 0 ? "\n  ]\n}" : "]\n  ]\n}");
+		out.println(json);
+	}
+}
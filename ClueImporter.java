@@ -0,0 +1,932 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Imports the clues of a CSV or TSV dump (round, category, value, clue, response), as exported by other sources, into question files.
+* The dump is cut into chunks of bytes which are scanned in parallel, each from every state the parser can be in when the chunk starts
+* (at the start of a field, in an unquoted field, in a quoted field, or after a quote in a quoted field); the state the previous chunks end in
+* tells which of its newlines ends a record, so every chunk is then parsed in parallel from its first record on, whatever is quoted.
+* The records are spilled to partitions of the categories, one per chunk up to MAX_PARTITIONS, and every partition is grouped by category and written
+* as a question file: the clues of a category are sorted by value and dealt into columns of n clues, from the cheapest to the most expensive.
+* A partition larger than a chunk is first split again, a chunk at a time, until its partitions are about a chunk; only a single category larger than
+* a chunk is grouped as a whole. Every thread only holds about a chunk, so the memory stays bounded by the chunk size whatever the size of the dump.
+* A CSV dump follows RFC 4180 (quoted fields, "" for a quote); a TSV dump is not quoted. A first record naming its columns (category, value,
+* clue or answer, response or question) decides which columns are read; otherwise they are the second to the fifth ones.
+* A dump can also be loaded by the game as a single board, e.g. java Jeopardy dump.tsv
+* e.g. java ClueImporter dump.tsv banks 5
+*/
+public class ClueImporter {
+
+	/**
+	* Extensions of the dumps: comma-separated with quotes, and tab-separated without
+	*/
+	static final String CSV = ".csv", TSV = ".tsv";
+
+	/**
+	* Default number of bytes of a chunk
+	*/
+	static final int CHUNK_SIZE = 8 << 20;
+
+	/**
+	* The largest number of partitions the records are spilled to at once, each written through its own file; a partition larger than
+	* a chunk is split again once spilled
+	*/
+	static final int MAX_PARTITIONS = 64;
+
+	/**
+	* Default number of questions per category of the question files
+	*/
+	static final int DEFAULT_ROWS = 5;
+
+	/**
+	* The columns read from every record, in this order
+	*/
+	private static final int CATEGORY = 0, VALUE = 1, CLUE = 2, RESPONSE = 3;
+
+	/**
+	* The names of the columns read, as found in a first record naming the columns
+	*/
+	private static final String COLUMN_NAMES[][] = {{"category"}, {"value"}, {"clue", "answer"}, {"response", "question", "correct_response"}};
+
+	/**
+	* The dump, its size, and its separator of fields
+	*/
+	private final Path dump;
+	private final long size;
+	private final byte delimiter;
+
+	/**
+	* Whether fields can be quoted
+	*/
+	private final boolean quoted;
+
+	/**
+	* The number of bytes of a chunk, the number of threads, and the number of questions per category
+	*/
+	private final int chunkSize, threads, rows;
+
+	/**
+	* The index of the column of every field read: category, value, clue and response
+	*/
+	private final int columns[] = {1, 2, 3, 4};
+
+	/**
+	* The number of records imported, and the number rejected because a field was missing
+	*/
+	private final AtomicLong records = new AtomicLong(), rejected = new AtomicLong();
+
+	/**
+	* The number of clues which didn't fill a column of their category, and the number of columns written
+	*/
+	private long leftOver, written;
+
+	/**
+	* The <code>ParseMonitor</code> informed of the progress, or null, the number of bytes parsed so far, and the time the threads spent reading the dump
+	*/
+	private ParseMonitor monitor;
+	private long parsed;
+	private final AtomicLong readNanos = new AtomicLong();
+
+	/**
+	* The buffer of every thread, grown to the longest range it reads
+	*/
+	private final ThreadLocal<byte[]> buffers;
+
+	/**
+	* The states of the parser between two bytes, as far as the end of a record is concerned: at the start of a field, in an unquoted field
+	* (where a quote is an ordinary character), in a quoted field (where a newline is part of the field), and after a quote in a quoted field,
+	* which is either the first quote of a doubled one, or the end of the quoted field
+	*/
+	private static final int FIELD_START = 0, UNQUOTED = 1, IN_QUOTES = 2, QUOTE_IN_QUOTES = 3, STATES = 4;
+
+	/**
+	* The scan of a chunk from every state the parser can be in at its start: the state it ends in, and where its first newline ending a record is, or -1
+	*/
+	private static class Scan {
+		final int exits[] = new int[STATES];
+		final long newlines[] = {-1, -1, -1, -1};
+	}
+
+	/**
+	* A record of a partition: its offset in the dump, which orders the records of the same value, then its fields
+	*/
+	private static class Row {
+		final long offset;
+		final int value;
+		final String clue, response;
+
+		Row(long offset, int value, String clue, String response) {
+			this.offset = offset;
+			this.value = value;
+			this.clue = clue;
+			this.response = response;
+		}
+	}
+
+	/**
+	* The bytes of the records of a range spilled to a partition, as lines of: offset, value, category, clue and response, separated by tabs
+	*/
+	private static class Spill {
+		byte bytes[] = new byte[1 << 12];
+		int length;
+
+		Spill append(char c) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, length * 2);
+			bytes[length++] = (byte) c;
+			return this;
+		}
+
+		Spill append(byte source[], int start, int end) {
+			if (length + end - start > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(length * 2, length + end - start));
+			System.arraycopy(source, start, bytes, length, end - start);
+			length += end - start;
+			return this;
+		}
+
+		Spill number(long value) {
+			String digits = Long.toString(value);
+			for (int k = 0; k < digits.length(); k++)
+				append(digits.charAt(k));
+			return this;
+		}
+	}
+
+	/**
+	* Creates a <code>ClueImporter</code> of a dump
+	* @param name the path to the dump, whose extension tells whether it is CSV or TSV
+	* @param rows the number of questions per category of the question files
+	* @param threads the number of threads parsing the dump
+	* @param chunkSize the number of bytes of a chunk
+	* @throws IOException if the dump can't be read
+	*/
+	ClueImporter(String name, int rows, int threads, int chunkSize) throws IOException {
+		if (rows < 1 || threads < 1 || chunkSize < 1)
+			throw new IllegalArgumentException("invalid rows, threads or chunk size");
+		dump = Paths.get(name);
+		size = Files.size(dump);
+		quoted = !name.toLowerCase(Locale.ROOT).endsWith(TSV);
+		delimiter = (byte) (quoted ? ',' : '\t');
+		this.rows = rows;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		buffers = ThreadLocal.withInitial(() -> new byte[chunkSize]);
+	}
+
+	/**
+	* Static method that tells whether a file is a dump to import, from its extension
+	* @param name the path to the file
+	* @return true if it is a CSV or TSV dump
+	*/
+	static boolean isDump(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		return lower.endsWith(CSV) || lower.endsWith(TSV);
+	}
+
+	/**
+	* Static method that imports a dump as a single <code>Database</code>, e.g. to load it in the game.
+	* Unlike <code>importBanks</code>, the whole <code>Database</code> is in memory.
+	* The progress is reported to the monitor after every range parsed, and recorded in the <code>Metrics</code> as for a question file.
+	* @param name the path to the dump
+	* @param rows the number of questions per category
+	* @param monitor the <code>ParseMonitor</code> informed of the progress, or null
+	* @return the <code>Database</code> of every category with at least <code>rows</code> clues
+	* @throws DatabaseFormatException if the dump can't be read, or has no category with enough clues
+	* @throws CancellationException if the monitor cancelled the import
+	*/
+	static Database importDatabase(String name, int rows, ParseMonitor monitor) throws DatabaseFormatException {
+		Path directory = null;
+		try {
+			int threads = Runtime.getRuntime().availableProcessors();
+			ClueImporter importer = new ClueImporter(name, rows, threads, CHUNK_SIZE);
+			importer.monitor = monitor;
+			directory = Files.createTempDirectory("jeopardy-import");
+
+			Metrics.FileParsedEvent event = new Metrics.FileParsedEvent();
+			event.begin();
+			long start = System.nanoTime();
+
+			List<Path> spills = importer.spill(directory, 1);
+			importer.progress(0);
+			Database database = importer.group(spills.get(0));
+			if (database.getNumCategories() == 0)
+				throw new DatabaseFormatException(1, 0);
+
+			// the threads read at the same time: the time of the reading is the one of a thread
+			event.end();
+			Metrics.fileParsed(event, name, importer.size, System.nanoTime() - start, importer.readNanos.get() / threads);
+			return database;
+		} catch (IOException | InvalidPathException | UncheckedIOException e) {
+			throw new DatabaseFormatException(2, 0);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	* Imports the dump as question files, one per partition of the categories, named after the dump
+	* @param directory the directory receiving the question files
+	* @return the question files written
+	* @throws IOException if the dump can't be read, or a question file written
+	*/
+	List<Path> importBanks(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		String base = dump.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+		Path spillDirectory = Files.createTempDirectory(directory, ".import");
+
+		try {
+			// about a chunk per partition, so a partition fits in memory as well as a chunk, but never more files open than MAX_PARTITIONS
+			List<Path> spills = spill(spillDirectory, (int) Math.min(MAX_PARTITIONS, Math.max(1, (size + chunkSize - 1) / chunkSize)));
+			return run(() -> IntStream.range(0, spills.size()).parallel().mapToObj(k -> {
+				try {
+					return write(spills.get(k), directory, base + "-" + k, 0);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).flatMap(List::stream).collect(Collectors.toList()));
+		} finally {
+			delete(spillDirectory);
+		}
+	}
+
+	/**
+	* Writes a partition as a question file, after splitting it again if it is larger than a chunk, and deletes it
+	* @param spill the file of the partition
+	* @param directory the directory receiving the question files
+	* @param name the name of the question file, without its extension; the partitions it is split into add their index to it
+	* @param level the number of times the partition was split
+	* @return the question files written
+	*/
+	private List<Path> write(Path spill, Path directory, String name, int level) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		List<Path> parts = Files.size(spill) > chunkSize ? split(spill, level + 1) : null;
+		if (parts != null) {
+			Files.delete(spill);
+			for (int q = 0; q < parts.size(); q++)
+				files.addAll(write(parts.get(q), directory, name + "-" + q, level + 1));
+			return files;
+		}
+
+		Database database = group(spill);
+		Files.delete(spill);
+		if (database.getNumCategories() > 0) {
+			Path file = directory.resolve(name + ".txt");
+			Database.writeQuestions(database, file.toString());
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	* Splits a partition larger than a chunk into partitions of about a chunk, reading it a chunk at a time; every record goes to
+	* the partition of its category, which is appended to once per chunk read, so no file stays open
+	* @return the files of the partitions which aren't empty, or null if the partition has a single category and can't be split
+	*/
+	private List<Path> split(Path spill, int level) throws IOException {
+		long length = Files.size(spill);
+		int partitions = (int) Math.min(MAX_PARTITIONS, (length + chunkSize - 1) / chunkSize);
+		Path files[] = new Path[partitions];
+		for (int p = 0; p < partitions; p++)
+			files[p] = spill.resolveSibling(spill.getFileName() + "-" + p);
+
+		try (FileChannel input = FileChannel.open(spill, StandardOpenOption.READ)) {
+			for (long start = 0, block = chunkSize; start < length;) {
+				long end = Math.min(length, start + block);
+				byte bytes[] = read(input, start, end);
+
+				// only whole records: a record longer than the block is read with a larger one
+				int last = (int) (end - start);
+				while (last > 0 && bytes[last - 1] != '\n')
+					last--;
+				if (last == 0) {
+					block *= 2;
+					continue;
+				}
+
+				Spill outputs[] = new Spill[partitions];
+				for (int line = 0, stop; line < last; line = stop + 1) {
+					// the category is the third field of the record
+					int tabs = 0, hash = 0;
+					for (stop = line; bytes[stop] != '\n'; stop++) {
+						if (bytes[stop] == '\t')
+							tabs++;
+						else if (tabs == 2)
+							hash = 31 * hash + bytes[stop];
+					}
+
+					int p = partition(hash, level, partitions);
+					if (outputs[p] == null)
+						outputs[p] = new Spill();
+					outputs[p].append(bytes, line, stop + 1);
+				}
+
+				for (int p = 0; p < partitions; p++) {
+					if (outputs[p] == null)
+						continue;
+					ByteBuffer buffer = ByteBuffer.wrap(outputs[p].bytes, 0, outputs[p].length);
+					try (FileChannel output = FileChannel.open(files[p], StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+						while (buffer.hasRemaining())
+							output.write(buffer);
+					}
+				}
+				start += last;
+				block = chunkSize;
+			}
+		}
+
+		List<Path> parts = new ArrayList<Path>();
+		for (Path file : files)
+			if (Files.exists(file))
+				parts.add(file);
+
+		// every record went to the same partition: its categories can't be told apart by their hash
+		if (parts.size() == 1) {
+			Files.delete(parts.get(0));
+			return null;
+		}
+		return parts;
+	}
+
+	/**
+	* Static method that returns the partition of a category from the hash of its bytes; every level of splitting mixes the hash differently,
+	* so the categories of a partition too large are spread over the partitions of the next level
+	*/
+	private static int partition(int hash, int level, int partitions) {
+		for (int k = 0; k < level; k++)
+			hash = Integer.rotateLeft(hash * 0x9E3779B9, 16);
+		return (hash & Integer.MAX_VALUE) % partitions;
+	}
+
+	/**
+	* Cuts the dump into ranges of whole records, parses them in parallel, and spills every record to the partition of its category
+	* @return the files of the partitions
+	*/
+	private List<Path> spill(Path directory, int partitions) throws IOException {
+		List<Path> spills = new ArrayList<Path>();
+		FileChannel outputs[] = new FileChannel[partitions];
+		try (FileChannel input = FileChannel.open(dump, StandardOpenOption.READ)) {
+			for (int p = 0; p < partitions; p++) {
+				spills.add(directory.resolve("partition-" + p));
+				outputs[p] = FileChannel.open(spills.get(p), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			}
+
+			long starts[] = starts(input);
+			Parser first = new Parser();
+			boolean header = starts.length > 1 && first.next(read(input, 0, starts[1]), 0, (int) starts[1]) > 0 && first.readHeader(columns);
+
+			run(() -> {
+				IntStream.range(0, starts.length - 1).parallel().forEach(k -> {
+					try {
+						parse(input, starts[k], starts[k + 1], k == 0 && header, outputs);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				return null;
+			});
+		} finally {
+			for (FileChannel output : outputs)
+				if (output != null)
+					output.close();
+		}
+		return spills;
+	}
+
+	/**
+	* Returns the offsets of the ranges of whole records: the chunks are scanned in parallel, then the state the parser is in at the start of
+	* every chunk, given by the scans of the chunks before it, tells which of its newlines is the first one ending a record.
+	* The last offset is the size of the dump.
+	*/
+	private long[] starts(FileChannel input) throws IOException {
+		int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+		Scan scans[] = run(() -> IntStream.range(0, chunks).parallel().mapToObj(k -> {
+			try {
+				return scan(input, (long) k * chunkSize);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).toArray(Scan[]::new));
+
+		// a chunk without a newline ending a record belongs to the range of the previous one
+		long starts[] = new long[Math.max(chunks, 1) + 1];
+		int ranges = 1, state = FIELD_START;
+		for (int k = 1; k < chunks; k++) {
+			state = scans[k - 1].exits[state];
+			if (scans[k].newlines[state] >= 0)
+				starts[ranges++] = (long) k * chunkSize + scans[k].newlines[state] + 1;
+		}
+		starts[ranges++] = size;
+		return Arrays.copyOf(starts, ranges);
+	}
+
+	/**
+	* Scans a chunk from every state the parser can be in at its start, all at once: the states only differ until they meet,
+	* usually at the first newline, after which the chunk is scanned once
+	*/
+	private Scan scan(FileChannel input, long start) throws IOException {
+		int length = (int) Math.min(chunkSize, size - start);
+		byte bytes[] = read(input, start, start + length);
+		Scan scan = new Scan();
+
+		// without quotes, every newline ends a record, so only the first one matters
+		if (!quoted) {
+			for (int i = 0; i < length; i++)
+				if (bytes[i] == '\n') {
+					Arrays.fill(scan.newlines, i);
+					break;
+				}
+			return scan;
+		}
+
+		int states[] = {FIELD_START, UNQUOTED, IN_QUOTES, QUOTE_IN_QUOTES}, missing = STATES, i = 0;
+		boolean met = false;
+		for (; i < length && !met; i++) {
+			byte b = bytes[i];
+			met = true;
+			for (int k = 0; k < STATES; k++) {
+				if (b == '\n' && states[k] != IN_QUOTES && scan.newlines[k] < 0) {
+					scan.newlines[k] = i;
+					missing--;
+				}
+				states[k] = next(states[k], b);
+				met &= states[k] == states[0];
+			}
+		}
+
+		// every state is now the same: the ones which haven't ended a record yet end it at the next newline which does
+		int state = states[0];
+		for (; i < length; i++) {
+			byte b = bytes[i];
+			if (missing > 0 && b == '\n' && state != IN_QUOTES) {
+				for (int k = 0; k < STATES; k++)
+					if (scan.newlines[k] < 0)
+						scan.newlines[k] = i;
+				missing = 0;
+			}
+			state = next(state, b);
+		}
+		if (met)
+			Arrays.fill(scan.exits, state);
+		else
+			System.arraycopy(states, 0, scan.exits, 0, STATES);
+		return scan;
+	}
+
+	/**
+	* Returns the state of the parser of quoted fields after a byte, as <code>Parser.next</code> reads it
+	*/
+	private int next(int state, byte b) {
+		switch (state) {
+			case IN_QUOTES:
+				return b == '"' ? QUOTE_IN_QUOTES : IN_QUOTES;
+			case QUOTE_IN_QUOTES:
+				// a doubled quote is a quote; otherwise the quoted field is closed, and the byte read as in an unquoted field
+				if (b == '"')
+					return IN_QUOTES;
+				return b == delimiter || b == '\n' ? FIELD_START : UNQUOTED;
+			case FIELD_START:
+				// only a quote at the start of a field opens a quoted field
+				if (b == '"')
+					return IN_QUOTES;
+				return b == delimiter || b == '\n' ? FIELD_START : UNQUOTED;
+			default:
+				return b == delimiter || b == '\n' ? FIELD_START : UNQUOTED;
+		}
+	}
+
+	/**
+	* Parses the records of a range, and appends them to the partitions of their category, in one write per partition
+	*/
+	private void parse(FileChannel input, long start, long end, boolean skipFirst, FileChannel outputs[]) throws IOException {
+		progress(0);
+		byte bytes[] = read(input, start, end);
+		int length = (int) (end - start);
+		Spill partitions[] = new Spill[outputs.length];
+		Parser parser = new Parser();
+		long imported = 0, bad = 0;
+
+		for (int i = 0, next; i < length; i = next) {
+			next = parser.next(bytes, i, length);
+			if (skipFirst && i == 0)
+				continue;
+
+			int category = columns[CATEGORY], clue = columns[CLUE], response = columns[RESPONSE];
+			if (!parser.clean(category) | !parser.clean(clue) | !parser.clean(response)) {
+				// an empty line isn't a record
+				if (parser.fields > 1 || parser.length(0) > 0)
+					bad++;
+				continue;
+			}
+
+			// the fields are copied as they are, without decoding them
+			int p = partition(parser.hash(category), 0, outputs.length);
+			if (partitions[p] == null)
+				partitions[p] = new Spill();
+			Spill spill = partitions[p];
+			spill.number(start + i).append('\t').number(parser.value(columns[VALUE])).append('\t');
+			parser.copy(category, spill);
+			parser.copy(clue, spill.append('\t'));
+			parser.copy(response, spill.append('\t'));
+			spill.append('\n');
+			imported++;
+		}
+
+		for (int p = 0; p < outputs.length; p++) {
+			if (partitions[p] == null)
+				continue;
+			ByteBuffer buffer = ByteBuffer.wrap(partitions[p].bytes, 0, partitions[p].length);
+			synchronized (outputs[p]) {
+				while (buffer.hasRemaining())
+					outputs[p].write(buffer);
+			}
+		}
+		records.addAndGet(imported);
+		rejected.addAndGet(bad);
+		progress(end - start);
+	}
+
+	/**
+	* Tells the monitor, if there is one, how many bytes have been parsed, once a range is done
+	* @param bytes the number of bytes of the range
+	* @throws CancellationException if the monitor cancelled the import
+	*/
+	private void progress(long bytes) {
+		if (monitor == null)
+			return;
+		if (monitor.isCancelled())
+			throw new CancellationException();
+
+		// the ranges are parsed in parallel, and the progress only goes forward
+		synchronized (this) {
+			parsed += bytes;
+			monitor.bytesRead(parsed, size);
+		}
+	}
+
+	/**
+	* Reads a range of the dump into the buffer of the thread
+	*/
+	private byte[] read(FileChannel input, long start, long end) throws IOException {
+		int length = (int) (end - start);
+		byte bytes[] = buffers.get();
+		if (bytes.length < length) {
+			bytes = new byte[length];
+			buffers.set(bytes);
+		}
+
+		long begin = System.nanoTime();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+		while (buffer.hasRemaining())
+			if (input.read(buffer, start + buffer.position()) < 0)
+				throw new IOException("the dump was truncated");
+		readNanos.addAndGet(System.nanoTime() - begin);
+		return bytes;
+	}
+
+	/**
+	* Groups the records of a partition by category, and deals the clues of every category, sorted by value, into columns of <code>rows</code> clues.
+	* The categories come in the order they appear in the dump.
+	*/
+	private Database group(Path spill) throws IOException {
+		HashMap<String, List<Row>> categories = new HashMap<String, List<Row>>();
+		byte bytes[] = Files.readAllBytes(spill);
+		int tabs[] = new int[4];
+		for (int line = 0, end; line < bytes.length; line = end + 1) {
+			int found = 0;
+			for (end = line; bytes[end] != '\n'; end++)
+				if (bytes[end] == '\t' && found < tabs.length)
+					tabs[found++] = end;
+
+			String category = new String(bytes, tabs[1] + 1, tabs[2] - tabs[1] - 1, StandardCharsets.UTF_8);
+			categories.computeIfAbsent(category, c -> new ArrayList<Row>()).add(new Row(number(bytes, line, tabs[0]), (int) number(bytes, tabs[0] + 1, tabs[1]),
+				new String(bytes, tabs[2] + 1, tabs[3] - tabs[2] - 1, StandardCharsets.UTF_8), new String(bytes, tabs[3] + 1, end - tabs[3] - 1, StandardCharsets.UTF_8)));
+		}
+
+		// the chunks were spilled in any order: the offsets put the records back in the order of the dump
+		List<String> names = new ArrayList<String>(categories.keySet());
+		int columnCount = 0;
+		long left = 0;
+		for (String name : names) {
+			List<Row> clues = categories.get(name);
+			clues.sort(Comparator.comparingLong((Row row) -> row.offset));
+			columnCount += clues.size() / rows;
+			left += clues.size() % rows;
+		}
+		names.sort(Comparator.comparingLong((String name) -> categories.get(name).get(0).offset));
+
+		Database database = new Database(columnCount, rows);
+		int column = 0;
+		for (String name : names) {
+			List<Row> clues = categories.get(name);
+			clues.sort(Comparator.comparingInt((Row row) -> row.value));
+			int count = clues.size() / rows;
+
+			// column c gets clues c, c + count, c + 2 * count... so every column goes from the cheapest clues to the most expensive ones
+			for (int c = 0; c < count; c++, column++) {
+				database.setCategory(column, name);
+				for (int i = 0; i < rows; i++) {
+					Row row = clues.get(i * count + c);
+					database.setQuestion(column, i, new Question(row.clue, row.response));
+				}
+			}
+		}
+
+		synchronized (this) {
+			leftOver += left;
+			written += columnCount;
+		}
+		return database;
+	}
+
+	/**
+	* Static method that reads the digits of a number spilled
+	*/
+	private static long number(byte bytes[], int start, int end) {
+		long value = 0;
+		for (int k = start; k < end; k++)
+			value = value * 10 + bytes[k] - '0';
+		return value;
+	}
+
+	/**
+	* Runs a parallel stream on a pool of <code>threads</code> threads, and rethrows what went wrong in it
+	*/
+	private <T> T run(Callable<T> task) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(task).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("the import was interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	* Static method that deletes a directory and what it contains, if it exists
+	*/
+	private static void delete(Path directory) {
+		if (directory == null)
+			return;
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// only temporary files are left behind
+		}
+	}
+
+	/**
+	* Cuts the records of a range into fields, unquoting them in a buffer reused from one record to the next
+	*/
+	private class Parser {
+
+		/**
+		* The unquoted bytes of the fields of the record, and where every field starts and ends in them
+		*/
+		private byte field[] = new byte[1024];
+		private int starts[] = new int[16], ends[] = new int[16];
+		int fields;
+
+		/**
+		* Reads the record starting at a position
+		* @return the position of the next record
+		*/
+		int next(byte bytes[], int position, int length) {
+			int used = 0;
+			fields = 0;
+			boolean inQuotes = false, fieldStart = true;
+			newField(0);
+
+			// the bytes between two special ones are copied at once
+			int i = position;
+			while (i < length) {
+				int run = i;
+				if (inQuotes) {
+					while (run < length && bytes[run] != '"')
+						run++;
+					used = append(bytes, i, run, used);
+					if ((i = run) == length)
+						break;
+
+					// a doubled quote is a quote, otherwise the field is closed
+					if (i + 1 < length && bytes[i + 1] == '"') {
+						used = append(bytes, i, i + 1, used);
+						i += 2;
+					} else {
+						inQuotes = false;
+						i++;
+					}
+					continue;
+				}
+
+				if (fieldStart && quoted && bytes[i] == '"') {
+					inQuotes = true;
+					fieldStart = false;
+					i++;
+					continue;
+				}
+
+				while (run < length && bytes[run] != delimiter && bytes[run] != '\n')
+					run++;
+				if (run > i) {
+					used = append(bytes, i, run, used);
+					fieldStart = false;
+				}
+				if ((i = run) == length)
+					break;
+
+				i++;
+				if (bytes[run] == '\n')
+					break;
+				ends[fields - 1] = used;
+				newField(used);
+				fieldStart = true;
+			}
+
+			// a line ending in \r\n
+			if (used > starts[fields - 1] && field[used - 1] == '\r')
+				used--;
+			ends[fields - 1] = used;
+			return i;
+		}
+
+		/**
+		* Starts a new field
+		*/
+		private void newField(int start) {
+			if (fields == starts.length) {
+				starts = Arrays.copyOf(starts, fields * 2);
+				ends = Arrays.copyOf(ends, fields * 2);
+			}
+			starts[fields++] = start;
+		}
+
+		/**
+		* Appends bytes to the current field
+		*/
+		private int append(byte bytes[], int start, int end, int used) {
+			if (used + end - start > field.length)
+				field = Arrays.copyOf(field, Math.max(field.length * 2, used + end - start));
+			System.arraycopy(bytes, start, field, used, end - start);
+			return used + end - start;
+		}
+
+		/**
+		* Returns the length of a field of the record
+		*/
+		int length(int column) {
+			return column >= 0 && column < fields ? ends[column] - starts[column] : 0;
+		}
+
+		/**
+		* Puts a field of the record on a single line and trims it, in place: a question file has one line per field,
+		* and the partitions one field per tab. The bytes of these characters can't be part of another character in UTF-8.
+		* @return false if the field is missing or empty
+		*/
+		boolean clean(int column) {
+			if (length(column) == 0)
+				return false;
+
+			int end = starts[column];
+			for (int k = starts[column]; k < ends[column]; k++) {
+				byte b = field[k];
+				if (b == '\r' && k + 1 < ends[column] && field[k + 1] == '\n')
+					continue;
+				field[end++] = b == '\r' || b == '\n' || b == '\t' ? (byte) ' ' : b;
+			}
+
+			// the same characters as String.trim
+			int start = starts[column];
+			while (start < end && field[start] >= 0 && field[start] <= ' ')
+				start++;
+			while (end > start && field[end - 1] >= 0 && field[end - 1] <= ' ')
+				end--;
+			starts[column] = start;
+			ends[column] = end;
+			return start < end;
+		}
+
+		/**
+		* Returns the hash of the bytes of a field of the record
+		*/
+		int hash(int column) {
+			int hash = 0;
+			for (int k = starts[column]; k < ends[column]; k++)
+				hash = 31 * hash + field[k];
+			return hash;
+		}
+
+		/**
+		* Copies the bytes of a field of the record to a spill
+		*/
+		void copy(int column, Spill spill) {
+			spill.append(field, starts[column], ends[column]);
+		}
+
+		/**
+		* Returns a field of the record on a single line, trimmed, or null if it is missing or empty
+		*/
+		String field(int column) {
+			return clean(column) ? new String(field, starts[column], length(column), StandardCharsets.UTF_8) : null;
+		}
+
+		/**
+		* Returns the value of the record, e.g. 400 for "$400" or "1,200", or Integer.MAX_VALUE if there is none, as in a final round
+		*/
+		int value(int column) {
+			long value = 0;
+			boolean digits = false;
+			boolean present = column >= 0 && column < fields;
+			for (int k = present ? starts[column] : 0, end = present ? ends[column] : 0; k < end; k++) {
+				if (field[k] >= '0' && field[k] <= '9') {
+					value = Math.min(Integer.MAX_VALUE, value * 10 + field[k] - '0');
+					digits = true;
+				} else if (field[k] == '.')
+					break;
+			}
+			return digits ? (int) value : Integer.MAX_VALUE;
+		}
+
+		/**
+		* Decides which columns are read if the record names the columns
+		* @param columns receives the index of every column read
+		* @return true if the record names the columns, and is not a record of clues
+		*/
+		boolean readHeader(int columns[]) {
+			int found[] = new int[COLUMN_NAMES.length];
+			Arrays.fill(found, -1);
+			for (int column = 0; column < fields; column++) {
+				String name = field(column);
+				for (int k = 0; k < COLUMN_NAMES.length && name != null; k++)
+					if (found[k] < 0 && Arrays.asList(COLUMN_NAMES[k]).contains(name.toLowerCase(Locale.ROOT).replace(' ', '_')))
+						found[k] = column;
+			}
+
+			// a missing column reads as empty
+			if (found[CATEGORY] < 0)
+				return false;
+			System.arraycopy(found, 0, columns, 0, found.length);
+			return true;
+		}
+	}
+
+	/**
+	* Imports a dump as question files, and prints what was imported and the time it took
+	* @param args the dump, the directory receiving the question files, the number of questions per category (5 by default),
+	* the number of threads (the number of processors by default), and the size of a chunk in megabytes (8 by default)
+	*/
+	public static void main(String args[]) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: java ClueImporter <dump.csv or dump.tsv> <directory> [rows] [threads] [chunk megabytes]");
+			System.exit(2);
+		}
+		int rows = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROWS;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		int chunkSize = args.length > 4 ? Integer.parseInt(args[4]) << 20 : CHUNK_SIZE;
+
+		long start = System.nanoTime();
+		ClueImporter importer = new ClueImporter(args[0], rows, threads, chunkSize);
+		List<Path> files = importer.importBanks(Paths.get(args[1]));
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		for (Path file : files)
+			System.out.println(file);
+		System.out.printf("%d records imported, %d rejected, %d columns of %d clues written, %d clues left over%n",
+			importer.records.get(), importer.rejected.get(), importer.written, rows, importer.leftOver);
+		System.out.printf("%.1f MB in %.2f s on %d threads: %.1f MB/s%n", importer.size / 1048576.0, seconds, threads, importer.size / 1048576.0 / seconds);
+	}
+}
@@ -0,0 +1,1204 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A full-text index of the clues of many question files, to find in which bank a clue is while preparing a game.
+* Every clue is a document made of the words of its category, its "answer" and its "question", folded as by <code>ResponseMatcher.fold</code>.
+* For every word, the index keeps the clues containing it and the positions of the word in them (the postings), as variable-length ints:
+* the difference from the previous clue, the number of positions, and the differences between the positions. The postings of a word are
+* cut in blocks of BLOCK clues, and a word of several blocks starts with a skip table, so the intersection of a rare word with a frequent one
+* jumps over the blocks which can't match.
+*
+* A query is a list of words which must all be in the clue: a word, a prefix ("posid*"), or a phrase in quotes ("red planet").
+*
+* The index is written once in a single file, which is mapped in memory when it is opened: opening it reads nothing but its header.
+* The file is made of, in order: a header (MAGIC, the numbers of clues, categories, files and words, and the position of every section);
+* the UTF-8 strings (the "answer" and "question" of every clue, then the categories, then the paths of the files); the offsets of the strings;
+* the category and question of every clue; the file of every category; the first category of every file; the offsets of the words;
+* the words, in the order of their UTF-8 bytes; the number of clues of every word; the offsets of the postings; the postings.
+*
+* e.g. java ClueIndex build questions.jci questions, then java ClueIndex search questions.jci "posid*" "red planet"
+*/
+public class ClueIndex {
+
+	/**
+	* Extension of the index files, and their first int ("JCI1")
+	*/
+	static final String EXTENSION = ".jci";
+	static final int MAGIC = 0x4A434931;
+
+	/**
+	* Number of clues of a block of postings
+	*/
+	static final int BLOCK = 128;
+
+	/**
+	* Number of clues shown by default for a query
+	*/
+	static final int DEFAULT_LIMIT = 20;
+
+	/**
+	* The postings are sorted, compressed and written to a temporary file every this many positions, while the index is built,
+	* so the positions take little memory
+	*/
+	private static final int BATCH_POSITIONS = 1 << 22;
+
+	/**
+	* The sections of the file, in the order of their positions in the header; the strings start right after the header
+	*/
+	private static final int STRING_OFFSETS = 0, CLUES = 1, CATEGORY_FILES = 2, FILE_CATEGORIES = 3, WORD_OFFSETS = 4, WORDS = 5,
+		CLUE_COUNTS = 6, POSTING_OFFSETS = 7, POSTINGS = 8, END = 9, SECTIONS = 10;
+	private static final int HEADER_SIZE = 20 + 4 * SECTIONS;
+
+	/**
+	* Returned by a cursor once it has no more clues
+	*/
+	private static final int NO_MORE = Integer.MAX_VALUE;
+
+	/**
+	* A clue found by a query
+	*/
+	public static class Hit {
+		private final String file, category, response, question;
+		private final int categoryIndex, questionIndex;
+
+		private Hit(String file, String category, int categoryIndex, int questionIndex, String response, String question) {
+			this.file = file;
+			this.category = category;
+			this.categoryIndex = categoryIndex;
+			this.questionIndex = questionIndex;
+			this.response = response;
+			this.question = question;
+		}
+
+		/**
+		* getter that returns the question file of the clue
+		* @return the path to the file, as it was given when the index was built
+		*/
+		public String getFile() {
+			return file;
+		}
+
+		/**
+		* getter that returns the category of the clue
+		* @return the category
+		*/
+		public String getCategory() {
+			return category;
+		}
+
+		/**
+		* getter that returns the index of the category of the clue in its file
+		* @return the index of the category
+		*/
+		public int getCategoryIndex() {
+			return categoryIndex;
+		}
+
+		/**
+		* getter that returns the index of the clue in its category
+		* @return the index of the question
+		*/
+		public int getQuestionIndex() {
+			return questionIndex;
+		}
+
+		/**
+		* getter that returns the "answer" of the clue
+		* @return the "answer"
+		*/
+		public String getResponse() {
+			return response;
+		}
+
+		/**
+		* getter that returns the "question" of the clue
+		* @return the "question"
+		*/
+		public String getQuestion() {
+			return question;
+		}
+	}
+
+	/**
+	* The clues matching a part of a query, in increasing order
+	*/
+	private interface Cursor {
+		/**
+		* Moves to the next clue
+		* @return the clue, or NO_MORE
+		*/
+		int next();
+
+		/**
+		* Moves to the first clue at least equal to target, which is after the current clue
+		* @return the clue, or NO_MORE
+		*/
+		int advance(int target);
+
+		/**
+		* Returns an estimate of the number of clues, to iterate over the rarest part of the query
+		*/
+		int cost();
+	}
+
+	/**
+	* The whole index file, mapped in memory
+	*/
+	private final MappedByteBuffer buffer;
+
+	/**
+	* The numbers of clues, categories, files and words, and the position of every section
+	*/
+	private final int clues, categories, files, words;
+	private final int sections[] = new int[SECTIONS];
+
+	/**
+	* Constructs a <code>ClueIndex</code> over an already mapped and checked file
+	*/
+	private ClueIndex(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		clues = buffer.getInt(4);
+		categories = buffer.getInt(8);
+		files = buffer.getInt(12);
+		words = buffer.getInt(16);
+		for (int k = 0; k < SECTIONS; k++)
+			sections[k] = buffer.getInt(20 + 4 * k);
+	}
+
+	/**
+	* Builds the index of question files, or searches an index
+	* @param args "build", the index to write and the files and directories to index; or "search", the index and the queries,
+	* optionally followed by "-limit N"; without queries, they are read from the standard input, one per line
+	*/
+	public static void main(String args[]) throws Exception {
+		if (args.length >= 3 && args[0].equals("build")) {
+			long start = System.nanoTime();
+			List<Path> files = BankValidator.findFiles(Arrays.asList(args).subList(2, args.length));
+			build(files, Paths.get(args[1]));
+			ClueIndex index = open(Paths.get(args[1]));
+			System.out.println("{\"files\": " + index.files + ", \"clues\": " + index.clues + ", \"words\": " + index.words + ", \"bytes\": "
+				+ index.buffer.capacity() + ", \"millis\": " + (System.nanoTime() - start) / 1000000 + "}");
+			return;
+		}
+
+		if (args.length < 2 || !args[0].equals("search")) {
+			System.err.println("usage: java ClueIndex build <index> <file or directory>...\n       java ClueIndex search <index> [-limit N] [query...]");
+			System.exit(2);
+		}
+
+		ClueIndex index = open(Paths.get(args[1]));
+		int limit = DEFAULT_LIMIT;
+		List<String> queries = new ArrayList<String>(Arrays.asList(args).subList(2, args.length));
+		if (queries.size() >= 2 && queries.get(0).equals("-limit")) {
+			limit = Integer.parseInt(queries.get(1));
+			queries = queries.subList(2, queries.size());
+		}
+
+		if (!queries.isEmpty()) {
+			for (String query : queries)
+				index.print(System.out, query, limit);
+			return;
+		}
+
+		// a session of preparation: one query per line
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		for (String query = in.readLine(); query != null; query = in.readLine())
+			if (!query.trim().isEmpty())
+				index.print(System.out, query, limit);
+	}
+
+	/**
+	* Static method that maps an index file in memory, and returns a <code>ClueIndex</code> searching it
+	* @param path the index file, as written by <code>build</code>
+	* @return the <code>ClueIndex</code> reading from the file
+	* @throws IOException if the file can't be read, or isn't a complete index
+	*/
+	public static ClueIndex open(Path path) throws IOException {
+		MappedByteBuffer buffer;
+
+		// map the whole file; the mapping stays valid once the channel is closed
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_SIZE)
+				throw new IOException(path + " isn't a clue index");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException(path + " isn't a clue index");
+		ClueIndex index = new ClueIndex(buffer);
+		if (index.sections[END] != buffer.capacity())
+			throw new IOException(path + " isn't a complete clue index");
+		return index;
+	}
+
+	/**
+	* getter that returns the number of clues in the index
+	* @return the number of clues
+	*/
+	public int getNumClues() {
+		return clues;
+	}
+
+	/**
+	* Finds the clues containing every word, prefix and phrase of a query, in the order of the files and of their clues
+	* @param query the words which must be in the clues, a word ending with "*" being a prefix, and the words in quotes a phrase
+	* @param limit the largest number of clues to return
+	* @param hits receives the first clues found, at most limit
+	* @return the number of clues found
+	*/
+	public int search(String query, int limit, List<Hit> hits) {
+		List<Cursor> parts = parse(query);
+		if (parts == null)
+			return 0;
+
+		// iterate over the rarest part, and only look for its clues in the other parts
+		parts.sort((a, b) -> Integer.compare(a.cost(), b.cost()));
+		Cursor lead = parts.get(0);
+		int found = 0;
+
+		int clue = lead.next();
+		while (clue != NO_MORE) {
+			int target = clue;
+			for (int k = 1; k < parts.size() && target == clue; k++)
+				target = parts.get(k).advance(clue);
+
+			if (target != clue) {
+				clue = lead.advance(target);
+				continue;
+			}
+
+			if (found++ < limit)
+				hits.add(hit(clue));
+			clue = lead.next();
+		}
+		return found;
+	}
+
+	/**
+	* Searches a query, and prints the clues found as JSON
+	*/
+	private void print(PrintStream out, String query, int limit) {
+		long start = System.nanoTime();
+		List<Hit> hits = new ArrayList<Hit>();
+		int found = search(query, limit, hits);
+		long elapsed = System.nanoTime() - start;
+
+		StringBuilder json = new StringBuilder("{\"query\": ").append(Json.quote(query)).append(", \"found\": ").append(found)
+			.append(", \"micros\": ").append(elapsed / 1000).append(", \"clues\": [");
+		for (int k = 0; k < hits.size(); k++) {
+			Hit hit = hits.get(k);
+			json.append(k > 0 ? "," : "").append("\n  {\"file\": ").append(Json.quote(hit.file)).append(", \"category\": ").append(Json.quote(hit.category))
+				.append(", \"cell\": [").append(hit.categoryIndex).append(", ").append(hit.questionIndex).append("], \"answer\": ").append(Json.quote(hit.response))
+				.append(", \"question\": ").append(Json.quote(hit.question)).append("}");
+		}
+		out.println(json.append(hits.isEmpty() ? "]}" : "\n]}"));
+	}
+
+	/**
+	* Turns a query into a cursor for every word, prefix and phrase
+	* @return the cursors, or null if a part of the query can't match
+	*/
+	private List<Cursor> parse(String query) {
+		List<Cursor> parts = new ArrayList<Cursor>();
+		char folded[] = new char[query.length() + 1];
+		int k = 0;
+
+		while (k < query.length()) {
+			char c = query.charAt(k);
+			if (Character.isWhitespace(c)) {
+				k++;
+				continue;
+			}
+
+			// a phrase, up to the closing quote, or a word, up to the next space
+			int end;
+			boolean phrase = c == '"';
+			if (phrase) {
+				end = query.indexOf('"', k + 1);
+				end = end < 0 ? query.length() : end;
+				k++;
+			} else {
+				end = k;
+				while (end < query.length() && !Character.isWhitespace(query.charAt(end)))
+					end++;
+			}
+
+			String part = query.substring(k, end);
+			k = end + 1;
+			boolean prefix = !phrase && part.endsWith("*");
+			int length = ResponseMatcher.fold(prefix ? part.substring(0, part.length() - 1) : part, folded);
+			if (length <= 0)
+				continue;
+
+			// a word folded into several words, as "o'neil-smith", is a phrase too
+			String terms[] = new String(folded, 0, length).split(" ");
+			Cursor cursor;
+			if (prefix && terms.length == 1)
+				cursor = prefix(terms[0]);
+			else if (terms.length == 1)
+				cursor = word(terms[0]);
+			else
+				cursor = phrase(terms);
+
+			if (cursor == null)
+				return null;
+			parts.add(cursor);
+		}
+
+		return parts.isEmpty() ? null : parts;
+	}
+
+	/**
+	* Returns the postings of a word, or null if no clue contains it
+	*/
+	private Postings word(String term) {
+		byte bytes[] = term.getBytes(StandardCharsets.UTF_8);
+		int w = find(bytes, false);
+		return w < words && compare(w, bytes, false) == 0 ? new Postings(w) : null;
+	}
+
+	/**
+	* Returns the clues containing a word starting with a prefix, or null if there are none
+	*/
+	private Cursor prefix(String term) {
+		byte bytes[] = term.getBytes(StandardCharsets.UTF_8);
+		int from = find(bytes, false), to = find(bytes, true);
+		if (from == to)
+			return null;
+		if (to - from == 1)
+			return new Postings(from);
+
+		// the clues of every word are marked in a bitset, which is then read in order
+		final long marked[] = new long[(clues + 63) >>> 6];
+		int count = 0;
+		for (int w = from; w < to; w++) {
+			Postings postings = new Postings(w);
+			for (int clue = postings.next(); clue != NO_MORE; clue = postings.next())
+				marked[clue >>> 6] |= 1L << clue;
+		}
+		for (long bits : marked)
+			count += Long.bitCount(bits);
+
+		final int cost = count;
+		return new Cursor() {
+			int clue = -1;
+
+			public int next() {
+				return clue == NO_MORE ? NO_MORE : advance(clue + 1);
+			}
+
+			public int advance(int target) {
+				if (clue >= target)
+					return clue;
+				int word = target >>> 6;
+				if (target >= clues)
+					return clue = NO_MORE;
+				long bits = marked[word] & (-1L << target);
+				while (bits == 0) {
+					if (++word == marked.length)
+						return clue = NO_MORE;
+					bits = marked[word];
+				}
+				return clue = word * 64 + Long.numberOfTrailingZeros(bits);
+			}
+
+			public int cost() {
+				return cost;
+			}
+		};
+	}
+
+	/**
+	* Returns the clues containing the words of a phrase one after the other, or null if a word is in no clue
+	*/
+	private Cursor phrase(String terms[]) {
+		final Postings postings[] = new Postings[terms.length];
+		for (int k = 0; k < terms.length; k++)
+			if ((postings[k] = word(terms[k])) == null)
+				return null;
+
+		return new Cursor() {
+			int clue = -1, positions[][] = new int[postings.length][];
+
+			public int next() {
+				return clue = match(postings[0].next());
+			}
+
+			public int advance(int target) {
+				return clue >= target ? clue : (clue = match(postings[0].advance(target)));
+			}
+
+			public int cost() {
+				int cost = NO_MORE;
+				for (Postings word : postings)
+					cost = Math.min(cost, word.cost());
+				return cost;
+			}
+
+			/**
+			* Moves to the first clue, from the clue of the first word, containing every word at consecutive positions
+			*/
+			private int match(int clue) {
+				while (clue != NO_MORE) {
+					int target = clue;
+					for (int k = 1; k < postings.length && target == clue; k++)
+						target = postings[k].advance(clue);
+
+					if (target == clue && consecutive())
+						return clue;
+					clue = postings[0].advance(target == clue ? clue + 1 : target);
+				}
+				return NO_MORE;
+			}
+
+			private boolean consecutive() {
+				for (int k = 0; k < postings.length; k++)
+					positions[k] = postings[k].positions();
+
+				for (int start : positions[0]) {
+					int k = 1;
+					while (k < postings.length && Arrays.binarySearch(positions[k], start + k) >= 0)
+						k++;
+					if (k == postings.length)
+						return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	* The postings of a word, read from the mapped file
+	*/
+	private class Postings implements Cursor {
+		private final int count, blocks, skips, data;
+		private int clue = -1, read = 0, position, positionsAt, frequency;
+
+		Postings(int word) {
+			count = buffer.getInt(sections[CLUE_COUNTS] + 4 * word);
+			blocks = (count + BLOCK - 1) / BLOCK;
+			skips = sections[POSTINGS] + buffer.getInt(sections[POSTING_OFFSETS] + 4 * word);
+			data = blocks > 1 ? skips + 8 * blocks : skips;
+			position = data;
+		}
+
+		public int next() {
+			if (read == count)
+				return clue = NO_MORE;
+
+			// skip the positions of the current clue if they weren't read
+			if (positionsAt >= 0)
+				for (int k = 0; k < frequency; k++)
+					while (buffer.get(position++) < 0)
+						;
+
+			clue += readVarint();
+			frequency = readVarint();
+			positionsAt = position;
+			read++;
+			return clue;
+		}
+
+		public int advance(int target) {
+			if (clue >= target)
+				return clue;
+
+			// jump to the last block starting before the target, if it is after the current one; the table holds for every block
+			// the last clue before it, and the position of its first byte
+			if (blocks > 1 && read < count && (read / BLOCK + 1 < blocks) && buffer.getInt(skips + 8 * (read / BLOCK + 1)) < target) {
+				int low = read / BLOCK + 1, high = blocks - 1;
+				while (low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if (buffer.getInt(skips + 8 * middle) < target)
+						low = middle;
+					else
+						high = middle - 1;
+				}
+				clue = buffer.getInt(skips + 8 * low);
+				position = data + buffer.getInt(skips + 8 * low + 4);
+				read = low * BLOCK;
+				positionsAt = -1;
+			}
+
+			while (clue < target)
+				next();
+			return clue;
+		}
+
+		public int cost() {
+			return count;
+		}
+
+		/**
+		* Returns the positions of the word in the current clue
+		*/
+		int[] positions() {
+			int positions[] = new int[frequency];
+			position = positionsAt;
+			for (int k = 0, at = 0; k < frequency; k++)
+				positions[k] = at += readVarint();
+			positionsAt = -1;
+			return positions;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = buffer.get(position++);
+				value |= (b & 0x7F) << shift;
+				if (b >= 0)
+					return value;
+			}
+		}
+	}
+
+	/**
+	* Returns the first word which isn't before the given bytes, or, if after is true, the first word which doesn't start with them
+	*/
+	private int find(byte term[], boolean after) {
+		int low = 0, high = words;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int order = compare(middle, term, after);
+			if (order < 0 || after && order == 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	* Compares a word of the index to the given bytes, as unsigned bytes; if prefix is true, a word starting with them is equal
+	*/
+	private int compare(int word, byte term[], boolean prefix) {
+		int start = sections[WORDS] + buffer.getInt(sections[WORD_OFFSETS] + 4 * word);
+		int length = sections[WORDS] + buffer.getInt(sections[WORD_OFFSETS] + 4 * word + 4) - start;
+		for (int k = 0; k < Math.min(length, term.length); k++) {
+			int order = Integer.compare(buffer.get(start + k) & 0xFF, term[k] & 0xFF);
+			if (order != 0)
+				return order;
+		}
+		return prefix && length >= term.length ? 0 : Integer.compare(length, term.length);
+	}
+
+	/**
+	* Returns a clue of the index, with its texts and where it comes from
+	*/
+	private Hit hit(int clue) {
+		int category = buffer.getInt(sections[CLUES] + 8 * clue), question = buffer.getInt(sections[CLUES] + 8 * clue + 4);
+		int file = buffer.getInt(sections[CATEGORY_FILES] + 4 * category);
+		return new Hit(string(2 * clues + categories + file), string(2 * clues + category), category - buffer.getInt(sections[FILE_CATEGORIES] + 4 * file),
+			question, string(2 * clue), string(2 * clue + 1));
+	}
+
+	/**
+	* Decodes a string of the index
+	*/
+	private String string(int k) {
+		int start = buffer.getInt(sections[STRING_OFFSETS] + 4 * k), end = buffer.getInt(sections[STRING_OFFSETS] + 4 * k + 4);
+		byte bytes[] = new byte[end - start];
+		buffer.get(HEADER_SIZE + start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	* Static method that builds the index of question files, text or compiled, and writes it to a file.
+	* The files are streamed: the texts are written as they are read, and the positions are sorted, compressed and written to a temporary file
+	* every BATCH_POSITIONS, next to the index; the postings of every word are then merged from that file, so only the words are kept in memory.
+	* @param banks the question files to index
+	* @param path the index file to write
+	* @throws IOException if a file can't be read, or the index can't be written
+	* @throws DatabaseFormatException if a file doesn't respect the format
+	*/
+	public static void build(List<Path> banks, Path path) throws IOException, DatabaseFormatException {
+		Path spill = Files.createTempFile(path.toAbsolutePath().getParent(), "clues", ".tmp");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				FileChannel batches = FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+			new Builder(channel, batches).build(banks);
+		} finally {
+			Files.deleteIfExists(spill);
+		}
+	}
+
+	/**
+	* Writes an index: the strings as the clues are read, then the tables, then the postings of every word
+	*/
+	private static class Builder {
+		private final Output out;
+
+		/**
+		* The words, by number in the order they were first seen, as UTF-8 bytes, and the number of clues of every word
+		*/
+		private final HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+		private final ArrayList<byte[]> words = new ArrayList<byte[]>();
+		private final IntList wordClues = new IntList();
+
+		/**
+		* The offsets of the strings, the category and question of every clue, the file of every category and the first category of every file
+		*/
+		private IntList stringOffsets = new IntList(), clueCells = new IntList(), categoryFiles = new IntList(), fileCategories = new IntList();
+		private ArrayList<String> categoryNames = new ArrayList<String>();
+
+		/**
+		* The words of every category, as numbers, computed once per category
+		*/
+		private int categoryWords[][];
+
+		/**
+		* The positions of the current batch: the word, the clue and the position of every word of every clue
+		*/
+		private IntList batchWords = new IntList(), batchClues = new IntList(), batchPositions = new IntList();
+
+		/**
+		* The temporary file of the postings of the previous batches, every batch sorted by the bytes of its words, and where every batch ends
+		*/
+		private final FileChannel spillChannel;
+		private final Output spill;
+		private final ArrayList<Long> batchEnds = new ArrayList<Long>();
+
+		/**
+		* The postings of a word in the batch being written
+		*/
+		private final ByteList record = new ByteList();
+
+		private char folded[] = new char[256];
+		private int clues = 0;
+
+		Builder(FileChannel channel, FileChannel batches) {
+			out = new Output(channel);
+			spillChannel = batches;
+			spill = new Output(batches);
+		}
+
+		void build(List<Path> banks) throws IOException, DatabaseFormatException {
+			out.skip(HEADER_SIZE);
+			stringOffsets.add(0);
+
+			for (int f = 0; f < banks.size(); f++)
+				read(banks.get(f), f);
+			flushBatch();
+
+			// the categories and the files, after the texts of the clues
+			int sections[] = new int[SECTIONS];
+			for (String category : categoryNames)
+				addString(category);
+			for (Path bank : banks)
+				addString(bank.toString());
+
+			sections[STRING_OFFSETS] = out.position();
+			out.putInts(stringOffsets);
+			sections[CLUES] = out.position();
+			out.putInts(clueCells);
+			sections[CATEGORY_FILES] = out.position();
+			out.putInts(categoryFiles);
+			sections[FILE_CATEGORIES] = out.position();
+			out.putInts(fileCategories);
+
+			// the words, in the order of their bytes, so the words of a prefix follow each other
+			Integer order[] = new Integer[words.size()];
+			for (int w = 0; w < order.length; w++)
+				order[w] = w;
+			Arrays.sort(order, byBytes);
+
+			sections[WORD_OFFSETS] = out.position();
+			IntList offsets = new IntList();
+			int offset = 0;
+			for (Integer w : order) {
+				offsets.add(offset);
+				offset += words.get(w).length;
+			}
+			offsets.add(offset);
+			out.putInts(offsets);
+			sections[WORDS] = out.position();
+			for (Integer w : order)
+				out.put(words.get(w), 0, words.get(w).length);
+
+			// the number of clues of every word, then the postings, merged from the batches
+			sections[CLUE_COUNTS] = out.position();
+			for (Integer w : order)
+				out.putInt(wordClues.values[w]);
+			sections[POSTING_OFFSETS] = out.position();
+			out.skip(4 * words.size());
+			sections[POSTINGS] = out.position();
+
+			// every batch is read in the order of the bytes of its words, like the words of the index, so it is read once from beginning to end
+			spill.flush();
+			Run runs[] = new Run[batchEnds.size()];
+			for (int b = 0; b < runs.length; b++) {
+				runs[b] = new Run(spillChannel, b == 0 ? 0 : batchEnds.get(b - 1), batchEnds.get(b));
+				runs[b].next();
+			}
+
+			int postingOffsets[] = new int[words.size()];
+			ByteList postings = new ByteList();
+			IntList skips = new IntList();
+			for (int k = 0; k < order.length; k++) {
+				postingOffsets[k] = out.position() - sections[POSTINGS];
+				merge(order[k], runs, postings, skips);
+				if (skips.size() > 2)
+					out.putInts(skips);
+				out.put(postings.bytes, 0, postings.size);
+			}
+			sections[END] = out.position();
+			out.flush();
+
+			// the offsets of the postings, and the header, once everything is known
+			ByteBuffer table = ByteBuffer.allocate(4 * postingOffsets.length);
+			table.asIntBuffer().put(postingOffsets);
+			out.write(table, sections[POSTING_OFFSETS]);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(clues).putInt(categoryNames.size()).putInt(banks.size()).putInt(words.size());
+			for (int section : sections)
+				header.putInt(section);
+			header.flip();
+			out.write(header, 0);
+		}
+
+		/**
+		* Reads the clues of a question file, text or compiled
+		*/
+		private void read(Path bank, int file) throws IOException, DatabaseFormatException {
+			fileCategories.add(categoryNames.size());
+
+			if (bank.toString().endsWith(MappedDatabase.EXTENSION)) {
+				QuestionBank database = MappedDatabase.open(bank.toString());
+				startCategories(file, database.getNumCategories());
+				for (int j = 0; j < database.getNumCategories(); j++)
+					addCategory(j, database.getCategory(j));
+				for (int i = 0; i < database.getNumQuestions(); i++)
+					for (int j = 0; j < database.getNumCategories(); j++) {
+						Question clue = database.getQuestion(j, i);
+						addClue(j, i, clue.getResponse(), clue.getQuestion());
+					}
+				return;
+			}
+
+			try (LineReader reader = LineReader.open(bank.toString())) {
+				int m = Database.readHeader(reader), n = Database.readHeader(reader);
+				startCategories(file, m);
+				for (int j = 0; j < m; j++)
+					addCategory(j, Database.readLine(reader));
+				for (int i = 0; i < n; i++)
+					for (int j = 0; j < m; j++)
+						addClue(j, i, Database.readLine(reader), Database.readLine(reader));
+			}
+		}
+
+		private void startCategories(int file, int m) {
+			categoryWords = new int[m][];
+			for (int j = 0; j < m; j++)
+				categoryFiles.add(file);
+		}
+
+		private void addCategory(int j, String category) {
+			categoryNames.add(category);
+			IntList numbers = new IntList();
+			tokenize(category, numbers);
+			categoryWords[j] = Arrays.copyOf(numbers.values, numbers.size());
+		}
+
+		/**
+		* Writes the texts of a clue, and adds the positions of its words: the category, the "answer" and the "question" follow each other,
+		* with a position left empty between them so a phrase can't span two of them
+		*/
+		private void addClue(int category, int row, String response, String question) throws IOException {
+			int clue = clues++;
+			addString(response);
+			addString(question);
+			clueCells.add(categoryNames.size() - categoryWords.length + category);
+			clueCells.add(row);
+
+			int position = 0;
+			for (int word : categoryWords[category])
+				addPosition(word, clue, position++);
+			position = addWords(response, clue, position + 1);
+			addWords(question, clue, position + 1);
+
+			if (batchWords.size() >= BATCH_POSITIONS)
+				flushBatch();
+		}
+
+		private IntList scratch = new IntList();
+
+		private int addWords(String text, int clue, int position) {
+			scratch.clear();
+			tokenize(text, scratch);
+			for (int k = 0; k < scratch.size(); k++)
+				addPosition(scratch.values[k], clue, position++);
+			return position;
+		}
+
+		private void addPosition(int word, int clue, int position) {
+			batchWords.add(word);
+			batchClues.add(clue);
+			batchPositions.add(position);
+		}
+
+		/**
+		* Folds a text, and adds the number of every word to the list, numbering the new words
+		*/
+		private void tokenize(String text, IntList numbers) {
+			if (folded.length < text.length())
+				folded = new char[text.length()];
+			int length = ResponseMatcher.fold(text, folded);
+
+			for (int start = 0; start < length;) {
+				int end = start;
+				while (end < length && folded[end] != ' ')
+					end++;
+				String word = new String(folded, start, end - start);
+				numbers.add(number(word));
+				start = end + 1;
+			}
+		}
+
+		private int number(String word) {
+			Integer number = numbers.get(word);
+			if (number == null) {
+				number = words.size();
+				numbers.put(word, number);
+				words.add(word.getBytes(StandardCharsets.UTF_8));
+				wordClues.add(0);
+			}
+			return number;
+		}
+
+		/**
+		* Orders the numbers of the words by the bytes of the words
+		*/
+		private final Comparator<Integer> byBytes = (a, b) -> Arrays.compareUnsigned(words.get(a), words.get(b));
+
+		private void addString(String text) throws IOException {
+			byte bytes[] = text.getBytes(StandardCharsets.UTF_8);
+			out.put(bytes, 0, bytes.length);
+			stringOffsets.add(out.position() - HEADER_SIZE);
+		}
+
+		/**
+		* Sorts the positions of the batch by word, keeping the order of the clues and positions, compresses them, and writes them to
+		* the temporary file in the order of the bytes of the words: for every word of the batch, its number, its number of clues,
+		* the size of its postings and its postings
+		*/
+		private void flushBatch() throws IOException {
+			int n = batchWords.size(), count = words.size();
+			if (n == 0)
+				return;
+			int starts[] = new int[count + 1];
+			for (int k = 0; k < n; k++)
+				starts[batchWords.values[k] + 1]++;
+			for (int w = 0; w < count; w++)
+				starts[w + 1] += starts[w];
+
+			int sorted[] = new int[n], next[] = Arrays.copyOf(starts, count);
+			for (int k = 0; k < n; k++)
+				sorted[next[batchWords.values[k]]++] = k;
+
+			// the words of the batch, in the order of their bytes
+			ArrayList<Integer> present = new ArrayList<Integer>();
+			for (int w = 0; w < count; w++)
+				if (starts[w] < starts[w + 1])
+					present.add(w);
+			present.sort(byBytes);
+
+			for (int w : present) {
+				record.size = 0;
+				int previous = -1, clues = 0;
+				for (int k = starts[w]; k < starts[w + 1];) {
+					int clue = batchClues.values[sorted[k]], end = k;
+					while (end < starts[w + 1] && batchClues.values[sorted[end]] == clue)
+						end++;
+
+					record.putVarint(clue - previous);
+					record.putVarint(end - k);
+					for (int p = k, at = 0; p < end; p++) {
+						record.putVarint(batchPositions.values[sorted[p]] - at);
+						at = batchPositions.values[sorted[p]];
+					}
+					clues++;
+					previous = clue;
+					k = end;
+				}
+
+				spill.putInt(w);
+				spill.putInt(clues);
+				spill.putInt(record.size);
+				spill.put(record.bytes, 0, record.size);
+				wordClues.values[w] += clues;
+			}
+			batchEnds.add(spill.size());
+
+			batchWords.clear();
+			batchClues.clear();
+			batchPositions.clear();
+		}
+
+		/**
+		* Merges the postings of a word from every batch into one list of blocks, and its skip table if it has several blocks.
+		* The batches are in the order of their clues, so the postings of a word are merged by taking them from every batch in turn.
+		*/
+		private void merge(int word, Run runs[], ByteList postings, IntList skips) throws IOException {
+			postings.size = 0;
+			skips.clear();
+			int previous = -1, count = 0;
+
+			for (Run run : runs) {
+				if (run.word != word)
+					continue;
+				ByteList batch = run.postings;
+				int position = 0, clue = -1;
+				for (int k = 0; k < run.clues; k++) {
+					clue += batch.readVarint(position);
+					position = batch.next;
+					int frequency = batch.readVarint(position);
+					position = batch.next;
+					int start = position;
+					for (int p = 0; p < frequency; p++) {
+						batch.readVarint(position);
+						position = batch.next;
+					}
+
+					if (count % BLOCK == 0) {
+						skips.add(previous);
+						skips.add(postings.size);
+					}
+					postings.putVarint(clue - previous);
+					postings.putVarint(frequency);
+					postings.put(batch.bytes, start, position - start);
+					previous = clue;
+					count++;
+				}
+				run.next();
+			}
+		}
+	}
+
+	/**
+	* A batch of the temporary file, read from beginning to end one word at a time
+	*/
+	private static class Run {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		private long position;
+		private final long end;
+
+		/**
+		* The current word of the batch, or -1 once it is read completely, its number of clues and its postings
+		*/
+		int word = -1, clues;
+		final ByteList postings = new ByteList();
+
+		Run(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.end = end;
+			position = start;
+			buffer.limit(0);
+		}
+
+		/**
+		* Reads the next word of the batch
+		*/
+		void next() throws IOException {
+			if (position == end && !buffer.hasRemaining()) {
+				word = -1;
+				return;
+			}
+
+			word = readInt();
+			clues = readInt();
+			int length = readInt();
+			postings.size = 0;
+			while (length > 0) {
+				if (!buffer.hasRemaining())
+					fill();
+				int chunk = Math.min(length, buffer.remaining());
+				postings.put(buffer.array(), buffer.position(), chunk);
+				buffer.position(buffer.position() + chunk);
+				length -= chunk;
+			}
+		}
+
+		private int readInt() throws IOException {
+			if (buffer.remaining() < 4)
+				fill();
+			return buffer.getInt();
+		}
+
+		/**
+		* Reads the following bytes of the batch after the ones left in the buffer
+		*/
+		private void fill() throws IOException {
+			buffer.compact();
+			buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0)
+					throw new IOException("the temporary file of the index is truncated");
+				position += read;
+			}
+			buffer.flip();
+		}
+	}
+
+	/**
+	* A growable array of ints
+	*/
+	private static class IntList {
+		int values[] = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+	/**
+	* A growable array of bytes, with variable-length ints of 7 bits per byte, the lowest first
+	*/
+	private static class ByteList {
+		byte bytes[] = new byte[64];
+		int size = 0;
+
+		/**
+		* The position following the last variable-length int read
+		*/
+		int next;
+
+		void putVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				putByte((byte) (value & 0x7F | 0x80));
+				value >>>= 7;
+			}
+			putByte((byte) value);
+		}
+
+		int readVarint(int position) {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = bytes[position++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					next = position;
+					return value;
+				}
+			}
+		}
+
+		void put(byte source[], int offset, int length) {
+			if (size + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+			System.arraycopy(source, offset, bytes, size, length);
+			size += length;
+		}
+
+		private void putByte(byte b) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, size * 2);
+			bytes[size++] = b;
+		}
+	}
+
+	/**
+	* Writes the index file through a buffer, keeping the position in the file
+	*/
+	private static class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+		private long position = 0;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		* Returns the number of bytes written so far, or skipped
+		*/
+		long size() {
+			return position;
+		}
+
+		/**
+		* Returns the position in the file, which must fit an int
+		*/
+		int position() throws IOException {
+			if (position > Integer.MAX_VALUE)
+				throw new IOException("the index would be larger than 2 GB");
+			return (int) position;
+		}
+
+		void putInt(int value) throws IOException {
+			if (buffer.remaining() < 4)
+				flush();
+			buffer.putInt(value);
+			position += 4;
+		}
+
+		void putInts(IntList values) throws IOException {
+			for (int k = 0; k < values.size(); k++)
+				putInt(values.values[k]);
+		}
+
+		void put(byte bytes[], int offset, int length) throws IOException {
+			while (length > 0) {
+				if (!buffer.hasRemaining())
+					flush();
+				int chunk = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, chunk);
+				offset += chunk;
+				length -= chunk;
+				position += chunk;
+			}
+		}
+
+		/**
+		* Leaves bytes to be written later, with <code>write</code>
+		*/
+		void skip(int bytes) throws IOException {
+			flush();
+			position += bytes;
+			channel.position(position);
+		}
+
+		void write(ByteBuffer bytes, long at) throws IOException {
+			while (bytes.hasRemaining())
+				at += channel.write(bytes, at);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+}
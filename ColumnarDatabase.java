@@ -0,0 +1,217 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A <code>QuestionBank</code> storing all its categories, answers and questions in one byte array, rather than as a String per line
+* and a <code>Question</code> object per cell. Every distinct String is encoded once in UTF-8, and the categories and cells only store the
+* index of their String. <code>getQuestion</code> returns a view which decodes its Strings when they are asked for.
+* It takes much less heap than a <code>Database</code> built by <code>parseQuestions</code>, which matters when many of them are kept in memory.
+*/
+public class ColumnarDatabase implements QuestionBank {
+
+	/**
+	* The UTF-8 encoding of every distinct String, one after the other
+	*/
+	private final byte pool[];
+
+	/**
+	* Position in the pool of every distinct String; the last element is the end of the pool
+	*/
+	private final int starts[];
+
+	/**
+	* Index of the String of every category, then of the answer and question of every cell, in the order used by <code>MappedDatabase.entry</code>
+	*/
+	private final int strings[];
+
+	/**
+	* The number of categories (m) and the number of questions per category (n)
+	*/
+	private final int m, n;
+
+	/**
+	* The categories decoded so far: they are painted again and again, unlike the <code>Question</code>s
+	*/
+	private final String categories[];
+
+	/**
+	* A <code>Question</code> which decodes its Strings from the pool every time they are asked for
+	*/
+	private class QuestionView extends Question {
+
+		/**
+		* Index of the answer in the strings array; the question follows it
+		*/
+		private final int entry;
+
+		QuestionView(int entry) {
+			super(null, null);
+			this.entry = entry;
+		}
+
+		/**
+		* getter that returns the question, decoded from the pool
+		* @return the question
+		*/
+		public String getQuestion() {
+			return decode(strings[entry + 1]);
+		}
+
+		/**
+		* getter that returns the answer to the question, decoded from the pool
+		* @return the answer to the question
+		*/
+		public String getResponse() {
+			return decode(strings[entry]);
+		}
+	}
+
+	/**
+	* Constructs a <code>ColumnarDatabase</code> from its arrays
+	*/
+	private ColumnarDatabase(byte pool[], int starts[], int strings[], int m, int n) {
+		this.pool = pool;
+		this.starts = starts;
+		this.strings = strings;
+		this.m = m;
+		this.n = n;
+		categories = new String[m];
+	}
+
+	/**
+	* Static method that packs the categories and <code>Question</code>s of a <code>QuestionBank</code> into a <code>ColumnarDatabase</code>
+	* @param database the <code>QuestionBank</code> to pack
+	* @return a <code>ColumnarDatabase</code> with the same categories and <code>Question</code>s, or the given one if it already is one
+	*/
+	static QuestionBank of(QuestionBank database) {
+		// a mapped Database is not on the heap, and a packed one is already packed
+		if (database instanceof ColumnarDatabase || database instanceof MappedDatabase)
+			return database;
+
+		int m = database.getNumCategories(), n = database.getNumQuestions();
+		int strings[] = new int[MappedDatabase.tableSize(m, n) - 1];
+
+		// give every distinct String an index, in the order they are found
+		HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+		ArrayList<String> distinct = new ArrayList<String>();
+		int entry = 0;
+
+		for (int j = 0; j < m; j++)
+			strings[entry++] = index(database.getCategory(j), indexes, distinct);
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				Question question = database.getQuestion(j, i);
+				// the entries of a cell, in the same order as MappedDatabase.entry
+				entry = MappedDatabase.entry(m, j, i);
+				strings[entry] = index(question.getResponse(), indexes, distinct);
+				strings[entry + 1] = index(question.getQuestion(), indexes, distinct);
+			}
+		}
+
+		// encode the distinct Strings one after the other
+		int count = indexes.size();
+		byte encoded[][] = new byte[count][];
+		long size = 0;
+		for (int k = 0; k < count; k++) {
+			encoded[k] = distinct.get(k).getBytes(StandardCharsets.UTF_8);
+			size += encoded[k].length;
+		}
+
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too much text for a ColumnarDatabase: " + size + " bytes");
+
+		byte pool[] = new byte[(int) size];
+		int starts[] = new int[count + 1];
+		int position = 0;
+		for (int k = 0; k < count; k++) {
+			starts[k] = position;
+			System.arraycopy(encoded[k], 0, pool, position, encoded[k].length);
+			position += encoded[k].length;
+		}
+		starts[count] = position;
+
+		return new ColumnarDatabase(pool, starts, strings, m, n);
+	}
+
+	/**
+	* Returns the index of a String, giving it the next index if it hasn't been found before
+	*/
+	private static int index(String text, HashMap<String, Integer> indexes, ArrayList<String> distinct) {
+		Integer index = indexes.get(text);
+		if (index != null)
+			return index;
+
+		indexes.put(text, distinct.size());
+		distinct.add(text);
+		return distinct.size() - 1;
+	}
+
+	/**
+	* getter that returns the category found at position index of this <code>ColumnarDatabase</code>, decoded the first time it is asked for
+	* @param index index of the category we are interested for
+	* @return String representing the specified category
+	*/
+	public String getCategory(int index) {
+		if (index < 0 || index >= m)
+			throw new ArrayIndexOutOfBoundsException(index);
+
+		// a String is immutable, so two threads decoding the same category at the same time is harmless
+		String category = categories[index];
+		if (category == null)
+			categories[index] = category = decode(strings[index]);
+		return category;
+	}
+
+	/**
+	* getter that returns a view of the <code>Question</code> at position index for the given category
+	* @param category the category in which the <code>Question</code> we want to get, is
+	* @param index the index at which the <code>Question</code> can be found
+	* @return the <code>Question</code> at position index for the given category
+	*/
+	public Question getQuestion(int category, int index) {
+		if (category < 0 || category >= m)
+			throw new ArrayIndexOutOfBoundsException(category);
+		if (index < 0 || index >= n)
+			throw new ArrayIndexOutOfBoundsException(index);
+		return new QuestionView(MappedDatabase.entry(m, category, index));
+	}
+
+	/**
+	* getter that returns the number of categories for this game
+	* @return the number of the categories of this game
+	*/
+	public int getNumCategories() {
+		return m;
+	}
+
+	/**
+	* getter that returns the number of questions per category
+	* @return the number of questions per category
+	*/
+	public int getNumQuestions() {
+		return n;
+	}
+
+	/**
+	* Estimates the number of bytes of heap used by this <code>ColumnarDatabase</code>: its three arrays, and the categories once they are all decoded
+	* @return the estimated footprint in bytes
+	*/
+	public long estimateFootprint() {
+		long bytes = 64 + 16 + pool.length + 16 + 4L * starts.length + 16 + 4L * strings.length + 16 + 4L * m;
+		for (int j = 0; j < m; j++)
+			bytes += 40 + 2L * (starts[strings[j] + 1] - starts[strings[j]]);
+		return bytes;
+	}
+
+	/**
+	* Decodes the distinct String of the given index
+	*/
+	private String decode(int index) {
+		return new String(pool, starts[index], starts[index + 1] - starts[index], StandardCharsets.UTF_8);
+	}
+}
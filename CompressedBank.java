@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Reads question files compressed with gzip (.gz), or stored in a zip archive (.zip), without extracting them: the bytes are decompressed
+* while the <code>LineReader</code> reads them, through a buffer of a fixed size, so a bank of any size is read with the same memory.
+* A zip archive can hold several banks: one is chosen by appending "!" and its name in the archive, e.g. questions/season1.zip!week3.txt;
+* an archive holding a single bank can be given by itself.
+* <code>LineReader.open</code> reads compressed banks through this class, so they can be loaded wherever a question file can.
+*/
+public class CompressedBank {
+
+	/**
+	* The extensions of the compressed banks, and the separator of the name of a bank in a zip archive
+	*/
+	static final String GZIP = ".gz", ZIP = ".zip", ENTRY_SEPARATOR = "!";
+
+	/**
+	* Size in bytes of the buffer of compressed bytes read from the file by the decompressor
+	*/
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	* A <code>ReadableByteChannel</code> over a decompressing stream, which decompresses straight into the buffer of the <code>LineReader</code>.
+	* Closing it also closes the zip archive the stream comes from.
+	*/
+	private static class InflatingChannel implements ReadableByteChannel {
+		private final InputStream in;
+		private final ZipFile archive;
+		private boolean open = true;
+
+		InflatingChannel(InputStream in, ZipFile archive) {
+			this.in = in;
+			this.archive = archive;
+		}
+
+		public int read(ByteBuffer buffer) throws IOException {
+			if (!buffer.hasArray()) {
+				byte copy[] = new byte[Math.min(buffer.remaining(), BUFFER_SIZE)];
+				int read = in.read(copy);
+				if (read > 0)
+					buffer.put(copy, 0, read);
+				return read;
+			}
+
+			int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (read > 0)
+				buffer.position(buffer.position() + read);
+			return read;
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public void close() throws IOException {
+			open = false;
+			try {
+				in.close();
+			} finally {
+				if (archive != null)
+					archive.close();
+			}
+		}
+	}
+
+	/**
+	* Static method that tells whether a question file is compressed, by its name
+	* @param name the path to the question file, possibly followed by "!" and the name of a bank in a zip archive
+	* @return true if the file is a gzip file or a zip archive
+	*/
+	static boolean isCompressed(String name) {
+		return name.endsWith(GZIP) || fileOf(name).endsWith(ZIP);
+	}
+
+	/**
+	* Static method that returns the path to the file of a question file, without the name of a bank in a zip archive
+	* @param name the path to the question file, possibly followed by "!" and the name of a bank in a zip archive
+	* @return the path to the file
+	*/
+	static String fileOf(String name) {
+		int separator = name.lastIndexOf(ZIP + ENTRY_SEPARATOR);
+		return separator < 0 ? name : name.substring(0, separator + ZIP.length());
+	}
+
+	/**
+	* Static method that returns the name of the bank chosen in a zip archive
+	* @param name the path to the question file, possibly followed by "!" and the name of a bank in a zip archive
+	* @return the name of the bank in the archive, or null if none is chosen
+	*/
+	static String entryOf(String name) {
+		int separator = name.lastIndexOf(ZIP + ENTRY_SEPARATOR);
+		return separator < 0 ? null : name.substring(separator + ZIP.length() + ENTRY_SEPARATOR.length());
+	}
+
+	/**
+	* Static method that opens a compressed bank, and returns a <code>LineReader</code> decompressing it as it is read
+	* @param name the path to the gzip file or zip archive, possibly followed by "!" and the name of a bank in the archive
+	* @return a <code>LineReader</code> reading the decompressed bank from its beginning; its size is the size of the decompressed bank
+	* @throws IOException if the file can't be opened, isn't compressed, or the bank isn't in the archive
+	*/
+	static LineReader open(String name) throws IOException {
+		String file = fileOf(name);
+
+		if (!file.endsWith(ZIP)) {
+			long size = gzipSize(Paths.get(file));
+			InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(file)), BUFFER_SIZE);
+			return new LineReader(new InflatingChannel(in, null), size);
+		}
+
+		ZipFile archive = new ZipFile(file);
+		try {
+			ZipEntry entry = findBank(archive, entryOf(name));
+			return new LineReader(new InflatingChannel(archive.getInputStream(entry), archive), entry.getSize());
+		} catch (IOException | RuntimeException e) {
+			archive.close();
+			throw e;
+		}
+	}
+
+	/**
+	* Static method that lists the banks of a zip archive: every file it holds, other than the directories
+	* @param zip the path to the zip archive
+	* @return the names of the banks in the archive, in their order in the archive
+	* @throws IOException if the archive can't be read
+	*/
+	static List<String> listBanks(String zip) throws IOException {
+		List<String> banks = new ArrayList<String>();
+		try (ZipFile archive = new ZipFile(zip)) {
+			for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory())
+					banks.add(entry.getName());
+			}
+		}
+		return banks;
+	}
+
+	/**
+	* Returns the chosen bank of an archive, or its only bank if none is chosen
+	*/
+	private static ZipEntry findBank(ZipFile archive, String bank) throws IOException {
+		if (bank != null) {
+			ZipEntry entry = archive.getEntry(bank);
+			if (entry == null || entry.isDirectory())
+				throw new NoSuchFileException(archive.getName() + ENTRY_SEPARATOR + bank);
+			return entry;
+		}
+
+		ZipEntry only = null;
+		List<String> banks = new ArrayList<String>();
+		for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();) {
+			ZipEntry entry = entries.nextElement();
+			if (entry.isDirectory())
+				continue;
+			only = entry;
+			banks.add(entry.getName());
+		}
+		if (only == null)
+			throw new IOException(archive.getName() + " holds no bank");
+
+		// the banks are listed, so the user knows which names to choose from
+		if (banks.size() > 1)
+			throw new IOException(archive.getName() + " holds several banks: choose one with " + archive.getName() + ENTRY_SEPARATOR + "name, among "
+				+ String.join(", ", banks));
+		return only;
+	}
+
+	/**
+	* Returns the size of the decompressed content of a gzip file, written at its end (modulo 4 GB), or -1 if it can't be known
+	*/
+	private static long gzipSize(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			// a gzip file has a header of 10 bytes, and ends with the CRC32 and the size of its content, in little-endian
+			if (length < 18 || length >= 1L << 32)
+				return -1;
+
+			ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (trailer.hasRemaining() && channel.read(trailer, length - 4 + trailer.position()) > 0)
+				;
+			return trailer.hasRemaining() ? -1 : trailer.getInt(0) & 0xFFFFFFFFL;
+		}
+	}
+}
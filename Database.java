@@ -1,6 +1,10 @@
-import java.util.Scanner;
-import java.io.FileNotFoundException;
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
 import javax.swing.JOptionPane;
 
 // Author: Jonathan Guillotte-Blouin
@@ -9,7 +13,7 @@ import javax.swing.JOptionPane;
 /**
 * Used to store the questions and answers for the Jeopardy game
 */
-public class Database {
+public class Database implements QuestionBank {
 
 	/**
 	* Stores the different question categories
@@ -21,110 +25,215 @@ public class Database {
 	*/
 	private Question questions[][];
 
+	/**
+	* Number of <code>Question</code>s between two reports to a <code>ParseMonitor</code>, besides the one on every row; a power of two, so the index of a category is masked with it minus 1
+	*/
+	private static final int MONITOR_INTERVAL = 1024;
+
 	/**
 	* Constructs a <code>Database</code>, which stores <code>Question</code>s and the categories of <code>Question</code>
 	* @param m the number of categories
 	* @param n the number of questions per category
 	*/
-	private Database(int m, int n) {
+	Database(int m, int n) {
 		categories = new String[m];
 		questions = new Question[n][m];
 	}
 
 	/**
 	* Static method that reads information from a file and returns a <code>Database</code> object with the information in it.
+	* The user is alerted of the outcome using a <code>JOptionPane</code>.
+	* @param name Relative path to the file
+	*/
+	static QuestionBank readQuestions(String name) {
+
+		// parse the file, and alert the user of the problem if the file is not valid
+		try {
+			QuestionBank database = parseQuestions(name);
+
+			// if we've made it so far, the File is OK
+			// tell the user it is a success, and return the Database
+			alertProblem(4);
+			return database;
+		} catch (DatabaseFormatException e) {
+			alertProblem(e);
+			return null;
+		}
+	}
+
+	/**
+	* Static method that reads information from a file and returns a <code>Database</code> object with the information in it.
+	* Unlike <code>readQuestions</code>, it never interacts with the user: problems are reported by throwing an exception.
 	* @param name Relative path to the file
+	* @return the <code>QuestionBank</code> built from the file
+	* @throws DatabaseFormatException if the file can't be read, or doesn't respect the format
 	*/
-	static Database readQuestions(String name) {
+	static QuestionBank parseQuestions(String name) throws DatabaseFormatException {
+		return parseQuestions(name, null);
+	}
 
-		// creates a File object from which we need to read information
-		File file = new File(name);
+	/**
+	* Static method that reads information from a file and returns a <code>Database</code> object with the information in it,
+	* reporting its progress to the given <code>ParseMonitor</code>, which can also cancel the parsing.
+	* @param name Relative path to the file
+	* @param monitor the <code>ParseMonitor</code> informed of the progress, or null
+	* @return the <code>QuestionBank</code> built from the file: a <code>MappedDatabase</code> for a compiled question bank, otherwise a <code>Database</code>
+	* @throws DatabaseFormatException if the file can't be read, or doesn't respect the format
+	* @throws CancellationException if the monitor cancelled the parsing
+	*/
+	static QuestionBank parseQuestions(String name, ParseMonitor monitor) throws DatabaseFormatException {
 
-		// initialize a Database object
-		Database database;
+		// compiled question banks are not parsed, but mapped in memory
+		if (name.endsWith(MappedDatabase.EXTENSION))
+			return MappedDatabase.open(name);
 
-		// initialize a Scanner, which will scan the File
-		Scanner sc;
+		// dumps of other sources are imported as a single board, reporting their progress in the same way
+		if (ClueImporter.isDump(name))
+			return ClueImporter.importDatabase(name, ClueImporter.DEFAULT_ROWS, monitor);
 
-		// make sure the file is valid, otherwise alert the user and close the program
+		// make sure the file is valid, otherwise report the problem
+		LineReader reader;
 		try {
-			sc = new Scanner(file);
-		} catch (FileNotFoundException e) {
-			alertProblem(2);
-	        return null;
-	    }
-
-	    // will store the number of categories (m) and the number of questions per category (n) written in the File
-		int m, n;
-
-		// read m & n, and make sure they are integers
-		if (sc.hasNextInt()) {
-			m = Integer.parseInt(sc.nextLine());
-
-			if (sc.hasNextInt())
-				n = Integer.parseInt(sc.nextLine());
-			else {
-				alertProblem(1);
-				return null;
+			reader = LineReader.open(name);
+		} catch (IOException | InvalidPathException e) {
+			// e.g. a zip archive holding several banks, none of them chosen: the user is told how to choose one
+			throw new DatabaseFormatException(2, 0, e.getMessage());
+		}
+
+		// the time spent reading the file and parsing it are recorded, as well as a Flight Recorder event
+		Metrics.FileParsedEvent event = new Metrics.FileParsedEvent();
+		event.begin();
+		long start = System.nanoTime();
+
+		try {
+			Database database = parseQuestions(reader, monitor);
+			long elapsed = System.nanoTime() - start;
+			event.end();
+			Metrics.fileParsed(event, name, reader.getBytesRead(), elapsed, reader.getReadNanos());
+			return database;
+		} catch (IOException e) {
+			throw new DatabaseFormatException(2, reader.getLineNumber());
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// nothing left to read, so there is nothing to recover
 			}
-		} // if not, alert the user and close the program
-		else {
-			alertProblem(1);
-			return null;
 		}
+	}
+
+	/**
+	* Reads the information of a <code>Database</code> from the given <code>LineReader</code>.
+	* @param reader the <code>LineReader</code> positioned at the beginning of the file
+	* @param monitor the <code>ParseMonitor</code> informed of the progress, or null
+	* @return the <code>Database</code> built from the lines read
+	* @throws DatabaseFormatException if the lines don't respect the format
+	* @throws IOException if the lines can't be read
+	* @throws CancellationException if the monitor cancelled the parsing
+	*/
+	static Database parseQuestions(LineReader reader, ParseMonitor monitor) throws DatabaseFormatException, IOException {
+
+		// read the number of categories (m) and the number of questions per category (n) written in the File, and make sure they are integers
+		int m = readHeader(reader), n = readHeader(reader);
 
 		// instanciate a Database of size m & n
-		database = new Database(m,n);
+		Database database = new Database(m,n);
 
 		// read the categories, and store them in the Database
-		for (int i =0; i < m; i++) {
-			if (sc.hasNextLine())
-				database.categories[i] = sc.nextLine();
-			else  { // if there aren't enough lines in the file, alert the user and close the program
-				alertProblem(1);
-				return null;
-			}
-		}
+		for (int i = 0; i < m; i++)
+			database.categories[i] = readLine(reader);
 
 		// read the questions & answers, and store them in the Database
 		for (int i = 0; i < n; i++) {
 			for (int j = 0; j < m; j++) {
-				if(sc.hasNextLine()) {
-
-					// after reading two lines, we should have an answer and a question
-					// if there aren't enough lines, alert the user and close the program
-					String tmpAnswer = sc.nextLine(), tmpQuestion;
-
-					if (sc.hasNextLine())
-						tmpQuestion = sc.nextLine();
-					else {
-						alertProblem(1);
-						return null;
-					}
-
-					// the two previous lines temporarily stored make up a Question: store this Question into the database
-					// at its right place in the 2D representation of the Jeopardy board 
-					database.questions[i][j] = new Question(tmpAnswer, tmpQuestion);
-
-				} else {
-					alertProblem(1);
-					return null;
-				}
+				// every few Questions, tell the monitor how far we are, and stop if it doesn't want the Database anymore
+				if (monitor != null && (j & (MONITOR_INTERVAL - 1)) == 0)
+					report(reader, monitor);
+
+				// after reading two lines, we should have an answer and a question
+				String tmpAnswer = readLine(reader), tmpQuestion = readLine(reader);
+
+				// the two previous lines make up a Question: store this Question into the database
+				// at its right place in the 2D representation of the Jeopardy board
+				database.questions[i][j] = new Question(tmpAnswer, tmpQuestion);
 			}
 		}
 
 		// checking if the file contains more content than needed
-		if(sc.hasNextLine()) {
-			alertProblem(3);
-			return null;
-		}
+		if (reader.readLine() != null)
+			throw new DatabaseFormatException(3, reader.getLineNumber());
+
+		if (monitor != null)
+			report(reader, monitor);
 
-		// if we've made it so far, the File is OK
-		// tell the user it is a success, and return the Database
-		alertProblem(4);
 		return database;
 	}
 
+	/**
+	* Static method that writes a <code>QuestionBank</code> as a question file, which <code>parseQuestions</code> reads back as a <code>Database</code> with the same content
+	* @param database the <code>QuestionBank</code> to write
+	* @param name Relative path to the file to write
+	* @throws IOException if the file can't be written
+	*/
+	static void writeQuestions(QuestionBank database, String name) throws IOException {
+		int m = database.getNumCategories(), n = database.getNumQuestions();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(name), StandardCharsets.UTF_8)) {
+			writer.write(m + "\n" + n + "\n");
+
+			for (int j = 0; j < m; j++)
+				writer.write(database.getCategory(j) + "\n");
+
+			// the answer, then the question, of every Question, row by row
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < m; j++) {
+					Question question = database.getQuestion(j, i);
+					writer.write(question.getResponse() + "\n" + question.getQuestion() + "\n");
+				}
+			}
+		}
+	}
+
+	/**
+	* Tells the monitor how many bytes have been read
+	* @throws CancellationException if the monitor cancelled the parsing
+	*/
+	static void report(LineReader reader, ParseMonitor monitor) {
+		if (monitor.isCancelled())
+			throw new CancellationException();
+		monitor.bytesRead(reader.getBytesRead(), reader.getSize());
+	}
+
+	/**
+	* Reads a line which must contain a non-negative integer, as found at the beginning of the file
+	*/
+	static int readHeader(LineReader reader) throws DatabaseFormatException, IOException {
+		String line = readLine(reader);
+
+		try {
+			int value = Integer.parseInt(line);
+			if (value >= 0)
+				return value;
+		} catch (NumberFormatException e) {
+			// handled below, like a negative value
+		}
+
+		throw new DatabaseFormatException(1, reader.getLineNumber());
+	}
+
+	/**
+	* Reads a line which must be present in the file
+	*/
+	static String readLine(LineReader reader) throws DatabaseFormatException, IOException {
+		String line = reader.readLine();
+
+		// if there aren't enough lines in the file, report the problem
+		if (line == null)
+			throw new DatabaseFormatException(1, reader.getLineNumber() + 1);
+
+		return line;
+	}
+
 	/**
 	* getter that returns the category found at position index of this <code>Database</code>
 	* @param index index of the category we are interested for
@@ -180,28 +289,75 @@ public class Database {
 	}
 
 	/**
-	* Given a number value representing a case problem, this method prompts an error or success message 
+	* Estimates the number of bytes of heap used by this <code>Database</code>, its categories and its <code>Question</code>s
+	* @return the estimated footprint in bytes
+	*/
+	public long estimateFootprint() {
+		int m = getNumCategories(), n = getNumQuestions();
+
+		// the arrays of references, then every String and Question object
+		long bytes = 16 + 4L * m + 16 + n * (16 + 4L * m);
+		for (int j = 0; j < m; j++)
+			bytes += estimateFootprint(getCategory(j));
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				Question question = getQuestion(j, i);
+				bytes += 24 + estimateFootprint(question.getResponse()) + estimateFootprint(question.getQuestion());
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	* Estimates the number of bytes of heap used by a String: its header and its array, assuming 2 bytes per char
+	*/
+	static long estimateFootprint(String text) {
+		return text == null ? 0 : 40 + 2L * text.length();
+	}
+
+	/**
+	* Given a number value representing a case problem, this method prompts an error or success message
 	* to the user using a <code>JOptionPane</code>
 	* @param caseProblem arbitrary number value of the case problem we want to alert
 	*/
-	private static void alertProblem(int caseProblem) {
+	static void alertProblem(int caseProblem) {
+		JOptionPane.showMessageDialog(null, describeProblem(caseProblem));
+	}
+
+	/**
+	* Prompts the error message of a <code>DatabaseFormatException</code> to the user using a <code>JOptionPane</code>,
+	* followed by what went wrong if it is known
+	* @param problem the <code>DatabaseFormatException</code> we want to alert
+	*/
+	static void alertProblem(DatabaseFormatException problem) {
+		String detail = problem.getDetail();
+		JOptionPane.showMessageDialog(null, describeProblem(problem.getCaseProblem()) + (detail != null ? "\n" + detail : ""));
+	}
+
+	/**
+	* Given a number value representing a case problem, this method returns the related error or success message
+	* @param caseProblem arbitrary number value of the case problem
+	* @return the message describing the case problem
+	*/
+	static String describeProblem(int caseProblem) {
 		switch(caseProblem) {
-			case 1: 
-				JOptionPane.showMessageDialog(null,"The end of file has been reached without having all the necessary information!");
-				break;
+			case 1:
+				return "The end of file has been reached without having all the necessary information!";
 
 			case 2:
-	        	JOptionPane.showMessageDialog(null,"This is not a valid file!");
-	        	break;
+				return "This is not a valid file!";
 
-	        case 3:
-	        	JOptionPane.showMessageDialog(null,"The file contains more stuff than needed!");
-				break;
+			case 3:
+				return "The file contains more stuff than needed!";
 
 			case 4:
-				JOptionPane.showMessageDialog(null,"Request to database successful!");
-				break;
-	    }
+				return "Request to database successful!";
+
+			default:
+				return "Unknown problem!";
+		}
 	}
 	
 
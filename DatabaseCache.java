@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Keeps the most recently loaded <code>Database</code>s in memory, so loading the same file again doesn't read it from the disk.
+* Entries are keyed by the canonical path of the file, and are only used if the file still has the same modification time and size.
+* When the estimated footprint of the cached <code>Database</code>s exceeds the capacity, the least recently used ones are evicted.
+* The cached <code>Database</code>s are packed into <code>ColumnarDatabase</code>s, so more of them fit; a <code>Database</code> which isn't cached
+* is returned as it was parsed, without paying for the packing.
+*/
+public class DatabaseCache {
+
+	/**
+	* Capacity of the shared cache in megabytes, which can be changed with -Djeopardy.cacheMegabytes=...
+	*/
+	private static final long DEFAULT_MEGABYTES = Long.getLong("jeopardy.cacheMegabytes", 64);
+
+	/**
+	* Whether the shared cache packs the <code>Database</code>s larger than its capacity, to cache them if they fit once packed,
+	* which can be enabled with -Djeopardy.packLargeBanks=true
+	*/
+	private static final boolean PACK_LARGE_BANKS = Boolean.getBoolean("jeopardy.packLargeBanks");
+
+	/**
+	* The cache shared by every <code>DatabaseLoader</code>
+	*/
+	private static final DatabaseCache SHARED = new DatabaseCache(DEFAULT_MEGABYTES * 1024 * 1024, PACK_LARGE_BANKS);
+
+	/**
+	* A cached <code>Database</code>, with the state of the file it was read from
+	*/
+	private static class Entry {
+		final QuestionBank database;
+		final long lastModified, size, footprint;
+
+		Entry(QuestionBank database, long lastModified, long size) {
+			this.database = database;
+			this.lastModified = lastModified;
+			this.size = size;
+			footprint = database.estimateFootprint();
+		}
+	}
+
+	/**
+	* The cached entries by canonical path, in access order: the least recently used entry comes first
+	*/
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	* Maximum sum of the estimated footprints of the cached <code>Database</code>s, in bytes
+	*/
+	private final long capacity;
+
+	/**
+	* Whether the <code>Database</code>s larger than the capacity are packed anyway, in case they fit once packed
+	*/
+	private final boolean packLargeBanks;
+
+	/**
+	* Sum of the estimated footprints of the cached <code>Database</code>s, in bytes
+	*/
+	private long footprint = 0;
+
+	/**
+	* counters of the lookups which found a valid entry, which had to read the file, of the entries evicted to make room,
+	* and of the entries dropped because their file changed
+	*/
+	private long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+
+	/**
+	* Creates an empty <code>DatabaseCache</code>, which doesn't cache the <code>Database</code>s larger than its capacity
+	* @param capacity maximum sum of the estimated footprints of the cached <code>Database</code>s, in bytes
+	*/
+	public DatabaseCache(long capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	* Creates an empty <code>DatabaseCache</code>
+	* @param capacity maximum sum of the estimated footprints of the cached <code>Database</code>s, in bytes
+	* @param packLargeBanks whether the <code>Database</code>s larger than the capacity are packed, to cache them if they fit once packed
+	*/
+	public DatabaseCache(long capacity, boolean packLargeBanks) {
+		this.capacity = capacity;
+		this.packLargeBanks = packLargeBanks;
+	}
+
+	/**
+	* getter that returns the cache shared by every <code>DatabaseLoader</code>
+	* @return the shared <code>DatabaseCache</code>
+	*/
+	public static DatabaseCache shared() {
+		return SHARED;
+	}
+
+	/**
+	* Returns the <code>Database</code> read from the given file, from the cache if the file didn't change since it was cached,
+	* otherwise by parsing the file and caching the result.
+	* @param name Relative path to the file
+	* @param monitor the <code>ParseMonitor</code> informed of the progress if the file is parsed, or null
+	* @return the <code>Database</code> built from the file
+	* @throws DatabaseFormatException if the file can't be read, or doesn't respect the format
+	*/
+	public QuestionBank load(String name, ParseMonitor monitor) throws DatabaseFormatException {
+		String key;
+		BasicFileAttributes attributes;
+
+		// identify the file by its canonical path, and get its current state; a bank in a zip archive is identified by the archive and its name
+		try {
+			Path path = Paths.get(CompressedBank.fileOf(name)).toRealPath();
+			String bank = CompressedBank.entryOf(name);
+			key = bank == null ? path.toString() : path + CompressedBank.ENTRY_SEPARATOR + bank;
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException | InvalidPathException e) {
+			throw new DatabaseFormatException(2, 0);
+		}
+
+		long lastModified = attributes.lastModifiedTime().toMillis(), size = attributes.size();
+
+		synchronized (this) {
+			Entry entry = entries.get(key);
+
+			if (entry != null) {
+				if (entry.lastModified == lastModified && entry.size == size) {
+					hits++;
+					return entry.database;
+				}
+
+				// the file changed since it was cached
+				remove(key);
+				invalidations++;
+			}
+
+			misses++;
+		}
+
+		// parse outside of the lock, so other files can be looked up meanwhile
+		QuestionBank parsed = Database.parseQuestions(name, monitor);
+
+		// a Database which can't be cached is not packed, unless packing could make it fit: an archive is usually much larger than the cache
+		if (parsed.estimateFootprint() > capacity && !packLargeBanks)
+			return parsed;
+
+		// pack the Database so it takes as little heap as possible while it is cached
+		Entry entry = new Entry(ColumnarDatabase.of(parsed), lastModified, size);
+		if (entry.footprint > capacity)
+			return parsed;
+
+		put(key, entry);
+		return entry.database;
+	}
+
+	/**
+	* Removes every entry of the cache
+	*/
+	public synchronized void clear() {
+		entries.clear();
+		footprint = 0;
+	}
+
+	/**
+	* getter that returns the number of lookups which found a valid entry
+	* @return the number of cache hits
+	*/
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	* getter that returns the number of lookups which had to read the file
+	* @return the number of cache misses
+	*/
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	* getter that returns the number of entries evicted to make room for others
+	* @return the number of evictions
+	*/
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	* getter that returns the number of entries dropped because their file changed
+	* @return the number of invalidations
+	*/
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	* getter that returns the sum of the estimated footprints of the cached <code>Database</code>s
+	* @return the footprint of the cache in bytes
+	*/
+	public synchronized long getFootprint() {
+		return footprint;
+	}
+
+	/**
+	* getter that returns the number of cached <code>Database</code>s
+	* @return the number of entries
+	*/
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	* Returns the counters of the cache, e.g. "hits=3 misses=2 evictions=0 invalidations=1 entries=2 footprint=51200"
+	*/
+	public synchronized String toString() {
+		return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " invalidations=" + invalidations
+			+ " entries=" + entries.size() + " footprint=" + footprint;
+	}
+
+	/**
+	* Caches an entry, then evicts the least recently used entries until the footprint fits the capacity.
+	* An entry larger than the whole capacity is not cached.
+	*/
+	private synchronized void put(String key, Entry entry) {
+		if (entry.footprint > capacity)
+			return;
+
+		remove(key);
+		entries.put(key, entry);
+		footprint += entry.footprint;
+
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (footprint > capacity && eldest.hasNext()) {
+			Entry evicted = eldest.next().getValue();
+			eldest.remove();
+			footprint -= evicted.footprint;
+			evictions++;
+		}
+	}
+
+	/**
+	* Removes the entry of the given key, if there is one
+	*/
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null)
+			footprint -= removed.footprint;
+	}
+}
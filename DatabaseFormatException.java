@@ -0,0 +1,70 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Thrown when a file can't be turned into a <code>Database</code>. It stores the case problem, as used by
+* <code>Database</code> to alert the user, the line of the file at which the problem was found, and what went wrong if more is known.
+*/
+public class DatabaseFormatException extends Exception {
+
+	/**
+	* arbitrary number value of the case problem, as understood by <code>Database.describeProblem</code>
+	*/
+	private int caseProblem;
+
+	/**
+	* line of the file at which the problem was found, or 0 if the problem isn't related to a line
+	*/
+	private int lineNumber;
+
+	/**
+	* what went wrong, e.g. the message of the exception thrown when the file was opened, or null
+	*/
+	private String detail;
+
+	/**
+	* Creates a <code>DatabaseFormatException</code> for the given case problem and line
+	* @param caseProblem arbitrary number value of the case problem
+	* @param lineNumber line of the file at which the problem was found, or 0 if the problem isn't related to a line
+	*/
+	public DatabaseFormatException(int caseProblem, int lineNumber) {
+		this(caseProblem, lineNumber, null);
+	}
+
+	/**
+	* Creates a <code>DatabaseFormatException</code> for the given case problem and line, with what went wrong
+	* @param caseProblem arbitrary number value of the case problem
+	* @param lineNumber line of the file at which the problem was found, or 0 if the problem isn't related to a line
+	* @param detail what went wrong, or null
+	*/
+	public DatabaseFormatException(int caseProblem, int lineNumber, String detail) {
+		super((lineNumber > 0 ? "line " + lineNumber + ": " : "") + Database.describeProblem(caseProblem) + (detail != null ? " " + detail : ""));
+		this.caseProblem = caseProblem;
+		this.lineNumber = lineNumber;
+		this.detail = detail;
+	}
+
+	/**
+	* getter that returns the case problem
+	* @return arbitrary number value of the case problem
+	*/
+	public int getCaseProblem() {
+		return caseProblem;
+	}
+
+	/**
+	* getter that returns the line of the file at which the problem was found
+	* @return the line at which the problem was found, or 0 if the problem isn't related to a line
+	*/
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	* getter that returns what went wrong
+	* @return what went wrong, or null if nothing more than the case problem is known
+	*/
+	public String getDetail() {
+		return detail;
+	}
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Parses a question file on a background thread, so the Jeopardy frame stays responsive while a large file is loaded.
+* The progress (0 to 100) is published as the "progress" bound property, and the loading can be stopped with <code>cancel</code>.
+* Once done, <code>get</code> returns the <code>Database</code>, or throws an <code>ExecutionException</code> caused by a <code>DatabaseFormatException</code>.
+*/
+public class DatabaseLoader extends SwingWorker<QuestionBank, Void> implements ParseMonitor {
+
+	/**
+	* Relative path to the file to load; for a random board, the file it is saved to, once it has been assembled
+	*/
+	private volatile String pathToFile;
+
+	/**
+	* For a random board: relative path to the archive it is assembled from, or null; its size, and the seed of the random choices
+	*/
+	private final String archive;
+	private final int m, n;
+	private final long seed;
+
+	/**
+	* For a random board: the rows in the archive of the questions of every category of the board, once it has been assembled
+	*/
+	private volatile int archiveRows[][];
+
+	/**
+	* Number of bytes read so far, and size of the file in bytes (-1 while unknown), updated by the background thread
+	*/
+	private volatile long read = 0, size = -1;
+
+	/**
+	* When the loading was asked for, as given by <code>System.nanoTime</code>, to record the time it takes
+	*/
+	private final long created = System.nanoTime();
+
+	/**
+	* Creates a <code>DatabaseLoader</code> for the given file; call <code>execute</code> to start loading it
+	* @param pathToFile relative path to the file to load
+	*/
+	public DatabaseLoader(String pathToFile) {
+		this.pathToFile = pathToFile;
+		archive = null;
+		m = n = 0;
+		seed = 0;
+	}
+
+	/**
+	* Creates a <code>DatabaseLoader</code> assembling a random board from an archive with a <code>BoardSampler</code>; call <code>execute</code> to start.
+	* The board is saved as a question file, so it can be journaled, watched and loaded again like any other file.
+	* @param archive relative path to the question file, or compiled question bank, to sample
+	* @param m the number of categories of the board
+	* @param n the number of questions per category of the board
+	* @param seed seed of the random choices: the same archive and seed give the same board
+	*/
+	public DatabaseLoader(String archive, int m, int n, long seed) {
+		this.archive = archive;
+		this.m = m;
+		this.n = n;
+		this.seed = seed;
+	}
+
+	/**
+	* Parses the file on a background thread, unless the shared <code>DatabaseCache</code> already has it; or assembles the random board
+	* @return the <code>Database</code> read from the file
+	* @throws DatabaseFormatException if the file can't be read, or doesn't respect the format
+	* @throws IOException if the random board or the history of the recent games can't be saved
+	*/
+	protected QuestionBank doInBackground() throws DatabaseFormatException, IOException {
+		if (archive == null)
+			return DatabaseCache.shared().load(pathToFile, this);
+
+		// the categories of the recent games are not chosen again, and this game becomes one of them
+		int rows[][] = new int[m][];
+		QuestionBank database = BoardSampler.sample(archive, m, n, seed, BoardSampler.readRecent(BoardSampler.HISTORY), this, rows);
+		archiveRows = rows;
+		BoardSampler.recordGame(BoardSampler.HISTORY, database);
+
+		Files.createDirectories(BoardSampler.BOARDS_DIRECTORY);
+		String saved = BoardSampler.BOARDS_DIRECTORY.resolve("random-" + m + "x" + n + "-" + seed + ".txt").toString();
+		Database.writeQuestions(database, saved);
+		pathToFile = saved;
+		return database;
+	}
+
+	/**
+	* Records the time the loading took, from the moment it was asked for, or its failure. Called on the event dispatch thread.
+	*/
+	protected void done() {
+		if (isCancelled())
+			return;
+
+		try {
+			get();
+			Metrics.LOAD.recordSince(created);
+		} catch (ExecutionException e) {
+			Metrics.LOADS_FAILED.increment();
+		} catch (InterruptedException e) {
+			// can't happen, as the loading is done
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	* Records the number of bytes read, and updates the progress accordingly. Called by the background thread.
+	* @param read the number of bytes read from the file so far
+	* @param size the size of the file in bytes, or -1 if it is unknown
+	*/
+	public void bytesRead(long read, long size) {
+		this.read = read;
+		this.size = size;
+
+		if (size > 0)
+			setProgress((int) Math.min(100, read * 100 / size));
+	}
+
+	/**
+	* getter that returns the relative path to the file being loaded; for a random board, null until it has been saved
+	* @return the relative path to the file
+	*/
+	public String getPathToFile() {
+		return pathToFile;
+	}
+
+	/**
+	* getter that returns the relative path to the archive a random board is assembled from
+	* @return the relative path to the archive, or null if the file isn't a random board
+	*/
+	public String getArchive() {
+		return archive;
+	}
+
+	/**
+	* getter that returns the rows in the archive of the questions of every category of a random board
+	* @return the rows of every category, or null until the random board has been assembled
+	*/
+	public int[][] getArchiveRows() {
+		return archiveRows;
+	}
+
+	/**
+	* getter that returns the number of bytes read so far
+	* @return the number of bytes read from the file so far
+	*/
+	public long getBytesRead() {
+		return read;
+	}
+
+	/**
+	* getter that returns the size of the file being loaded
+	* @return the size of the file in bytes, or -1 if it is not known yet
+	*/
+	public long getSize() {
+		return size;
+	}
+}
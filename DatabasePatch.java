@@ -0,0 +1,341 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The differences between two versions of a question file: the <code>Database</code> of the new version,
+* and the categories and cells which changed. Only the lines between the first and the last byte which differ are parsed again,
+* so the cost of a patch depends on the size of the edit, not of the file. If the edit adds or removes lines, or changes the numbers
+* at the beginning of the file, the whole file is parsed again and compared to the previous <code>Database</code>.
+*/
+public class DatabasePatch {
+
+	/**
+	* Number of bytes compared at a time from the end of the files
+	*/
+	private static final int SUFFIX_BLOCK = 4096;
+
+	/**
+	* The <code>Database</code> which was patched, and the one of the new version
+	*/
+	private final QuestionBank previous, database;
+
+	/**
+	* The indexes of the categories which changed, and the cells (question * m + category) whose <code>Question</code> changed
+	*/
+	private final int categories[], cells[];
+
+	/**
+	* The position of the start of every line of the new version, so the next patch doesn't have to find them again
+	*/
+	private final int lineStarts[];
+
+	/**
+	* The number of lines parsed to build the patch, and whether the whole file was parsed
+	*/
+	private final int linesParsed;
+	private final boolean reparsed;
+
+	/**
+	* Creates a <code>DatabasePatch</code>
+	*/
+	private DatabasePatch(QuestionBank previous, QuestionBank database, int categories[], int cells[], int lineStarts[], int linesParsed, boolean reparsed) {
+		this.previous = previous;
+		this.lineStarts = lineStarts;
+		this.database = database;
+		this.categories = categories;
+		this.cells = cells;
+		this.linesParsed = linesParsed;
+		this.reparsed = reparsed;
+	}
+
+	/**
+	* Static method that compares two versions of a question file, and returns what changed
+	* @param current the <code>Database</code> of the previous version
+	* @param before the bytes of the previous version
+	* @param beforeLines the start of every line of the previous version, as returned by <code>lineStarts</code> or <code>getLineStarts</code>
+	* @param after the bytes of the new version
+	* @return the patch
+	* @throws DatabaseFormatException if the new version doesn't respect the format
+	*/
+	static DatabasePatch diff(QuestionBank current, byte before[], int beforeLines[], byte after[]) throws DatabaseFormatException {
+		int m = current.getNumCategories(), n = current.getNumQuestions();
+
+		// skip the bytes which didn't change, at the beginning and at the end; Arrays.mismatch compares many bytes at a time
+		int prefix = Arrays.mismatch(before, after);
+		if (prefix < 0)
+			return new DatabasePatch(current, current, new int[0], new int[0], beforeLines, 0, false);
+
+		int shortest = Math.min(before.length, after.length), suffix = 0;
+		while (suffix < shortest - prefix) {
+			int block = Math.min(SUFFIX_BLOCK, shortest - prefix - suffix);
+			int mismatch = Arrays.mismatch(before, before.length - suffix - block, before.length - suffix,
+				after, after.length - suffix - block, after.length - suffix);
+			if (mismatch >= 0) {
+				// the last byte which differs in the block
+				int k = block - 1;
+				while (before[before.length - suffix - block + k] == after[after.length - suffix - block + k])
+					k--;
+				suffix += block - 1 - k;
+				break;
+			}
+			suffix += block;
+		}
+
+		// widen the changed bytes to whole lines: they are the same before the start, and after the end, in both versions
+		int start = prefix;
+		while (start > 0 && !isTerminator(before[start - 1]))
+			start--;
+		int end = before.length - suffix;
+		while (end < before.length && !isTerminator(before[end]))
+			end++;
+		int endAfter = end - before.length + after.length;
+
+		// a "\r\n" cut in two by the window, or a different number of lines, can't be patched line by line
+		if (splitsTerminator(before, start) || splitsTerminator(after, start) || splitsTerminator(before, end) || splitsTerminator(after, endAfter))
+			return reparse(current, after);
+
+		ArrayList<int[]> oldLines = lines(before, start, end), newLines = lines(after, start, endAfter);
+		if (oldLines.size() != newLines.size())
+			return reparse(current, after);
+
+		// the number of the first line of the window, from 0
+		int first = Arrays.binarySearch(beforeLines, start);
+		if (first < 0)
+			first = -first - 1;
+
+		PatchedDatabase patched = new PatchedDatabase(current);
+		ArrayList<Integer> changedCategories = new ArrayList<Integer>();
+		HashMap<Integer, String[]> changedCells = new HashMap<Integer, String[]>();
+
+		for (int k = 0; k < newLines.size(); k++) {
+			int line = first + k;
+			int range[] = newLines.get(k);
+			String text = new String(after, range[0], range[1], StandardCharsets.UTF_8);
+
+			// the numbers at the beginning, or lines after the last question, change the whole board
+			if (line < 2 || line >= 2 + m + 2L * m * n)
+				return reparse(current, after);
+
+			if (line < 2 + m) {
+				if (!text.equals(current.getCategory(line - 2))) {
+					patched.replaceCategory(line - 2, text);
+					changedCategories.add(line - 2);
+				}
+				continue;
+			}
+
+			// every cell has two lines: its answer, then its question
+			int entry = line - 2 - m, cell = entry >> 1;
+			String pair[] = changedCells.get(cell);
+			if (pair == null) {
+				Question question = current.getQuestion(cell % m, cell / m);
+				pair = new String[] {question.getResponse(), question.getQuestion()};
+				changedCells.put(cell, pair);
+			}
+			pair[entry & 1] = text;
+		}
+
+		// only keep the cells which really changed
+		ArrayList<Integer> cells = new ArrayList<Integer>();
+		for (Map.Entry<Integer, String[]> changed : changedCells.entrySet()) {
+			int cell = changed.getKey();
+			String pair[] = changed.getValue();
+			Question question = current.getQuestion(cell % m, cell / m);
+			if (!pair[0].equals(question.getResponse()) || !pair[1].equals(question.getQuestion())) {
+				patched.replaceQuestion(cell % m, cell / m, new Question(pair[0], pair[1]));
+				cells.add(cell);
+			}
+		}
+		cells.sort(null);
+
+		// the lines before the window didn't move, the lines of the window are known, and the lines after it moved by the size of the edit
+		int afterLines[] = beforeLines.clone(), shift = after.length - before.length;
+		for (int k = 0; k < newLines.size() && first + k < afterLines.length; k++)
+			afterLines[first + k] = newLines.get(k)[0];
+		for (int k = first + newLines.size(); k < afterLines.length; k++)
+			afterLines[k] += shift;
+
+		return new DatabasePatch(current, patched, toArray(changedCategories), toArray(cells), afterLines, newLines.size(), false);
+	}
+
+	/**
+	* Parses the whole new version, and compares it to the previous <code>Database</code>
+	*/
+	private static DatabasePatch reparse(QuestionBank current, byte after[]) throws DatabaseFormatException {
+		QuestionBank database;
+		try (LineReader reader = new LineReader(Channels.newChannel(new ByteArrayInputStream(after)), after.length)) {
+			database = Database.parseQuestions(reader, null);
+		} catch (IOException e) {
+			throw new DatabaseFormatException(2, 0);
+		}
+
+		int m = database.getNumCategories(), n = database.getNumQuestions();
+		int lines = 2 + m + 2 * m * n;
+
+		// a board of another size is a new board: nothing can be compared
+		if (m != current.getNumCategories() || n != current.getNumQuestions())
+			return new DatabasePatch(current, database, null, null, lineStarts(after), lines, true);
+
+		ArrayList<Integer> categories = new ArrayList<Integer>(), cells = new ArrayList<Integer>();
+		for (int j = 0; j < m; j++)
+			if (!database.getCategory(j).equals(current.getCategory(j)))
+				categories.add(j);
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < m; j++) {
+				Question old = current.getQuestion(j, i), updated = database.getQuestion(j, i);
+				if (!old.getResponse().equals(updated.getResponse()) || !old.getQuestion().equals(updated.getQuestion()))
+					cells.add(i * m + j);
+			}
+		}
+
+		return new DatabasePatch(current, database, toArray(categories), toArray(cells), lineStarts(after), lines, true);
+	}
+
+	/**
+	* Returns whether a byte ends a line
+	*/
+	private static boolean isTerminator(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	* Returns whether the given position is between the '\r' and the '\n' of a "\r\n"
+	*/
+	private static boolean splitsTerminator(byte data[], int position) {
+		return position > 0 && position < data.length && data[position - 1] == '\r' && data[position] == '\n';
+	}
+
+	/**
+	* Returns the lines of a window of whole lines, as {offset, length}; a line terminator at the very end of the file doesn't start another line
+	*/
+	private static ArrayList<int[]> lines(byte data[], int from, int to) {
+		ArrayList<int[]> lines = new ArrayList<int[]>();
+		int start = from;
+
+		for (int k = from; k < to; k++) {
+			if (isTerminator(data[k])) {
+				lines.add(new int[] {start, k - start});
+				// "\r\n" ends a single line
+				if (data[k] == '\r' && k + 1 < to && data[k + 1] == '\n')
+					k++;
+				start = k + 1;
+			}
+		}
+
+		if (start < to || to < data.length)
+			lines.add(new int[] {start, to - start});
+		return lines;
+	}
+
+	/**
+	* Static method that finds the start of every line of a file, "\r\n" ending a single line
+	* @param data the bytes of the file
+	* @return the position of the first byte of every line
+	*/
+	static int[] lineStarts(byte data[]) {
+		int starts[] = new int[1024], count = 0;
+
+		for (int k = 0; k < data.length; k++) {
+			// the previous line ended before this byte
+			if (k == 0 || (isTerminator(data[k - 1]) && !(data[k - 1] == '\r' && data[k] == '\n'))) {
+				if (count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = k;
+			}
+		}
+
+		return Arrays.copyOf(starts, count);
+	}
+
+	/**
+	* Returns the values of a list as an array
+	*/
+	private static int[] toArray(ArrayList<Integer> values) {
+		int array[] = new int[values.size()];
+		for (int k = 0; k < array.length; k++)
+			array[k] = values.get(k);
+		return array;
+	}
+
+	/**
+	* getter that returns the <code>Database</code> which was patched
+	* @return the <code>Database</code> of the previous version
+	*/
+	public QuestionBank getPrevious() {
+		return previous;
+	}
+
+	/**
+	* getter that returns the <code>Database</code> of the new version
+	* @return the patched <code>Database</code>
+	*/
+	public QuestionBank getDatabase() {
+		return database;
+	}
+
+	/**
+	* Returns whether the new version is a board of another size, which can't be patched
+	* @return true if the board has to be loaded as a new one
+	*/
+	public boolean isNewBoard() {
+		return categories == null;
+	}
+
+	/**
+	* Returns whether nothing changed
+	* @return true if no category or cell changed
+	*/
+	public boolean isEmpty() {
+		return categories != null && categories.length == 0 && cells.length == 0;
+	}
+
+	/**
+	* getter that returns the indexes of the categories which changed
+	* @return the indexes of the categories, or null for a new board
+	*/
+	public int[] getCategories() {
+		return categories;
+	}
+
+	/**
+	* getter that returns the cells whose <code>Question</code> changed, as question * m + category
+	* @return the cells, or null for a new board
+	*/
+	public int[] getCells() {
+		return cells;
+	}
+
+	/**
+	* getter that returns the start of every line of the new version, to give to the next <code>diff</code>
+	* @return the position of the first byte of every line
+	*/
+	public int[] getLineStarts() {
+		return lineStarts;
+	}
+
+	/**
+	* getter that returns the number of lines parsed to build the patch
+	* @return the number of lines parsed
+	*/
+	public int getLinesParsed() {
+		return linesParsed;
+	}
+
+	/**
+	* Returns whether the whole file was parsed, rather than only the lines which changed
+	* @return true if the whole file was parsed
+	*/
+	public boolean isReparsed() {
+		return reparsed;
+	}
+}
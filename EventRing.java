@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The last events of a board, streamed as Server-Sent Events to many connections by the <code>SpectatorServer</code> and the <code>BuzzerServer</code>.
+* Every event is encoded once, by the thread which publishes it, into a read-only frame shared by every connection, and kept in a ring of the
+* last events. A connection only has a position in the ring, and an <code>Outbox</code> of the buffers it is writing to its non-blocking socket:
+* a connection which falls further behind than the ring gets the state of the board instead of the events it missed,
+* so a slow connection never holds up the board nor the others.
+*/
+public class EventRing {
+
+	/**
+	* The largest number of buffers written to a connection at once
+	*/
+	static final int BATCH = 64;
+
+	/**
+	* A connection which can't be written to for this long is disconnected
+	*/
+	static final long STALL_MILLIS = 10000;
+
+	/**
+	* An event encoded once, as written to every connection, and its position among the events of its ring
+	*/
+	static class Frame {
+		final long sequence, publishedNanos;
+		private final ByteBuffer bytes;
+
+		/**
+		* The ring of the event, whose statistics count its deliveries, or null for a frame which isn't an event, such as the state of the board
+		*/
+		private final EventRing ring;
+
+		Frame(EventRing ring, long sequence, String data) {
+			this.ring = ring;
+			this.sequence = sequence;
+			publishedNanos = System.nanoTime();
+			bytes = ByteBuffer.wrap(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+		}
+
+		/**
+		* Returns a view of the bytes of the frame with its own position, so every connection shares the same bytes
+		*/
+		ByteBuffer buffer() {
+			return bytes.duplicate();
+		}
+	}
+
+	/**
+	* What a connection is writing, from first to count, with the frames of the buffers which are events, and its position in the ring.
+	* Only used by the thread of its server.
+	*/
+	static class Outbox {
+		final ByteBuffer buffers[] = new ByteBuffer[BATCH + 2];
+		final Frame frames[] = new Frame[BATCH + 2];
+		int first, count;
+
+		/**
+		* The sequence of the next event to send, and the number of times the state was sent since the connection last caught up
+		*/
+		long cursor;
+		int resyncs;
+
+		/**
+		* When the last write left bytes to write, or 0 if nothing is waiting
+		*/
+		long stalledSince;
+
+		/**
+		* Queues a buffer to write
+		* @param buffer the bytes to write
+		* @param frame the event of the buffer, or null if it isn't one
+		*/
+		void add(ByteBuffer buffer, Frame frame) {
+			buffers[count] = buffer;
+			frames[count++] = frame;
+		}
+
+		/**
+		* Returns whether everything queued has been written
+		* @return true if nothing is waiting to be written
+		*/
+		boolean isEmpty() {
+			return first == count;
+		}
+
+		/**
+		* Returns whether the connection made no progress for STALL_MILLIS, although bytes are waiting
+		* @param now the current time, as given by <code>System.nanoTime</code>
+		* @return true if the connection stalled
+		*/
+		boolean isStalled(long now) {
+			return stalledSince != 0 && now - stalledSince > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS);
+		}
+	}
+
+	/**
+	* The last events, every event at its sequence modulo their number, and the sequence of the next event
+	*/
+	private final AtomicReferenceArray<Frame> ring;
+	private volatile long published = 0;
+
+	/**
+	* Records the time from an event to its last byte written to a connection, or null
+	*/
+	private final LatencyHistogram delivery;
+
+	/**
+	* Statistics of the deliveries, only updated by the thread of the server: number of events written, of connections sent the state
+	* because they fell behind, and the total and maximum time from an event to its last byte written, in nanoseconds
+	*/
+	private volatile long framesWritten = 0, resyncs = 0, deliveryNanos = 0, maxDeliveryNanos = 0;
+
+	/**
+	* Creates an empty <code>EventRing</code>
+	* @param backlog the number of events kept: a connection further behind gets the state of the board instead
+	* @param delivery records the time from an event to its last byte written to a connection, or null
+	*/
+	EventRing(int backlog, LatencyHistogram delivery) {
+		ring = new AtomicReferenceArray<Frame>(backlog);
+		this.delivery = delivery;
+	}
+
+	/**
+	* Encodes an event once, and adds it to the ring; the events must be published one at a time, in order
+	* @param json the event
+	*/
+	void publish(String json) {
+		long sequence = published;
+		ring.set((int) (sequence % ring.length()), new Frame(this, sequence, json));
+		published = sequence + 1;
+	}
+
+	/**
+	* Encodes the state of the board, sent to the connections instead of the events they missed; its sequence is the one of the next event
+	* @param json the state of the board
+	* @return the frame of the state
+	*/
+	Frame state(String json) {
+		return new Frame(null, published, json);
+	}
+
+	/**
+	* getter that returns the sequence of the next event
+	* @return the number of events published so far
+	*/
+	long getPublished() {
+		return published;
+	}
+
+	/**
+	* Starts following the ring from the next event
+	* @param outbox the <code>Outbox</code> of the connection
+	*/
+	void follow(Outbox outbox) {
+		outbox.cursor = published;
+		outbox.resyncs = 0;
+	}
+
+	/**
+	* Queues the next events for a connection, or the state of the board if it missed some
+	* @param outbox the <code>Outbox</code> of the connection
+	* @param state returns the state of the board
+	* @param maxResyncs the largest number of times in a row the connection can be sent the state without catching up in between
+	* @return false if the connection keeps falling behind, and has to be disconnected
+	*/
+	boolean fill(Outbox outbox, Supplier<Frame> state, int maxResyncs) {
+		long last = published;
+		while (outbox.count < BATCH && outbox.cursor < last) {
+			Frame frame = ring.get((int) (outbox.cursor % ring.length()));
+
+			// the events missed were overwritten: the state of the board replaces them, unless it already did too often
+			if (last - outbox.cursor > ring.length() || frame == null || frame.sequence != outbox.cursor) {
+				if (++outbox.resyncs > maxResyncs)
+					return false;
+				Frame snapshot = state.get();
+				outbox.add(snapshot.buffer(), null);
+				outbox.cursor = snapshot.sequence;
+				resyncs++;
+				last = published;
+				continue;
+			}
+
+			outbox.add(frame.buffer(), frame);
+			outbox.cursor++;
+		}
+
+		// the connection caught up with the ring
+		if (outbox.cursor == last)
+			outbox.resyncs = 0;
+		return true;
+	}
+
+	/**
+	* Writes as much of an <code>Outbox</code> as the socket accepts, several buffers at once, and measures how long it makes no progress once it is full
+	* @param channel the non-blocking socket of the connection
+	* @param outbox the <code>Outbox</code> of the connection
+	* @return the number of bytes written; the <code>Outbox</code> is empty, unless the socket is full
+	* @throws IOException if the connection is closed
+	*/
+	static long write(SocketChannel channel, Outbox outbox) throws IOException {
+		long total = 0;
+		while (outbox.first < outbox.count) {
+			long written = channel.write(outbox.buffers, outbox.first, outbox.count - outbox.first);
+			total += written;
+			long now = System.nanoTime();
+			while (outbox.first < outbox.count && !outbox.buffers[outbox.first].hasRemaining()) {
+				Frame frame = outbox.frames[outbox.first];
+				if (frame != null && frame.ring != null)
+					frame.ring.delivered(now - frame.publishedNanos);
+				outbox.buffers[outbox.first] = null;
+				outbox.frames[outbox.first++] = null;
+			}
+
+			// the socket is full: the caller waits until it can be written again
+			if (outbox.first < outbox.count) {
+				if (written > 0 || outbox.stalledSince == 0)
+					outbox.stalledSince = now;
+				return total;
+			}
+		}
+
+		outbox.first = outbox.count = 0;
+		outbox.stalledSince = 0;
+		return total;
+	}
+
+	/**
+	* Records the time from an event to its last byte written to a connection
+	*/
+	private void delivered(long nanos) {
+		framesWritten++;
+		deliveryNanos += nanos;
+		if (nanos > maxDeliveryNanos)
+			maxDeliveryNanos = nanos;
+		if (delivery != null)
+			delivery.record(nanos);
+	}
+
+	/**
+	* getter that returns the number of events written to the connections
+	* @return the number of frames written
+	*/
+	long getFramesWritten() {
+		return framesWritten;
+	}
+
+	/**
+	* getter that returns the number of times a connection was sent the state because it fell behind
+	* @return the number of resyncs
+	*/
+	long getResyncs() {
+		return resyncs;
+	}
+
+	/**
+	* getter that returns the mean time from an event to its last byte written to a connection
+	* @return the mean time of a delivery, in microseconds
+	*/
+	long getMeanDeliveryMicros() {
+		long frames = framesWritten;
+		return frames == 0 ? 0 : deliveryNanos / frames / 1000;
+	}
+
+	/**
+	* getter that returns the longest time from an event to its last byte written to a connection
+	* @return the longest time of a delivery, in microseconds
+	*/
+	long getMaxDeliveryMicros() {
+		return maxDeliveryNanos / 1000;
+	}
+}
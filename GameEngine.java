@@ -0,0 +1,403 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The state of a Jeopardy game, independent of any user interface: the <code>Database</code> being played, which cells
+* have been played, the clue currently selected, and the scores of the players.
+* A cell is identified by the index of its category and the index of its question in that category, as in <code>Database</code>.
+* A <code>GameEngine</code> is not thread-safe: it must be used by one thread at a time.
+*/
+public class GameEngine {
+
+	/**
+	* The states of a game
+	*/
+	public enum State {
+		/** no <code>Database</code> has been loaded yet */
+		NO_BOARD,
+		/** the board is displayed, and no clue has been selected since it was loaded */
+		BOARD,
+		/** the "answer" of the selected clue is displayed, but its "question" is hidden */
+		CLUE_SHOWN,
+		/** both the "answer" and the "question" of the selected clue are displayed */
+		QUESTION_REVEALED
+	}
+
+	/**
+	* The outcomes of a transition
+	*/
+	public enum Outcome {
+		/** the transition happened */
+		ACCEPTED,
+		/** no <code>Database</code> has been loaded yet */
+		NO_BOARD,
+		/** the selected cell has already been played */
+		ALREADY_PLAYED,
+		/** another clue can't be selected before the "question" of the current one is revealed */
+		QUESTION_NOT_REVEALED,
+		/** there is no selected clue to reveal or judge */
+		NO_CLUE_SELECTED,
+		/** the player has already been judged for the selected clue */
+		ALREADY_JUDGED
+	}
+
+	/**
+	* Amount of money of the first row of the board; every following row is worth this much more
+	*/
+	public static final int AMOUNT_STEP = 100;
+
+	/**
+	* The <code>Database</code> being played, or null if none has been loaded
+	*/
+	private QuestionBank db;
+
+	/**
+	* The number of categories of the board, kept to compute the index of a cell
+	*/
+	private int numCategories;
+
+	/**
+	* Bitset of the played cells: the cell of a category and question is bit (question * numCategories + category)
+	*/
+	private long played[] = new long[0];
+
+	/**
+	* The number of played cells
+	*/
+	private int playedCount;
+
+	/**
+	* The current state of the game
+	*/
+	private State state = State.NO_BOARD;
+
+	/**
+	* The category and question of the selected clue, or -1 if no clue has been selected
+	*/
+	private int selectedCategory = -1, selectedQuestion = -1;
+
+	/**
+	* The amount of money of every row, or null for the default progression of AMOUNT_STEP per row
+	*/
+	private int amounts[];
+
+	/**
+	* The score of every player, and whether every player has been judged for the selected clue
+	*/
+	private int scores[];
+	private boolean judged[];
+
+	/**
+	* The <code>GameListener</code>s informed of every transition
+	*/
+	private final ArrayList<GameListener> listeners = new ArrayList<GameListener>();
+
+	/**
+	* Creates a <code>GameEngine</code> without a board
+	* @param numPlayers the number of players whose score is kept
+	*/
+	public GameEngine(int numPlayers) {
+		scores = new int[numPlayers];
+		judged = new boolean[numPlayers];
+	}
+
+	/**
+	* Starts a new game on the given <code>Database</code>: no cell has been played, no clue is selected and every score is 0
+	* @param database the <code>Database</code> to play
+	*/
+	public void load(QuestionBank database) {
+		Arrays.fill(scores, 0);
+		start(database);
+	}
+
+	/**
+	* Starts the next round of the game on the given <code>Database</code>, e.g. Double Jeopardy after Jeopardy: no cell has been played
+	* and no clue is selected, but the scores are kept. The listeners are informed as if the board had been loaded.
+	* @param database the <code>Database</code> of the round
+	* @param rowAmounts the amount of money of every row in this round, or null for the default progression
+	*/
+	public void nextRound(QuestionBank database, int rowAmounts[]) {
+		setAmounts(rowAmounts);
+		start(database);
+	}
+
+	/**
+	* Starts playing the given <code>Database</code> from its first clue, and informs the listeners
+	*/
+	private void start(QuestionBank database) {
+		db = database;
+		numCategories = database.getNumCategories();
+
+		// a board of the same size reuses the bitset, so playing game after game doesn't allocate
+		int words = (numCategories * database.getNumQuestions() + 63) >>> 6;
+		if (played.length == words)
+			Arrays.fill(played, 0);
+		else
+			played = new long[words];
+		playedCount = 0;
+		selectedCategory = selectedQuestion = -1;
+		Arrays.fill(judged, false);
+		state = State.BOARD;
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).boardLoaded(this);
+	}
+
+	/**
+	* Resumes a game on the given <code>Database</code>, in the state it was saved in, e.g. by a <code>GameJournal</code>.
+	* The listeners are informed as if the board had been loaded.
+	* @param database the <code>Database</code> to play
+	* @param playedCells the bitset of the played cells, as returned by <code>getPlayedCells</code>
+	* @param savedState the state of the game, other than NO_BOARD
+	* @param category the index of the category of the selected clue, or -1 if no clue has been selected
+	* @param question the index of the question of the selected clue in its category, or -1 if no clue has been selected
+	* @param savedScores the score of every player
+	* @throws IllegalArgumentException if the saved state doesn't fit the <code>Database</code> or the number of players
+	*/
+	public void restore(QuestionBank database, long playedCells[], State savedState, int category, int question, int savedScores[]) {
+		int m = database.getNumCategories(), n = database.getNumQuestions();
+		if (playedCells.length != (m * n + 63) >>> 6 || savedScores.length != scores.length || savedState == State.NO_BOARD)
+			throw new IllegalArgumentException("the saved game doesn't fit a board of " + m + "x" + n + " with " + scores.length + " players");
+		if (savedState != State.BOARD && (category < 0 || category >= m || question < 0 || question >= n))
+			throw new IllegalArgumentException("no cell at category " + category + ", question " + question);
+
+		db = database;
+		numCategories = m;
+		played = playedCells.clone();
+		playedCount = 0;
+		for (long word : played)
+			playedCount += Long.bitCount(word);
+		selectedCategory = savedState == State.BOARD ? -1 : category;
+		selectedQuestion = savedState == State.BOARD ? -1 : question;
+		state = savedState;
+		System.arraycopy(savedScores, 0, scores, 0, scores.length);
+		Arrays.fill(judged, false);
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).boardLoaded(this);
+	}
+
+	/**
+	* Replaces the <code>Database</code> being played by a new version of the same size, e.g. after its file was edited.
+	* The played cells, the selected clue and the scores are kept.
+	* @param patch the changes, built from the <code>Database</code> being played
+	* @return ACCEPTED if the <code>Database</code> was replaced, otherwise NO_BOARD if the patch is not for the <code>Database</code> being played
+	*/
+	public Outcome patch(DatabasePatch patch) {
+		if (db == null || patch.getPrevious() != db || patch.isNewBoard())
+			return Outcome.NO_BOARD;
+
+		db = patch.getDatabase();
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).boardPatched(this, patch);
+		return Outcome.ACCEPTED;
+	}
+
+	/**
+	* Adds a <code>GameListener</code>, which will be informed of every following transition
+	* @param listener the <code>GameListener</code> to add
+	*/
+	public void addListener(GameListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	* Removes a <code>GameListener</code> previously added
+	* @param listener the <code>GameListener</code> to remove
+	*/
+	public void removeListener(GameListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	* Selects the clue of a cell, which is then marked as played, so its "answer" can be displayed
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	* @return ACCEPTED if the clue is selected, otherwise the reason why it can't be
+	*/
+	public Outcome select(int category, int question) {
+		if (state == State.NO_BOARD)
+			return Outcome.NO_BOARD;
+
+		// we don't want to show another "answer" if the question has not been shown
+		if (state == State.CLUE_SHOWN)
+			return Outcome.QUESTION_NOT_REVEALED;
+
+		// we don't display an "answer" that has already been done
+		if (isPlayed(category, question))
+			return Outcome.ALREADY_PLAYED;
+
+		int cell = cell(category, question);
+		played[cell >>> 6] |= 1L << cell;
+		playedCount++;
+
+		selectedCategory = category;
+		selectedQuestion = question;
+		Arrays.fill(judged, false);
+		state = State.CLUE_SHOWN;
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).clueSelected(this, category, question);
+		return Outcome.ACCEPTED;
+	}
+
+	/**
+	* Reveals the "question" of the selected clue
+	* @return ACCEPTED if the "question" can be displayed, otherwise NO_CLUE_SELECTED
+	*/
+	public Outcome reveal() {
+		if (state != State.CLUE_SHOWN && state != State.QUESTION_REVEALED)
+			return Outcome.NO_CLUE_SELECTED;
+
+		state = State.QUESTION_REVEALED;
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).questionRevealed(this);
+		return Outcome.ACCEPTED;
+	}
+
+	/**
+	* Changes the score of a player for the selected clue: the amount of the clue is added if the player was right, otherwise it is subtracted.
+	* A player is only judged once per clue.
+	* @param player the index of the player
+	* @param correct whether the player was right
+	* @return ACCEPTED if the score changed, otherwise NO_CLUE_SELECTED, or ALREADY_JUDGED if the player was already judged for the clue
+	*/
+	public Outcome judge(int player, boolean correct) {
+		if (state != State.CLUE_SHOWN && state != State.QUESTION_REVEALED)
+			return Outcome.NO_CLUE_SELECTED;
+		if (judged[player])
+			return Outcome.ALREADY_JUDGED;
+
+		judged[player] = true;
+		int amount = getAmount(selectedQuestion);
+		scores[player] += correct ? amount : -amount;
+
+		for (int k = 0; k < listeners.size(); k++)
+			listeners.get(k).playerJudged(this, player, correct, amount);
+		return Outcome.ACCEPTED;
+	}
+
+	/**
+	* Returns the amount of money of the cells of a row: by default 100 for the first row, and 100 more for every following row
+	* @param question the index of the question in its category
+	* @return the amount of money of the cell
+	*/
+	public int getAmount(int question) {
+		return amounts != null && question < amounts.length ? amounts[question] : (question + 1) * AMOUNT_STEP;
+	}
+
+	/**
+	* Sets the amount of money of every row, e.g. to try another progression in a <code>TournamentSimulator</code>.
+	* The rows past the given amounts keep the default progression.
+	* @param rowAmounts the amount of money of every row, from the first one, or null for the default progression
+	*/
+	public void setAmounts(int rowAmounts[]) {
+		amounts = rowAmounts == null ? null : rowAmounts.clone();
+	}
+
+	/**
+	* Returns whether the cell of the given category and question has been played
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	* @return true if the cell has been played
+	*/
+	public boolean isPlayed(int category, int question) {
+		int cell = cell(category, question);
+		return (played[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	/**
+	* getter that returns a copy of the bitset of the played cells: the cell of a category and question is bit (question * numCategories + category)
+	* @return the played cells
+	*/
+	public long[] getPlayedCells() {
+		return played.clone();
+	}
+
+	/**
+	* getter that returns the number of cells which have been played
+	* @return the number of played cells
+	*/
+	public int getPlayedCount() {
+		return playedCount;
+	}
+
+	/**
+	* Returns whether every cell of the board has been played
+	* @return true if there is a board and no cell is left to play
+	*/
+	public boolean isBoardCleared() {
+		return db != null && playedCount == numCategories * db.getNumQuestions();
+	}
+
+	/**
+	* getter that returns the <code>Database</code> being played
+	* @return the <code>Database</code> being played, or null if none has been loaded
+	*/
+	public QuestionBank getDatabase() {
+		return db;
+	}
+
+	/**
+	* getter that returns the current state of the game
+	* @return the current state
+	*/
+	public State getState() {
+		return state;
+	}
+
+	/**
+	* getter that returns the category of the selected clue
+	* @return the index of the category of the selected clue, or -1 if no clue has been selected
+	*/
+	public int getSelectedCategory() {
+		return selectedCategory;
+	}
+
+	/**
+	* getter that returns the question of the selected clue
+	* @return the index of the question of the selected clue in its category, or -1 if no clue has been selected
+	*/
+	public int getSelectedQuestion() {
+		return selectedQuestion;
+	}
+
+	/**
+	* getter that returns the <code>Question</code> of the selected clue
+	* @return the <code>Question</code> of the selected clue, or null if no clue has been selected
+	*/
+	public Question getSelectedClue() {
+		return selectedCategory < 0 ? null : db.getQuestion(selectedCategory, selectedQuestion);
+	}
+
+	/**
+	* getter that returns the score of a player
+	* @param player the index of the player
+	* @return the score of the player
+	*/
+	public int getScore(int player) {
+		return scores[player];
+	}
+
+	/**
+	* getter that returns the number of players whose score is kept
+	* @return the number of players
+	*/
+	public int getNumPlayers() {
+		return scores.length;
+	}
+
+	/**
+	* Returns the index of the bit of a cell, making sure the cell is on the board
+	*/
+	private int cell(int category, int question) {
+		if (category < 0 || category >= numCategories || question < 0 || question >= db.getNumQuestions())
+			throw new IndexOutOfBoundsException("no cell at category " + category + ", question " + question);
+		return question * numCategories + category;
+	}
+}
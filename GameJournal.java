@@ -0,0 +1,587 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Records the transitions of a <code>GameEngine</code> in an append-only binary journal, so a game can be resumed after the JVM died.
+* The events are written by a background thread: every event waiting when it wakes up is written at once, then synced to the disk once
+* (group commit), so the event dispatch thread never waits for the disk.
+* Every SNAPSHOT_EVERY events, and whenever a board is loaded, a compact snapshot of the whole game is written next to the journal,
+* which is then emptied: resuming a game reads the snapshot, then replays the few events written after it.
+*
+* Every record of the journal is: int length of the body, body (long sequence, byte type, arguments), int CRC32 of the body.
+* A record cut by a crash fails its check, and is dropped with everything after it.
+*/
+public class GameJournal implements GameListener, Closeable {
+
+	/**
+	* A snapshot is written after this many events
+	*/
+	public static final int SNAPSHOT_EVERY = 1000;
+
+	/**
+	* The first int of a snapshot ("JSN1")
+	*/
+	static final int SNAPSHOT_MAGIC = 0x4A534E31;
+
+	/**
+	* The types of the records of the journal
+	*/
+	private static final byte LOAD = 1, SELECT = 2, REVEAL = 3, JUDGE = 4, NEXT_ROUND = 5;
+
+	/**
+	* The largest body of a record, so a corrupted length isn't mistaken for a record
+	*/
+	private static final int MAX_RECORD = 1 << 16;
+
+	/**
+	* Queued after the last event, to stop the writer
+	*/
+	private static final Object STOP = new Object();
+
+	/**
+	* A game as it was saved: the board it was played on, and its state once every event of the journal is replayed
+	*/
+	public static class SavedGame {
+		private String source;
+		private int categories, questions;
+		private long played[];
+		private GameEngine.State state = GameEngine.State.BOARD;
+		private int category = -1, question = -1;
+		private int scores[];
+		private long sequence;
+		private int replayed;
+
+		private SavedGame(String source, int categories, int questions, int players) {
+			this.source = source;
+			this.categories = categories;
+			this.questions = questions;
+			played = new long[(categories * questions + 63) >>> 6];
+			scores = new int[players];
+		}
+
+		/**
+		* getter that returns the path to the question file of the saved game
+		* @return the absolute path to the question file
+		*/
+		public String getSource() {
+			return source;
+		}
+
+		/**
+		* getter that returns the sequence number of the last event of the saved game
+		* @return the sequence number, from which the journal continues
+		*/
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		* getter that returns the number of events replayed after the snapshot
+		* @return the number of events replayed
+		*/
+		public int getReplayed() {
+			return replayed;
+		}
+
+		/**
+		* Resumes the saved game in a <code>GameEngine</code>
+		* @param engine the <code>GameEngine</code> to resume the game in
+		* @param database the <code>Database</code> read from the source of the saved game
+		* @throws IllegalArgumentException if the <code>Database</code> or the engine don't fit the saved game
+		*/
+		public void restore(GameEngine engine, QuestionBank database) {
+			if (database.getNumCategories() != categories || database.getNumQuestions() != questions)
+				throw new IllegalArgumentException("the saved game was played on a board of " + categories + "x" + questions);
+			engine.restore(database, played, state, category, question, scores);
+		}
+	}
+
+	/**
+	* The snapshot written next to the journal
+	*/
+	private final Path snapshot;
+
+	/**
+	* The channel appending to the journal, only used by the writer
+	*/
+	private final FileChannel channel;
+
+	/**
+	* The encoded records and snapshots waiting to be written, and the markers of the threads waiting for them to be synced
+	*/
+	private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+
+	/**
+	* The thread writing the queue
+	*/
+	private final Thread writer;
+
+	/**
+	* The sequence number of the last event, the number of events since the last snapshot, and the source of the next board loaded;
+	* only used by the thread using the engine
+	*/
+	private long sequence;
+	private int sinceSnapshot = 0;
+	private String source = "";
+
+	/**
+	* The number of syncs of the journal, and of records written, to measure the group commit
+	*/
+	private volatile long commits = 0, records = 0;
+
+	/**
+	* The first error of the writer, after which nothing more is written
+	*/
+	private volatile IOException failure;
+
+	/**
+	* Opens a journal to append the events of a game to, and starts its writer
+	* @param path the journal; its snapshot is the same path followed by ".snapshot"
+	* @param sequence the sequence number of the last event already in the journal, as given by <code>SavedGame.getSequence</code>, or 0
+	* @throws IOException if the journal can't be opened
+	*/
+	public GameJournal(Path path, long sequence) throws IOException {
+		this.sequence = sequence;
+		snapshot = snapshotOf(path);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		writer = new Thread(this::write, "journal-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		// write the pending events if the JVM exits normally, e.g. when the frame is closed
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				// nothing left to do
+			}
+		}));
+	}
+
+	/**
+	* Sets the question file of the next board loaded, which is recorded so the game can be resumed
+	* @param pathToFile the path to the question file
+	*/
+	public void setSource(String pathToFile) {
+		source = Paths.get(pathToFile).toAbsolutePath().toString();
+	}
+
+	/**
+	* Records a new board, as a snapshot. Required by the GameListener interface.
+	* The board of the next round of a game keeps the scores, which a new game has reset: it is recorded as NEXT_ROUND, with the scores,
+	* so a crash before its snapshot is written doesn't lose the scores of the previous rounds.
+	*/
+	public void boardLoaded(GameEngine engine) {
+		QuestionBank db = engine.getDatabase();
+
+		// a board resumed with played cells only needs its snapshot
+		if (engine.getState() == GameEngine.State.BOARD && engine.getPlayedCount() == 0) {
+			int players = engine.getNumPlayers();
+			boolean scored = false;
+			for (int k = 0; k < players; k++)
+				scored |= engine.getScore(k) != 0;
+
+			byte utf[] = source.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer record = record(++sequence, scored ? NEXT_ROUND : LOAD, 2 + utf.length + 12 + (scored ? 4 * players : 0));
+			record.putShort((short) utf.length).put(utf);
+			record.putInt(db.getNumCategories()).putInt(db.getNumQuestions()).putInt(players);
+			if (scored)
+				for (int k = 0; k < players; k++)
+					record.putInt(engine.getScore(k));
+			append(record);
+		}
+
+		// everything before this board is obsolete
+		takeSnapshot(engine);
+	}
+
+	/**
+	* Records the selected clue. Required by the GameListener interface.
+	*/
+	public void clueSelected(GameEngine engine, int category, int question) {
+		append(record(++sequence, SELECT, 8).putInt(category).putInt(question));
+		snapshotIfDue(engine);
+	}
+
+	/**
+	* Records that the question was revealed. Required by the GameListener interface.
+	*/
+	public void questionRevealed(GameEngine engine) {
+		append(record(++sequence, REVEAL, 0));
+		snapshotIfDue(engine);
+	}
+
+	/**
+	* Records the change of the score of a player. Required by the GameListener interface.
+	*/
+	public void playerJudged(GameEngine engine, int player, boolean correct, int amount) {
+		append(record(++sequence, JUDGE, 9).putInt(player).put((byte) (correct ? 1 : 0)).putInt(amount));
+		snapshotIfDue(engine);
+	}
+
+	/**
+	* Waits until every event recorded so far is synced to the disk
+	* @throws IOException if the journal can't be written
+	*/
+	public void flush() throws IOException {
+		CountDownLatch synced = new CountDownLatch(1);
+		queue.add(synced);
+		try {
+			synced.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	* Writes the pending events, then stops the writer and closes the journal
+	* @throws IOException if the journal can't be written
+	*/
+	public void close() throws IOException {
+		if (!writer.isAlive())
+			return;
+
+		queue.add(STOP);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	* getter that returns the number of syncs of the journal
+	* @return the number of group commits
+	*/
+	public long getCommits() {
+		return commits;
+	}
+
+	/**
+	* getter that returns the number of records written to the journal
+	* @return the number of records
+	*/
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	* Static method that reads the game saved by a journal: its snapshot, then the events written after it.
+	* A record cut by a crash is dropped, with everything after it, and the journal is truncated before it.
+	* @param path the journal
+	* @return the saved game, or null if no board was ever recorded
+	* @throws IOException if the journal or its snapshot can't be read
+	*/
+	public static SavedGame recover(Path path) throws IOException {
+		SavedGame game = readSnapshot(snapshotOf(path));
+		if (!Files.exists(path))
+			return game;
+
+		byte journal[] = Files.readAllBytes(path);
+		ByteBuffer buffer = ByteBuffer.wrap(journal);
+		CRC32 crc = new CRC32();
+		int good = 0;
+
+		while (buffer.remaining() >= 4) {
+			int length = buffer.getInt();
+			if (length < 9 || length > MAX_RECORD || buffer.remaining() < length + 4)
+				break;
+
+			crc.reset();
+			crc.update(journal, buffer.position(), length);
+			if ((int) crc.getValue() != buffer.getInt(buffer.position() + length))
+				break;
+
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			buffer.position(buffer.position() + length + 4);
+			good = buffer.position();
+
+			game = replay(game, body);
+		}
+
+		// drop a record cut by a crash, so the next records follow the last good one
+		if (good < journal.length)
+			try (FileChannel truncated = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				truncated.truncate(good);
+			}
+
+		return game;
+	}
+
+	/**
+	* Applies a record of the journal to the saved game, unless it is older than the game
+	*/
+	private static SavedGame replay(SavedGame game, ByteBuffer body) {
+		long sequence = body.getLong();
+		byte type = body.get();
+
+		// the events before the snapshot are already part of it
+		if (game != null && sequence <= game.sequence)
+			return game;
+
+		if (type == LOAD || type == NEXT_ROUND) {
+			byte utf[] = new byte[body.getShort() & 0xFFFF];
+			body.get(utf);
+			game = new SavedGame(new String(utf, StandardCharsets.UTF_8), body.getInt(), body.getInt(), body.getInt());
+
+			// the next round of a game starts with the scores of the previous rounds
+			if (type == NEXT_ROUND)
+				for (int k = 0; k < game.scores.length; k++)
+					game.scores[k] = body.getInt();
+		}
+		// events without a board can't be replayed
+		else if (game == null)
+			return null;
+		else if (type == SELECT) {
+			game.category = body.getInt();
+			game.question = body.getInt();
+			int cell = game.question * game.categories + game.category;
+			game.played[cell >>> 6] |= 1L << cell;
+			game.state = GameEngine.State.CLUE_SHOWN;
+		}
+		else if (type == REVEAL)
+			game.state = GameEngine.State.QUESTION_REVEALED;
+		else if (type == JUDGE) {
+			int player = body.getInt();
+			boolean correct = body.get() != 0;
+			int amount = body.getInt();
+			game.scores[player] += correct ? amount : -amount;
+		}
+
+		game.sequence = sequence;
+		game.replayed++;
+		return game;
+	}
+
+	/**
+	* Reads a snapshot
+	* @return the game it saved, or null if there is no snapshot or it isn't valid
+	*/
+	private static SavedGame readSnapshot(Path snapshot) throws IOException {
+		if (!Files.exists(snapshot))
+			return null;
+
+		byte bytes[] = Files.readAllBytes(snapshot);
+		if (bytes.length < 8)
+			return null;
+
+		// the last int is the CRC32 of everything before it
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4))
+			return null;
+
+		try {
+			ByteBuffer in = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+			if (in.getInt() != SNAPSHOT_MAGIC)
+				return null;
+
+			long sequence = in.getLong();
+			byte utf[] = new byte[in.getShort() & 0xFFFF];
+			in.get(utf);
+			int m = in.getInt(), n = in.getInt(), players = in.getInt();
+			SavedGame game = new SavedGame(new String(utf, StandardCharsets.UTF_8), m, n, players);
+			game.sequence = sequence;
+
+			for (int k = 0; k < game.played.length; k++)
+				game.played[k] = in.getLong();
+			game.state = GameEngine.State.values()[in.get()];
+			game.category = in.getInt();
+			game.question = in.getInt();
+			for (int k = 0; k < players; k++)
+				game.scores[k] = in.getInt();
+			return game;
+		} catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	* Returns the path of the snapshot of a journal
+	*/
+	private static Path snapshotOf(Path journal) {
+		return Paths.get(journal.toString() + ".snapshot");
+	}
+
+	/**
+	* Starts encoding a record: its length, sequence and type are written, and its arguments have to be put next
+	* @param arguments the number of bytes of the arguments
+	*/
+	private static ByteBuffer record(long sequence, byte type, int arguments) {
+		ByteBuffer record = ByteBuffer.allocate(4 + 9 + arguments + 4);
+		return record.putInt(9 + arguments).putLong(sequence).put(type);
+	}
+
+	/**
+	* Adds the CRC32 of the body of a record, and queues it for the writer
+	*/
+	private void append(ByteBuffer record) {
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, record.position() - 4);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		queue.add(record);
+	}
+
+	/**
+	* Takes a snapshot if enough events were recorded since the last one
+	*/
+	private void snapshotIfDue(GameEngine engine) {
+		if (++sinceSnapshot >= SNAPSHOT_EVERY)
+			takeSnapshot(engine);
+	}
+
+	/**
+	* Encodes the whole state of the game, as of the last recorded event, and queues it for the writer
+	*/
+	private void takeSnapshot(GameEngine engine) {
+		sinceSnapshot = 0;
+		QuestionBank db = engine.getDatabase();
+
+		byte utf[] = source.getBytes(StandardCharsets.UTF_8);
+		long played[] = engine.getPlayedCells();
+		int players = engine.getNumPlayers();
+
+		ByteBuffer out = ByteBuffer.allocate(4 + 8 + 2 + utf.length + 12 + 8 * played.length + 9 + 4 * players + 4);
+		out.putInt(SNAPSHOT_MAGIC).putLong(sequence);
+		out.putShort((short) utf.length).put(utf);
+		out.putInt(db.getNumCategories()).putInt(db.getNumQuestions()).putInt(players);
+		for (long word : played)
+			out.putLong(word);
+		out.put((byte) engine.getState().ordinal());
+		out.putInt(engine.getSelectedCategory()).putInt(engine.getSelectedQuestion());
+		for (int k = 0; k < players; k++)
+			out.putInt(engine.getScore(k));
+
+		// the last int is the CRC32 of everything before it
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), 0, out.position());
+		out.putInt((int) crc.getValue());
+
+		queue.add(new Snapshot(out.array()));
+	}
+
+	/**
+	* An encoded snapshot, queued for the writer
+	*/
+	private static class Snapshot {
+		final byte bytes[];
+
+		Snapshot(byte bytes[]) {
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	* The loop of the writer: takes everything queued, writes the records with one sync, then writes the snapshots and wakes up the flushes
+	*/
+	private void write() {
+		ArrayList<Object> batch = new ArrayList<Object>();
+		ArrayList<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch);
+
+			boolean stop = false;
+			for (Object item : batch) {
+				if (item instanceof ByteBuffer)
+					pending.add((ByteBuffer) item);
+				else {
+					// everything before a snapshot, flush or stop must be on the disk first
+					commit(pending);
+
+					if (item instanceof Snapshot)
+						writeSnapshot(((Snapshot) item).bytes);
+					else if (item instanceof CountDownLatch)
+						((CountDownLatch) item).countDown();
+					else
+						stop = true;
+				}
+			}
+			commit(pending);
+			batch.clear();
+
+			if (stop)
+				return;
+		}
+	}
+
+	/**
+	* Writes the pending records, and syncs them to the disk once
+	*/
+	private void commit(ArrayList<ByteBuffer> pending) {
+		if (pending.isEmpty() || failure != null) {
+			pending.clear();
+			return;
+		}
+
+		try {
+			ByteBuffer buffers[] = pending.toArray(new ByteBuffer[pending.size()]);
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers)
+				remaining += buffer.remaining();
+			while (remaining > 0)
+				remaining -= channel.write(buffers);
+
+			channel.force(false);
+			commits++;
+			records += buffers.length;
+		} catch (IOException e) {
+			failure = e;
+		}
+		pending.clear();
+	}
+
+	/**
+	* Replaces the snapshot, then empties the journal, as every record in it is part of the snapshot
+	*/
+	private void writeSnapshot(byte bytes[]) {
+		if (failure != null)
+			return;
+
+		Path temporary = Paths.get(snapshot.toString() + ".tmp");
+		try {
+			try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining())
+					out.write(buffer);
+				out.force(true);
+			}
+			Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+			// a crash before this point leaves records older than the snapshot, which recover skips
+			channel.truncate(0);
+			channel.force(true);
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+}
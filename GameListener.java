@@ -0,0 +1,51 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Informed of the transitions of a <code>GameEngine</code>, once they have happened. Listeners are called by the thread using the engine,
+* so they must return quickly; they only need to implement the transitions they are interested in.
+*/
+public interface GameListener {
+
+	/**
+	* Called when a new board has been loaded
+	* @param engine the <code>GameEngine</code> whose board was loaded
+	*/
+	default void boardLoaded(GameEngine engine) {
+	}
+
+	/**
+	* Called when the <code>Database</code> of the board has been replaced by a new version of the same size; the played cells,
+	* the selected clue and the scores are kept
+	* @param engine the <code>GameEngine</code> whose board was patched
+	* @param patch the categories and cells which changed
+	*/
+	default void boardPatched(GameEngine engine, DatabasePatch patch) {
+	}
+
+	/**
+	* Called when a clue has been selected, and its cell marked as played
+	* @param engine the <code>GameEngine</code> in which the clue was selected
+	* @param category the index of the category of the clue
+	* @param question the index of the question of the clue in its category
+	*/
+	default void clueSelected(GameEngine engine, int category, int question) {
+	}
+
+	/**
+	* Called when the "question" of the selected clue has been revealed
+	* @param engine the <code>GameEngine</code> in which the question was revealed
+	*/
+	default void questionRevealed(GameEngine engine) {
+	}
+
+	/**
+	* Called when the score of a player has changed for the selected clue
+	* @param engine the <code>GameEngine</code> in which the player was judged
+	* @param player the index of the player
+	* @param correct whether the player was right
+	* @param amount the amount added to, or subtracted from, the score of the player
+	*/
+	default void playerJudged(GameEngine engine, int player, boolean correct, int amount) {
+	}
+}
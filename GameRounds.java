@@ -0,0 +1,142 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The rounds of a game, e.g. Jeopardy, Double Jeopardy and Final Jeopardy: every round is played on its own question file,
+* and the amounts of its rows are multiplied by its own multiplier. The scores are kept from a round to the next.
+*
+* The rounds are given as question files separated by commas, each followed by "*multiplier" unless it is the default one
+* (1 for the first round, 2 for the second, and so on):
+* e.g. -Djeopardy.rounds=questions/jeopardy.txt,questions/double.txt*2,questions/final.txt*5
+*/
+public class GameRounds {
+
+	/**
+	* The names of the first two rounds; the last one of three rounds or more is "Final Jeopardy"
+	*/
+	private static final String NAMES[] = {"Jeopardy", "Double Jeopardy"};
+
+	/**
+	* A round: its name, its question file and the multiplier of its amounts
+	*/
+	public static class Round {
+		private final String name, pathToFile;
+		private final int multiplier;
+
+		private Round(String name, String pathToFile, int multiplier) {
+			this.name = name;
+			this.pathToFile = pathToFile;
+			this.multiplier = multiplier;
+		}
+
+		/**
+		* getter that returns the name of the round
+		* @return the name of the round, e.g. "Double Jeopardy"
+		*/
+		public String getName() {
+			return name;
+		}
+
+		/**
+		* getter that returns the relative path to the question file of the round
+		* @return the path to the question file
+		*/
+		public String getPathToFile() {
+			return pathToFile;
+		}
+
+		/**
+		* getter that returns the multiplier of the amounts of the round
+		* @return the multiplier of the default amounts
+		*/
+		public int getMultiplier() {
+			return multiplier;
+		}
+
+		/**
+		* Returns the amount of money of every row of a board of the round: the default progression, times the multiplier
+		* @param rows the number of questions per category of the board
+		* @return the amounts, as given to <code>GameEngine.setAmounts</code>
+		*/
+		public int[] getAmounts(int rows) {
+			int amounts[] = new int[rows];
+			for (int i = 0; i < rows; i++)
+				amounts[i] = (i + 1) * GameEngine.AMOUNT_STEP * multiplier;
+			return amounts;
+		}
+	}
+
+	/**
+	* The rounds, in the order they are played
+	*/
+	private final Round rounds[];
+
+	private GameRounds(Round rounds[]) {
+		this.rounds = rounds;
+	}
+
+	/**
+	* Static method that reads the rounds of a game
+	* @param spec the question files of the rounds, separated by commas, each optionally followed by "*multiplier"
+	* @return the rounds, or null if spec is null or empty
+	* @throws IllegalArgumentException if a multiplier isn't a positive number
+	*/
+	public static GameRounds parse(String spec) {
+		if (spec == null || spec.trim().isEmpty())
+			return null;
+
+		String files[] = spec.split(",");
+		ArrayList<Round> rounds = new ArrayList<Round>();
+		for (int k = 0; k < files.length; k++) {
+			String file = files[k].trim();
+			int multiplier = k + 1, star = file.lastIndexOf('*');
+			if (star >= 0) {
+				try {
+					multiplier = Integer.parseInt(file.substring(star + 1).trim());
+				} catch (NumberFormatException e) {
+					multiplier = 0;
+				}
+				if (multiplier <= 0)
+					throw new IllegalArgumentException("the multiplier of round " + (k + 1) + " isn't a positive number: " + file);
+				file = file.substring(0, star).trim();
+			}
+
+			String name = k < NAMES.length ? NAMES[k] : k == files.length - 1 ? "Final Jeopardy" : "Round " + (k + 1);
+			rounds.add(new Round(name, file, multiplier));
+		}
+		return new GameRounds(rounds.toArray(new Round[rounds.size()]));
+	}
+
+	/**
+	* getter that returns the number of rounds
+	* @return the number of rounds
+	*/
+	public int size() {
+		return rounds.length;
+	}
+
+	/**
+	* getter that returns a round
+	* @param k the index of the round, from 0
+	* @return the round
+	*/
+	public Round get(int k) {
+		return rounds[k];
+	}
+
+	/**
+	* Returns the index of the round played on a question file, e.g. to resume a saved game in its round
+	* @param pathToFile the path to a question file, relative or absolute
+	* @return the index of the first round played on that file, or -1 if none is
+	*/
+	public int indexOf(String pathToFile) {
+		String file = Paths.get(pathToFile).toAbsolutePath().normalize().toString();
+		for (int k = 0; k < rounds.length; k++)
+			if (Paths.get(rounds[k].pathToFile).toAbsolutePath().normalize().toString().equals(file))
+				return k;
+		return -1;
+	}
+}
@@ -1,6 +1,14 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 // Author: Jonathan Guillotte-Blouin
@@ -9,28 +17,105 @@ import javax.swing.*;
 /**
 * A specialized <code>JFrame</code> as well as the controller for this application. The questions for the game are kept in a <code>Database</code> object.
 */
-public class Jeopardy extends JFrame implements ActionListener {
+public class Jeopardy extends JFrame implements ActionListener, PropertyChangeListener, CellListener, QuestionFileWatcher.Listener {
 
 	/**
-	* A <code>Database</code> object which will store the <code>Question</code>s associated to the game
+	* The <code>GameEngine</code> which stores the state of the game, including the <code>Database</code> of the <code>Question</code>s associated to the game.
+	* The frame only displays this state, and asks the engine to change it.
 	*/
-	private Database db;
+	private GameEngine engine = new GameEngine(1);
 
 	/**
-	* booleans to store the state of the components of the board. Used to make conditional actions.
+	* Reference throughout Jeopardy to the three <code>JPanel</code>s forming the <code>JFrame</code>
 	*/
-	private boolean buttonsGridRevealed = false, answersGridRevealed = false, questionRevealed = false, answerRevealed = false;
+	private JPanel bottomPanel;
 
 	/**
-	* Reference throughout Jeopardy to the three <code>JPanel</code>s forming the <code>JFrame</code>
+	* Boards with more cells than this are displayed by a <code>VirtualBoardPanel</code> rather than a grid of <code>JeopardyButton</code>s
+	*/
+	private static final int VIRTUAL_BOARD_CELLS = 1000;
+
+	/**
+	* The grid of the board (topPanel) and the panel displaying the selected clue (midPanel). They are created once, and only updated afterwards.
+	*/
+	private BoardPanel topPanel;
+	private AnswerPanel midPanel;
+
+	/**
+	* The board painting only its visible cells, used for large boards. Created the first time a large board is loaded.
+	*/
+	private VirtualBoardPanel virtualBoard;
+
+	/**
+	* The view currently displaying the board: topPanel or virtualBoard
+	*/
+	private BoardView board;
+
+	/**
+	* Reference throughout Jeopardy to the "Load" and "Random" <code>JButton</code>s, disabled while a file is being loaded, and to the "Cancel" <code>JButton</code>, only visible at that time
+	*/
+	private JButton loadButton, randomButton, cancelButton;
+
+	/**
+	* Shows the progress of the file being loaded. Only visible while a file is being loaded.
+	*/
+	private JProgressBar loadProgress;
+
+	/**
+	* The <code>DatabaseLoader</code> reading a file in the background, or null if no file is being loaded
+	*/
+	private DatabaseLoader loader;
+
+	/**
+	* The <code>GameJournal</code> recording the game, or null if it isn't recorded, and the game saved by it to resume once its file is loaded, or null
+	*/
+	private GameJournal journal;
+	private GameJournal.SavedGame resume;
+
+	/**
+	* Records the selected clues, the buzzes and the judgements in the statistics of the clues and of the players, or null if they aren't kept
+	*/
+	private StatsStore.Recorder stats;
+
+	/**
+	* When checked, the file of the board is watched, and the board is patched every time the file is saved
+	*/
+	private JCheckBox watchBox;
+
+	/**
+	* The file of the board, or null if no file has been loaded, and the <code>QuestionFileWatcher</code> watching it, or null
+	*/
+	private String boardFile;
+	private QuestionFileWatcher watcher;
+
+	/**
+	* The rounds of the game if -Djeopardy.rounds=... is given, otherwise null, and the index of the round being played, or -1
 	*/
-	private JPanel topPanel, midPanel, bottomPanel;
+	private GameRounds rounds;
+	private int round = -1;
 
 	/**
-	* Reference throughout Jeopardy to the <code>JLabel</code> containing the "question" that switches from a hidden state to a visible state after clicking "Reveal"
+	* The <code>DatabaseLoader</code> parsing the file of the next round in the background while the current round is played, or null
 	*/
-	private JLabel questionText;
+	private DatabaseLoader preloader;
 
+	/**
+	* The round the <code>DatabaseLoader</code> is loading, or -1 for any other file; when the move to that round was asked for,
+	* and whether its file was already parsed then
+	*/
+	private int loadingRound = -1;
+	private long roundRequested;
+	private boolean roundPreloaded;
+
+	/**
+	* Reference to the "Next Round" <code>JButton</code>, only visible when the game has another round
+	*/
+	private JButton nextRoundButton;
+
+	/**
+	* The number of categories and of questions per category of the random boards, given by -Djeopardy.randomBoard=6x5, or null if it isn't valid
+	*/
+	private int randomSize[];
 
 
 	/**
@@ -53,17 +138,52 @@ public class Jeopardy extends JFrame implements ActionListener {
 		revealButton.addActionListener(this);
 
 		// create a JButton that will load a new grid of buttons when clicked
-		JButton loadButton = new JButton("Load");
+		loadButton = new JButton("Load");
 		// styling
 		loadButton.setFocusPainted(false);
 		// make the controller the listener to the event associated to the JButton
 		loadButton.addActionListener(this);
 
+		// create a JButton that will assemble a random board from an archive of questions when clicked
+		randomButton = new JButton("Random");
+		randomButton.setFocusPainted(false);
+		randomButton.addActionListener(this);
+
+		// create a JButton that will move to the next round when clicked, hidden unless the game is played in rounds
+		nextRoundButton = new JButton("Next Round");
+		nextRoundButton.setFocusPainted(false);
+		nextRoundButton.addActionListener(this);
+		nextRoundButton.setVisible(false);
+
+		// create a JProgressBar and a JButton showing and stopping the loading of a file, hidden until a file is loaded
+		loadProgress = new JProgressBar(0, 100);
+		loadProgress.setStringPainted(true);
+		loadProgress.setVisible(false);
+		cancelButton = new JButton("Cancel");
+		cancelButton.setFocusPainted(false);
+		cancelButton.addActionListener(this);
+		cancelButton.setVisible(false);
+
+		// create a JCheckBox watching the file of the board for changes, checked by default if -Djeopardy.watch=true is given
+		watchBox = new JCheckBox("Watch", Boolean.getBoolean("jeopardy.watch"));
+		watchBox.setFocusPainted(false);
+		watchBox.setBackground(Color.WHITE);
+		watchBox.addActionListener(this);
+
+		// create the panels of the board and of the selected clue, which are added to the frame once they have something to display
+		topPanel = new BoardPanel(this);
+		midPanel = new AnswerPanel();
+
 		// create a JPanel that will contain the "Reveal" & "Load" JButtons
 		bottomPanel = new JPanel();
 		bottomPanel.setBackground(Color.WHITE);
 		bottomPanel.add(revealButton);
 		bottomPanel.add(loadButton);
+		bottomPanel.add(randomButton);
+		bottomPanel.add(nextRoundButton);
+		bottomPanel.add(watchBox);
+		bottomPanel.add(loadProgress);
+		bottomPanel.add(cancelButton);
 		
 		// add the bottomPanel to the bottom of the JFrame
 		add(bottomPanel, BorderLayout.SOUTH);
@@ -74,6 +194,45 @@ public class Jeopardy extends JFrame implements ActionListener {
 		setVisible(true);
 		//styling
 		setResizable(false);
+
+		// the statistics of the clues and of the players are kept from a game to the next if -Djeopardy.stats=... is given
+		startStats(System.getProperty("jeopardy.stats"));
+
+		// contestants can follow the board and buzz in from their own devices if -Djeopardy.buzzerPort=... is given
+		startBuzzerServer(Integer.getInteger("jeopardy.buzzerPort", -1));
+
+		// the audience screens can follow the board if -Djeopardy.spectatorPort=... is given
+		startSpectatorServer(Integer.getInteger("jeopardy.spectatorPort", -1));
+
+		// the game is played in rounds, each on its own question file, if -Djeopardy.rounds=... is given
+		try {
+			rounds = GameRounds.parse(System.getProperty("jeopardy.rounds"));
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(this, e.getMessage());
+		}
+
+		// the size of the random boards can be changed with -Djeopardy.randomBoard=6x5
+		String size = System.getProperty("jeopardy.randomBoard", "6x5");
+		try {
+			randomSize = BoardSampler.parseSize(size);
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(this, e.getMessage());
+		}
+
+		// the game is recorded, and resumed after a crash, if -Djeopardy.journal=... is given
+		startJournal(System.getProperty("jeopardy.journal"));
+
+		// the first round is loaded, unless a saved game is being resumed
+		if (rounds != null && resume == null)
+			startLoader(new DatabaseLoader(rounds.get(0).getPathToFile()), 0);
+
+		// show the metrics through JMX, record the stalls of the event dispatch thread, and print every latency on exit if -Djeopardy.metrics=true is given;
+		// otherwise the latencies are still counted, but nothing pings the event dispatch thread
+		if (Boolean.getBoolean("jeopardy.metrics")) {
+			Metrics.registerMBeans();
+			Metrics.startEdtWatchdog();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(Metrics.summary()), "metrics-summary"));
+		}
 	}
 
 	/**
@@ -82,51 +241,91 @@ public class Jeopardy extends JFrame implements ActionListener {
 	* @param pathToFile String containing the relative path to the file which contains the information needed to build the board.
 	*/
 	public Jeopardy(String pathToFile) {
-		// displays "Jeopardy" in the title bar
-		super("Jeopardy");
+		// create the layout of the application
+		this();
 
-		// shut the program down when the "x" is clicked
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		// styling
-		setBackground(Color.WHITE);
-
-		// create a JButton that will reveal the "question" when clicked
-		JButton revealButton = new JButton("Reveal");
-		// styling
-		revealButton.setFocusPainted(false);
-		// make the controller the listener to the event associated to the JButton
-		revealButton.addActionListener(this);
+		// store the information found at "pathToFile" into db, without freezing the frame, unless a saved game is being resumed,
+		// or the game is played in rounds
+		if (resume == null && rounds == null)
+			loadDatabase(pathToFile);
+	}
 
-		// create a JButton that will load a new grid of buttons when clicked
-		JButton loadButton = new JButton("Load");
-		// styling
-		loadButton.setFocusPainted(false);
-		// make the controller the listener to the event associated to the JButton
-		loadButton.addActionListener(this);
+	/**
+	* Starts a <code>BuzzerServer</code> with a room "main" following this board, unless the port is negative
+	* @param port the port the server listens on
+	*/
+	private void startBuzzerServer(int port) {
+		if (port < 0)
+			return;
+
+		try {
+			BuzzerServer buzzer = new BuzzerServer(port);
+			// the room only queues the events, so the engine can inform it from the event dispatch thread
+			BuzzerRoom room = buzzer.createRoom("main");
+			room.setRecorder(stats);
+			engine.addListener(room);
+			buzzer.start();
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "The buzzer server can't listen on port " + port + ": " + e.getMessage());
+		}
+	}
 
-		// create a JPanel that will contain the "Reveal" & "Load" JButtons
-		bottomPanel = new JPanel();
-		bottomPanel.setBackground(Color.WHITE);
-		bottomPanel.add(revealButton);
-		bottomPanel.add(loadButton);
-		
-		// add the bottomPanel to the bottom of the JFrame
-		add(bottomPanel, BorderLayout.SOUTH);
+	/**
+	* Opens the <code>StatsStore</code> keeping the statistics of the clues and of the players, and records this game in it
+	* @param pathToStats the path to the statistics file, or null
+	*/
+	private void startStats(String pathToStats) {
+		if (pathToStats == null)
+			return;
+
+		try {
+			StatsStore store = new StatsStore(Paths.get(pathToStats), Long.getLong("jeopardy.statsFlush", StatsStore.FLUSH_MILLIS));
+			// recording an event only puts it in a ring, so the engine can inform the recorder from the event dispatch thread
+			stats = store.recorder("");
+			engine.addListener(stats);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "The statistics can't be kept in " + pathToStats + ": " + e.getMessage());
+		}
+	}
 
-		// store the information found at "pathToFile" into db
-		db = Database.readQuestions(pathToFile);
+	/**
+	* Starts a <code>SpectatorServer</code> following this board, unless the port is negative
+	* @param port the port the server listens on
+	*/
+	private void startSpectatorServer(int port) {
+		if (port < 0)
+			return;
+
+		try {
+			SpectatorServer spectators = new SpectatorServer(port);
+			// the server encodes every change once, and never waits for the viewers, so the engine can inform it from the event dispatch thread
+			engine.addListener(spectators);
+			spectators.start();
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "The spectator server can't listen on port " + port + ": " + e.getMessage());
+		}
+	}
 
-		// if everything worked fine, db should point to the Database object. Otherwise, there was a problem, and db is pointing to null.
-		// if it is the case, we can't build the buttons Grid
-		if (db != null) 
-			buildButtonsGrid();
+	/**
+	* Opens the <code>GameJournal</code> recording the game; if it saved a game, its file is loaded and the game is resumed
+	* @param pathToJournal the path to the journal, or null
+	*/
+	private void startJournal(String pathToJournal) {
+		if (pathToJournal == null)
+			return;
+
+		try {
+			Path path = Paths.get(pathToJournal);
+			resume = GameJournal.recover(path);
+			journal = new GameJournal(path, resume == null ? 0 : resume.getSequence());
+			engine.addListener(journal);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "The game can't be recorded in " + pathToJournal + ": " + e.getMessage());
+			return;
+		}
 
-		// styling
-		pack();
-		// display the JFrame
-		setVisible(true);
-		//styling
-		setResizable(false);
+		if (resume != null)
+			loadDatabase(resume.getSource());
 	}
 
 	/**
@@ -137,23 +336,16 @@ public class Jeopardy extends JFrame implements ActionListener {
 
 		// if the button clicked is part of the grid, so if it's a JeopardyButton...
 		if (e.getSource() instanceof JeopardyButton) {
-			// we don't want to show another "answer" if the question has not been shown
-			// we also want to show an "answer" if no answers are currently displayed 
-			if (questionRevealed || !answersGridRevealed) {
-				// cast the source of the vent to a JeopardyButton
-				JeopardyButton selected = (JeopardyButton) e.getSource();
-				// styling
-				selected.setFocusPainted(false);
-
-				// we don't display an "answer" that has already been done
-				if (!selected.getText().equals("-"))
-					buildAnswersGrid(selected); // builds the answers grid, displaying only the "answer"
-				else
-					JOptionPane.showMessageDialog(null,"This question has already been done!");
-			}
-			else
-				JOptionPane.showMessageDialog(null,"You haven't looked at the question!");
+			// cast the source of the vent to a JeopardyButton
+			JeopardyButton selected = (JeopardyButton) e.getSource();
+			// styling
+			selected.setFocusPainted(false);
+
+			cellSelected(selected.getCategory(), selected.getQuestion());
 		}
+		// if the "Watch" JCheckBox is clicked, start or stop watching the file of the board
+		else if (e.getSource() == watchBox)
+			updateWatcher();
 		// if the button clicked is a JButton, but not a JeopardyButton (so "Reveal" or "Load")
 		else if (e.getSource() instanceof JButton && !(e.getSource() instanceof JeopardyButton)) {
 			// get the text of the button, so we can detect which of "Reveal" or "Load" it is
@@ -166,25 +358,42 @@ public class Jeopardy extends JFrame implements ActionListener {
 					String pathToFile = JOptionPane.showInputDialog("Input the relative path to the file", "questions/actualJeopardyQuestions.txt");
 
 					// update the database with the new file, if it is not null
-					if (pathToFile != null) {
-						db = Database.readQuestions(pathToFile);
+					if (pathToFile != null)
+						loadDatabase(pathToFile);
 
-						// if everything worked fine, db should point to the Database object. Otherwise, there was a problem, and db is pointing to null.
-						// if it is the case, we can't build the buttons Grid
-						if (db != null) 
-							buildButtonsGrid();
+					break;
+
+				case "Random":
+					// ask for the relative path to the archive from which the board is assembled
+					String archive = JOptionPane.showInputDialog("Input the relative path to the archive of questions", "questions/actualJeopardyQuestions.txt");
+
+					// the size of the board can be changed with -Djeopardy.randomBoard=6x5, and the board repeated with -Djeopardy.seed=...
+					if (archive != null && randomSize == null)
+						JOptionPane.showMessageDialog(this, "The size of the random boards isn't valid: -Djeopardy.randomBoard="
+							+ System.getProperty("jeopardy.randomBoard"));
+					else if (archive != null) {
+						long seed = Long.getLong("jeopardy.seed", System.nanoTime());
+						startLoader(new DatabaseLoader(archive, randomSize[0], randomSize[1], seed), -1);
 					}
 
 					break;
 
+				case "Next Round":
+					nextRound();
+					break;
+
+				case "Cancel":
+					// stop the file being loaded; the current grid stays as it is
+					if (loader != null)
+						loader.cancel(false);
+
+					break;
+
 				case "Reveal":
 					// displays the question if the related "answer" is already shown
-					if (answerRevealed) {
+					if (engine.reveal() == GameEngine.Outcome.ACCEPTED)
 						// make the "question" visible
-						questionText.setVisible(true);
-						// update the flag
-						questionRevealed = true;
-					}
+						midPanel.revealQuestion();
 					else
 						JOptionPane.showMessageDialog(null,"You haven't selected a question yet!");
 
@@ -193,106 +402,416 @@ public class Jeopardy extends JFrame implements ActionListener {
 		}
     }
 
-    /**
-    * Given a <code>JeopardyButton</code>, this method builds the related <code>JPanel</code>(midPanel) related to the button.
-    * Once built, it displays the "answer", but hides, for the moment, the "question".
-    * @param jpButton JeopardyButton clicked containing the related <code>Question</code> object.
-    */
-    private void buildAnswersGrid(JeopardyButton jpButton) {
-    	// update flag
-    	questionRevealed = false;
-
-    	// get the index of the category and of the question of the JeopardyButton clicked
-    	int categoryIndex = jpButton.getCategory(), questionIndex = jpButton.getQuestion();
-    	// get the Question object at category index and question index
-    	Question questionObject = db.getQuestion(categoryIndex, questionIndex);
-    	// get the question and the answer of the Question object
-    	String answerToShow = questionObject.getResponse(), questionToShow = questionObject.getQuestion();
-
-    	// change the Text of the jpButton clicked to "-"
-    	jpButton.setText("-");
-
-		// if a midPanel (JPanel containing the answer and the question) is already in the JFrame, remove it
-		if (answersGridRevealed)
-    		getContentPane().remove(midPanel);
+	/**
+	* Called when a cell of the board is selected, by a <code>JeopardyButton</code> or by the <code>VirtualBoardPanel</code>. Required by the CellListener interface.
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	*/
+	public void cellSelected(int category, int question) {
+		// the click-to-display latency starts when the click was made, so it includes the time the click waited in the event queue
+		long start = System.nanoTime(), queued = System.currentTimeMillis() - EventQueue.getMostRecentEventTime();
+
+		// ask the engine to select the clue: it refuses if the question of the current clue has not been shown,
+		// or if the clue has already been done
+		switch (engine.select(category, question)) {
+			case ACCEPTED:
+				buildAnswersGrid(); // builds the answers grid, displaying only the "answer"
+				Metrics.clueDisplayed(category, question, start, queued);
+				break;
+
+			case ALREADY_PLAYED:
+				JOptionPane.showMessageDialog(null,"This question has already been done!");
+				break;
+
+			case QUESTION_NOT_REVEALED:
+				JOptionPane.showMessageDialog(null,"You haven't looked at the question!");
+				break;
+
+			default:
+				break;
+		}
+	}
 
-    	// create JLabels with the question and the answer retrieved
-		JLabel answerText = new JLabel(answerToShow, SwingConstants.LEFT);
-		questionText = new JLabel(questionToShow, SwingConstants.LEFT);
-		// make the "question" invisible for the moment
-		questionText.setVisible(false);
+	/**
+	* Called when a bound property of the <code>DatabaseLoader</code> changes. Required by the PropertyChangeListener interface.
+	* @param e describes the property which changed
+	*/
+	public void propertyChange(PropertyChangeEvent e) {
+		// the file of the next round can't be played: the host is told in the title bar, without interrupting the round
+		if (e.getSource() == preloader) {
+			if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE && !preloader.isCancelled())
+				try {
+					preloader.get();
+				} catch (ExecutionException problem) {
+					setTitle(getTitle() + " - next round: " + (problem.getCause() instanceof DatabaseFormatException
+						? problem.getCause().getMessage() : Database.describeProblem(2)));
+				} catch (InterruptedException problem) {
+					// can't happen, as the DatabaseLoader is done
+					Thread.currentThread().interrupt();
+				}
+			return;
+		}
 
-		// make a new JPanel, which contains the question and the answer
-		midPanel = new JPanel();
-		midPanel.setLayout(new GridLayout(2,1)); // this layout positions two JComponents vertically
-		midPanel.add(answerText);
-		midPanel.add(questionText);
+		// ignore a DatabaseLoader which has been replaced
+		if (e.getSource() != loader)
+			return;
 
-		// add the new JPanel to the JFrame
-		getContentPane().add(midPanel, BorderLayout.CENTER);
-		// styling
+		if ("progress".equals(e.getPropertyName())) {
+			loadProgress.setValue((Integer) e.getNewValue());
+			loadProgress.setString(String.format("%.1f of %.1f MB", loader.getBytesRead() / 1048576.0, loader.getSize() / 1048576.0));
+		}
+		else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE)
+			finishLoading();
+	}
+
+	/**
+	* Starts loading the file found at "pathToFile" in the background. The buttons grid is only replaced once the whole file has been read successfully.
+	* @param pathToFile String containing the relative path to the file which contains the information needed to build the board.
+	*/
+	private void loadDatabase(String pathToFile) {
+		startLoader(new DatabaseLoader(pathToFile), -1);
+	}
+
+	/**
+	* Starts the given <code>DatabaseLoader</code>, unless it is already running, showing its progress. The buttons grid is only replaced once it is done successfully.
+	* @param started the <code>DatabaseLoader</code> of a file, or of a random board
+	* @param forRound the index of the round whose file is loaded, or -1 for any other file
+	*/
+	private void startLoader(DatabaseLoader started, int forRound) {
+		// only one file is loaded at a time
+		loadButton.setEnabled(false);
+		randomButton.setEnabled(false);
+		nextRoundButton.setEnabled(false);
+
+		// show the progress, and the button to stop the loading
+		loadProgress.setValue(0);
+		loadProgress.setString("Loading...");
+		loadProgress.setVisible(true);
+		cancelButton.setVisible(true);
 		pack();
 
-		// update flags
-		answersGridRevealed = answerRevealed = true;
-    }
+		loader = started;
+		loadingRound = forRound;
+		loader.addPropertyChangeListener(this);
+		if (loader.getState() == SwingWorker.StateValue.PENDING)
+			loader.execute();
+	}
+
+	/**
+	* Moves to the next round, keeping the scores. Its file has usually been parsed while this round was played, so its board is swapped in at once;
+	* otherwise the progress of its loading is shown, as for any other file. The time the move takes is recorded.
+	*/
+	private void nextRound() {
+		if (rounds == null || round + 1 >= rounds.size() || loader != null)
+			return;
+
+		roundRequested = System.nanoTime();
+		DatabaseLoader next = preloader;
+		preloader = null;
+		if (next == null)
+			next = new DatabaseLoader(rounds.get(round + 1).getPathToFile());
+		next.removePropertyChangeListener(this);
+		roundPreloaded = next.isDone();
+
+		if (roundPreloaded) {
+			loader = next;
+			loadingRound = round + 1;
+			finishLoading();
+		} else
+			startLoader(next, round + 1);
+	}
+
+	/**
+	* Returns the title of the frame: the name of the round being played, if the game is played in rounds
+	*/
+	private String title() {
+		return round >= 0 ? "Jeopardy - " + rounds.get(round).getName() : "Jeopardy";
+	}
+
+	/**
+	* Shows the round being played in the title bar, and starts parsing the file of the next round in the background,
+	* so moving to it doesn't wait for the disk nor the parser
+	*/
+	private void showRound() {
+		if (preloader != null) {
+			preloader.cancel(false);
+			preloader = null;
+		}
+
+		setTitle(title());
+		nextRoundButton.setVisible(round >= 0 && round + 1 < rounds.size());
+		if (!nextRoundButton.isVisible())
+			return;
+
+		preloader = new DatabaseLoader(rounds.get(round + 1).getPathToFile());
+		preloader.addPropertyChangeListener(this);
+		preloader.execute();
+	}
+
+	/**
+	* Called on the event dispatch thread once the <code>DatabaseLoader</code> is done. Builds the buttons grid if the file was read successfully,
+	* otherwise alerts the user of the problem and keeps the current grid.
+	*/
+	private void finishLoading() {
+		DatabaseLoader done = loader;
+		loader = null;
+		int loadedRound = loadingRound;
+		loadingRound = -1;
+
+		// hide the progress of the loading, unless a preloaded round was swapped in without showing it
+		loadButton.setEnabled(true);
+		randomButton.setEnabled(true);
+		nextRoundButton.setEnabled(true);
+		if (loadProgress.isVisible()) {
+			loadProgress.setVisible(false);
+			cancelButton.setVisible(false);
+			pack();
+		}
+
+		// a saved game is only resumed by the first file loaded, which is its own
+		GameJournal.SavedGame saved = resume;
+		resume = null;
+
+		try {
+			QuestionBank loaded = done.get();
+
+			// if we've made it so far, the File is OK: tell the user it is a success, unless it is the next round, and build the buttons Grid
+			if (loadedRound <= 0)
+				Database.alertProblem(4);
+			if (journal != null)
+				journal.setSource(done.getPathToFile());
+			// the clues of a random board are recorded as the clues of its archive, where they are played again
+			if (stats != null && done.getArchive() != null)
+				stats.setBank(done.getArchive(), done.getArchiveRows());
+			else if (stats != null)
+				stats.setBank(done.getPathToFile());
+
+			// the amounts are the ones of the round of the file, if it is one of the rounds (e.g. a saved game resumed in its round)
+			round = loadedRound >= 0 ? loadedRound : rounds == null ? -1 : rounds.indexOf(done.getPathToFile());
+			int amounts[] = round >= 0 ? rounds.get(round).getAmounts(loaded.getNumQuestions()) : null;
+			engine.setAmounts(amounts);
+
+			// resume the saved game if this is its file, otherwise start a new one, or the next round, keeping the scores
+			if (saved == null || !resumeGame(saved, loaded)) {
+				if (loadedRound > 0)
+					engine.nextRound(loaded, amounts);
+				else
+					engine.load(loaded);
+			}
+			boardFile = done.getPathToFile();
+			updateWatcher();
+
+			showRound();
+			buildButtonsGrid();
+
+			// show the clue which was open when the game was saved
+			if (engine.getState() != GameEngine.State.BOARD) {
+				buildAnswersGrid();
+				if (engine.getState() == GameEngine.State.QUESTION_REVEALED)
+					midPanel.revealQuestion();
+			}
+
+			if (loadedRound > 0)
+				Metrics.roundStarted(rounds.get(round).getName(), roundPreloaded, roundRequested);
+		} catch (CancellationException e) {
+			// the user stopped the loading: nothing to do
+		} catch (ExecutionException e) {
+			// the file is not valid: alert the user
+			if (e.getCause() instanceof DatabaseFormatException)
+				Database.alertProblem((DatabaseFormatException) e.getCause());
+			// the archive is too small for a random board
+			else if (e.getCause() instanceof IllegalArgumentException)
+				JOptionPane.showMessageDialog(null, e.getCause().getMessage());
+			else
+				Database.alertProblem(2);
+		} catch (InterruptedException e) {
+			// can't happen, as the DatabaseLoader is done
+			Thread.currentThread().interrupt();
+		}
+
+		// the next round couldn't be started: its file is parsed again, in case it is fixed before the next try
+		if (loadedRound > 0 && preloader == null)
+			showRound();
+	}
+
+	/**
+	* Starts watching the file of the board if the "Watch" <code>JCheckBox</code> is checked, after stopping the previous <code>QuestionFileWatcher</code>
+	*/
+	private void updateWatcher() {
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				// it won't send anything anymore
+			}
+			watcher = null;
+		}
+
+		if (!watchBox.isSelected() || boardFile == null)
+			return;
+
+		// a compiled bank is rebuilt from its text file, which is the one to watch
+		if (boardFile.endsWith(MappedDatabase.EXTENSION)) {
+			JOptionPane.showMessageDialog(this, "A compiled question bank can't be watched: load its text file instead.");
+			watchBox.setSelected(false);
+			return;
+		}
+
+		// a compressed bank is edited as a text file, which is the one to watch
+		if (CompressedBank.isCompressed(boardFile)) {
+			JOptionPane.showMessageDialog(this, "A compressed question bank can't be watched: load its text file instead.");
+			watchBox.setSelected(false);
+			return;
+		}
+
+		try {
+			watcher = new QuestionFileWatcher(boardFile, engine.getDatabase(), this);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, "The file can't be watched: " + e.getMessage());
+			watchBox.setSelected(false);
+		}
+	}
+
+	/**
+	* Called when the watched file was saved: only the categories and the clue which changed are displayed again, and the played cells are kept.
+	* Required by the QuestionFileWatcher.Listener interface.
+	* @param source the <code>QuestionFileWatcher</code> which computed the patch
+	* @param patch what changed in the file
+	*/
+	public void databasePatched(QuestionFileWatcher source, DatabasePatch patch) {
+		// ignore a QuestionFileWatcher which has been replaced
+		if (source != watcher)
+			return;
+
+		setTitle(title());
+
+		// a board of another size can't keep its played cells: it is a new board
+		if (patch.isNewBoard()) {
+			engine.load(patch.getDatabase());
+			buildButtonsGrid();
+			return;
+		}
+
+		// the patch is only for the board it was computed from
+		if (engine.patch(patch) != GameEngine.Outcome.ACCEPTED)
+			return;
+
+		for (int category : patch.getCategories())
+			board.showCategory(engine, category);
+
+		// display the selected clue again if it changed
+		int m = engine.getDatabase().getNumCategories();
+		if (engine.getState() != GameEngine.State.BOARD
+			&& Arrays.binarySearch(patch.getCells(), engine.getSelectedQuestion() * m + engine.getSelectedCategory()) >= 0) {
+			midPanel.showClue(engine.getSelectedClue());
+			if (engine.getState() == GameEngine.State.QUESTION_REVEALED)
+				midPanel.revealQuestion();
+		}
+
+		packIfNeeded();
+	}
+
+	/**
+	* Called when the watched file was saved, but isn't valid: the board is kept, and the problem is shown in the title bar
+	* until the file is valid again, without interrupting the game. Required by the QuestionFileWatcher.Listener interface.
+	* @param source the <code>QuestionFileWatcher</code> which read the file
+	* @param problem the problem found in the file
+	*/
+	public void databaseInvalid(QuestionFileWatcher source, DatabaseFormatException problem) {
+		if (source == watcher)
+			setTitle("Jeopardy - " + boardFile + ", " + problem.getMessage());
+	}
+
+	/**
+	* Resumes a saved game in the engine
+	* @return false if the saved game wasn't played on this board
+	*/
+	private boolean resumeGame(GameJournal.SavedGame saved, QuestionBank loaded) {
+		try {
+			saved.restore(engine, loaded);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
 
     /**
-    * This methods build the grid containing the <code>JeopardyButton</code>s, according to the information from the <code>Database</code>.
-    * Once built, it displays the grid of <code>JeopardyButton</code>s in the Jeopardy frame.
+    * Once a clue has been selected by the engine, this method updates the <code>JPanel</code>(midPanel) related to its cell.
+    * Once updated, it displays the "answer", but hides, for the moment, the "question".
     */
-    private void buildButtonsGrid() {
-    	// store the number of categories, and the number of questions per category
-    	int numCategories = db.getNumCategories(), numQuestions = db.getNumQuestions();
+    private void buildAnswersGrid() {
+    	// change the Text of the cell clicked to "-"
+    	board.markPlayed(engine.getSelectedCategory(), engine.getSelectedQuestion());
 
-    	// if a topPanel (containing the grid of buttons) is already in the JFrame, remove it
-    	if (buttonsGridRevealed)
-    		getContentPane().remove(topPanel);
+    	// display the Question object selected in the engine
+    	midPanel.showClue(engine.getSelectedClue());
 
-    	// if a midPanel (JPanel containing the answer and the question) is already in the JFrame, remove it
-    	if (answerRevealed)
-    		getContentPane().remove(midPanel);
+		// add the midPanel to the JFrame, if it isn't displayed yet
+		if (midPanel.getParent() == null)
+			getContentPane().add(midPanel, BorderLayout.CENTER);
 
+		// styling: only compute the size of the frame again if the clue doesn't fit
+		packIfNeeded();
+    }
 
-    	// Instanciate a new topPannel using GridLayout, of rows "numQuestions + 1" (for the row occupied by the title of the categories)
-    	// and columns "numCategories"
-    	topPanel = new JPanel(new GridLayout(numQuestions + 1, numCategories));
-    	//styling
-    	topPanel.setBackground(Color.WHITE);
+    /**
+    * This methods displays the grid containing the <code>JeopardyButton</code>s, according to the information from the <code>Database</code>.
+    * The components of the previous board are reused, and the layout is only computed again if the size of the board changed.
+    */
+    private void buildButtonsGrid() {
+    	Metrics.BoardBuiltEvent event = new Metrics.BoardBuiltEvent();
+    	event.begin();
+    	long start = System.nanoTime();
 
-    	// loop through categories array in the database, create JLabels out of the various categories, style them, then add them to the JPanel (topPanel)
-    	for (int i = 0; i < numCategories; i++) {
-    		JLabel category = new JLabel(db.getCategory(i));
-    		category.setOpaque(true);
-    		category.setBackground(Color.decode("#FED000"));
-    		category.setHorizontalAlignment(JLabel.CENTER);
-    		topPanel.add(category);
+    	// if a midPanel (JPanel containing the answer and the question) is in the JFrame, remove it
+    	if (midPanel.getParent() != null)
+    		getContentPane().remove(midPanel);
+
+    	// large boards are painted by a VirtualBoardPanel, rather than made of a component per cell
+    	QuestionBank db = engine.getDatabase();
+    	BoardView view = topPanel;
+    	if ((long) db.getNumCategories() * db.getNumQuestions() > VIRTUAL_BOARD_CELLS) {
+    		if (virtualBoard == null)
+    			virtualBoard = new VirtualBoardPanel(this);
+    		view = virtualBoard;
     	}
 
-    	// stores the amount of money for a given question
-    	int amount = 100;
+    	// swap the view displayed in the JFrame, if the other one is needed
+    	if (board != view) {
+    		if (board != null)
+    			getContentPane().remove(board.getComponent());
+    		getContentPane().add(view.getComponent(), BorderLayout.NORTH);
+    		board = view;
+    	}
 
-    	// Loop through the 2D array, instanciating a new JeoparyButton for every cell, giving the reference to the ActionListener 
-    	// for each of them to the Jeopardy Frame, and finally adding the button to the topPanel
-    	for (int i =0; i < numQuestions; i++) {
-    		for (int j =0; j < numCategories; j++) {
-    			JeopardyButton gridButton = new JeopardyButton(this, j, i, amount);
-    			topPanel.add(gridButton);
-    		}
+    	// update the board in place with the categories and the amounts of the new board
+    	boolean resized = board.showBoard(engine);
+    	Metrics.boardBuilt(event, db, board == virtualBoard, start);
 
-    		// every row, we increment the amount by 100
-    		amount += 100;
-    	}
-    	
-    	// add the new JPanel to the JFrame
-   		getContentPane().add(topPanel, BorderLayout.NORTH);
    		// styling
-   		pack();
+   		if (resized)
+   			pack();
+   		else
+   			packIfNeeded();
+    }
 
-   		// update flags
-   		buttonsGridRevealed = true;
-   		answersGridRevealed = questionRevealed = answerRevealed = false;
+    /**
+    * Computes the size of the frame again, recording the time it takes
+    */
+    public void pack() {
+    	long start = System.nanoTime();
+    	super.pack();
+    	Metrics.FRAME_PACK.recordSince(start);
+    }
 
+    /**
+    * Computes the size of the frame again, but only if its content doesn't fit its current size
+    */
+    private void packIfNeeded() {
+    	if (!getPreferredSize().equals(getSize()))
+    		pack();
+    	else
+    		validate();
     }
 
     /**
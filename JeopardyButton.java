@@ -13,6 +13,11 @@ import javax.swing.JButton;
 */
 public class JeopardyButton extends JButton {
 
+	/**
+	* Background of every <code>JeopardyButton</code>
+	*/
+	private static final Color BUTTON_COLOR = Color.decode("#F3F3F3");
+
 	/**
 	* Stores the index of the category in which the <code>JeopardyButton</code> can be found
 	*/
@@ -23,6 +28,11 @@ public class JeopardyButton extends JButton {
 	*/
 	private int question;
 
+	/**
+	* Stores the amount of money related to the <code>Question</code> of the <code>JeopardyButton</code>, or -1 until it is known
+	*/
+	private int amount = -1;
+
 	/**
 	* the constructor initializes the attributes of the object, adds a listener, sets the label of the button to 
 	* represent the amount of money associated with the question
@@ -32,18 +42,35 @@ public class JeopardyButton extends JButton {
 	* @param amount the amount of money related to the <code>Question</code> of the <code>JeopardyButton</code>
 	*/
 	public JeopardyButton(ActionListener listener, int category, int question, int amount) {
-		this.category = category;
-		this.question = question;
-
 		// change the display of the JeopardyButton
 		setOpaque(true);
-		setBackground(Color.decode("#F3F3F3"));
-		setText("$"+Integer.toString(amount));
+		setBackground(BUTTON_COLOR);
+		reset(category, question, amount, false);
 
 		// reference to the Object "listener", which will handle the ActionEvent
 		addActionListener(listener);
 	}
 
+	/**
+	* Moves the <code>JeopardyButton</code> to another cell, so it can be reused when another board is displayed
+	* @param category the index of the category in which the <code>JeopardyButton</code> can be found
+	* @param question the index in which the <code>JeopardyButton</code> can be found vertically in the 2D representation of the board
+	* @param amount the amount of money related to the <code>Question</code> of the <code>JeopardyButton</code>
+	* @param played whether the <code>Question</code> has already been done, in which case the label is "-"
+	*/
+	public void reset(int category, int question, int amount, boolean played) {
+		this.category = category;
+		this.question = question;
+
+		// only change the label if it is different, so reusing the JeopardyButton on a similar board creates no garbage
+		if (played)
+			setText("-");
+		else if (amount != this.amount || "-".equals(getText()))
+			setText("$"+Integer.toString(amount));
+
+		this.amount = amount;
+	}
+
 	/**
 	* getter that returns the index of the category in which the JeopardyButton can be found
 	* @return the index of the category in which the JeopardyButton can be found
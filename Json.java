@@ -0,0 +1,64 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Helpers to write JSON by hand, as done by the command-line tools and the servers of the game.
+*/
+public class Json {
+
+	/**
+	* Returns the given text as a JSON string, with its quotes, escaping the characters which need to be
+	* @param text the text to quote
+	* @return the JSON string, or null if text is null
+	*/
+	public static String quote(String text) {
+		if (text == null)
+			return "null";
+
+		StringBuilder quoted = new StringBuilder(text.length() + 2);
+		appendQuoted(quoted, text);
+		return quoted.toString();
+	}
+
+	/**
+	* Appends the given text as a JSON string, with its quotes, escaping the characters which need to be
+	* @param out where to append the JSON string
+	* @param text the text to quote
+	*/
+	public static void appendQuoted(StringBuilder out, String text) {
+		out.append('"');
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+
+				case '\\':
+					out.append("\\\\");
+					break;
+
+				case '\n':
+					out.append("\\n");
+					break;
+
+				case '\r':
+					out.append("\\r");
+					break;
+
+				case '\t':
+					out.append("\\t");
+					break;
+
+				default:
+					if (c < 0x20)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+			}
+		}
+
+		out.append('"');
+	}
+}
@@ -0,0 +1,205 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Counts durations in log-linear buckets, so their percentiles can be read at any time with a precision of about 3%, whatever their range.
+* Recording a duration only increments a few counters without any lock, so it can be done from any thread, on every event.
+* It is exposed through JMX by <code>Metrics</code>.
+*/
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+	/**
+	* Number of bits of the linear part of a bucket: every power of two is divided into 2^SUB_BITS buckets
+	*/
+	private static final int SUB_BITS = 5, SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	* Number of buckets needed for every positive long
+	*/
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+	/**
+	* The name of the histogram, as shown in JMX
+	*/
+	private final String name;
+
+	/**
+	* The number of durations in every bucket
+	*/
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	* The number of durations and their sum, in nanoseconds
+	*/
+	private final LongAdder count = new LongAdder(), total = new LongAdder();
+
+	/**
+	* The longest duration, in nanoseconds
+	*/
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	* Creates an empty <code>LatencyHistogram</code>
+	* @param name the name of the histogram
+	*/
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	* Records a duration
+	* @param nanos the duration in nanoseconds; negative durations are recorded as 0
+	*/
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		total.add(value);
+
+		// only try to replace the maximum when it is exceeded, which becomes rare quickly
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+			;
+	}
+
+	/**
+	* Records the time elapsed since the given time
+	* @param startNanos the start, as given by <code>System.nanoTime</code>
+	* @return the duration recorded, in nanoseconds
+	*/
+	public long recordSince(long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		record(nanos);
+		return nanos;
+	}
+
+	/**
+	* Returns the bucket of a duration: the values below 2^SUB_BITS have their own bucket, then every power of two is divided into SUB_BUCKETS
+	*/
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	* Returns the largest value of a bucket
+	*/
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	* Returns a percentile of the durations recorded
+	* @param percentile the percentile, from 0 to 100
+	* @return the duration in nanoseconds under which this percentage of the durations fall, or 0 if nothing was recorded
+	*/
+	public long getPercentileNanos(double percentile) {
+		long recorded = count.sum();
+		if (recorded == 0)
+			return 0;
+
+		// the rank of the duration looked for, from 1
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded)), seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts.get(bucket);
+			if (seen >= rank)
+				return Math.min(highestValue(bucket), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	* getter that returns the name of the histogram
+	* @return the name of the histogram
+	*/
+	public String getName() {
+		return name;
+	}
+
+	/**
+	* getter that returns the number of durations recorded
+	* @return the number of durations
+	*/
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	* getter that returns the mean of the durations recorded
+	* @return the mean in microseconds, or 0 if nothing was recorded
+	*/
+	public double getMeanMicros() {
+		long recorded = count.sum();
+		return recorded == 0 ? 0 : total.sum() / 1000.0 / recorded;
+	}
+
+	/**
+	* getter that returns the median of the durations recorded
+	* @return the median in microseconds
+	*/
+	public double getP50Micros() {
+		return getPercentileNanos(50) / 1000.0;
+	}
+
+	/**
+	* getter that returns the 90th percentile of the durations recorded
+	* @return the 90th percentile in microseconds
+	*/
+	public double getP90Micros() {
+		return getPercentileNanos(90) / 1000.0;
+	}
+
+	/**
+	* getter that returns the 99th percentile of the durations recorded
+	* @return the 99th percentile in microseconds
+	*/
+	public double getP99Micros() {
+		return getPercentileNanos(99) / 1000.0;
+	}
+
+	/**
+	* getter that returns the 99.9th percentile of the durations recorded
+	* @return the 99.9th percentile in microseconds
+	*/
+	public double getP999Micros() {
+		return getPercentileNanos(99.9) / 1000.0;
+	}
+
+	/**
+	* getter that returns the longest duration recorded
+	* @return the longest duration in microseconds
+	*/
+	public double getMaxMicros() {
+		return max.get() / 1000.0;
+	}
+
+	/**
+	* Forgets every duration recorded. Durations recorded at the same time may be partly forgotten.
+	*/
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+			counts.set(bucket, 0);
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	/**
+	* Returns the statistics of the histogram, as a line of text
+	* @return the count, mean and percentiles, in milliseconds
+	*/
+	public String toString() {
+		return String.format("%-14s count %7d  mean %9.3f ms  p50 %9.3f  p90 %9.3f  p99 %9.3f  max %9.3f", name, getCount(),
+			getMeanMicros() / 1000, getP50Micros() / 1000, getP90Micros() / 1000, getP99Micros() / 1000, getMaxMicros() / 1000);
+	}
+}
@@ -0,0 +1,55 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The attributes of a <code>LatencyHistogram</code> shown through JMX, e.g. in JConsole or JDK Mission Control
+*/
+public interface LatencyHistogramMXBean {
+
+	/**
+	* getter that returns the number of durations recorded
+	* @return the number of durations
+	*/
+	long getCount();
+
+	/**
+	* getter that returns the mean of the durations recorded
+	* @return the mean in microseconds
+	*/
+	double getMeanMicros();
+
+	/**
+	* getter that returns the median of the durations recorded
+	* @return the median in microseconds
+	*/
+	double getP50Micros();
+
+	/**
+	* getter that returns the 90th percentile of the durations recorded
+	* @return the 90th percentile in microseconds
+	*/
+	double getP90Micros();
+
+	/**
+	* getter that returns the 99th percentile of the durations recorded
+	* @return the 99th percentile in microseconds
+	*/
+	double getP99Micros();
+
+	/**
+	* getter that returns the 99.9th percentile of the durations recorded
+	* @return the 99.9th percentile in microseconds
+	*/
+	double getP999Micros();
+
+	/**
+	* getter that returns the longest duration recorded
+	* @return the longest duration in microseconds
+	*/
+	double getMaxMicros();
+
+	/**
+	* Forgets every duration recorded
+	*/
+	void reset();
+}
@@ -0,0 +1,344 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Reads a file line by line through a <code>ReadableByteChannel</code>, decoding UTF-8 in bulk into a reusable buffer.
+* Lines are split on "\n", "\r" or "\r\n" by scanning the decoded characters directly, without any regular expression.
+* It is used by <code>Database</code> to parse question files, and is much faster than a <code>Scanner</code> on large files.
+*/
+public class LineReader implements Closeable {
+
+	/**
+	* Size in bytes of the buffer filled from the channel, and size in chars of the decoded buffer
+	*/
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	* The channel from which the bytes are read
+	*/
+	private final ReadableByteChannel channel;
+
+	/**
+	* Reusable buffers: raw bytes read from the channel, and the characters decoded from them
+	*/
+	private final ByteBuffer bytes;
+	private final CharBuffer chars;
+
+	/**
+	* Decodes the bytes in bulk; malformed input is replaced rather than rejected
+	*/
+	private final CharsetDecoder decoder;
+
+	/**
+	* Accumulates a line when it spans two decoded buffers
+	*/
+	private final StringBuilder pending = new StringBuilder(128);
+
+	/**
+	* Total number of bytes that the file contains, or -1 if it is unknown
+	*/
+	private final long size;
+
+	/**
+	* Number of bytes at the beginning of the byte buffer which belong to skipped lines, and must not be decoded
+	*/
+	private int skippedBytes = 0;
+
+	/**
+	* Number of bytes read from the channel so far, and time spent reading them, in nanoseconds
+	*/
+	private long bytesRead, readNanos;
+
+	/**
+	* Number of lines returned so far
+	*/
+	private int lineNumber;
+
+	/**
+	* flags to store the state of the reader: the channel is exhausted, the decoder has been flushed,
+	* the last line ended with "\r" (so a following "\n" belongs to it), a line has been started but not finished
+	*/
+	private boolean endOfInput = false, flushed = false, skipLineFeed = false, lineStarted = false;
+
+	/**
+	* Creates a <code>LineReader</code> over the given channel
+	* @param channel the channel from which the UTF-8 bytes are read
+	* @param size the number of bytes the channel will provide, or -1 if it is unknown
+	*/
+	public LineReader(ReadableByteChannel channel, long size) {
+		this.channel = channel;
+		this.size = size;
+
+		bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		// the char buffer starts empty, in "read" mode
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		chars.flip();
+
+		decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	* Opens the file found at the given relative path, and returns a <code>LineReader</code> over it.
+	* A compressed bank (.gz, .zip, or a bank in a zip archive) is decompressed while it is read, as by <code>CompressedBank</code>.
+	* @param name relative path to the file
+	* @return a <code>LineReader</code> reading the file from its beginning
+	* @throws IOException if the file can't be opened
+	*/
+	public static LineReader open(String name) throws IOException {
+		if (CompressedBank.isCompressed(name))
+			return CompressedBank.open(name);
+
+		FileChannel fileChannel = FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+		return new LineReader(fileChannel, fileChannel.size());
+	}
+
+	/**
+	* Reads the next line, without its line terminator
+	* @return the next line, or null if the end of the file has been reached
+	* @throws IOException if the channel can't be read
+	*/
+	public String readLine() throws IOException {
+		while (true) {
+			// make sure there are characters to look at, otherwise the whole file has been read
+			if (!chars.hasRemaining() && !fill()) {
+				if (!lineStarted)
+					return null;
+
+				// the last line of the file has no line terminator
+				return finishLine(null, 0, 0);
+			}
+
+			char[] array = chars.array();
+			int start = chars.position(), limit = chars.limit();
+
+			// a "\n" directly following a "\r" is part of the same line terminator
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (array[start] == '\n') {
+					chars.position(++start);
+					continue;
+				}
+			}
+
+			// look for the end of the line in the decoded characters
+			for (int i = start; i < limit; i++) {
+				char c = array[i];
+				if (c == '\n' || c == '\r') {
+					chars.position(i + 1);
+					skipLineFeed = c == '\r';
+					return finishLine(array, start, i - start);
+				}
+			}
+
+			// no line terminator in this buffer: keep what we have, and read more
+			pending.append(array, start, limit - start);
+			lineStarted = true;
+			chars.position(limit);
+		}
+	}
+
+	/**
+	* Skips the next line, without building a String for it. Once the decoded characters are exhausted, the rest of the line is looked for
+	* in the raw bytes, which are not decoded at all: in UTF-8, the bytes of "\n" and "\r" are never part of another character.
+	* @return false if the end of the file has been reached, so there was no line to skip
+	* @throws IOException if the channel can't be read
+	*/
+	public boolean skipLine() throws IOException {
+		// first look for the end of the line in the characters already decoded
+		char[] array = chars.array();
+		int start = chars.position(), limit = chars.limit();
+
+		if (skipLineFeed && start < limit) {
+			skipLineFeed = false;
+			if (array[start] == '\n')
+				start++;
+		}
+
+		for (int i = start; i < limit; i++) {
+			char c = array[i];
+			if (c == '\n' || c == '\r') {
+				chars.position(i + 1);
+				skipLineFeed = c == '\r';
+				return endLine();
+			}
+		}
+		chars.position(limit);
+		if (limit > start)
+			lineStarted = true;
+
+		// then in the bytes which haven't been decoded yet, reading more of them without decoding them
+		while (!flushed) {
+			byte[] raw = bytes.array();
+			int end = bytes.position();
+
+			for (int i = skippedBytes; i < end; i++) {
+				byte b = raw[i];
+				if (skipLineFeed) {
+					skipLineFeed = false;
+					if (b == '\n')
+						continue;
+				}
+				if (b == '\n' || b == '\r') {
+					skipLineFeed = b == '\r';
+					// the bytes after the end of the line are kept for the next line, and only moved once they are decoded
+					skippedBytes = i + 1;
+					return endLine();
+				}
+				lineStarted = true;
+			}
+			bytes.clear();
+			skippedBytes = 0;
+
+			if (endOfInput)
+				break;
+			int read = read();
+			if (read < 0)
+				endOfInput = true;
+			else
+				bytesRead += read;
+		}
+
+		// the end of the file: the last line of the file may have no line terminator
+		flushed = true;
+		pending.setLength(0);
+		if (!lineStarted)
+			return false;
+		return endLine();
+	}
+
+	/**
+	* Resets the state for the next line, after a line has been skipped
+	*/
+	private boolean endLine() {
+		pending.setLength(0);
+		lineStarted = false;
+		lineNumber++;
+		return true;
+	}
+
+	/**
+	* getter that returns the number of lines read so far, which is the line number of the last line returned
+	* @return the number of lines read so far
+	*/
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	* getter that returns the number of bytes read from the channel so far
+	* @return the number of bytes read so far
+	*/
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	* getter that returns the time spent reading from the channel, the rest of the time being spent decoding and splitting lines
+	* @return the time spent in the reads of the channel, in nanoseconds
+	*/
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+	/**
+	* getter that returns the number of bytes that the channel will provide
+	* @return the size of the input in bytes, or -1 if it is unknown
+	*/
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	* Closes the underlying channel
+	*/
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	* Builds the line from what is pending and the given characters, then resets the state for the next line
+	*/
+	private String finishLine(char[] array, int offset, int length) {
+		String line;
+
+		// common case: the whole line is in the current buffer, so no copy to the StringBuilder is needed
+		if (pending.length() == 0)
+			line = array == null ? "" : new String(array, offset, length);
+		else {
+			if (array != null)
+				pending.append(array, offset, length);
+			line = pending.toString();
+			pending.setLength(0);
+		}
+
+		lineStarted = false;
+		lineNumber++;
+		return line;
+	}
+
+	/**
+	* Reads more bytes from the channel into the byte buffer, measuring the time spent in the read
+	*/
+	private int read() throws IOException {
+		long start = System.nanoTime();
+		int read = channel.read(bytes);
+		readNanos += System.nanoTime() - start;
+		return read;
+	}
+
+	/**
+	* Reads more bytes from the channel and decodes them into the char buffer
+	* @return false if there are no more characters to read
+	*/
+	private boolean fill() throws IOException {
+		chars.clear();
+
+		// drop the bytes of the lines skipped without decoding them
+		if (skippedBytes > 0) {
+			bytes.flip();
+			bytes.position(skippedBytes);
+			bytes.compact();
+			skippedBytes = 0;
+		}
+
+		while (chars.position() == 0 && !flushed) {
+			if (!endOfInput) {
+				int read = read();
+				if (read < 0)
+					endOfInput = true;
+				else
+					bytesRead += read;
+			}
+
+			bytes.flip();
+			CoderResult result = decoder.decode(bytes, chars, endOfInput);
+			bytes.compact();
+
+			if (result.isError())
+				result.throwException();
+
+			if (endOfInput && result.isUnderflow()) {
+				decoder.flush(chars);
+				flushed = true;
+			}
+		}
+
+		chars.flip();
+		return chars.hasRemaining();
+	}
+}
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A <code>QuestionBank</code> backed by a compiled question bank, as written by <code>QuestionBankCompiler</code>.
+* The file is mapped in memory, and a <code>Question</code> is only decoded when it is asked for, so opening a bank
+* takes the same heap whatever its size; only the offset table is read when it is opened, to make sure every String is within the payload.
+*
+* The compiled format is made of, in order:
+* the MAGIC number, the number of categories (m) and the number of questions per category (n), as ints;
+* a table of m + 2*m*n + 1 int offsets, relative to the payload: the m categories, then for every question row and every category,
+* the answer followed by the question, then the end of the payload;
+* the payload, which is the UTF-8 encoding of every String of the table, one after the other.
+*/
+public class MappedDatabase implements QuestionBank {
+
+	/**
+	* Extension of the compiled question banks
+	*/
+	static final String EXTENSION = ".jqb";
+
+	/**
+	* First int of every compiled question bank ("JQB1")
+	*/
+	static final int MAGIC = 0x4A514231;
+
+	/**
+	* Size in bytes of the magic number, m and n
+	*/
+	static final int HEADER_SIZE = 12;
+
+	/**
+	* The whole file, mapped in memory
+	*/
+	private final MappedByteBuffer buffer;
+
+	/**
+	* The number of categories (m) and the number of questions per category (n)
+	*/
+	private final int m, n;
+
+	/**
+	* Position in the file of the first byte of the payload
+	*/
+	private final int payloadStart;
+
+	/**
+	* Constructs a <code>MappedDatabase</code> over an already mapped and checked file
+	*/
+	private MappedDatabase(MappedByteBuffer buffer, int m, int n) {
+		this.buffer = buffer;
+		this.m = m;
+		this.n = n;
+		payloadStart = HEADER_SIZE + 4 * tableSize(m, n);
+	}
+
+	/**
+	* Static method that maps a compiled question bank in memory and returns a <code>MappedDatabase</code> reading from it.
+	* @param name Relative path to the compiled file
+	* @return the <code>MappedDatabase</code> reading from the file
+	* @throws DatabaseFormatException if the file can't be read, or isn't a complete compiled question bank
+	*/
+	static MappedDatabase open(String name) throws DatabaseFormatException {
+		MappedByteBuffer buffer;
+
+		// map the whole file; the mapping stays valid once the channel is closed
+		try (FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new DatabaseFormatException(2, 0);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException | InvalidPathException e) {
+			throw new DatabaseFormatException(2, 0);
+		}
+
+		// make sure it is a compiled question bank, and that it is complete
+		try {
+			if (buffer.getInt(0) != MAGIC)
+				throw new DatabaseFormatException(2, 0);
+
+			int m = buffer.getInt(4), n = buffer.getInt(8);
+			if (m < 0 || n < 0 || HEADER_SIZE + 4L * tableSize(m, n) > buffer.capacity())
+				throw new DatabaseFormatException(1, 0);
+
+			// every String must start after the previous one and end in the payload, so decode never reads outside of it
+			MappedDatabase database = new MappedDatabase(buffer, m, n);
+			int size = tableSize(m, n), previous = 0;
+			for (int entry = 0; entry < size; entry++) {
+				int offset = database.offset(entry);
+				if (offset < previous)
+					throw new DatabaseFormatException(1, 0);
+				previous = offset;
+			}
+			if ((long) database.payloadStart + previous != buffer.capacity())
+				throw new DatabaseFormatException(1, 0);
+
+			return database;
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new DatabaseFormatException(1, 0);
+		} catch (IllegalArgumentException e) {
+			// m and n are too large for the offset table of a compiled question bank
+			throw new DatabaseFormatException(1, 0);
+		}
+	}
+
+	/**
+	* Returns the number of entries in the offset table of a compiled question bank of size m & n
+	* @param m the number of categories
+	* @param n the number of questions per category
+	* @return the number of int offsets in the table
+	*/
+	static int tableSize(int m, int n) {
+		long size = m + 2L * m * n + 1;
+		if (size > (Integer.MAX_VALUE - HEADER_SIZE) / 4)
+			throw new IllegalArgumentException("too many questions for a compiled question bank: " + m + " x " + n);
+		return (int) size;
+	}
+
+	/**
+	* Returns the index in the offset table of the answer of a <code>Question</code>; its question follows it
+	* @param m the number of categories
+	* @param category the index of the category of the <code>Question</code>
+	* @param index the index of the <code>Question</code> in its category
+	* @return the index of the answer in the offset table
+	*/
+	static int entry(int m, int category, int index) {
+		return m + 2 * (index * m + category);
+	}
+
+	/**
+	* getter that returns the category found at position index of this <code>MappedDatabase</code>
+	* @param index index of the category we are interested for
+	* @return String representing the specified category
+	*/
+	public String getCategory(int index) {
+		if (index < 0 || index >= m)
+			throw new ArrayIndexOutOfBoundsException(index);
+		return decode(index);
+	}
+
+	/**
+	* getter that returns the <code>Question</code> at position index for the given category, decoding it from the file
+	* @param category the category in which the <code>Question</code> we want to get, is
+	* @param index the index at which the <code>Question</code> can be found
+	* @return the <code>Question</code> at position index for the given category
+	*/
+	public Question getQuestion(int category, int index) {
+		if (category < 0 || category >= m)
+			throw new ArrayIndexOutOfBoundsException(category);
+		if (index < 0 || index >= n)
+			throw new ArrayIndexOutOfBoundsException(index);
+
+		int entry = entry(m, category, index);
+		return new Question(decode(entry), decode(entry + 1));
+	}
+
+	/**
+	* getter that returns the number of categories for this game
+	* @return the number of the categories of this game
+	*/
+	public int getNumCategories() {
+		return m;
+	}
+
+	/**
+	* getter that returns the number of questions per category
+	* @return the number of questions per category
+	*/
+	public int getNumQuestions() {
+		return n;
+	}
+
+	/**
+	* Estimates the number of bytes of heap used by this <code>MappedDatabase</code>: the mapped file is not part of the heap
+	* @return the estimated footprint in bytes
+	*/
+	public long estimateFootprint() {
+		return 128;
+	}
+
+	/**
+	* Returns the offset, relative to the payload, stored at the given index of the offset table
+	*/
+	private int offset(int entry) {
+		return buffer.getInt(HEADER_SIZE + 4 * entry);
+	}
+
+	/**
+	* Decodes the String stored at the given index of the offset table
+	*/
+	private String decode(int entry) {
+		int start = offset(entry), end = offset(entry + 1);
+
+		// absolute bulk get, so concurrent readers don't share a position
+		byte[] bytes = new byte[end - start];
+		buffer.get(payloadStart + start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,377 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The operational metrics of the game: latencies of the loading of question files, of the building of the board and of the display of a clue,
+* the stalls of the event dispatch thread, and a few counters. They are always recorded, as recording only costs a few atomic increments,
+* and are exposed through JMX under "jeopardy:*" (e.g. in JConsole). The same operations are also recorded as JDK Flight Recorder events
+* of the "Jeopardy" category, which only cost something while a recording is running (e.g. java -XX:StartFlightRecording ...).
+*/
+public class Metrics implements MetricsMXBean {
+
+	/**
+	* Time to load a board, from the click on "Load" to the <code>Database</code>, whether it was read from the disk or from the cache
+	*/
+	public static final LatencyHistogram LOAD = new LatencyHistogram("load");
+
+	/**
+	* Time spent reading the bytes of a question file, and time spent parsing them, for every question file parsed
+	*/
+	public static final LatencyHistogram LOAD_IO = new LatencyHistogram("load.io"), LOAD_PARSE = new LatencyHistogram("load.parse");
+
+	/**
+	* Time to update the components of the board, and time to compute the layout of the frame (<code>pack</code>)
+	*/
+	public static final LatencyHistogram BOARD_BUILD = new LatencyHistogram("board.build"), FRAME_PACK = new LatencyHistogram("frame.pack");
+
+	/**
+	* Time from the click on a cell to the clue being painted, including the time the click waited in the event queue
+	*/
+	public static final LatencyHistogram CLUE_DISPLAY = new LatencyHistogram("clue.display");
+
+	/**
+	* Time from a change of the board to its last byte written to a viewer of the <code>SpectatorServer</code>
+	*/
+	public static final LatencyHistogram SPECTATOR_DELIVERY = new LatencyHistogram("spectator.delivery");
+
+	/**
+	* Time from the click on "Next Round" to the board of the round being painted, including the wait for its file if it wasn't preloaded yet
+	*/
+	public static final LatencyHistogram ROUND_TRANSITION = new LatencyHistogram("round.transition");
+
+	/**
+	* Duration of the stalls of the event dispatch thread: the times a task waited at least STALL_MILLIS before running
+	*/
+	public static final LatencyHistogram EDT_STALL = new LatencyHistogram("edt.stall");
+
+	/**
+	* Counters of the question files parsed and of their bytes, of the loadings which failed, of the clues displayed, of the stalls,
+	* of the rounds started, of the rounds whose file wasn't preloaded yet when they were started, and of the events of the statistics dropped
+	*/
+	public static final LongAdder FILES_PARSED = new LongAdder(), BYTES_PARSED = new LongAdder(), LOADS_FAILED = new LongAdder(),
+		CLUES_DISPLAYED = new LongAdder(), EDT_STALLS = new LongAdder(), ROUNDS_STARTED = new LongAdder(), ROUNDS_WAITED = new LongAdder(),
+		STATS_DROPPED = new LongAdder();
+
+	/**
+	* A task of the event dispatch thread delayed this long is a stall, and the watchdog checks the thread this often
+	*/
+	static final long STALL_MILLIS = 50, WATCHDOG_MILLIS = 100;
+
+	/**
+	* Every latency, in the order they are shown
+	*/
+	private static final LatencyHistogram LATENCIES[] = {LOAD, LOAD_IO, LOAD_PARSE, BOARD_BUILD, FRAME_PACK, CLUE_DISPLAY, ROUND_TRANSITION, EDT_STALL, SPECTATOR_DELIVERY};
+
+	/**
+	* The watchdog of the event dispatch thread, or null if it isn't started, and whether the MBeans are registered
+	*/
+	private static Thread watchdog;
+	private static boolean registered = false;
+
+	/**
+	* A question file read by <code>Database.parseQuestions</code>
+	*/
+	@Name("jeopardy.FileParsed")
+	@Label("Question File Parsed")
+	@Category("Jeopardy")
+	@Description("A question file read and parsed into a Database")
+	static class FileParsedEvent extends Event {
+		@Label("File")
+		String file;
+
+		@Label("Size")
+		@DataAmount
+		long bytes;
+
+		@Label("I/O Time")
+		@Timespan
+		long ioNanos;
+	}
+
+	/**
+	* The components of the board updated for a new board
+	*/
+	@Name("jeopardy.BoardBuilt")
+	@Label("Board Built")
+	@Category("Jeopardy")
+	@Description("The components of the board updated for a new board")
+	static class BoardBuiltEvent extends Event {
+		@Label("Categories")
+		int categories;
+
+		@Label("Questions")
+		int questions;
+
+		@Label("Virtual")
+		boolean virtual;
+	}
+
+	/**
+	* A clue displayed after a click on its cell
+	*/
+	@Name("jeopardy.ClueDisplayed")
+	@Label("Clue Displayed")
+	@Category("Jeopardy")
+	@Description("A clue displayed after a click on its cell")
+	static class ClueDisplayedEvent extends Event {
+		@Label("Category")
+		int category;
+
+		@Label("Question")
+		int question;
+
+		@Label("Click to Display")
+		@Timespan
+		long latency;
+	}
+
+	/**
+	* A round started after a click on "Next Round"
+	*/
+	@Name("jeopardy.RoundStarted")
+	@Label("Round Started")
+	@Category("Jeopardy")
+	@Description("The board of the next round displayed after a click on Next Round")
+	static class RoundStartedEvent extends Event {
+		@Label("Round")
+		String round;
+
+		@Label("Preloaded")
+		boolean preloaded;
+
+		@Label("Click to Display")
+		@Timespan
+		long latency;
+	}
+
+	/**
+	* A stall of the event dispatch thread
+	*/
+	@Name("jeopardy.EdtStall")
+	@Label("Event Dispatch Thread Stall")
+	@Category("Jeopardy")
+	@Description("A task of the event dispatch thread which waited at least 50 ms before running")
+	static class EdtStallEvent extends Event {
+		@Label("Delay")
+		@Timespan
+		long delay;
+	}
+
+	/**
+	* Only the static instance registered in JMX is created
+	*/
+	private Metrics() {
+	}
+
+	/**
+	* Registers the MBeans of the metrics in the platform MBean server, if they aren't registered yet.
+	* Until then, the metrics are recorded all the same; tools which don't show them don't pay for the start of JMX.
+	*/
+	static synchronized void registerMBeans() {
+		if (registered)
+			return;
+		registered = true;
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new Metrics(), new ObjectName("jeopardy:type=Metrics"));
+			for (LatencyHistogram latency : LATENCIES)
+				server.registerMBean(latency, new ObjectName("jeopardy:type=Latency,name=" + latency.getName()));
+		} catch (JMException | SecurityException e) {
+			// JMX isn't available: the metrics are still recorded
+		}
+	}
+
+	/**
+	* Records a question file parsed
+	* @param event the event begun with the parsing, and ended with it
+	* @param file the path to the file
+	* @param bytes the size of the file
+	* @param parseNanos the time the whole parsing took, in nanoseconds
+	* @param ioNanos the time spent reading the bytes of the file, in nanoseconds
+	*/
+	static void fileParsed(FileParsedEvent event, String file, long bytes, long parseNanos, long ioNanos) {
+		LOAD_IO.record(ioNanos);
+		LOAD_PARSE.record(parseNanos - ioNanos);
+		FILES_PARSED.increment();
+		BYTES_PARSED.add(bytes);
+
+		if (event.shouldCommit()) {
+			event.file = file;
+			event.bytes = bytes;
+			event.ioNanos = ioNanos;
+			event.commit();
+		}
+	}
+
+	/**
+	* Records the components of the board updated for a new board
+	* @param event the event begun with the update
+	* @param database the <code>Database</code> of the board
+	* @param virtual whether the board is painted by a <code>VirtualBoardPanel</code>
+	* @param startNanos the start of the update, as given by <code>System.nanoTime</code>
+	*/
+	static void boardBuilt(BoardBuiltEvent event, QuestionBank database, boolean virtual, long startNanos) {
+		BOARD_BUILD.recordSince(startNanos);
+
+		if (event.shouldCommit()) {
+			event.categories = database.getNumCategories();
+			event.questions = database.getNumQuestions();
+			event.virtual = virtual;
+			event.commit();
+		}
+	}
+
+	/**
+	* Records the display of a clue, once it has been painted: call it on the event dispatch thread, once the clue has been shown.
+	* @param category the index of the category of the clue
+	* @param question the index of the question of the clue in its category
+	* @param startNanos the start of the handling of the click, as given by <code>System.nanoTime</code>
+	* @param queuedMillis the time the click waited in the event queue, in milliseconds
+	*/
+	static void clueDisplayed(final int category, final int question, final long startNanos, final long queuedMillis) {
+		// the repaint of the clue is already queued: this runs once it is painted
+		SwingUtilities.invokeLater(() -> {
+			long latency = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, queuedMillis));
+			CLUE_DISPLAY.record(latency);
+			CLUES_DISPLAYED.increment();
+
+			ClueDisplayedEvent event = new ClueDisplayedEvent();
+			if (event.isEnabled()) {
+				event.category = category;
+				event.question = question;
+				event.latency = latency;
+				event.commit();
+			}
+		});
+	}
+
+	/**
+	* Records the move to the next round, once its board has been painted: call it on the event dispatch thread, once the board has been updated.
+	* @param round the name of the round
+	* @param preloaded whether the file of the round was already parsed when the move was asked for
+	* @param startNanos the click on "Next Round", as given by <code>System.nanoTime</code>
+	*/
+	static void roundStarted(final String round, final boolean preloaded, final long startNanos) {
+		ROUNDS_STARTED.increment();
+		if (!preloaded)
+			ROUNDS_WAITED.increment();
+
+		// the repaint of the board is already queued: this runs once it is painted
+		SwingUtilities.invokeLater(() -> {
+			long latency = System.nanoTime() - startNanos;
+			ROUND_TRANSITION.record(latency);
+
+			RoundStartedEvent event = new RoundStartedEvent();
+			if (event.isEnabled()) {
+				event.round = round;
+				event.preloaded = preloaded;
+				event.latency = latency;
+				event.commit();
+			}
+		});
+	}
+
+	/**
+	* Starts the watchdog of the event dispatch thread, if it isn't started yet: it runs a task on the thread every WATCHDOG_MILLIS,
+	* and records a stall every time the task waits at least STALL_MILLIS. Only one task waits at a time, so a long stall is recorded once.
+	*/
+	static synchronized void startEdtWatchdog() {
+		if (watchdog != null)
+			return;
+
+		watchdog = new Thread(() -> {
+			final long sent[] = new long[1];
+			Runnable ping = () -> {
+				long delay = System.nanoTime() - sent[0];
+				if (delay < TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS))
+					return;
+
+				EDT_STALL.record(delay);
+				EDT_STALLS.increment();
+				EdtStallEvent event = new EdtStallEvent();
+				if (event.isEnabled()) {
+					event.delay = delay;
+					event.commit();
+				}
+			};
+
+			try {
+				while (true) {
+					sent[0] = System.nanoTime();
+					SwingUtilities.invokeAndWait(ping);
+					Thread.sleep(WATCHDOG_MILLIS);
+				}
+			} catch (InterruptedException | InvocationTargetException e) {
+				// the watchdog is stopped
+			}
+		}, "edt-watchdog");
+		watchdog.setDaemon(true);
+		watchdog.start();
+	}
+
+	/**
+	* getter that returns the value of every counter
+	* @return the counters by name
+	*/
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new LinkedHashMap<String, Long>();
+		counters.put("files.parsed", FILES_PARSED.sum());
+		counters.put("bytes.parsed", BYTES_PARSED.sum());
+		counters.put("loads.failed", LOADS_FAILED.sum());
+		counters.put("clues.displayed", CLUES_DISPLAYED.sum());
+		counters.put("edt.stalls", EDT_STALLS.sum());
+		counters.put("rounds.started", ROUNDS_STARTED.sum());
+		counters.put("rounds.waited", ROUNDS_WAITED.sum());
+		counters.put("stats.dropped", STATS_DROPPED.sum());
+		return counters;
+	}
+
+	/**
+	* getter that returns the statistics of every latency, one line per latency
+	* @return the statistics, in milliseconds
+	*/
+	public String getSummary() {
+		return summary();
+	}
+
+	/**
+	* Static method that returns the statistics of every latency and the counters, one line per latency
+	* @return the statistics, in milliseconds
+	*/
+	static String summary() {
+		StringBuilder summary = new StringBuilder();
+		for (LatencyHistogram latency : LATENCIES)
+			summary.append(latency).append('\n');
+		summary.append(new Metrics().getCounters());
+		return summary.toString();
+	}
+
+	/**
+	* Resets every counter and every latency
+	*/
+	public void reset() {
+		for (LatencyHistogram latency : LATENCIES)
+			latency.reset();
+		for (LongAdder counter : new LongAdder[] {FILES_PARSED, BYTES_PARSED, LOADS_FAILED, CLUES_DISPLAYED, EDT_STALLS, ROUNDS_STARTED, ROUNDS_WAITED, STATS_DROPPED})
+			counter.reset();
+	}
+}
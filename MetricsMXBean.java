@@ -0,0 +1,28 @@
+import java.util.Map;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The counters of <code>Metrics</code> shown through JMX, e.g. in JConsole or JDK Mission Control.
+* The latencies are shown by a <code>LatencyHistogramMXBean</code> each.
+*/
+public interface MetricsMXBean {
+
+	/**
+	* getter that returns the value of every counter
+	* @return the counters by name
+	*/
+	Map<String, Long> getCounters();
+
+	/**
+	* getter that returns the statistics of every latency, one line per latency
+	* @return the statistics, in milliseconds
+	*/
+	String getSummary();
+
+	/**
+	* Resets every counter and every latency
+	*/
+	void reset();
+}
@@ -0,0 +1,21 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Follows the parsing of a question file by <code>Database.parseQuestions</code>, and can stop it.
+*/
+public interface ParseMonitor {
+
+	/**
+	* Called regularly during the parsing, to know if the <code>Database</code> is still wanted
+	* @return true to stop the parsing, which then throws a <code>CancellationException</code>
+	*/
+	boolean isCancelled();
+
+	/**
+	* Called regularly during the parsing, with the number of bytes read so far
+	* @param read the number of bytes read from the file so far
+	* @param size the size of the file in bytes, or -1 if it is unknown
+	*/
+	void bytesRead(long read, long size);
+}
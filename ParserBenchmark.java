@@ -0,0 +1,144 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Scanner;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Command-line benchmark comparing the former <code>Scanner</code> based parsing of question files with
+* <code>Database.parseQuestions</code>, on a generated file of a few megabytes.
+* e.g. java ParserBenchmark 200 2000
+*/
+public class ParserBenchmark {
+
+	/**
+	* Number of parses done before measuring, so the JIT compiler has done its work
+	*/
+	private static final int WARMUP = 3;
+
+	/**
+	* Number of measured parses for each parser
+	*/
+	private static final int ITERATIONS = 5;
+
+	/**
+	* Generates a question file, then parses it repeatedly with both parsers and prints their throughput.
+	* @param args optional number of categories and number of questions per category of the generated file
+	*/
+	public static void main(String args[]) throws Exception {
+		int m = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int n = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Path file = Files.createTempFile("jeopardy-bench", ".txt");
+		file.toFile().deleteOnExit();
+		writeBank(file, m, n, 42);
+
+		double megabytes = Files.size(file) / (1024.0 * 1024.0);
+		System.out.printf("generated %d x %d board: %.1f MB%n", m, n, megabytes);
+
+		double scannerSeconds = measure(file.toString(), true);
+		double readerSeconds = measure(file.toString(), false);
+
+		System.out.printf("Scanner:    %8.1f ms  %8.1f MB/s%n", scannerSeconds * 1000, megabytes / scannerSeconds);
+		System.out.printf("LineReader: %8.1f ms  %8.1f MB/s%n", readerSeconds * 1000, megabytes / readerSeconds);
+		System.out.printf("speedup:    %8.1fx%n", scannerSeconds / readerSeconds);
+	}
+
+	/**
+	* Writes a valid question file made of generated text
+	* @param file where to write the question file
+	* @param m the number of categories
+	* @param n the number of questions per category
+	* @param seed seed of the generated text, so the same file can be generated again
+	*/
+	static void writeBank(Path file, int m, int n, long seed) throws IOException {
+		String words[] = {"Sive", "enim", "ad", "sapientiam", "perveniri", "potest", "non", "paranda", "nobis", "solum",
+			"Posidonium", "Graeci", "leguntur", "dissensio", "munere", "vitae", "optimum", "verissimum", "exquirere", "ille"};
+		Random random = new Random(seed);
+		StringBuilder line = new StringBuilder(128);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(m + "\n" + n + "\n");
+
+			for (int j = 0; j < m; j++)
+				writer.write("Category " + j + "\n");
+
+			// every Question is made of an answer and a question, each on its own line
+			for (int i = 0; i < 2 * n * m; i++) {
+				line.setLength(0);
+				int length = 4 + random.nextInt(12);
+				for (int w = 0; w < length; w++)
+					line.append(w == 0 ? "" : " ").append(words[random.nextInt(words.length)]);
+				line.append(i % 2 == 0 ? ".\n" : "?\n");
+				writer.write(line.toString());
+			}
+		}
+	}
+
+	/**
+	* Parses the file WARMUP + ITERATIONS times, and returns the mean time of the measured parses
+	*/
+	private static double measure(String name, boolean scanner) throws Exception {
+		long total = 0;
+
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			long start = System.nanoTime();
+			QuestionBank database = scanner ? parseWithScanner(name) : Database.parseQuestions(name);
+			long elapsed = System.nanoTime() - start;
+
+			if (database == null)
+				throw new IllegalStateException("the generated file could not be parsed");
+			if (i >= WARMUP)
+				total += elapsed;
+		}
+
+		return total / 1e9 / ITERATIONS;
+	}
+
+	/**
+	* The parsing done by <code>Database.readQuestions</code> before it used a <code>LineReader</code>, without alerting the user.
+	* Kept here as the reference the new parser is measured against.
+	*/
+	private static Database parseWithScanner(String name) throws FileNotFoundException {
+		Scanner sc = new Scanner(new File(name));
+
+		try {
+			if (!sc.hasNextInt())
+				return null;
+			int m = Integer.parseInt(sc.nextLine());
+			if (!sc.hasNextInt())
+				return null;
+			int n = Integer.parseInt(sc.nextLine());
+
+			Database database = new Database(m, n);
+
+			for (int i = 0; i < m; i++) {
+				if (!sc.hasNextLine())
+					return null;
+				database.setCategory(i, sc.nextLine());
+			}
+
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < m; j++) {
+					if (!sc.hasNextLine())
+						return null;
+					String tmpAnswer = sc.nextLine();
+					if (!sc.hasNextLine())
+						return null;
+					database.setQuestion(j, i, new Question(tmpAnswer, sc.nextLine()));
+				}
+			}
+
+			return sc.hasNextLine() ? null : database;
+		} finally {
+			sc.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+import java.util.HashMap;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A <code>QuestionBank</code> made of another one, with some categories and <code>Question</code>s replaced.
+* Patching a board only stores what changed, so its cost depends on the size of the edit, not of the board.
+*/
+public class PatchedDatabase implements QuestionBank {
+
+	/**
+	* The <code>QuestionBank</code> which was patched
+	*/
+	private final QuestionBank base;
+
+	/**
+	* The replaced categories by index, and the replaced <code>Question</code>s by cell: question * m + category
+	*/
+	private final HashMap<Integer, String> categories;
+	private final HashMap<Integer, Question> questions;
+
+	/**
+	* Creates a <code>PatchedDatabase</code> without any replacement yet; a patch of a <code>PatchedDatabase</code> keeps its replacements
+	* @param database the <code>QuestionBank</code> to patch
+	*/
+	PatchedDatabase(QuestionBank database) {
+		if (database instanceof PatchedDatabase) {
+			PatchedDatabase patched = (PatchedDatabase) database;
+			base = patched.base;
+			categories = new HashMap<Integer, String>(patched.categories);
+			questions = new HashMap<Integer, Question>(patched.questions);
+		}
+		else {
+			base = database;
+			categories = new HashMap<Integer, String>();
+			questions = new HashMap<Integer, Question>();
+		}
+	}
+
+	/**
+	* Replaces a category, while the <code>PatchedDatabase</code> is built
+	*/
+	void replaceCategory(int index, String category) {
+		categories.put(index, category);
+	}
+
+	/**
+	* Replaces a <code>Question</code>, while the <code>PatchedDatabase</code> is built
+	*/
+	void replaceQuestion(int category, int index, Question question) {
+		questions.put(index * getNumCategories() + category, question);
+	}
+
+	/**
+	* getter that returns the category found at position index of this <code>PatchedDatabase</code>
+	* @param index index of the category we are interested for
+	* @return String representing the specified category
+	*/
+	public String getCategory(int index) {
+		String category = categories.get(index);
+		return category != null ? category : base.getCategory(index);
+	}
+
+	/**
+	* getter that returns the <code>Question</code> at position index for the given category
+	* @param category the category in which the <code>Question</code> we want to get, is
+	* @param index the index at which the <code>Question</code> can be found
+	* @return the <code>Question</code> at position index for the given category
+	*/
+	public Question getQuestion(int category, int index) {
+		Question question = questions.isEmpty() ? null : questions.get(index * getNumCategories() + category);
+		return question != null ? question : base.getQuestion(category, index);
+	}
+
+	/**
+	* getter that returns the number of categories for this game
+	* @return the number of the categories of this game
+	*/
+	public int getNumCategories() {
+		return base.getNumCategories();
+	}
+
+	/**
+	* getter that returns the number of questions per category
+	* @return the number of questions per category
+	*/
+	public int getNumQuestions() {
+		return base.getNumQuestions();
+	}
+
+	/**
+	* Estimates the number of bytes of heap used by this <code>PatchedDatabase</code>: the patched one, and the replacements
+	* @return the estimated footprint in bytes
+	*/
+	public long estimateFootprint() {
+		long bytes = base.estimateFootprint() + 2 * 48;
+		for (String category : categories.values())
+			bytes += 48 + Database.estimateFootprint(category);
+		for (Question question : questions.values())
+			bytes += 48 + 24 + Database.estimateFootprint(question.getResponse()) + Database.estimateFootprint(question.getQuestion());
+		return bytes;
+	}
+}
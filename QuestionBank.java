@@ -0,0 +1,43 @@
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The categories and <code>Question</code>s of a board, which can only be read.
+* A <code>Database</code> is one, built from a question file; <code>MappedDatabase</code>, <code>ColumnarDatabase</code> and <code>PatchedDatabase</code>
+* are others, which store them differently and can't be changed once built.
+*/
+public interface QuestionBank {
+
+	/**
+	* getter that returns the category found at position index of this <code>QuestionBank</code>
+	* @param index index of the category we are interested for
+	* @return String representing the specified category
+	*/
+	String getCategory(int index);
+
+	/**
+	* getter that returns the <code>Question</code> at position index for the given category
+	* @param category the category in which the <code>Question</code> we want to get, is
+	* @param index the index at which the <code>Question</code> can be found
+	* @return the <code>Question</code> at position index for the given category
+	*/
+	Question getQuestion(int category, int index);
+
+	/**
+	* getter that returns the number of categories for this game
+	* @return the number of the categories of this game
+	*/
+	int getNumCategories();
+
+	/**
+	* getter that returns the number of questions per category
+	* @return the number of questions per category
+	*/
+	int getNumQuestions();
+
+	/**
+	* Estimates the number of bytes of heap used by this <code>QuestionBank</code>, its categories and its <code>Question</code>s
+	* @return the estimated footprint in bytes
+	*/
+	long estimateFootprint();
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Compiles a question file into the indexed binary format read by <code>MappedDatabase</code>.
+* e.g. java QuestionBankCompiler questions/actualJeopardyQuestions.txt questions/actualJeopardyQuestions.jqb
+*/
+public class QuestionBankCompiler {
+
+	/**
+	* Reads the question file given as first argument, and writes the compiled question bank to the second argument.
+	* @param args the relative path to the question file, and the relative path to the compiled file to write
+	*/
+	public static void main(String args[]) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: java QuestionBankCompiler <questions.txt> <questions" + MappedDatabase.EXTENSION + ">");
+			System.exit(2);
+		}
+
+		try {
+			compile(Database.parseQuestions(args[0]), args[1]);
+		} catch (DatabaseFormatException e) {
+			System.err.println(args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	* Writes the given <code>Database</code> as a compiled question bank
+	* @param database the <code>Database</code> to compile
+	* @param name relative path to the compiled file to write
+	* @throws IOException if the file can't be written
+	*/
+	static void compile(QuestionBank database, String name) throws IOException {
+		int m = database.getNumCategories(), n = database.getNumQuestions();
+		int offsets[] = new int[MappedDatabase.tableSize(m, n)];
+		int headerAndTable = MappedDatabase.HEADER_SIZE + 4 * offsets.length;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(name),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+			// write the payload first, after the space reserved for the header and the offset table, recording the offsets
+			channel.position(headerAndTable);
+			ByteBuffer out = ByteBuffer.allocate(1 << 16);
+			int entry = 0, offset = 0;
+
+			for (int j = 0; j < m; j++) {
+				offsets[entry++] = offset;
+				offset = append(channel, out, database.getCategory(j), offset);
+			}
+
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < m; j++) {
+					Question question = database.getQuestion(j, i);
+					offsets[entry++] = offset;
+					offset = append(channel, out, question.getResponse(), offset);
+					offsets[entry++] = offset;
+					offset = append(channel, out, question.getQuestion(), offset);
+				}
+			}
+
+			offsets[entry] = offset;
+			flush(channel, out);
+
+			// then write the header and the offset table at the beginning of the file
+			ByteBuffer header = ByteBuffer.allocate(headerAndTable).order(ByteOrder.BIG_ENDIAN);
+			header.putInt(MappedDatabase.MAGIC).putInt(m).putInt(n);
+			header.asIntBuffer().put(offsets);
+			header.clear();
+
+			channel.position(0);
+			while (header.hasRemaining())
+				channel.write(header);
+		}
+	}
+
+	/**
+	* Appends the UTF-8 encoding of text to the buffer, writing the buffer to the channel when it is full
+	* @return the offset following the appended text
+	*/
+	private static int append(FileChannel channel, ByteBuffer out, String text, int offset) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		if ((long) offset + bytes.length > Integer.MAX_VALUE - out.capacity())
+			throw new IOException("the compiled question bank would be larger than 2 GB");
+
+		for (int written = 0; written < bytes.length; ) {
+			if (!out.hasRemaining())
+				flush(channel, out);
+			int length = Math.min(out.remaining(), bytes.length - written);
+			out.put(bytes, written, length);
+			written += length;
+		}
+
+		return offset + bytes.length;
+	}
+
+	/**
+	* Writes what the buffer contains to the channel, and empties the buffer
+	*/
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+		out.flip();
+		while (out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+}
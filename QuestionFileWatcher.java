@@ -0,0 +1,161 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Watches a question file with a <code>WatchService</code>, and computes a <code>DatabasePatch</code> every time the file is saved.
+* The patches are computed on the thread of the watcher, then given to the listener on the event dispatch thread.
+* Editors often save a file more than once in a row, or through a temporary file: the changes are only read once the file has
+* been quiet for SETTLE_MILLIS.
+*/
+public class QuestionFileWatcher implements Closeable {
+
+	/**
+	* Receives the patches of a <code>QuestionFileWatcher</code>, on the event dispatch thread
+	*/
+	public interface Listener {
+
+		/**
+		* Called when the watched file changed
+		* @param watcher the <code>QuestionFileWatcher</code> which computed the patch
+		* @param patch what changed; apply it only if the board still shows <code>patch.getPrevious()</code>
+		*/
+		void databasePatched(QuestionFileWatcher watcher, DatabasePatch patch);
+
+		/**
+		* Called when the watched file was saved, but isn't valid anymore; the board is kept as it is
+		* @param watcher the <code>QuestionFileWatcher</code> which read the file
+		* @param problem the problem found in the file
+		*/
+		void databaseInvalid(QuestionFileWatcher watcher, DatabaseFormatException problem);
+	}
+
+	/**
+	* Time without any change to the file before it is read, in milliseconds
+	*/
+	public static final long SETTLE_MILLIS = 150;
+
+	/**
+	* The watched file
+	*/
+	private final Path file;
+
+	/**
+	* The <code>WatchService</code> of the directory of the file
+	*/
+	private final WatchService service;
+
+	/**
+	* The listener of the patches
+	*/
+	private final Listener listener;
+
+	/**
+	* The <code>Database</code>, the bytes and the start of every line of the last valid version of the file; only used by the thread of the watcher
+	*/
+	private QuestionBank current;
+	private byte contents[];
+	private int lineStarts[];
+
+	/**
+	* Starts watching a file
+	* @param pathToFile the path to the question file, which must be the file <code>database</code> was read from
+	* @param database the <code>Database</code> currently displayed
+	* @param listener receives the patches
+	* @throws IOException if the file can't be read, or its directory can't be watched
+	*/
+	public QuestionFileWatcher(String pathToFile, QuestionBank database, Listener listener) throws IOException {
+		file = Paths.get(pathToFile).toAbsolutePath();
+		this.listener = listener;
+		current = database;
+		contents = Files.readAllBytes(file);
+		lineStarts = DatabasePatch.lineStarts(contents);
+
+		// a WatchService watches directories: the events of the other files are ignored
+		service = FileSystems.getDefault().newWatchService();
+		file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		Thread thread = new Thread(this::watch, "watcher-" + file.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	* Stops watching the file
+	*/
+	public void close() throws IOException {
+		service.close();
+	}
+
+	/**
+	* The loop of the watcher: waits for a change to the file, waits for it to settle, then computes the patch
+	*/
+	private void watch() {
+		try {
+			while (true) {
+				if (!isFileEvent(service.take()))
+					continue;
+
+				// wait until the file has been quiet for a while
+				WatchKey key;
+				while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+					isFileEvent(key);
+
+				update();
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// the watcher was closed
+		}
+	}
+
+	/**
+	* Consumes the events of a key, and returns whether one of them is about the watched file
+	*/
+	private boolean isFileEvent(WatchKey key) {
+		boolean found = false;
+		for (WatchEvent<?> event : key.pollEvents())
+			if (file.getFileName().equals(event.context()))
+				found = true;
+		key.reset();
+		return found;
+	}
+
+	/**
+	* Reads the file again, and gives the patch to the listener
+	*/
+	private void update() {
+		byte updated[];
+		try {
+			updated = Files.readAllBytes(file);
+		} catch (IOException e) {
+			// the file is being replaced: the next event will read it
+			return;
+		}
+
+		try {
+			final DatabasePatch patch = DatabasePatch.diff(current, contents, lineStarts, updated);
+			contents = updated;
+			lineStarts = patch.getLineStarts();
+			if (patch.isEmpty())
+				return;
+
+			current = patch.getDatabase();
+			SwingUtilities.invokeLater(() -> listener.databasePatched(this, patch));
+		} catch (final DatabaseFormatException e) {
+			SwingUtilities.invokeLater(() -> listener.databaseInvalid(this, e));
+		}
+	}
+}
@@ -0,0 +1,392 @@
+import java.text.Normalizer;
+import java.util.Arrays;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Judges the responses typed by the players, by comparing them to the "question" of every <code>Question</code> of a <code>Database</code>.
+* Both are normalized first: case and accents are ignored, punctuation separates words (apostrophes and dots don't, so "Aesop's" is "aesops"),
+* the "What is..." phrasing is dropped, and so are the words "a", "an", "the" and "and". A response is correct if its edit distance to the
+* normalized "question" is at most allowedErrors of its length.
+*
+* The normalized "questions" are computed once, when the <code>ResponseMatcher</code> is created, with the table of their characters used by
+* the bit-parallel edit distance of Myers: a response is then judged in a single pass over its characters, without allocating anything.
+* A <code>ResponseMatcher</code> can be used by many threads at once.
+*/
+public class ResponseMatcher {
+
+	/**
+	* Folded form of the characters up to the end of Latin Extended-B: lower case without accent, SEPARATOR for punctuation and spaces,
+	* or JOINER for the characters which are dropped without separating words
+	*/
+	private static final char FOLD[] = new char[0x250];
+
+	/**
+	* Values of FOLD for the characters which separate words, and for the ones which are dropped
+	*/
+	private static final char SEPARATOR = ' ', JOINER = 0;
+
+	/**
+	* Words dropped anywhere, words which start the "What is..." phrasing, the verbs which follow them, and their contractions
+	*/
+	private static final String DROPPED[] = {"a", "an", "the", "and"}, ASKING[] = {"what", "who", "where", "when", "which"},
+		VERBS[] = {"is", "are", "was", "were"}, CONTRACTED[] = {"whats", "whos", "wheres", "whens"};
+
+	/**
+	* Size of the buffer of a normalized response; it grows for the boards with longer "questions", as a response can be longer than its "question"
+	*/
+	private static final int MAX_RESPONSE = 256;
+
+	static {
+		for (char c = 0; c < FOLD.length; c++) {
+			// decompose the character, and keep its base letter without the accent
+			char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+			FOLD[c] = Character.isLetterOrDigit(base) ? Character.toLowerCase(base) : SEPARATOR;
+		}
+		FOLD['\''] = FOLD['.'] = JOINER;
+	}
+
+	/**
+	* A normalized "question", with what the edit distance needs to compare a response to it
+	*/
+	private static class Pattern {
+
+		/**
+		* The normalized text
+		*/
+		final char text[];
+
+		/**
+		* The distinct characters of the text, sorted, and for each of them and every block of 64 positions of the text,
+		* the bits of the positions where it appears: masks[character * blocks + block]
+		*/
+		final char alphabet[];
+		final long masks[];
+		final int blocks;
+
+		/**
+		* The number of errors accepted in a response
+		*/
+		final int bound;
+
+		Pattern(String question, Scratch scratch) {
+			if (scratch.response.length < 2 * question.length())
+				scratch.response = new char[2 * question.length()];
+			text = Arrays.copyOf(scratch.response, normalize(question, scratch.response));
+			bound = allowedErrors(text.length);
+			blocks = Math.max(1, (text.length + Long.SIZE - 1) / Long.SIZE);
+
+			// find the distinct characters in the buffer, marking the ones already seen, then sort them
+			char distinct[] = scratch.response;
+			int count = 0;
+			for (char c : text) {
+				if ((scratch.seen[c >>> 6] & (1L << c)) == 0) {
+					scratch.seen[c >>> 6] |= 1L << c;
+					distinct[count++] = c;
+				}
+			}
+			for (int k = 0; k < count; k++)
+				scratch.seen[distinct[k] >>> 6] = 0;
+			Arrays.sort(distinct, 0, count);
+			alphabet = Arrays.copyOf(distinct, count);
+
+			// the index of every character in the alphabet, looked up in a table for the characters folded by FOLD
+			for (int k = 0; k < count; k++)
+				if (alphabet[k] < FOLD.length)
+					scratch.index[alphabet[k]] = k;
+
+			masks = new long[count * blocks];
+			for (int k = 0; k < text.length; k++) {
+				char c = text[k];
+				int index = c < FOLD.length ? scratch.index[c] : Arrays.binarySearch(alphabet, c);
+				masks[index * blocks + k / Long.SIZE] |= 1L << k;
+			}
+		}
+
+		/**
+		* Returns the index of a character in the alphabet, or -1 if it doesn't appear in the text
+		*/
+		int indexOf(char c) {
+			// binary search without the boxing of the generic methods
+			int low = 0, high = alphabet.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (alphabet[middle] < c)
+					low = middle + 1;
+				else if (alphabet[middle] > c)
+					high = middle - 1;
+				else
+					return middle;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	* Buffers reused by every response judged on a thread: the normalized response, and the vertical deltas of the edit distance, per block.
+	* They are also used to normalize the "questions" when a <code>ResponseMatcher</code> is created.
+	*/
+	private static class Scratch {
+		char response[] = new char[MAX_RESPONSE];
+		long positive[] = new long[4], negative[] = new long[4];
+
+		/**
+		* Used to normalize the "questions": the characters seen in a text, one bit per character, and the index of the characters in an alphabet
+		*/
+		final long seen[] = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+		final int index[] = new int[FOLD.length];
+	}
+
+	/**
+	* The buffers of every thread
+	*/
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	* The number of categories of the <code>Database</code>, and the normalized "question" of every cell: question * m + category
+	*/
+	private final int m;
+	private final Pattern patterns[];
+
+	/**
+	* Length of the longest normalized response which can be correct, plus one
+	*/
+	private final int capacity;
+
+	/**
+	* Normalizes the "question" of every <code>Question</code> of a <code>Database</code>
+	* @param database the <code>Database</code> whose responses will be judged
+	*/
+	public ResponseMatcher(QuestionBank database) {
+		m = database.getNumCategories();
+		patterns = new Pattern[m * database.getNumQuestions()];
+
+		// the question is normalized in the buffer of the thread, then only its own characters are kept
+		Scratch scratch = SCRATCH.get();
+		for (int i = 0; i < database.getNumQuestions(); i++)
+			for (int j = 0; j < m; j++)
+				patterns[i * m + j] = new Pattern(database.getQuestion(j, i).getQuestion(), scratch);
+		capacity = capacity(patterns);
+	}
+
+	/**
+	* Creates the <code>ResponseMatcher</code> of a patched <code>Database</code>: only the cells which changed are normalized again
+	* @param previous the <code>ResponseMatcher</code> of <code>patch.getPrevious()</code>
+	* @param patch the patch of a board of the same size
+	*/
+	public ResponseMatcher(ResponseMatcher previous, DatabasePatch patch) {
+		m = previous.m;
+		patterns = previous.patterns.clone();
+
+		QuestionBank database = patch.getDatabase();
+		Scratch scratch = SCRATCH.get();
+		for (int cell : patch.getCells())
+			patterns[cell] = new Pattern(database.getQuestion(cell % m, cell / m).getQuestion(), scratch);
+		capacity = capacity(patterns);
+	}
+
+	/**
+	* Returns the length of the longest normalized response which can be correct for one of the patterns, plus one
+	*/
+	private static int capacity(Pattern patterns[]) {
+		int capacity = 0;
+		for (Pattern pattern : patterns)
+			capacity = Math.max(capacity, pattern.text.length + pattern.bound + 1);
+		return capacity;
+	}
+
+	/**
+	* Static method that returns the number of errors accepted in a response, given the length of the normalized "question"
+	* @param length the length of the normalized "question"
+	* @return no error for up to 3 characters, then one error every 5 characters
+	*/
+	static int allowedErrors(int length) {
+		return length <= 3 ? 0 : Math.max(1, length / 5);
+	}
+
+	/**
+	* Returns whether a response is correct for a cell
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	* @param response the response typed by the player
+	* @return true if the response is close enough to the "question" of the cell
+	*/
+	public boolean isCorrect(int category, int question, CharSequence response) {
+		return distance(category, question, response) >= 0;
+	}
+
+	/**
+	* Returns the edit distance between a response and the "question" of a cell, once both are normalized
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	* @param response the response typed by the player
+	* @return the edit distance, or -1 if it is more than the number of errors accepted for the cell
+	*/
+	public int distance(int category, int question, CharSequence response) {
+		Pattern pattern = patterns[question * m + category];
+		Scratch scratch = SCRATCH.get();
+		if (scratch.response.length < capacity)
+			scratch.response = new char[capacity];
+
+		int length = normalize(response, scratch.response);
+		if (length < 0 || Math.abs(length - pattern.text.length) > pattern.bound)
+			return -1;
+
+		int distance = myers(pattern, scratch, length);
+		return distance <= pattern.bound ? distance : -1;
+	}
+
+	/**
+	* Edit distance computed 64 positions of the "question" at a time (Myers, in the formulation of Hyyro), with one column of bits per character
+	* of the response, stopping as soon as it can't be within the bound
+	*/
+	private static int myers(Pattern pattern, Scratch scratch, int length) {
+		int size = pattern.text.length, blocks = pattern.blocks;
+		if (size == 0)
+			return length;
+
+		if (scratch.positive.length < blocks) {
+			scratch.positive = new long[blocks];
+			scratch.negative = new long[blocks];
+		}
+		long positives[] = scratch.positive, negatives[] = scratch.negative, masks[] = pattern.masks;
+		Arrays.fill(positives, 0, blocks, -1L);
+		Arrays.fill(negatives, 0, blocks, 0L);
+
+		// the bit of the last position of the text, in the last block
+		long last = 1L << ((size - 1) % Long.SIZE);
+		char response[] = scratch.response;
+		int score = size;
+
+		for (int k = 0; k < length; k++) {
+			int index = pattern.indexOf(response[k]);
+
+			// the first row of the edit distance grows by one with every character of the response
+			int carry = 1;
+			for (int block = 0; block < blocks; block++) {
+				long equal = index < 0 ? 0 : masks[index * blocks + block];
+				long positive = positives[block], negative = negatives[block];
+
+				long vertical = equal | negative;
+				if (carry < 0)
+					equal |= 1;
+				long horizontal = (((equal & positive) + positive) ^ positive) | equal;
+				long horizontalPositive = negative | ~(horizontal | positive);
+				long horizontalNegative = positive & horizontal;
+
+				// the horizontal delta at the bottom of the block goes into the next block
+				long bottom = block == blocks - 1 ? last : Long.MIN_VALUE;
+				int out = (horizontalPositive & bottom) != 0 ? 1 : (horizontalNegative & bottom) != 0 ? -1 : 0;
+
+				horizontalPositive <<= 1;
+				horizontalNegative <<= 1;
+				if (carry < 0)
+					horizontalNegative |= 1;
+				else if (carry > 0)
+					horizontalPositive |= 1;
+
+				positives[block] = horizontalNegative | ~(vertical | horizontalPositive);
+				negatives[block] = horizontalPositive & vertical;
+				carry = out;
+			}
+			score += carry;
+
+			// every remaining character can lower the distance by one at most
+			if (score - (length - k - 1) > pattern.bound)
+				return score;
+		}
+
+		return score;
+	}
+
+	/**
+	* Static method that normalizes a text into a buffer, as described in the comment of the class.
+	* If every word would be dropped, as in "The Who", only the case, accents and punctuation are normalized.
+	* @param text the text to normalize
+	* @param out the buffer receiving the normalized text
+	* @return the length of the normalized text, or -1 if it doesn't fit in the buffer
+	*/
+	static int normalize(CharSequence text, char out[]) {
+		int length = normalize(text, out, true);
+		return length == 0 ? normalize(text, out, false) : length;
+	}
+
+	/**
+	* Static method that only normalizes the case, accents and punctuation of a text into a buffer, keeping every word, e.g. to compare clues
+	* @param text the text to normalize
+	* @param out the buffer receiving the normalized text, at least as long as the text
+	* @return the length of the normalized text, or -1 if it doesn't fit in the buffer
+	*/
+	static int fold(CharSequence text, char out[]) {
+		return normalize(text, out, false);
+	}
+
+	/**
+	* Normalizes a text into a buffer, one word at a time, dropping the words which don't matter if asked to
+	*/
+	private static int normalize(CharSequence text, char out[], boolean dropWords) {
+		// the length written, the start of the current word, the number of words seen, and where the "What" of "What is..." starts, or -1
+		int length = 0, word = -1, words = 0, asking = -1;
+
+		for (int k = 0; k <= text.length(); k++) {
+			char c = k == text.length() ? SEPARATOR : text.charAt(k);
+			char folded = c < FOLD.length ? FOLD[c] : Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : SEPARATOR;
+
+			if (folded == JOINER)
+				continue;
+
+			if (folded != SEPARATOR) {
+				if (word < 0) {
+					// words are separated by a single space
+					if (length > 0 && length < out.length)
+						out[length++] = ' ';
+					word = length;
+				}
+				if (length == out.length)
+					return -1;
+				out[length++] = folded;
+				continue;
+			}
+
+			// a separator: decide whether the word that just ended is kept
+			if (word < 0 || !dropWords) {
+				word = -1;
+				continue;
+			}
+
+			if (words == 0 && isOneOf(out, word, length, CONTRACTED))
+				length = word;
+			else if (words == 0 && isOneOf(out, word, length, ASKING))
+				asking = word;
+			else if (words == 1 && asking >= 0 && isOneOf(out, word, length, VERBS))
+				length = asking;
+			else if (isOneOf(out, word, length, DROPPED))
+				length = word;
+
+			// the space before a dropped word goes with it
+			if (length == word && length > 0)
+				length--;
+			words++;
+			word = -1;
+		}
+
+		return length;
+	}
+
+	/**
+	* Returns whether the characters of a buffer from start to end are one of the given words
+	*/
+	private static boolean isOneOf(char buffer[], int start, int end, String candidates[]) {
+		for (String candidate : candidates) {
+			if (candidate.length() != end - start)
+				continue;
+			int k = 0;
+			while (k < candidate.length() && candidate.charAt(k) == buffer[start + k])
+				k++;
+			if (k == candidate.length())
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,493 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* A read-only mirror of a board for the audience screens of a venue, using only the JDK: thousands of viewers follow the board
+* as Server-Sent Events, served by a single thread with non-blocking sockets.
+* Every change of the board (board loaded, cell played and clue shown, question revealed, score) is encoded once, by the thread playing the game,
+* into a read-only buffer shared by every viewer, and kept in a ring of the last BACKLOG changes. Every viewer only has a position in the ring:
+* a viewer which falls more than BACKLOG changes behind, or makes no progress for STALL_MILLIS, gets the whole state of the board instead of
+* the changes it missed, or is disconnected, so a slow screen never holds up the game nor the other screens.
+* The server only listens on the loopback address unless -Djeopardy.spectatorAddress=... is given, e.g. 0.0.0.0 for the screens of the venue,
+* and closes a connection whose request hasn't arrived within REQUEST_MILLIS.
+*
+* GET /events   streams the state of the board, then every change ("state", "select", "reveal" and "score" events)
+* GET /state    returns the state of the board
+* GET /stats    returns the statistics of the viewers
+*
+* e.g. java -Djeopardy.spectatorPort=8081 -Djeopardy.spectatorAddress=0.0.0.0 Jeopardy questions/questions.txt,
+* then new EventSource("http://<address of the game>:8081/events") in the screens
+*/
+public class SpectatorServer implements GameListener, Runnable {
+
+	/**
+	* Number of changes kept for the viewers: a viewer further behind gets the state of the board instead
+	*/
+	static final int BACKLOG = 1024;
+
+	/**
+	* A viewer which can't be written to for this long is disconnected
+	*/
+	static final long STALL_MILLIS = EventRing.STALL_MILLIS;
+
+	/**
+	* A connection which hasn't sent its whole request within this time is closed
+	*/
+	static final long REQUEST_MILLIS = 5000;
+
+	/**
+	* Largest request accepted
+	*/
+	private static final int MAX_REQUEST = 8192;
+
+	/**
+	* The beginning of the response of an event stream, shared by every viewer
+	*/
+	private static final ByteBuffer STREAM_HEADERS = ByteBuffer.wrap(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+		+ "Access-Control-Allow-Origin: *\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+
+	/**
+	* A connection, first reading its request, then streaming the changes of the board if it is a viewer.
+	* Only used by the thread of the server.
+	*/
+	private static class Viewer extends EventRing.Outbox {
+		final SocketChannel channel;
+		final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+		boolean streaming, closing;
+
+		/**
+		* When the connection was accepted, as given by <code>System.nanoTime</code>
+		*/
+		final long accepted = System.nanoTime();
+
+		Viewer(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	* The socket accepting the viewers, and the selector of the thread of the server
+	*/
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread thread;
+
+	/**
+	* The last BACKLOG changes, whose deliveries are recorded in the metrics of the process
+	*/
+	private final EventRing changes = new EventRing(BACKLOG, Metrics.SPECTATOR_DELIVERY);
+
+	/**
+	* Whether the thread of the server has been woken up for changes it hasn't sent yet
+	*/
+	private final AtomicBoolean woken = new AtomicBoolean(false);
+
+	/**
+	* The viewers streaming the changes
+	*/
+	private final ArrayList<Viewer> viewers = new ArrayList<Viewer>();
+
+	/**
+	* The board as the viewers see it, kept from the changes so the game is never read by another thread; guarded by this
+	*/
+	private QuestionBank db;
+	private long played[];
+	private GameEngine.State state = GameEngine.State.NO_BOARD;
+	private int category = -1, question = -1;
+	private int amounts[] = new int[0], scores[] = new int[0];
+
+	/**
+	* The state of the board, encoded once for all the viewers which need it, or null if it changed since; guarded by this
+	*/
+	private EventRing.Frame snapshot;
+	private String snapshotJson;
+
+	/**
+	* Statistics of the viewers, only updated by the thread of the server
+	*/
+	private volatile long connected = 0, bytesWritten = 0, dropped = 0;
+
+	/**
+	* Creates a <code>SpectatorServer</code> listening on the given port, of the loopback address unless -Djeopardy.spectatorAddress=... is given;
+	* call <code>start</code> to accept viewers
+	* @param port the port to listen on, or 0 for any free port
+	* @throws IOException if the port can't be used, or the address is unknown
+	*/
+	public SpectatorServer(int port) throws IOException {
+		String address = System.getProperty("jeopardy.spectatorAddress");
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(address == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address), port), 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this, "spectator-server");
+		thread.setDaemon(true);
+	}
+
+	/**
+	* Starts accepting viewers
+	*/
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	* Disconnects every viewer, and stops accepting them
+	*/
+	public void stop() {
+		try {
+			selector.close();
+			server.close();
+		} catch (IOException e) {
+			// the sockets are closed with the process anyway
+		}
+	}
+
+	/**
+	* getter that returns the port the server listens on
+	* @return the port of the server
+	*/
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	* Sends the state of the new board. Required by the GameListener interface.
+	*/
+	public synchronized void boardLoaded(GameEngine engine) {
+		db = engine.getDatabase();
+		played = engine.getPlayedCells();
+		state = engine.getState();
+		category = engine.getSelectedCategory();
+		question = engine.getSelectedQuestion();
+
+		amounts = new int[db.getNumQuestions()];
+		for (int i = 0; i < amounts.length; i++)
+			amounts[i] = engine.getAmount(i);
+		scores = new int[engine.getNumPlayers()];
+		for (int player = 0; player < scores.length; player++)
+			scores[player] = engine.getScore(player);
+
+		publish(stateJson());
+	}
+
+	/**
+	* Sends the state of the patched board. Required by the GameListener interface.
+	*/
+	public synchronized void boardPatched(GameEngine engine, DatabasePatch patch) {
+		db = patch.getDatabase();
+		publish(stateJson());
+	}
+
+	/**
+	* Sends the cell played and the clue shown. Required by the GameListener interface.
+	*/
+	public synchronized void clueSelected(GameEngine engine, int category, int question) {
+		int cell = question * db.getNumCategories() + category;
+		played[cell >>> 6] |= 1L << cell;
+		state = GameEngine.State.CLUE_SHOWN;
+		this.category = category;
+		this.question = question;
+
+		publish("{\"type\": \"select\", \"category\": " + category + ", \"question\": " + question + ", \"amount\": " + amounts[question]
+			+ ", \"answer\": " + Json.quote(db.getQuestion(category, question).getResponse()) + ", \"sent\": " + BuzzerRoom.now() + "}");
+	}
+
+	/**
+	* Sends the "question" revealed. Required by the GameListener interface.
+	*/
+	public synchronized void questionRevealed(GameEngine engine) {
+		state = GameEngine.State.QUESTION_REVEALED;
+		publish("{\"type\": \"reveal\", \"question\": " + Json.quote(db.getQuestion(category, question).getQuestion())
+			+ ", \"sent\": " + BuzzerRoom.now() + "}");
+	}
+
+	/**
+	* Sends the new score of a player. Required by the GameListener interface.
+	*/
+	public synchronized void playerJudged(GameEngine engine, int player, boolean correct, int amount) {
+		scores[player] = engine.getScore(player);
+		publish("{\"type\": \"score\", \"player\": " + player + ", \"correct\": " + correct + ", \"score\": " + scores[player]
+			+ ", \"sent\": " + BuzzerRoom.now() + "}");
+	}
+
+	/**
+	* Encodes a change once, adds it to the ring, and wakes the thread of the server up to send it; called with the lock held,
+	* so the changes and the state of the board always agree
+	*/
+	private void publish(String json) {
+		changes.publish(json);
+		snapshot = null;
+
+		if (woken.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	/**
+	* Returns the state of the board, encoded once until the next change; the sequence of the frame is the one of the next change
+	*/
+	private synchronized EventRing.Frame snapshot() {
+		if (snapshot == null) {
+			snapshotJson = stateJson();
+			snapshot = changes.state(snapshotJson);
+		}
+		return snapshot;
+	}
+
+	/**
+	* Returns the whole state of the board as a JSON object
+	*/
+	private String stateJson() {
+		StringBuilder json = new StringBuilder("{\"type\": \"state\", \"state\": \"").append(state).append("\", \"categories\": [");
+		int m = db == null ? 0 : db.getNumCategories();
+		for (int j = 0; j < m; j++) {
+			if (j > 0)
+				json.append(", ");
+			Json.appendQuoted(json, db.getCategory(j));
+		}
+
+		json.append("], \"amounts\": [");
+		for (int i = 0; i < amounts.length; i++)
+			json.append(i > 0 ? ", " : "").append(amounts[i]);
+
+		// the played cells, as question * categories + category
+		json.append("], \"played\": [");
+		boolean first = true;
+		for (int word = 0; played != null && word < played.length; word++)
+			for (long bits = played[word]; bits != 0; bits &= bits - 1) {
+				json.append(first ? "" : ", ").append(word * 64 + Long.numberOfTrailingZeros(bits));
+				first = false;
+			}
+
+		json.append("], \"scores\": [");
+		for (int player = 0; player < scores.length; player++)
+			json.append(player > 0 ? ", " : "").append(scores[player]);
+
+		json.append("], \"clue\": ");
+		if (category < 0 || state == GameEngine.State.BOARD || state == GameEngine.State.NO_BOARD)
+			json.append("null");
+		else {
+			Question clue = db.getQuestion(category, question);
+			json.append("{\"category\": ").append(category).append(", \"question\": ").append(question)
+				.append(", \"amount\": ").append(amounts[question]).append(", \"answer\": ");
+			Json.appendQuoted(json, clue.getResponse());
+			json.append(", \"revealed\": ");
+			if (state == GameEngine.State.QUESTION_REVEALED)
+				Json.appendQuoted(json, clue.getQuestion());
+			else
+				json.append("null");
+			json.append("}");
+		}
+		return json.append(", \"sent\": ").append(BuzzerRoom.now()).append("}").toString();
+	}
+
+	/**
+	* Returns the statistics of the viewers, as a JSON object
+	* @return the number of viewers, of changes, of frames and bytes written, of viewers sent the state because they fell behind,
+	* of viewers disconnected because they stalled, and the time from a change to its last byte written to a viewer
+	*/
+	public String statistics() {
+		return "{\"viewers\": " + connected + ", \"changes\": " + changes.getPublished() + ", \"framesWritten\": " + changes.getFramesWritten()
+			+ ", \"bytesWritten\": " + bytesWritten + ", \"resyncs\": " + changes.getResyncs() + ", \"dropped\": " + dropped
+			+ ", \"deliveryMicros\": {\"p50\": " + Metrics.SPECTATOR_DELIVERY.getP50Micros() + ", \"p99\": " + Metrics.SPECTATOR_DELIVERY.getP99Micros() + ", \"max\": " + Metrics.SPECTATOR_DELIVERY.getMaxMicros() + "}}";
+	}
+
+	/**
+	* The thread of the server: accepts the connections, reads their requests, and writes the changes to the viewers as they come.
+	* Required by the Runnable interface.
+	*/
+	public void run() {
+		long lastSweep = System.nanoTime();
+		try {
+			while (selector.isOpen()) {
+				selector.select(STALL_MILLIS / 10);
+
+				for (SelectionKey key : selector.selectedKeys()) {
+					try {
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+
+						Viewer viewer = (Viewer) key.attachment();
+						if (key.isReadable())
+							read(viewer);
+						if (key.isValid() && key.isWritable())
+							write(viewer);
+					} catch (IOException e) {
+						close((Viewer) key.attachment());
+					}
+				}
+				selector.selectedKeys().clear();
+
+				// new changes: send them to the viewers which aren't waiting for their socket already
+				if (woken.getAndSet(false))
+					for (int k = viewers.size() - 1; k >= 0; k--) {
+						Viewer viewer = viewers.get(k);
+						if (viewer.isEmpty())
+							tryWrite(viewer);
+					}
+
+				// disconnect the viewers which stopped reading, and the connections which never sent their request
+				long now = System.nanoTime();
+				if (now - lastSweep > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS / 10)) {
+					lastSweep = now;
+					for (SelectionKey key : selector.keys()) {
+						Viewer viewer = (Viewer) key.attachment();
+						if (viewer == null)
+							continue;
+						if (viewer.isStalled(now)) {
+							dropped++;
+							close(viewer);
+						} else if (!viewer.streaming && !viewer.closing && now - viewer.accepted > TimeUnit.MILLISECONDS.toNanos(REQUEST_MILLIS))
+							close(viewer);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			// the server was stopped
+		}
+	}
+
+	/**
+	* Accepts a connection, which sends its request first
+	*/
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, new Viewer(channel));
+	}
+
+	/**
+	* Reads the request of a connection; a viewer isn't expected to send anything else, but its end of the stream is noticed
+	*/
+	private void read(Viewer viewer) throws IOException {
+		if (viewer.streaming || viewer.closing) {
+			viewer.request.clear();
+			if (viewer.channel.read(viewer.request) < 0)
+				close(viewer);
+			return;
+		}
+
+		if (viewer.channel.read(viewer.request) < 0 || !viewer.request.hasRemaining()) {
+			close(viewer);
+			return;
+		}
+
+		String request = new String(viewer.request.array(), 0, viewer.request.position(), StandardCharsets.US_ASCII);
+		if (!request.contains("\r\n\r\n"))
+			return;
+
+		// "GET /events HTTP/1.1"
+		String line[] = request.substring(0, request.indexOf("\r\n")).split(" ");
+		String path = line.length > 1 ? line[1].replaceFirst("\\?.*", "") : "";
+		if (!line[0].equals("GET"))
+			respond(viewer, "405 Method Not Allowed", "{\"error\": \"only GET is supported\"}");
+		else if (path.equals("/events")) {
+			viewer.streaming = true;
+			EventRing.Frame state = snapshot();
+			viewer.add(STREAM_HEADERS.duplicate(), null);
+			viewer.add(state.buffer(), null);
+			viewer.cursor = state.sequence;
+			viewers.add(viewer);
+			connected = viewers.size();
+		} else if (path.equals("/state")) {
+			snapshot();
+			String json;
+			synchronized (this) {
+				json = snapshotJson;
+			}
+			respond(viewer, "200 OK", json);
+		} else if (path.equals("/stats"))
+			respond(viewer, "200 OK", statistics());
+		else
+			respond(viewer, "404 Not Found", "{\"error\": \"no such resource\"}");
+
+		tryWrite(viewer);
+	}
+
+	/**
+	* Queues a complete JSON response, after which the connection is closed
+	*/
+	private void respond(Viewer viewer, String status, String json) {
+		byte body[] = json.getBytes(StandardCharsets.UTF_8);
+		String headers = "HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nAccess-Control-Allow-Origin: *\r\nContent-Length: " + body.length
+			+ "\r\nConnection: close\r\n\r\n";
+		viewer.add(ByteBuffer.wrap(headers.getBytes(StandardCharsets.US_ASCII)), null);
+		viewer.add(ByteBuffer.wrap(body), null);
+		viewer.closing = true;
+	}
+
+	/**
+	* Writes what a viewer is waiting for, closing it if it disconnected
+	*/
+	private void tryWrite(Viewer viewer) {
+		try {
+			write(viewer);
+		} catch (IOException e) {
+			close(viewer);
+		}
+	}
+
+	/**
+	* Writes as much as the socket of a viewer accepts, several frames at once, and waits for the socket if it is full
+	*/
+	private void write(Viewer viewer) throws IOException {
+		while (true) {
+			if (viewer.isEmpty()) {
+				if (viewer.closing) {
+					close(viewer);
+					return;
+				}
+
+				// a viewer is never disconnected for falling behind, only for stalling
+				if (viewer.streaming)
+					changes.fill(viewer, this::snapshot, Integer.MAX_VALUE);
+				if (viewer.isEmpty()) {
+					viewer.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+					return;
+				}
+			}
+
+			// the socket is full: wait until it can be written again
+			bytesWritten += EventRing.write(viewer.channel, viewer);
+			if (!viewer.isEmpty()) {
+				viewer.channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+
+	/**
+	* Closes a connection
+	*/
+	private void close(Viewer viewer) {
+		if (viewer == null)
+			return;
+		if (viewer.streaming && viewers.remove(viewer))
+			connected = viewers.size();
+		try {
+			viewer.channel.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+}
@@ -0,0 +1,865 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* The statistics of the clues and of the players, kept from a game to the next and from a show to the next: how many times every clue
+* (bank, category and row) was selected, how many responses to it were judged correct or incorrect, and how long the players took to buzz in;
+* and the same judgements and times for every player. They tell which clues are too easy or too hard, e.g. java StatsStore stats.jst 20
+*
+* Recording an event neither locks nor allocates: the event is encoded in two longs, put in a bounded ring shared by every game, which a single
+* aggregator thread drains into tables keyed by primitive longs, with a histogram of fixed buckets of the time to buzz in.
+* The tables are saved in a compact binary file every few seconds if they changed, and when the store is closed.
+* If the aggregator ever falls so far behind that the ring is full, the event is dropped and counted, rather than slowing the game down.
+*
+* The file is: int magic ("JST1"), then as varints: the banks, the columns (bank and category), the players, the statistics of every clue
+* and of every player; then the int CRC32 of everything before it. It is replaced at once, so a crash leaves the previous version.
+*/
+public class StatsStore implements Closeable {
+
+	/**
+	* The extension of the statistics files
+	*/
+	static final String EXTENSION = ".jst";
+
+	/**
+	* The first int of the file ("JST1")
+	*/
+	static final int MAGIC = 0x4A535431;
+
+	/**
+	* Time between two saves of the file, in milliseconds, unless another one is given
+	*/
+	public static final long FLUSH_MILLIS = 10000;
+
+	/**
+	* The types of the events, which are also the first counters of a row of statistics
+	*/
+	private static final int SELECTED = 0, CORRECT = 1, INCORRECT = 2, BUZZED = 3;
+
+	/**
+	* Number of buckets of the histogram of the time to buzz in: bucket 0 counts the buzzes under 1 ms, bucket b those from 2^(b-1) ms
+	* to 2^b ms excluded, and the last bucket those of 2^(BUCKETS-2) ms or more
+	*/
+	static final int BUCKETS = 16;
+
+	/**
+	* Number of counters of a row of statistics: one per type of event, then the buckets of the histogram
+	*/
+	private static final int FIELDS = 4 + BUCKETS;
+
+	/**
+	* Number of events the ring holds, and the largest index of a player an event can hold
+	*/
+	private static final int CAPACITY = 1 << 16, MASK = CAPACITY - 1, MAX_PLAYER = (1 << 24) - 2;
+
+	/**
+	* Number of events aggregated at most while the tables are locked, so reading them never waits long
+	*/
+	private static final int BATCH = 4096;
+
+	/**
+	* Time the aggregator sleeps when the ring is empty, in nanoseconds
+	*/
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+	/**
+	* The path to the file, and the time between two saves, in nanoseconds
+	*/
+	private final Path path;
+	private final long flushNanos;
+
+	/**
+	* The ring of events: the clue and the value (type, player and time to buzz in) of every event, and the sequence of every slot:
+	* a slot can be written by the producer of event p when its sequence is p, and read by the aggregator when it is p + 1
+	*/
+	private final long clueRing[] = new long[CAPACITY], valueRing[] = new long[CAPACITY];
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+
+	/**
+	* The next event to write in the ring, shared by the producers, and the next one to read, only used by the aggregator
+	*/
+	private final AtomicLong tail = new AtomicLong();
+	private long head = 0;
+
+	/**
+	* The number of events dropped because the ring was full
+	*/
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	* The banks, and the columns of the banks: a column is a category of a bank, found by bank and category separated by a new line,
+	* as a category is a single line of its file
+	*/
+	private final ArrayList<String> banks = new ArrayList<String>(), categories = new ArrayList<String>();
+	private final HashMap<String, Integer> bankIds = new HashMap<String, Integer>(), columnIds = new HashMap<String, Integer>();
+	private int columnBanks[] = new int[16];
+
+	/**
+	* The players by name, and the name of every index
+	*/
+	private final ConcurrentHashMap<String, Integer> playerIds = new ConcurrentHashMap<String, Integer>();
+	private final ArrayList<String> playerNames = new ArrayList<String>();
+
+	/**
+	* The statistics of every clue, found by its key (column and row), and of every player, found by its index; only written by the aggregator
+	*/
+	private final Table clues = new Table(), players = new Table();
+	private final LongIntMap clueRows = new LongIntMap();
+
+	/**
+	* The key and the row of the last clue counted, only used by the aggregator
+	*/
+	private long lastClue = -1;
+	private int lastRow = -1;
+
+	/**
+	* The number of events aggregated since the store was opened, and whether the tables changed since they were saved
+	*/
+	private long events = 0;
+	private boolean dirty = false;
+
+	/**
+	* The thread draining the ring, whether it should keep running, and whether the store was closed
+	*/
+	private final Thread aggregator;
+	private volatile boolean running = true;
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	/**
+	* The thread closing the store when the JVM exits, registered until the store is closed
+	*/
+	private final Thread shutdownHook = new Thread(this::close, "stats-shutdown");
+
+	/**
+	* The last error while saving the file
+	*/
+	private volatile IOException failure;
+
+	/**
+	* A row of statistics per clue or per player: the counters of the row (one per type of event, then the buckets of the histogram),
+	* the total time to buzz in, and for a clue, its key
+	*/
+	private static class Table {
+		int counts[] = new int[16 * FIELDS];
+		long buzzMicros[] = new long[16], keys[] = new long[16];
+		int size = 0;
+
+		/**
+		* Makes sure the table has at least the given number of rows
+		*/
+		void ensure(int rows) {
+			if (rows > keys.length) {
+				int capacity = Math.max(rows, 2 * keys.length);
+				counts = Arrays.copyOf(counts, capacity * FIELDS);
+				buzzMicros = Arrays.copyOf(buzzMicros, capacity);
+				keys = Arrays.copyOf(keys, capacity);
+			}
+			size = Math.max(size, rows);
+		}
+
+		/**
+		* Adds a row for the given key, and returns its index
+		*/
+		int add(long key) {
+			ensure(size + 1);
+			keys[size - 1] = key;
+			return size - 1;
+		}
+
+		/**
+		* Counts an event in a row
+		*/
+		void record(int row, int type, long micros) {
+			counts[row * FIELDS + type]++;
+			if (type == BUZZED) {
+				counts[row * FIELDS + 4 + bucket(micros)]++;
+				buzzMicros[row] += micros;
+			}
+		}
+
+		int get(int row, int field) {
+			return counts[row * FIELDS + field];
+		}
+	}
+
+	/**
+	* A hash map from long keys to int values, with open addressing in two arrays, so neither a lookup nor an insertion allocates an object
+	*/
+	private static class LongIntMap {
+		long keys[] = new long[64];
+		int values[] = new int[64];
+		int size = 0;
+
+		LongIntMap() {
+			Arrays.fill(values, -1);
+		}
+
+		/**
+		* Returns the value of a key, or -1 if it has none
+		*/
+		int get(long key) {
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; values[i] >= 0; i = (i + 1) & mask)
+				if (keys[i] == key)
+					return values[i];
+			return -1;
+		}
+
+		/**
+		* Gives a value to a key which has none; the value must not be negative
+		*/
+		void put(long key, int value) {
+			// the table is kept at most half full, so the probes stay short
+			if (2 * (size + 1) > keys.length) {
+				long oldKeys[] = keys;
+				int oldValues[] = values;
+				keys = new long[2 * oldKeys.length];
+				values = new int[2 * oldKeys.length];
+				Arrays.fill(values, -1);
+				for (int i = 0; i < oldKeys.length; i++)
+					if (oldValues[i] >= 0)
+						insert(oldKeys[i], oldValues[i]);
+			}
+			insert(key, value);
+			size++;
+		}
+
+		private void insert(long key, int value) {
+			int mask = keys.length - 1, i = hash(key) & mask;
+			while (values[i] >= 0)
+				i = (i + 1) & mask;
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+
+	/**
+	* Records the events of a game in the store: it is the <code>GameListener</code> of the <code>GameEngine</code> of the game, informed of the
+	* selected clues and of the judgements, and is also given the buzzes and the typed responses of the players, e.g. by a <code>BuzzerRoom</code>.
+	* Its methods can be called from any thread, and only put an event in the ring of the store.
+	*/
+	public class Recorder implements GameListener {
+
+		/**
+		* The bank of the next board loaded, and the column of every category of the board being played
+		*/
+		private volatile String bank;
+		private volatile int columns[] = new int[0];
+
+		/**
+		* The rows in the bank of the questions of every category of the next board loaded, and of the board being played,
+		* or null if they are the rows of the board, as for a question file played as it is
+		*/
+		private volatile int bankRows[][], rows[][];
+
+		/**
+		* The board and the bank the columns were found for, so playing the same board again doesn't look them up again
+		*/
+		private QuestionBank columnsDatabase;
+		private String columnsBank;
+
+		private Recorder(String pathToFile) {
+			setBank(pathToFile);
+		}
+
+		/**
+		* Sets the bank of the next board loaded, e.g. before a new question file is played by the engine
+		* @param pathToFile the path to the question file
+		*/
+		public void setBank(String pathToFile) {
+			setBank(pathToFile, null);
+		}
+
+		/**
+		* Sets the bank of the next board loaded, whose clues come from other rows of the bank, e.g. a random board assembled from an archive
+		* @param pathToFile the path to the question file the clues come from
+		* @param rows the rows in the bank of the questions of every category of the board, or null if they are the rows of the board
+		*/
+		public void setBank(String pathToFile, int rows[][]) {
+			bankRows = rows;
+			bank = Paths.get(pathToFile).toAbsolutePath().normalize().toString();
+		}
+
+		/**
+		* Finds the column of every category of the board, adding the new ones. Required by the GameListener interface.
+		*/
+		public void boardLoaded(GameEngine engine) {
+			String current = bank;
+			rows = bankRows;
+			if (engine.getDatabase() != columnsDatabase || !current.equals(columnsBank)) {
+				columns = columnsOf(current, engine.getDatabase());
+				columnsDatabase = engine.getDatabase();
+				columnsBank = current;
+			}
+		}
+
+		/**
+		* Finds the column of every category of the new version of the board, whose categories may have been renamed. Required by the GameListener interface.
+		*/
+		public void boardPatched(GameEngine engine, DatabasePatch patch) {
+			columnsDatabase = patch.getDatabase();
+			columnsBank = bank;
+			columns = columnsOf(columnsBank, columnsDatabase);
+		}
+
+		/**
+		* Records the selection of a clue. Required by the GameListener interface.
+		*/
+		public void clueSelected(GameEngine engine, int category, int question) {
+			long clue = clue(category, question);
+			if (clue >= 0)
+				record(SELECTED, clue, -1, 0);
+		}
+
+		/**
+		* Records the judgement of a player of the engine for the selected clue. The players of the engine only have an index,
+		* the same from a game to the next, so the judgement only counts for the clue. Required by the GameListener interface.
+		*/
+		public void playerJudged(GameEngine engine, int player, boolean correct, int amount) {
+			long clue = clue(engine.getSelectedCategory(), engine.getSelectedQuestion());
+			if (clue >= 0)
+				record(correct ? CORRECT : INCORRECT, clue, -1, 0);
+		}
+
+		/**
+		* Records the time a player took to buzz in for a clue
+		* @param player the name of the player
+		* @param category the index of the category of the clue
+		* @param question the index of the question of the clue in its category
+		* @param reactionNanos the time from the clue being shown to the buzz, in nanoseconds
+		*/
+		public void buzzed(String player, int category, int question, long reactionNanos) {
+			long clue = clue(category, question);
+			if (clue >= 0)
+				record(BUZZED, clue, playerId(player), reactionNanos / 1000);
+		}
+
+		/**
+		* Records the judgement of the response typed by a player for a clue
+		* @param player the name of the player
+		* @param category the index of the category of the clue
+		* @param question the index of the question of the clue in its category
+		* @param correct whether the response was right
+		*/
+		public void responded(String player, int category, int question, boolean correct) {
+			long clue = clue(category, question);
+			if (clue >= 0)
+				record(correct ? CORRECT : INCORRECT, clue, playerId(player), 0);
+		}
+
+		/**
+		* Returns the key of a clue of the board: its column in the high int, its row in the bank in the low int; or -1 if it isn't on the board
+		*/
+		private long clue(int category, int question) {
+			int current[] = columns, bankRows[][] = rows;
+			if (category < 0 || category >= current.length || question < 0)
+				return -1;
+			if (bankRows != null && category < bankRows.length && bankRows[category] != null && question < bankRows[category].length)
+				question = bankRows[category][question];
+			return (long) current[category] << 32 | question;
+		}
+	}
+
+	/**
+	* Opens the statistics saved in a file, or new statistics if the file doesn't exist, and starts aggregating the events recorded
+	* @param path the statistics file
+	* @param flushMillis the time between two saves of the file, in milliseconds
+	* @throws IOException if the file can't be read, or isn't a statistics file
+	*/
+	public StatsStore(Path path, long flushMillis) throws IOException {
+		this.path = path;
+		flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+		for (int slot = 0; slot < CAPACITY; slot++)
+			sequences.set(slot, slot);
+		read();
+
+		aggregator = new Thread(this::aggregate, "stats-aggregator");
+		aggregator.setDaemon(true);
+		aggregator.start();
+
+		// save the last events if the JVM exits normally, e.g. when the frame is closed
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	* Creates a <code>Recorder</code> of the events of a game
+	* @param pathToFile the path to the question file of the first board of the game
+	* @return the <code>Recorder</code>, to add as a <code>GameListener</code> of the <code>GameEngine</code> of the game
+	*/
+	public Recorder recorder(String pathToFile) {
+		return new Recorder(pathToFile);
+	}
+
+	/**
+	* Prints the hardest and the easiest clues of a statistics file, and its players, as JSON
+	* @param args the statistics file, and optionally the number of clues of each list (20 by default)
+	*/
+	public static void main(String args[]) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: java StatsStore <stats" + EXTENSION + "> [limit]");
+			System.exit(1);
+		}
+
+		try (StatsStore store = new StatsStore(Paths.get(args[0]), FLUSH_MILLIS)) {
+			System.out.println(store.report(args.length > 1 ? Integer.parseInt(args[1]) : 20));
+		}
+	}
+
+	/**
+	* Puts an event in the ring, or drops it if the ring is full
+	*/
+	private void record(int type, long clue, int player, long micros) {
+		long value = (long) type << 56 | (long) (player > MAX_PLAYER ? 0 : player + 1) << 32 | Math.min(Math.max(micros, 0), 0xFFFFFFFFL);
+
+		// claim the next slot, once the aggregator has read the event it held
+		long position;
+		int slot;
+		while (true) {
+			position = tail.get();
+			slot = (int) position & MASK;
+			long sequence = sequences.get(slot);
+			if (sequence < position) {
+				dropped.increment();
+				Metrics.STATS_DROPPED.increment();
+				return;
+			}
+			if (sequence == position && tail.compareAndSet(position, position + 1))
+				break;
+		}
+
+		clueRing[slot] = clue;
+		valueRing[slot] = value;
+		sequences.lazySet(slot, position + 1);
+	}
+
+	/**
+	* The loop of the aggregator: drains the ring, and saves the file when it is due; sleeps while the ring is empty
+	*/
+	private void aggregate() {
+		long nextFlush = System.nanoTime() + flushNanos;
+		while (running) {
+			int drained = drain();
+			if (System.nanoTime() - nextFlush >= 0) {
+				flush();
+				nextFlush = System.nanoTime() + flushNanos;
+			}
+			if (drained == 0)
+				LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+
+	/**
+	* Counts at most BATCH events of the ring in the tables
+	* @return the number of events counted
+	*/
+	private synchronized int drain() {
+		int drained = 0;
+		while (drained < BATCH) {
+			int slot = (int) head & MASK;
+			if (sequences.get(slot) != head + 1)
+				break;
+			long clue = clueRing[slot], value = valueRing[slot];
+			// the slot can be written again once the event is read
+			sequences.lazySet(slot, head + CAPACITY);
+			head++;
+			drained++;
+
+			int type = (int) (value >>> 56), player = (int) ((value >>> 32) & 0xFFFFFF) - 1;
+			long micros = value & 0xFFFFFFFFL;
+
+			// the events of a clue usually follow each other: its selection, then the buzzes and the judgements
+			if (clue != lastClue) {
+				lastRow = clueRows.get(clue);
+				if (lastRow < 0) {
+					lastRow = clues.add(clue);
+					clueRows.put(clue, lastRow);
+				}
+				lastClue = clue;
+			}
+			clues.record(lastRow, type, micros);
+
+			if (player >= 0) {
+				players.ensure(player + 1);
+				players.record(player, type, micros);
+			}
+		}
+
+		if (drained > 0) {
+			events += drained;
+			dirty = true;
+		}
+		return drained;
+	}
+
+	/**
+	* Saves the tables if they changed since they were last saved: writes them to a temporary file, then replaces the file at once
+	*/
+	private void flush() {
+		byte bytes[];
+		synchronized (this) {
+			if (!dirty)
+				return;
+			try {
+				bytes = encode();
+			} catch (IOException e) {
+				failure = e;
+				return;
+			}
+			dirty = false;
+		}
+
+		Path temporary = Paths.get(path.toString() + ".tmp");
+		try {
+			try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining())
+					out.write(buffer);
+				out.force(true);
+			}
+			Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			failure = null;
+		} catch (IOException e) {
+			// try again at the next save
+			failure = e;
+			synchronized (this) {
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	* Stops the aggregator, counts the events left in the ring, and saves the file. Required by the Closeable interface.
+	*/
+	public void close() {
+		if (!closed.compareAndSet(false, true))
+			return;
+
+		// the hook is only needed while the store is open; the JVM doesn't let a hook be removed once it is shutting down
+		if (Thread.currentThread() != shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// the JVM is shutting down, and the hook will find the store closed
+			}
+		}
+		running = false;
+		LockSupport.unpark(aggregator);
+		try {
+			aggregator.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		while (drain() > 0)
+			;
+		flush();
+	}
+
+	/**
+	* Returns the column of every category of a board, adding the new ones; only called when a board is loaded
+	*/
+	private int[] columnsOf(String bank, QuestionBank db) {
+		int columns[] = new int[db.getNumCategories()];
+		synchronized (columnIds) {
+			Integer bankId = bankIds.get(bank);
+			if (bankId == null) {
+				bankId = banks.size();
+				banks.add(bank);
+				bankIds.put(bank, bankId);
+			}
+
+			for (int j = 0; j < columns.length; j++)
+				columns[j] = columnOf(bankId, db.getCategory(j));
+		}
+		return columns;
+	}
+
+	/**
+	* Returns the column of a category of a bank, adding it if it is new; the columns must be locked
+	*/
+	private int columnOf(int bank, String category) {
+		String name = banks.get(bank) + "\n" + category;
+		Integer column = columnIds.get(name);
+		if (column == null) {
+			column = categories.size();
+			categories.add(category);
+			columnIds.put(name, column);
+			if (column == columnBanks.length)
+				columnBanks = Arrays.copyOf(columnBanks, 2 * column);
+			columnBanks[column] = bank;
+		}
+		return column;
+	}
+
+	/**
+	* Returns the index of a player, giving it the next index the first time the player is seen; a known player is found without allocating
+	*/
+	private int playerId(String name) {
+		Integer id = playerIds.get(name);
+		if (id != null)
+			return id;
+
+		return playerIds.computeIfAbsent(name, player -> {
+			synchronized (playerNames) {
+				playerNames.add(player);
+				return playerNames.size() - 1;
+			}
+		});
+	}
+
+	/**
+	* Returns the bucket of the histogram of a time to buzz in
+	*/
+	static int bucket(long micros) {
+		return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros / 1000));
+	}
+
+	/**
+	* Encodes the tables as the content of the file; the tables must be locked
+	*/
+	private byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + clues.size * 24);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+
+		synchronized (columnIds) {
+			writeVarint(out, banks.size());
+			for (String bank : banks)
+				out.writeUTF(bank);
+			writeVarint(out, categories.size());
+			for (int column = 0; column < categories.size(); column++) {
+				writeVarint(out, columnBanks[column]);
+				out.writeUTF(categories.get(column));
+			}
+		}
+
+		// the players seen after the tables were last drained have no statistics yet
+		synchronized (playerNames) {
+			writeVarint(out, playerNames.size());
+			for (String name : playerNames)
+				out.writeUTF(name);
+		}
+
+		writeVarint(out, clues.size);
+		for (int row = 0; row < clues.size; row++) {
+			writeVarint(out, clues.keys[row] >>> 32);
+			writeVarint(out, (int) clues.keys[row]);
+			writeRow(out, clues, row);
+		}
+		writeVarint(out, players.size);
+		for (int row = 0; row < players.size; row++)
+			writeRow(out, players, row);
+
+		// the last int is the CRC32 of everything before it
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		return bytes.toByteArray();
+	}
+
+	private static void writeRow(DataOutputStream out, Table table, int row) throws IOException {
+		for (int field = 0; field < FIELDS; field++)
+			writeVarint(out, table.get(row, field));
+		writeVarint(out, table.buzzMicros[row]);
+	}
+
+	/**
+	* Writes a positive number 7 bits at a time, with the high bit set on every byte but the last
+	*/
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b < 0x80)
+				return value;
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	* Reads the tables saved in the file, if it exists
+	*/
+	private void read() throws IOException {
+		byte bytes[];
+		try {
+			bytes = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+		if (bytes.length < 8 || buffer.getInt(0) != MAGIC || buffer.getInt(bytes.length - 4) != (int) crc.getValue())
+			throw new IOException(path + " is not a statistics file, or is corrupted");
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 4, bytes.length - 8));
+		for (int k = (int) readVarint(in); k > 0; k--) {
+			String bank = in.readUTF();
+			bankIds.put(bank, banks.size());
+			banks.add(bank);
+		}
+		for (int k = (int) readVarint(in); k > 0; k--)
+			columnOf((int) readVarint(in), in.readUTF());
+
+		for (int k = (int) readVarint(in); k > 0; k--) {
+			String name = in.readUTF();
+			playerIds.put(name, playerNames.size());
+			playerNames.add(name);
+		}
+
+		for (int k = (int) readVarint(in); k > 0; k--) {
+			long clue = readVarint(in) << 32 | readVarint(in);
+			int row = clues.add(clue);
+			clueRows.put(clue, row);
+			readRow(in, clues, row);
+		}
+		int rows = (int) readVarint(in);
+		players.ensure(rows);
+		for (int row = 0; row < rows; row++)
+			readRow(in, players, row);
+	}
+
+	private static void readRow(DataInputStream in, Table table, int row) throws IOException {
+		for (int field = 0; field < FIELDS; field++)
+			table.counts[row * FIELDS + field] = (int) readVarint(in);
+		table.buzzMicros[row] = readVarint(in);
+	}
+
+	/**
+	* getter that returns the number of events counted since the store was opened
+	* @return the number of events aggregated
+	*/
+	public synchronized long getEvents() {
+		return events;
+	}
+
+	/**
+	* getter that returns the number of events dropped because the aggregator was too far behind
+	* @return the number of events dropped since the store was opened
+	*/
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	* getter that returns the last error while saving the file
+	* @return the error, or null if the file was saved the last time it was
+	*/
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	* Returns the hardest and the easiest clues, by the share of their responses judged correct, and the statistics of every player, as JSON.
+	* The events still in the ring are not counted yet.
+	* @param limit the number of clues of each list
+	* @return the clues, with their bank, category, row, counters and times to buzz in, and the players
+	*/
+	public synchronized String report(int limit) {
+		// only the clues which were judged have a share of correct responses
+		ArrayList<Integer> judged = new ArrayList<Integer>();
+		for (int row = 0; row < clues.size; row++)
+			if (clues.get(row, CORRECT) + clues.get(row, INCORRECT) > 0)
+				judged.add(row);
+		judged.sort((a, b) -> {
+			int compared = Double.compare(correctShare(clues, a), correctShare(clues, b));
+			return compared != 0 ? compared
+				: Integer.compare(clues.get(b, CORRECT) + clues.get(b, INCORRECT), clues.get(a, CORRECT) + clues.get(a, INCORRECT));
+		});
+
+		StringBuilder json = new StringBuilder("{\"clues\": ").append(clues.size).append(", \"events\": ").append(events)
+			.append(", \"dropped\": ").append(dropped.sum()).append(",\n\"hardest\": [");
+		for (int k = 0; k < Math.min(limit, judged.size()); k++)
+			appendClue(json.append(k == 0 ? "\n  " : ",\n  "), judged.get(k));
+		json.append("],\n\"easiest\": [");
+		for (int k = 0; k < Math.min(limit, judged.size()); k++)
+			appendClue(json.append(k == 0 ? "\n  " : ",\n  "), judged.get(judged.size() - 1 - k));
+		json.append("],\n\"players\": [");
+		synchronized (playerNames) {
+			for (int row = 0; row < players.size; row++) {
+				json.append(row == 0 ? "\n  " : ",\n  ").append("{\"name\": ");
+				Json.appendQuoted(json, playerNames.get(row));
+				appendCounters(json, players, row);
+				json.append("}");
+			}
+		}
+		return json.append("]}").toString();
+	}
+
+	private static double correctShare(Table table, int row) {
+		return table.get(row, CORRECT) / (double) (table.get(row, CORRECT) + table.get(row, INCORRECT));
+	}
+
+	private void appendClue(StringBuilder json, int row) {
+		int column = (int) (clues.keys[row] >>> 32);
+		synchronized (columnIds) {
+			json.append("{\"bank\": ");
+			Json.appendQuoted(json, banks.get(columnBanks[column]));
+			json.append(", \"category\": ");
+			Json.appendQuoted(json, categories.get(column));
+		}
+		json.append(", \"row\": ").append((int) clues.keys[row]).append(", \"selected\": ").append(clues.get(row, SELECTED));
+		appendCounters(json, clues, row);
+		json.append("}");
+	}
+
+	/**
+	* Appends the judgements and the times to buzz in of a row: the mean, and the bucket of the median (its upper bound, or the lower bound of the last bucket)
+	*/
+	private static void appendCounters(StringBuilder json, Table table, int row) {
+		int buzzes = table.get(row, BUZZED);
+		json.append(", \"correct\": ").append(table.get(row, CORRECT)).append(", \"incorrect\": ").append(table.get(row, INCORRECT))
+			.append(", \"buzzes\": ").append(buzzes).append(", \"meanBuzzMillis\": ").append(buzzes == 0 ? 0 : table.buzzMicros[row] / buzzes / 1000);
+
+		long median = 0;
+		for (int bucket = 0, seen = 0; bucket < BUCKETS && buzzes > 0; bucket++) {
+			seen += table.get(row, 4 + bucket);
+			if (2 * seen >= buzzes) {
+				median = bucket == BUCKETS - 1 ? 1L << (bucket - 1) : 1L << bucket;
+				break;
+			}
+		}
+		json.append(", \"medianBuzzMillis\": ").append(median);
+	}
+}
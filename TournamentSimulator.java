@@ -0,0 +1,597 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Headless Monte Carlo simulator of tournaments: plays millions of games of a board through a <code>GameEngine</code>,
+* between players following simple models, to tune the size of the board and the amount of money of its rows from data.
+* Every clue, the players who know the "question", and those who bluff, buzz after a random reaction time; the fastest one responds,
+* then the next one if he was wrong, and the player who responds correctly picks the next clue following his strategy.
+* The games are split into fixed ranges played in parallel by a <code>ForkJoinPool</code>, every range with its own <code>SplittableRandom</code>
+* split from the seed, so the results only depend on the seed and the number of games, not on the number of cores nor on the scheduling.
+* The statistics are counted in arrays of longs, allocated once per range and summed when the ranges are joined.
+* e.g. java TournamentSimulator questions/questions.txt 1000000 0.8:1:0.05:top,0.6:1.3:0.1:random,0.5:0.8:0:bottom 42 100,200,400,800,1600 1,2,4
+*/
+public class TournamentSimulator {
+
+	/**
+	* Number of games played in a row by one task: the ranges of games don't depend on the number of cores, so neither do the results
+	*/
+	static final int LEAF_GAMES = 1024;
+
+	/**
+	* Maximum number of buckets of the distribution of the scores of a player
+	*/
+	static final int SCORE_BUCKETS = 4096;
+
+	/**
+	* Knowledge lost from the first row to the last one: a player knows the last row (1 - DIFFICULTY) times less often than the first one
+	*/
+	static final double DIFFICULTY = 0.5;
+
+	/**
+	* Probability that a player who bluffs responds correctly anyway
+	*/
+	static final double GUESS = 0.1;
+
+	/**
+	* The ways a player in control picks the next clue
+	*/
+	public enum Strategy {
+		/** row after row, from the cheapest one, from left to right */
+		TOP,
+		/** row after row, from the most expensive one, from left to right */
+		BOTTOM,
+		/** category after category, from left to right, from the cheapest clue */
+		COLUMN,
+		/** any clue left, uniformly */
+		RANDOM
+	}
+
+	/**
+	* The model of a player
+	*/
+	public static class PlayerModel {
+
+		/**
+		* Probability of knowing the "question" of a clue of the first row
+		*/
+		final double knowledge;
+
+		/**
+		* Speed of the buzzer: the reaction times follow an exponential distribution of this rate
+		*/
+		final double speed;
+
+		/**
+		* Probability of buzzing for a clue without knowing its "question"
+		*/
+		final double bluff;
+
+		/**
+		* How the player picks the next clue when in control
+		*/
+		final Strategy strategy;
+
+		/**
+		* Creates a <code>PlayerModel</code>
+		* @param knowledge the probability of knowing the "question" of a clue of the first row, from 0 to 1
+		* @param speed the relative speed of the buzzer, greater than 0
+		* @param bluff the probability of buzzing without knowing the "question", from 0 to 1
+		* @param strategy how the player picks the next clue
+		* @throws IllegalArgumentException if a probability or the speed is out of range
+		*/
+		public PlayerModel(double knowledge, double speed, double bluff, Strategy strategy) {
+			if (!(knowledge >= 0 && knowledge <= 1 && bluff >= 0 && bluff <= 1 && speed > 0))
+				throw new IllegalArgumentException("invalid player model " + knowledge + ":" + speed + ":" + bluff);
+			this.knowledge = knowledge;
+			this.speed = speed;
+			this.bluff = bluff;
+			this.strategy = strategy;
+		}
+
+		/**
+		* Static method that parses a <code>PlayerModel</code> written as knowledge:speed:bluff:strategy, e.g. 0.8:1.2:0.05:random.
+		* Only the knowledge is required: the speed is 1, the bluff 0 and the strategy TOP by default.
+		* @param spec the model
+		* @return the <code>PlayerModel</code>
+		* @throws IllegalArgumentException if the model can't be parsed
+		*/
+		public static PlayerModel parse(String spec) {
+			String parts[] = spec.split(":");
+			return new PlayerModel(Double.parseDouble(parts[0]), parts.length > 1 ? Double.parseDouble(parts[1]) : 1,
+				parts.length > 2 ? Double.parseDouble(parts[2]) : 0, parts.length > 3 ? Strategy.valueOf(parts[3].toUpperCase(Locale.ROOT)) : Strategy.TOP);
+		}
+
+		/**
+		* Returns the probability of knowing the "question" of a clue of a row
+		*/
+		double knows(int question, int n) {
+			return knowledge * (1 - DIFFICULTY * question / Math.max(1, n - 1));
+		}
+
+		/**
+		* Returns the model as it is parsed
+		*/
+		public String toString() {
+			return knowledge + ":" + speed + ":" + bluff + ":" + strategy.name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	* The <code>Database</code> played, only used for its size
+	*/
+	private final QuestionBank database;
+
+	/**
+	* The models of the players
+	*/
+	private final PlayerModel players[];
+
+	/**
+	* The number of categories, of questions per category and of cells of the board
+	*/
+	private final int m, n, cells;
+
+	/**
+	* The amount of money of every row, as given to every <code>GameEngine</code>
+	*/
+	private final int amounts[];
+
+	/**
+	* The money of the whole board, and the width of a bucket of the distribution of the scores, which are between -total and total
+	*/
+	private final long total, scoreWidth;
+
+	/**
+	* The number of buckets of the distribution of the scores
+	*/
+	private final int scoreBuckets;
+
+	/**
+	* Creates a <code>TournamentSimulator</code>
+	* @param database the <code>Database</code> to play; only its size matters
+	* @param players the model of every player
+	* @param rowAmounts the amount of money of every row, or null for the progression of <code>GameEngine</code>
+	* @throws IllegalArgumentException if an amount is negative: the scores, and when a game is decided, are only bounded by the money of the board
+	* if every clue is worth something
+	*/
+	public TournamentSimulator(QuestionBank database, PlayerModel players[], int rowAmounts[]) {
+		for (int k = 0; rowAmounts != null && k < rowAmounts.length; k++)
+			if (rowAmounts[k] < 0)
+				throw new IllegalArgumentException("the amount of row " + (k + 1) + " is negative: " + rowAmounts[k]);
+
+		this.database = database;
+		this.players = players.clone();
+		m = database.getNumCategories();
+		n = database.getNumQuestions();
+		cells = m * n;
+
+		// the amounts of the rows not given follow the progression of the engine, so the engine resolves them
+		GameEngine engine = new GameEngine(players.length);
+		engine.setAmounts(rowAmounts);
+		amounts = new int[n];
+		long sum = 0, divisor = 0;
+		for (int i = 0; i < n; i++) {
+			amounts[i] = engine.getAmount(i);
+			sum += amounts[i];
+			divisor = gcd(divisor, Math.abs(amounts[i]));
+		}
+		total = sum * m;
+
+		// every score is a multiple of the greatest common divisor of the amounts: the buckets are as well, so small boards are counted exactly
+		divisor = Math.max(1, divisor);
+		long units = 2 * Math.abs(total) / divisor + 1;
+		scoreWidth = divisor * ((units + SCORE_BUCKETS - 1) / SCORE_BUCKETS);
+		scoreBuckets = (int) (2 * Math.abs(total) / scoreWidth + 1);
+	}
+
+	/**
+	* Returns the greatest common divisor of two amounts, 0 being the divisor of nothing
+	*/
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	* Plays the games on a pool of the given number of threads
+	* @param games the number of games to play
+	* @param seed the seed of the random numbers: the same seed gives the same results, whatever the parallelism
+	* @param parallelism the number of threads playing
+	* @return the statistics of every game
+	*/
+	public Results run(long games, long seed, int parallelism) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new Games(0, games, new SplittableRandom(seed)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	* A range of games: halved until it is at most LEAF_GAMES long, then played in a row on one <code>Table</code>
+	*/
+	private class Games extends RecursiveTask<Results> {
+		private final long from, to;
+		private final SplittableRandom random;
+
+		Games(long from, long to, SplittableRandom random) {
+			this.from = from;
+			this.to = to;
+			this.random = random;
+		}
+
+		protected Results compute() {
+			if (to - from <= LEAF_GAMES) {
+				Results results = new Results();
+				Table table = new Table();
+				for (long game = from; game < to; game++)
+					table.play(random, results);
+				return results;
+			}
+
+			// the random numbers are split in the same order whichever thread runs the task, so every range gets the same numbers every run
+			long middle = from + (to - from) / 2;
+			Games first = new Games(from, middle, random.split());
+			first.fork();
+			Results results = new Games(middle, to, random).compute();
+			return results.merge(first.join());
+		}
+	}
+
+	/**
+	* Everything needed to play a game, reused from one game to the next so playing allocates nothing
+	*/
+	private class Table {
+		private final GameEngine engine = new GameEngine(players.length);
+
+		/**
+		* The cells left to play, in any order, and the index of every cell in it, or -1 once played
+		*/
+		private final int remaining[] = new int[cells], position[] = new int[cells];
+		private int left;
+
+		/**
+		* For every strategy but RANDOM, the number of cells of its order already known to be played
+		*/
+		private final int cursors[] = new int[Strategy.values().length];
+
+		/**
+		* The players who buzzed for the current clue, from the fastest one, their reaction times, and whether they know the "question"
+		*/
+		private final int buzzers[] = new int[players.length];
+		private final double reactions[] = new double[players.length];
+		private final boolean knows[] = new boolean[players.length];
+
+		Table() {
+			engine.setAmounts(amounts);
+		}
+
+		/**
+		* Plays a whole game and counts it in the results
+		*/
+		void play(SplittableRandom random, Results results) {
+			engine.load(database);
+			for (int cell = 0; cell < cells; cell++)
+				remaining[cell] = position[cell] = cell;
+			left = cells;
+			Arrays.fill(cursors, 0);
+
+			// the game is decided once the leader is ahead by more than the money left on the board
+			int control = random.nextInt(players.length), decided = cells;
+			long unplayed = total;
+			for (int turn = 0; turn < cells; turn++) {
+				int cell = pick(players[control].strategy, random);
+				int category = cell % m, question = cell / m;
+				engine.select(category, question);
+				remove(cell);
+				unplayed -= amounts[question];
+				results.turns[cell] += turn;
+
+				// the players who buzz, sorted by their reaction time
+				int count = 0;
+				for (int player = 0; player < players.length; player++) {
+					PlayerModel model = players[player];
+					knows[player] = random.nextDouble() < model.knows(question, n);
+					if (!knows[player] && random.nextDouble() >= model.bluff)
+						continue;
+
+					double reaction = -Math.log(1 - random.nextDouble()) / model.speed;
+					int k = count++;
+					for (; k > 0 && reactions[buzzers[k - 1]] > reaction; k--)
+						buzzers[k] = buzzers[k - 1];
+					buzzers[k] = player;
+					reactions[player] = reaction;
+				}
+
+				// every buzzer responds in turn until one is right, who takes control of the board
+				boolean answered = false;
+				for (int k = 0; k < count && !answered; k++) {
+					int player = buzzers[k];
+					answered = knows[player] || random.nextDouble() < GUESS;
+					engine.judge(player, answered);
+					if (answered)
+						control = player;
+				}
+				engine.reveal();
+
+				if (answered)
+					results.correct[cell]++;
+				if (decided == cells) {
+					results.contested[cell]++;
+					if (turn < cells - 1 && isLocked(unplayed))
+						decided = turn + 1;
+				}
+			}
+			results.record(engine, decided);
+		}
+
+		/**
+		* Returns the next cell the player in control picks
+		*/
+		private int pick(Strategy strategy, SplittableRandom random) {
+			if (strategy == Strategy.RANDOM)
+				return remaining[random.nextInt(left)];
+
+			// the cursor only moves forward, so picking every cell of a game costs as much as going once through the board
+			int s = strategy.ordinal();
+			while (true) {
+				int k = cursors[s], cell;
+				if (strategy == Strategy.TOP)
+					cell = k;
+				else if (strategy == Strategy.BOTTOM)
+					cell = (n - 1 - k / m) * m + k % m;
+				else
+					cell = (k % n) * m + k / n;
+				if (position[cell] >= 0)
+					return cell;
+				cursors[s]++;
+			}
+		}
+
+		/**
+		* Removes a played cell from the cells left, by moving the last cell left in its place
+		*/
+		private void remove(int cell) {
+			int index = position[cell], last = remaining[--left];
+			remaining[index] = last;
+			position[last] = index;
+			position[cell] = -1;
+		}
+
+		/**
+		* Returns whether the leader can't be caught anymore: he is ahead of every other player by more than the money left
+		*/
+		private boolean isLocked(long unplayed) {
+			long first = Long.MIN_VALUE, second = Long.MIN_VALUE;
+			for (int player = 0; player < players.length; player++) {
+				int score = engine.getScore(player);
+				if (score > first) {
+					second = first;
+					first = score;
+				} else if (score > second)
+					second = score;
+			}
+			return players.length < 2 || first - second > unplayed;
+		}
+	}
+
+	/**
+	* The statistics of a set of games, in arrays of longs so counting a game allocates nothing and the results of two sets can be summed
+	*/
+	public class Results {
+
+		/**
+		* The number of games
+		*/
+		long games;
+
+		/**
+		* The games won by every player, and the games tied for the first place
+		*/
+		final long wins[] = new long[players.length];
+		long ties;
+
+		/**
+		* The sum of the scores of every player, and their distribution: bucket b counts the scores from (b * scoreWidth - total)
+		*/
+		final long scoreSums[] = new long[players.length];
+		final long scores[][] = new long[players.length][scoreBuckets];
+
+		/**
+		* The number of games decided after every number of clues, from 0 to the number of cells (decided by the last clue, or tied)
+		*/
+		final long decided[] = new long[cells + 1];
+
+		/**
+		* For every cell: the sum of the turns it was picked at, the number of times a player was right, and the number of times it was played
+		* before the game was decided
+		*/
+		final long turns[] = new long[cells], correct[] = new long[cells], contested[] = new long[cells];
+
+		/**
+		* Counts the end of a game
+		*/
+		void record(GameEngine engine, int decidedAfter) {
+			games++;
+			decided[decidedAfter]++;
+
+			int best = Integer.MIN_VALUE, winner = -1;
+			for (int player = 0; player < players.length; player++) {
+				int score = engine.getScore(player);
+				scoreSums[player] += score;
+				scores[player][(int) ((score + total) / scoreWidth)]++;
+
+				if (score > best) {
+					best = score;
+					winner = player;
+				} else if (score == best)
+					winner = -1;
+			}
+			if (winner < 0)
+				ties++;
+			else
+				wins[winner]++;
+		}
+
+		/**
+		* Adds the statistics of other games to these ones
+		* @param other the statistics of other games
+		* @return these statistics
+		*/
+		Results merge(Results other) {
+			games += other.games;
+			ties += other.ties;
+			add(wins, other.wins);
+			add(scoreSums, other.scoreSums);
+			for (int player = 0; player < players.length; player++)
+				add(scores[player], other.scores[player]);
+			add(decided, other.decided);
+			add(turns, other.turns);
+			add(correct, other.correct);
+			add(contested, other.contested);
+			return this;
+		}
+
+		private void add(long sums[], long values[]) {
+			for (int k = 0; k < sums.length; k++)
+				sums[k] += values[k];
+		}
+
+		/**
+		* Returns whether the statistics are exactly the same as other ones, e.g. those of the same seed on another number of threads
+		* @param other the other statistics
+		* @return true if every count is the same
+		*/
+		public boolean sameAs(Results other) {
+			return games == other.games && ties == other.ties && Arrays.equals(wins, other.wins) && Arrays.equals(scoreSums, other.scoreSums)
+				&& Arrays.deepEquals(scores, other.scores) && Arrays.equals(decided, other.decided) && Arrays.equals(turns, other.turns)
+				&& Arrays.equals(correct, other.correct) && Arrays.equals(contested, other.contested);
+		}
+
+		/**
+		* Returns a percentile of the scores of a player
+		* @param player the index of the player
+		* @param percentile the percentile, from 0 to 100
+		* @return the lowest score of the bucket of the percentile
+		*/
+		public long getScorePercentile(int player, double percentile) {
+			return scoreWidth * percentileIndex(scores[player], percentile) - total;
+		}
+
+		/**
+		* Returns a percentile of the number of clues after which the games were decided
+		* @param percentile the percentile, from 0 to 100
+		* @return the number of clues
+		*/
+		public int getDecidedPercentile(double percentile) {
+			return percentileIndex(decided, percentile);
+		}
+
+		/**
+		* Returns the index where the counts reach a percentile of their sum
+		*/
+		private int percentileIndex(long counts[], double percentile) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * games)), seen = 0;
+			for (int k = 0; k < counts.length; k++)
+				if ((seen += counts[k]) >= rank)
+					return k;
+			return counts.length - 1;
+		}
+
+		/**
+		* Prints the statistics: the scores of every player, when the games were decided, and how every row was played
+		*/
+		void print() {
+			System.out.println("player  model                          wins      mean      p10      p50      p90");
+			for (int player = 0; player < players.length; player++)
+				System.out.printf("%6d  %-28s %6.2f%% %9.1f %8d %8d %8d%n", player, players[player], 100.0 * wins[player] / games,
+					(double) scoreSums[player] / games, getScorePercentile(player, 10), getScorePercentile(player, 50), getScorePercentile(player, 90));
+			System.out.printf("ties %.2f%%%n", 100.0 * ties / games);
+
+			double mean = 0;
+			for (int k = 0; k <= cells; k++)
+				mean += (double) k * decided[k] / games;
+			System.out.printf("decided after %.1f clues on average, p50 %d, p90 %d, before the last clue in %.2f%% of the games%n",
+				mean, getDecidedPercentile(50), getDecidedPercentile(90), 100.0 * (games - decided[cells]) / games);
+
+			System.out.println("row  amount  correct  mean turn  contested");
+			for (int i = 0; i < n; i++) {
+				long rowTurns = 0, rowCorrect = 0, rowContested = 0;
+				for (int j = 0; j < m; j++) {
+					rowTurns += turns[i * m + j];
+					rowCorrect += correct[i * m + j];
+					rowContested += contested[i * m + j];
+				}
+				double played = (double) games * m;
+				System.out.printf("%3d %7d %7.2f%% %10.1f %9.2f%%%n", i + 1, amounts[i], 100 * rowCorrect / played, rowTurns / played,
+					100 * rowContested / played);
+			}
+		}
+	}
+
+	/**
+	* Plays the games once for every parallelism, prints the statistics, then the time taken by every parallelism and whether they all got the same results.
+	* The exit status is 1 if they didn't.
+	* @param args the question file, or the size of a board to play without questions (e.g. 6x5), the number of games (1000000 by default),
+	* the models of the players separated by commas (by default three players of 0.6:1:0.1), the seed (the time by default),
+	* the amounts of the rows separated by commas (- for the progression of <code>GameEngine</code>), and the numbers of threads separated
+	* by commas (the number of processors by default)
+	*/
+	public static void main(String args[]) throws Exception {
+		QuestionBank database;
+		if (args[0].matches("\\d+x\\d+")) {
+			String size[] = args[0].split("x");
+			database = new Database(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+		} else
+			database = Database.parseQuestions(args[0]);
+		long games = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+		String specs[] = (args.length > 2 ? args[2] : "0.6,0.6,0.6").split(",");
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+		int amounts[] = null;
+		if (args.length > 4 && !args[4].equals("-"))
+			amounts = Arrays.stream(args[4].split(",")).mapToInt(Integer::parseInt).toArray();
+		int threads[] = args.length > 5 ? Arrays.stream(args[5].split(",")).mapToInt(Integer::parseInt).toArray()
+			: new int[] {Runtime.getRuntime().availableProcessors()};
+
+		PlayerModel players[] = new PlayerModel[specs.length];
+		for (int k = 0; k < specs.length; k++)
+			players[k] = PlayerModel.parse(specs[k]);
+		TournamentSimulator simulator = new TournamentSimulator(database, players, amounts);
+		System.out.println(simulator.m + "x" + simulator.n + " board, " + players.length + " players, amounts " + Arrays.toString(simulator.amounts)
+			+ ", " + games + " games, seed " + seed + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+
+		Results first = null;
+		double firstSeconds = 0;
+		boolean same = true;
+		for (int parallelism : threads) {
+			long start = System.nanoTime();
+			Results results = simulator.run(games, seed, parallelism);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			if (first == null) {
+				results.print();
+				first = results;
+				firstSeconds = seconds;
+			} else
+				same &= results.sameAs(first);
+			System.out.printf("%d threads: %.2f s, %.0f games/s, speedup %.2f%n", parallelism, seconds, games / seconds, firstSeconds / seconds);
+		}
+
+		if (!same) {
+			System.out.println("the results depend on the number of threads");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+// Author: Jonathan Guillotte-Blouin
+
+
+/**
+* Displays a board of any size without a component per cell: only the cells visible in the viewport are painted, straight from the
+* <code>GameEngine</code>, and clicks are turned into a cell by the position of the mouse. The categories are painted the same way
+* in the column header of a <code>JScrollPane</code>, so they stay visible while scrolling.
+* Memory and painting time depend on the size of the viewport, not on the size of the board.
+*/
+public class VirtualBoardPanel extends JComponent implements Scrollable, BoardView {
+
+	/**
+	* Size in pixels of every cell, and of the viewport
+	*/
+	private static final int CELL_WIDTH = 140, CELL_HEIGHT = 32, VIEWPORT_WIDTH = 980, VIEWPORT_HEIGHT = 480;
+
+	/**
+	* Colors of the cells, of their borders, of the labels of the categories, and of the text
+	*/
+	private static final Color BUTTON_COLOR = Color.decode("#F3F3F3"), BORDER_COLOR = Color.decode("#B8B8B8"),
+		CATEGORY_COLOR = Color.decode("#FED000"), TEXT_COLOR = Color.BLACK;
+
+	/**
+	* The <code>GameEngine</code> whose board is displayed, or null before the first board
+	*/
+	private GameEngine engine;
+
+	/**
+	* The number of categories and of questions per category of the current board
+	*/
+	private int numCategories = -1, numQuestions = -1;
+
+	/**
+	* Reusable characters of the label of a cell, so painting creates no Strings
+	*/
+	private final char label[] = new char[12];
+
+	/**
+	* The <code>JScrollPane</code> added to the frame, whose column header displays the categories
+	*/
+	private final JScrollPane scrollPane;
+
+	/**
+	* Creates an empty <code>VirtualBoardPanel</code>, in its <code>JScrollPane</code>
+	* @param listener reference to the Object which will handle the selection of a cell
+	*/
+	public VirtualBoardPanel(final CellListener listener) {
+		setOpaque(true);
+		setBackground(Color.WHITE);
+
+		// find the cell under the mouse, rather than asking a component per cell
+		addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e) {
+				int category = e.getX() / CELL_WIDTH, question = e.getY() / CELL_HEIGHT;
+				if (engine != null && category < numCategories && question < numQuestions)
+					listener.cellSelected(category, question);
+			}
+		});
+
+		scrollPane = new JScrollPane(this);
+		scrollPane.setColumnHeaderView(new CategoryHeader());
+		scrollPane.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+	}
+
+	/**
+	* Displays the board of the given <code>GameEngine</code>
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @return true if the size of the board changed, so the layout of the frame has to be computed again
+	*/
+	public boolean showBoard(GameEngine engine) {
+		QuestionBank db = engine.getDatabase();
+		int m = db.getNumCategories(), n = db.getNumQuestions();
+		boolean resized = m != numCategories || n != numQuestions;
+
+		this.engine = engine;
+		numCategories = m;
+		numQuestions = n;
+
+		if (resized) {
+			revalidate();
+			scrollPane.getColumnHeader().getView().revalidate();
+		}
+
+		scrollPane.getViewport().setViewPosition(new Point(0, 0));
+		repaint();
+		scrollPane.getColumnHeader().repaint();
+		return resized;
+	}
+
+	/**
+	* Displays a category again, after the <code>Database</code> of the board was patched, only painting that category again
+	* @param engine the <code>GameEngine</code> whose board is displayed
+	* @param category the index of the category
+	*/
+	public void showCategory(GameEngine engine, int category) {
+		scrollPane.getColumnHeader().getView().repaint(category * CELL_WIDTH, 0, CELL_WIDTH, CELL_HEIGHT);
+	}
+
+	/**
+	* Shows that the cell of the given category and question has been played, only painting that cell again
+	* @param category the index of the category of the cell
+	* @param question the index of the question of the cell in its category
+	*/
+	public void markPlayed(int category, int question) {
+		repaint(category * CELL_WIDTH, question * CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT);
+	}
+
+	/**
+	* getter that returns the component to add to the frame to display the board
+	* @return the <code>JScrollPane</code> containing this <code>VirtualBoardPanel</code>
+	*/
+	public JComponent getComponent() {
+		return scrollPane;
+	}
+
+	/**
+	* The size of the whole board
+	*/
+	public Dimension getPreferredSize() {
+		return new Dimension(Math.max(0, numCategories) * CELL_WIDTH, Math.max(0, numQuestions) * CELL_HEIGHT);
+	}
+
+	/**
+	* Paints the cells intersecting the area to paint, and only those
+	*/
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		if (engine == null)
+			return;
+
+		int firstCategory = clip.x / CELL_WIDTH, lastCategory = Math.min(numCategories - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+		int firstQuestion = clip.y / CELL_HEIGHT, lastQuestion = Math.min(numQuestions - 1, (clip.y + clip.height - 1) / CELL_HEIGHT);
+		FontMetrics metrics = g.getFontMetrics();
+
+		for (int i = firstQuestion; i <= lastQuestion; i++) {
+			for (int j = firstCategory; j <= lastCategory; j++) {
+				int x = j * CELL_WIDTH, y = i * CELL_HEIGHT;
+				g.setColor(BUTTON_COLOR);
+				g.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+				g.setColor(BORDER_COLOR);
+				g.drawRect(x, y, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+
+				// "$" followed by the amount, or "-" if the cell has been played
+				int length = engine.isPlayed(j, i) ? played() : amount(engine.getAmount(i));
+				g.setColor(TEXT_COLOR);
+				g.drawChars(label, label.length - length, length,
+					x + (CELL_WIDTH - metrics.charsWidth(label, label.length - length, length)) / 2,
+					y + (CELL_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent());
+			}
+		}
+	}
+
+	/**
+	* Scrolling by the arrows moves by one cell
+	*/
+	public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+		return orientation == SwingConstants.HORIZONTAL ? CELL_WIDTH : CELL_HEIGHT;
+	}
+
+	/**
+	* Scrolling by the track moves by the visible cells
+	*/
+	public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+		int cell = orientation == SwingConstants.HORIZONTAL ? CELL_WIDTH : CELL_HEIGHT;
+		int extent = orientation == SwingConstants.HORIZONTAL ? visible.width : visible.height;
+		return Math.max(cell, extent / cell * cell);
+	}
+
+	/**
+	* The viewport never shows more than VIEWPORT_WIDTH x VIEWPORT_HEIGHT pixels
+	*/
+	public Dimension getPreferredScrollableViewportSize() {
+		Dimension board = getPreferredSize();
+		return new Dimension(Math.min(board.width, VIEWPORT_WIDTH), Math.min(board.height, VIEWPORT_HEIGHT));
+	}
+
+	/**
+	* The board keeps its width, so it scrolls horizontally
+	*/
+	public boolean getScrollableTracksViewportWidth() {
+		return false;
+	}
+
+	/**
+	* The board keeps its height, so it scrolls vertically
+	*/
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+
+	/**
+	* Writes "-" at the end of the label
+	* @return the length of the label
+	*/
+	private int played() {
+		label[label.length - 1] = '-';
+		return 1;
+	}
+
+	/**
+	* Writes "$" followed by the amount at the end of the label
+	* @return the length of the label
+	*/
+	private int amount(int amount) {
+		int position = label.length;
+		do {
+			label[--position] = (char) ('0' + amount % 10);
+			amount /= 10;
+		} while (amount > 0);
+		label[--position] = '$';
+		return label.length - position;
+	}
+
+	/**
+	* Paints the names of the visible categories, above the cells
+	*/
+	private class CategoryHeader extends JComponent {
+
+		CategoryHeader() {
+			setOpaque(true);
+		}
+
+		/**
+		* As wide as the board, and as high as a cell
+		*/
+		public Dimension getPreferredSize() {
+			return new Dimension(Math.max(0, numCategories) * CELL_WIDTH, CELL_HEIGHT);
+		}
+
+		/**
+		* Paints the categories intersecting the area to paint, and only those
+		*/
+		protected void paintComponent(Graphics g) {
+			Rectangle clip = g.getClipBounds();
+			g.setColor(Color.WHITE);
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+			if (engine == null)
+				return;
+
+			QuestionBank db = engine.getDatabase();
+			int first = clip.x / CELL_WIDTH, last = Math.min(numCategories - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+			FontMetrics metrics = g.getFontMetrics();
+
+			for (int j = first; j <= last; j++) {
+				int x = j * CELL_WIDTH;
+				g.setColor(CATEGORY_COLOR);
+				g.fillRect(x, 0, CELL_WIDTH, CELL_HEIGHT);
+				g.setColor(BORDER_COLOR);
+				g.drawRect(x, 0, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+
+				// center the name, cutting it at the border of the cell if it is too long
+				String category = db.getCategory(j);
+				Graphics cell = g.create(x, 0, CELL_WIDTH, CELL_HEIGHT);
+				cell.setColor(TEXT_COLOR);
+				cell.drawString(category, Math.max(4, (CELL_WIDTH - metrics.stringWidth(category)) / 2),
+					(CELL_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent());
+				cell.dispose();
+			}
+		}
+	}
+}